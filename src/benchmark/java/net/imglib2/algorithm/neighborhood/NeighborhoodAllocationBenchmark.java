@@ -0,0 +1,134 @@
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.algorithm.localextrema.LocalExtrema;
+import net.imglib2.algorithm.morphology.Dilation;
+import net.imglib2.algorithm.morphology.Erosion;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.view.Views;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time and memory allocated per pixel by the hot loops of {@link Dilation},
+ * {@link Erosion} and {@link LocalExtrema}, on one thread.
+ * <p>
+ * One operation is one pixel: each invocation processes a whole image, and
+ * the fixed costs of the algorithm (its thread, its neighborhood accessibles)
+ * are spread over all its pixels. With the GC profiler, the
+ * <code>gc.alloc.rate.norm</code> secondary result is then the number of
+ * bytes allocated per pixel, which should be close to 0 once escape analysis
+ * has run:
+ * <p>
+ * <code>mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="NeighborhoodAllocationBenchmark -prof gc"</code>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class NeighborhoodAllocationBenchmark
+{
+
+	private static final int SIZE = 512;
+
+	private static final int PIXELS = SIZE * SIZE;
+
+	public static enum ShapeType
+	{
+		RECTANGLE, HYPERSPHERE, DIAMOND, PERIODIC_LINE;
+	}
+
+	@Param
+	public ShapeType shape;
+
+	private Shape s;
+
+	private Img< UnsignedByteType > source;
+
+	private Img< UnsignedByteType > target;
+
+	private ExecutorService service;
+
+	@Setup
+	public void setup()
+	{
+		switch ( shape )
+		{
+		case HYPERSPHERE:
+			s = new HyperSphereShape( 3 );
+			break;
+		case DIAMOND:
+			s = new DiamondShape( 2 );
+			break;
+		case PERIODIC_LINE:
+			s = new PeriodicLineShape( 2, new int[] { 1, 1 } );
+			break;
+		case RECTANGLE:
+		default:
+			s = new RectangleShape( 2, false );
+			break;
+		}
+		source = ArrayImgs.unsignedBytes( SIZE, SIZE );
+		final Random ran = new Random( 1l );
+		for ( final UnsignedByteType pixel : source )
+		{
+			// Values below 255, so that the extrema check never succeeds.
+			pixel.set( ran.nextInt( 255 ) );
+		}
+		target = ArrayImgs.unsignedBytes( SIZE, SIZE );
+		service = Executors.newFixedThreadPool( 1 );
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		service.shutdown();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( PIXELS )
+	public Img< UnsignedByteType > dilation()
+	{
+		Dilation.dilate( Views.extendZero( source ), target, s, 1 );
+		return target;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( PIXELS )
+	public Img< UnsignedByteType > erosion()
+	{
+		Erosion.erode( Views.extendZero( source ), target, s, 1 );
+		return target;
+	}
+
+	/**
+	 * With a strict threshold, no extremum is found, so no point is created.
+	 */
+	@Benchmark
+	@OperationsPerInvocation( PIXELS )
+	public int localExtrema()
+	{
+		final LocalExtrema.MaximumCheck< UnsignedByteType > check = new LocalExtrema.MaximumCheck< UnsignedByteType >( new UnsignedByteType( 255 ) );
+		return LocalExtrema.findLocalExtrema( Views.extendZero( source ), source, check, s, service ).size();
+	}
+}
@@ -0,0 +1,227 @@
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the neighborhood cursors and random accesses of all the
+ * shapes, for several radii, dimensionalities and image types, with the safe
+ * and the unsafe neighborhoods.
+ * <p>
+ * Each invocation visits all the elements of the neighborhoods of all the
+ * pixels of the interior of the image, so that no out-of-bounds strategy is
+ * involved. The score is in invocations per second; the number of elements
+ * visited per invocation depends on the shape and its radius.
+ * <p>
+ * Run with <code>mvn -Pbenchmark test-compile exec:exec</code>.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class NeighborhoodIterationBenchmark
+{
+
+	public static enum ShapeType
+	{
+		RECTANGLE, RECTANGLE_SKIP_CENTER, CENTERED_RECTANGLE, HYPERSPHERE, DIAMOND, DIAMOND_TIPS, HORIZONTAL_LINE, PERIODIC_LINE, PAIR_OF_POINTS, OFFSET_TABLE, MASK;
+	}
+
+	public static enum ImageType
+	{
+		ARRAY, PLANAR, CELL;
+	}
+
+	@Param
+	public ShapeType shape;
+
+	@Param( { "1", "3" } )
+	public int radius;
+
+	@Param( { "2", "3" } )
+	public int numDimensions;
+
+	@Param
+	public ImageType image;
+
+	@Param( { "false", "true" } )
+	public boolean safe;
+
+	private IterableInterval< Neighborhood< UnsignedShortType > > neighborhoods;
+
+	private RandomAccessible< Neighborhood< UnsignedShortType > > accessible;
+
+	private Interval interior;
+
+	@Setup
+	public void setup()
+	{
+		final long size = numDimensions == 2 ? 512 : 64;
+		final Img< UnsignedShortType > img = createImage( Util.getArrayFromValue( size, numDimensions ) );
+		final Shape s = createShape();
+
+		interior = Intervals.expand( img, -radius );
+		if ( safe )
+		{
+			neighborhoods = s.neighborhoodsSafe( Views.interval( img, interior ) );
+			accessible = s.neighborhoodsRandomAccessibleSafe( img );
+		}
+		else
+		{
+			neighborhoods = s.neighborhoods( Views.interval( img, interior ) );
+			accessible = s.neighborhoodsRandomAccessible( img );
+		}
+	}
+
+	/**
+	 * Iterates the neighborhoods with the cursor of the neighborhood
+	 * iterable.
+	 */
+	@Benchmark
+	public double cursor()
+	{
+		double sum = 0;
+		for ( final Neighborhood< UnsignedShortType > neighborhood : neighborhoods )
+		{
+			for ( final UnsignedShortType t : neighborhood )
+			{
+				sum += t.get();
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Iterates the neighborhoods with a random access, moved along the lines
+	 * of the interior.
+	 */
+	@Benchmark
+	public double randomAccess()
+	{
+		double sum = 0;
+		final RandomAccess< Neighborhood< UnsignedShortType > > ra = accessible.randomAccess( interior );
+		final long[] position = new long[ numDimensions ];
+		interior.min( position );
+		final long lineLength = interior.dimension( 0 );
+		boolean done = false;
+		while ( !done )
+		{
+			ra.setPosition( position );
+			for ( long x = 0; x < lineLength; x++ )
+			{
+				final Cursor< UnsignedShortType > c = ra.get().cursor();
+				while ( c.hasNext() )
+				{
+					sum += c.next().get();
+				}
+				ra.fwd( 0 );
+			}
+
+			done = true;
+			for ( int d = 1; d < numDimensions; d++ )
+			{
+				if ( ++position[ d ] <= interior.max( d ) )
+				{
+					done = false;
+					break;
+				}
+				position[ d ] = interior.min( d );
+			}
+		}
+		return sum;
+	}
+
+	private Img< UnsignedShortType > createImage( final long[] dims )
+	{
+		final Img< UnsignedShortType > img;
+		switch ( image )
+		{
+		case PLANAR:
+			img = new PlanarImgFactory< UnsignedShortType >().create( dims, new UnsignedShortType() );
+			break;
+		case CELL:
+			img = new CellImgFactory< UnsignedShortType >( 32 ).create( dims, new UnsignedShortType() );
+			break;
+		case ARRAY:
+		default:
+			img = new ArrayImgFactory< UnsignedShortType >().create( dims, new UnsignedShortType() );
+			break;
+		}
+		final Random ran = new Random( 1l );
+		for ( final UnsignedShortType t : img )
+		{
+			t.set( ran.nextInt( 4096 ) );
+		}
+		return img;
+	}
+
+	private Shape createShape()
+	{
+		switch ( shape )
+		{
+		case RECTANGLE_SKIP_CENTER:
+			return new RectangleShape( radius, true );
+		case CENTERED_RECTANGLE:
+		{
+			final int[] span = Util.getArrayFromValue( radius, numDimensions );
+			span[ 0 ] = Math.max( 0, radius - 1 );
+			return new CenteredRectangleShape( span, false );
+		}
+		case HYPERSPHERE:
+			return new HyperSphereShape( radius );
+		case DIAMOND:
+			return new DiamondShape( radius );
+		case DIAMOND_TIPS:
+			return new DiamondTipsShape( radius );
+		case HORIZONTAL_LINE:
+			return new HorizontalLineShape( radius, 0, false );
+		case PERIODIC_LINE:
+			return new PeriodicLineShape( radius, Util.getArrayFromValue( 1, numDimensions ) );
+		case PAIR_OF_POINTS:
+		{
+			final long[] offset = new long[ numDimensions ];
+			offset[ 0 ] = radius;
+			return new PairOfPointsShape( offset );
+		}
+		case OFFSET_TABLE:
+			return new OffsetTableShape( OffsetTable.hyperSphere( radius, numDimensions ) );
+		case MASK:
+		{
+			final double[] radii = Util.getArrayFromValue( ( double ) radius, numDimensions );
+			radii[ numDimensions - 1 ] = radius / 2.;
+			return new EllipsoidShape( radii );
+		}
+		case RECTANGLE:
+		default:
+			return new RectangleShape( radius, false );
+		}
+	}
+}
@@ -35,9 +35,12 @@
 package net.imglib2.algorithm.gradient;
 
 import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.BorderSplit;
 import net.imglib2.type.numeric.NumericType;
 import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
@@ -85,6 +88,30 @@ public class PartialDerivative
 	{
 		final int n = gradient.numDimensions();
 
+		/*
+		 * If the source is an out-of-bounds view, only the border goes through
+		 * it. The interior reads the wrapped image directly.
+		 */
+
+		final long[] spanMin = new long[ n ];
+		final long[] spanMax = new long[ n ];
+		spanMin[ dimension ] = -1;
+		spanMax[ dimension ] = 1;
+		final BorderSplit< T > split = new BorderSplit< T >( source, gradient, new FinalInterval( spanMin, spanMax ) );
+		if ( null != split.getInterior() )
+		{
+			centralDifference( split.getInteriorSource(), Views.interval( gradient, split.getInterior() ), dimension );
+		}
+		for ( final Interval border : split.getBorder() )
+		{
+			centralDifference( split.getBorderSource(), Views.interval( gradient, border ), dimension );
+		}
+	}
+
+	private static < T extends NumericType< T > > void centralDifference( final RandomAccessible< T > source, final RandomAccessibleInterval< T > gradient, final int dimension )
+	{
+		final int n = gradient.numDimensions();
+
 		final long[] min = new long[ n ];
 		gradient.min( min );
 		final long[] max = new long[ n ];
@@ -34,20 +34,29 @@
 
 package net.imglib2.algorithm.labeling;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
 
 import net.imglib2.Cursor;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
 import net.imglib2.labeling.Labeling;
 import net.imglib2.labeling.LabelingOutOfBoundsRandomAccessFactory;
 import net.imglib2.labeling.LabelingType;
 import net.imglib2.outofbounds.OutOfBounds;
 import net.imglib2.outofbounds.OutOfBoundsFactory;
 import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 
 /**
@@ -215,6 +224,106 @@ public class AllConnectedComponents
 		}
 	}
 
+	/**
+	 * Label all 8-connected components in the given image, like
+	 * {@link #labelAllConnectedComponents(Labeling, RandomAccessibleInterval, Iterator)}
+	 * , but with a parallel scan of the image instead of a flood fill.
+	 * <p>
+	 * The components are first labeled with integers in a primitive image by
+	 * {@link BlockConnectedComponents}, then copied to the labeling. A name is
+	 * taken and interned only once per component, in the order in which the
+	 * components are met in flat iteration order, which is the order of the
+	 * flood fill. Unlike the flood fill, the foreground pixels of the labeling
+	 * are overwritten, so it is expected to be empty.
+	 * <p>
+	 * As with the flood fill, the labeling is addressed at the positions of
+	 * the image, so it must contain the interval of the image, which can have
+	 * a non-zero min.
+	 *
+	 * @param <T>
+	 *            the type of the labels to apply
+	 * @param labeling
+	 *            Assign labels to this labeling space
+	 * @param img
+	 *            a binary image where true indicates parts of components
+	 * @param names
+	 *            supplies names for the different components as needed
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @return the number of components.
+	 * @throws NoSuchElementException
+	 *             if there are not enough names
+	 * @throws IllegalArgumentException
+	 *             if the labeling does not contain the interval of the image
+	 */
+	public static < T extends Comparable< T >> long labelAllConnectedComponents( final Labeling< T > labeling, final RandomAccessibleInterval< BitType > img, final Iterator< T > names, final ExecutorService service ) throws NoSuchElementException
+	{
+		final int n = img.numDimensions();
+		if ( labeling.numDimensions() != n )
+		{
+			throw new IllegalArgumentException( "The labeling and the image must have the same number of dimensions." );
+		}
+		for ( int d = 0; d < n; d++ )
+		{
+			if ( img.min( d ) < labeling.min( d ) || img.max( d ) > labeling.max( d ) )
+			{
+				throw new IllegalArgumentException( "The labeling must contain the interval of the image." );
+			}
+		}
+
+		/*
+		 * The primitive labels are translated to the interval of the image,
+		 * so that the blocks read the image at its own positions.
+		 */
+		final long[] min = new long[ n ];
+		img.min( min );
+		final long[] dimensions = new long[ n ];
+		img.dimensions( dimensions );
+		if ( Intervals.numElements( dimensions ) < Integer.MAX_VALUE )
+		{
+			return labelAllConnectedComponents( labeling, img, names, service, Views.translate( ArrayImgs.ints( dimensions ), min ) );
+		}
+		final Img< LongType > labels = new CellImgFactory< LongType >().create( dimensions, new LongType() );
+		return labelAllConnectedComponents( labeling, img, names, service, Views.translate( labels, min ) );
+	}
+
+	private static < T extends Comparable< T >, L extends IntegerType< L > > long labelAllConnectedComponents( final Labeling< T > labeling, final RandomAccessibleInterval< BitType > img, final Iterator< T > names, final ExecutorService service, final RandomAccessibleInterval< L > labels ) throws NoSuchElementException
+	{
+		final long numComponents = BlockConnectedComponents.labelAllConnectedComponents( img, labels, StructuringElement.EIGHT_CONNECTED, BlockConnectedComponents.defaultBlockSize( labels ), service );
+		if ( numComponents >= Integer.MAX_VALUE )
+		{
+			throw new IllegalArgumentException( "Too many components: " + numComponents + "." );
+		}
+
+		/*
+		 * Names are interned when a component is first met.
+		 */
+		final List< List< T > > lists = new ArrayList< List< T > >( ( int ) numComponents + 1 );
+		for ( int i = 0; i <= numComponents; i++ )
+		{
+			lists.add( null );
+		}
+		final Cursor< L > in = Views.flatIterable( labels ).cursor();
+		final Cursor< LabelingType< T > > out = Views.flatIterable( Views.interval( labeling, labels ) ).cursor();
+		while ( in.hasNext() )
+		{
+			final int label = in.next().getInteger();
+			final LabelingType< T > lt = out.next();
+			if ( label == 0 )
+			{
+				continue;
+			}
+			List< T > list = lists.get( label );
+			if ( null == list )
+			{
+				list = lt.intern( names.next() );
+				lists.set( label, list );
+			}
+			lt.setLabeling( list );
+		}
+		return numComponents;
+	}
+
 	/**
 	 * Return an array of offsets to the 8-connected (or N-d equivalent)
 	 * structuring element for the dimension space. The structuring element is
@@ -0,0 +1,617 @@
+package net.imglib2.algorithm.labeling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.imglib2.AbstractInterval;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement;
+import net.imglib2.algorithm.util.Futures;
+import net.imglib2.iterator.IntervalIterator;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.view.Views;
+
+/**
+ * Label all connected components of a binary image, with the image tiled in
+ * blocks along all dimensions.
+ * <p>
+ * {@link ConnectedComponents} splits the image in slabs along its last
+ * dimension, and links the slabs one after the other. This caps the
+ * parallelism for images with few lines or few slices. Here:
+ * <ol>
+ * <li>each block is labeled independently, in parallel, into a primitive
+ * <code>int[]</code>;
+ * <li>the labels of each block are offset so that they are unique, and the
+ * pixels on the faces of the blocks are merged with their neighbors in the
+ * adjacent blocks, in parallel, through a lock-free {@link ConcurrentUnionFind};
+ * <li>the merged labels are numbered and written to the output, in parallel.
+ * </ol>
+ * Components are numbered <code>1, 2, 3, ...</code> in the order of the
+ * blocks, so the numbering differs from the one of
+ * {@link ConnectedComponents}, but the components are the same. The number of
+ * components is a <code>long</code>, and can exceed 2<sup>31</sup> if the
+ * output type can hold such labels.
+ * <p>
+ * The block labels take 4 bytes per pixel until the output is written.
+ */
+public class BlockConnectedComponents
+{
+
+	/**
+	 * Target number of pixels per block, for the default block size.
+	 */
+	private static final double BLOCK_PIXELS = 1 << 16;
+
+	/**
+	 * "Label" all connected components in the given input image. In the output
+	 * image, all background pixels will be set to 0 and foreground components
+	 * set to 1, 2, 3, etc. The output does not need to be cleared.
+	 *
+	 * @param input
+	 *            input image with pixels > 0 belonging to foreground.
+	 * @param output
+	 *            output image.
+	 * @param se
+	 *            structuring element to use. 8-connected or 4-connected
+	 *            (respectively n-dimensional analog)
+	 * @return the number of connected components (that is, the highest value
+	 *         occurring in the output image).
+	 */
+	public static < T extends IntegerType< T >, L extends IntegerType< L > > long labelAllConnectedComponents(
+			final RandomAccessible< T > input,
+			final RandomAccessibleInterval< L > output,
+			final StructuringElement se )
+	{
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		final ExecutorService service = Executors.newFixedThreadPool( numThreads );
+		try
+		{
+			return labelAllConnectedComponents( input, output, se, defaultBlockSize( output ), service );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	/**
+	 * "Label" all connected components in the given input image. In the output
+	 * image, all background pixels will be set to 0 and foreground components
+	 * set to 1, 2, 3, etc. The output does not need to be cleared.
+	 *
+	 * @param input
+	 *            input image with pixels > 0 belonging to foreground.
+	 * @param output
+	 *            output image.
+	 * @param se
+	 *            structuring element to use. 8-connected or 4-connected
+	 *            (respectively n-dimensional analog)
+	 * @param blockSize
+	 *            the size of the blocks along each dimension. A block must
+	 *            hold less than {@link Integer#MAX_VALUE} pixels.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @return the number of connected components (that is, the highest value
+	 *         occurring in the output image).
+	 * @throws IllegalArgumentException
+	 *             if there are too many blocks, or too many pixels in a
+	 *             block.
+	 */
+	public static < T extends IntegerType< T >, L extends IntegerType< L > > long labelAllConnectedComponents(
+			final RandomAccessible< T > input,
+			final RandomAccessibleInterval< L > output,
+			final StructuringElement se,
+			final int[] blockSize,
+			final ExecutorService service )
+	{
+		final int n = output.numDimensions();
+		if ( blockSize.length != n )
+		{
+			throw new IllegalArgumentException( "There must be one block size per dimension." );
+		}
+		final Grid grid = new Grid( output, blockSize );
+		final long[][] offsets = backwardOffsets( se, n );
+
+		/*
+		 * Label the blocks.
+		 */
+
+		final List< Future< ? > > futures = new ArrayList< Future< ? > >();
+		for ( final Block block : grid.blocks )
+		{
+			futures.add( service.submit( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					labelBlock( input, block, offsets );
+				}
+			} ) );
+		}
+		Futures.getAll( futures );
+
+		/*
+		 * Merge across block faces.
+		 */
+
+		long total = 0;
+		for ( final Block block : grid.blocks )
+		{
+			block.offset = total;
+			total += block.numLabels;
+		}
+		final ConcurrentUnionFind uf = new ConcurrentUnionFind( total + 1 );
+		for ( final Block block : grid.blocks )
+		{
+			futures.add( service.submit( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					mergeBlock( block, grid, offsets, uf );
+				}
+			} ) );
+		}
+		Futures.getAll( futures );
+		final long numComponents = uf.compress( 1 );
+
+		/*
+		 * Write the output.
+		 */
+
+		for ( final Block block : grid.blocks )
+		{
+			futures.add( service.submit( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					writeBlock( output, block, uf );
+				}
+			} ) );
+		}
+		Futures.getAll( futures );
+
+		return numComponents;
+	}
+
+	/**
+	 * Returns the default block size for an interval: blocks of about
+	 * 2<sup>16</sup> pixels, as cubic as the interval allows.
+	 *
+	 * @param interval
+	 *            the interval to label.
+	 * @return the size of the blocks along each dimension.
+	 */
+	public static int[] defaultBlockSize( final Interval interval )
+	{
+		final int n = interval.numDimensions();
+		final int[] blockSize = new int[ n ];
+		final int side = ( int ) Math.max( 1, Math.floor( Math.pow( BLOCK_PIXELS, 1. / n ) ) );
+		for ( int d = 0; d < n; d++ )
+		{
+			blockSize[ d ] = ( int ) Math.min( side, interval.dimension( d ) );
+		}
+		return blockSize;
+	}
+
+	/**
+	 * Returns the neighbor offsets that precede a pixel in flat iteration
+	 * order, for the specified structuring element: the neighbors that are
+	 * already labeled when a pixel is visited.
+	 */
+	static long[][] backwardOffsets( final StructuringElement se, final int n )
+	{
+		final List< long[] > offsets = new ArrayList< long[] >();
+		if ( se == StructuringElement.FOUR_CONNECTED )
+		{
+			for ( int d = 0; d < n; d++ )
+			{
+				final long[] offset = new long[ n ];
+				offset[ d ] = -1;
+				offsets.add( offset );
+			}
+		}
+		else
+		{
+			final long[] min = new long[ n ];
+			final long[] max = new long[ n ];
+			for ( int d = 0; d < n; d++ )
+			{
+				min[ d ] = -1;
+				max[ d ] = 1;
+			}
+			final IntervalIterator it = new IntervalIterator( new FinalInterval( min, max ) );
+			while ( it.hasNext() )
+			{
+				it.fwd();
+				final long[] offset = new long[ n ];
+				it.localize( offset );
+				// Backward if the highest non-zero coordinate is negative.
+				for ( int d = n - 1; d >= 0; d-- )
+				{
+					if ( offset[ d ] != 0 )
+					{
+						if ( offset[ d ] < 0 )
+						{
+							offsets.add( offset );
+						}
+						break;
+					}
+				}
+			}
+		}
+		return offsets.toArray( new long[ offsets.size() ][] );
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private static < T extends IntegerType< T > > void labelBlock( final RandomAccessible< T > input, final Block block, final long[][] offsets )
+	{
+		final int n = block.numDimensions();
+		final int[] dims = block.dims;
+		final int[] deltas = new int[ offsets.length ];
+		for ( int k = 0; k < offsets.length; k++ )
+		{
+			for ( int d = 0; d < n; d++ )
+			{
+				deltas[ k ] += offsets[ k ][ d ] * block.strides[ d ];
+			}
+		}
+
+		final int[] labels = new int[ block.size ];
+		final IntUnionFind uf = new IntUnionFind();
+		final Cursor< T > in = Views.flatIterable( Views.interval( input, block ) ).cursor();
+		final int[] pos = new int[ n ];
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			if ( in.next().getIntegerLong() > 0 )
+			{
+				int label = 0;
+				for ( int k = 0; k < offsets.length; k++ )
+				{
+					if ( !inside( pos, offsets[ k ], dims ) )
+					{
+						continue;
+					}
+					final int l = labels[ i + deltas[ k ] ];
+					if ( l != 0 )
+					{
+						label = ( label == 0 ) ? l : uf.union( label, l );
+					}
+				}
+				labels[ i ] = ( label == 0 ) ? uf.add() : label;
+			}
+			for ( int d = 0; d < n; d++ )
+			{
+				if ( ++pos[ d ] < dims[ d ] )
+				{
+					break;
+				}
+				pos[ d ] = 0;
+			}
+		}
+
+		block.numLabels = uf.compress();
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			if ( labels[ i ] != 0 )
+			{
+				labels[ i ] = uf.getSetId( labels[ i ] );
+			}
+		}
+		block.labels = labels;
+	}
+
+	/**
+	 * Merges the labels of the pixels on the faces of a block with the labels
+	 * of their neighbors in the adjacent blocks. A neighbor can be across
+	 * any face, lower or upper, so all the faces are visited.
+	 */
+	private static void mergeBlock( final Block block, final Grid grid, final long[][] offsets, final ConcurrentUnionFind uf )
+	{
+		final int n = block.numDimensions();
+		final long[] faceMin = new long[ n ];
+		final long[] faceMax = new long[ n ];
+		final int[] pos = new int[ n ];
+		final long[] q = new long[ n ];
+		final long[] local = new long[ n ];
+		for ( int fd = 0; fd < n; fd++ )
+		{
+			for ( int side = 0; side < 2; side++ )
+			{
+				for ( int d = 0; d < n; d++ )
+				{
+					faceMin[ d ] = 0;
+					faceMax[ d ] = block.dims[ d ] - 1;
+				}
+				faceMin[ fd ] = faceMax[ fd ] = ( side == 0 ) ? 0 : block.dims[ fd ] - 1;
+				final IntervalIterator it = new IntervalIterator( faceMin, faceMax );
+				while ( it.hasNext() )
+				{
+					it.fwd();
+					int index = 0;
+					for ( int d = 0; d < n; d++ )
+					{
+						pos[ d ] = it.getIntPosition( d );
+						index += pos[ d ] * block.strides[ d ];
+					}
+					final int label = block.labels[ index ];
+					if ( label == 0 )
+					{
+						continue;
+					}
+					for ( int k = 0; k < offsets.length; k++ )
+					{
+						if ( inside( pos, offsets[ k ], block.dims ) )
+						{
+							continue;
+						}
+						for ( int d = 0; d < n; d++ )
+						{
+							q[ d ] = block.min( d ) + pos[ d ] + offsets[ k ][ d ];
+						}
+						final long neighbor = grid.label( q, local );
+						if ( neighbor != 0 )
+						{
+							uf.union( block.offset + label, neighbor );
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static < L extends IntegerType< L > > void writeBlock( final RandomAccessibleInterval< L > output, final Block block, final ConcurrentUnionFind uf )
+	{
+		final int[] labels = block.labels;
+		final Cursor< L > out = Views.flatIterable( Views.interval( output, block ) ).cursor();
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			final int label = labels[ i ];
+			out.next().setInteger( label == 0 ? 0 : uf.getSetId( block.offset + label ) );
+		}
+		block.labels = null;
+	}
+
+	private static boolean inside( final int[] pos, final long[] offset, final int[] dims )
+	{
+		for ( int d = 0; d < pos.length; d++ )
+		{
+			final long p = pos[ d ] + offset[ d ];
+			if ( p < 0 || p >= dims[ d ] )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * INNER CLASSES
+	 */
+
+	/**
+	 * A block of the output, with its labels.
+	 */
+	private static final class Block extends AbstractInterval
+	{
+		private final int[] dims;
+
+		private final int[] strides;
+
+		private final int size;
+
+		/**
+		 * The labels of the block in flat order, 0 for background and
+		 * <code>1 ... numLabels</code> for the components of the block.
+		 */
+		private int[] labels;
+
+		private int numLabels;
+
+		/**
+		 * Offset of the labels of this block in the union-find.
+		 */
+		private long offset;
+
+		private Block( final long[] min, final long[] max )
+		{
+			super( min, max );
+			dims = new int[ n ];
+			strides = new int[ n ];
+			long s = 1;
+			for ( int d = 0; d < n; d++ )
+			{
+				dims[ d ] = ( int ) ( max[ d ] - min[ d ] + 1 );
+				strides[ d ] = ( int ) s;
+				s *= dims[ d ];
+				if ( s >= Integer.MAX_VALUE )
+				{
+					throw new IllegalArgumentException( "Too many pixels in a block: the block size must hold less than " + Integer.MAX_VALUE + " pixels." );
+				}
+			}
+			size = ( int ) s;
+		}
+	}
+
+	/**
+	 * The tiling of the output in blocks.
+	 */
+	private static final class Grid
+	{
+		private final Interval interval;
+
+		private final int[] blockSize;
+
+		private final long[] gridStrides;
+
+		private final Block[] blocks;
+
+		private Grid( final Interval interval, final int[] blockSize )
+		{
+			this.interval = interval;
+			this.blockSize = blockSize;
+			final int n = interval.numDimensions();
+			final long[] gridDims = new long[ n ];
+			gridStrides = new long[ n ];
+			long numBlocks = 1;
+			for ( int d = 0; d < n; d++ )
+			{
+				if ( blockSize[ d ] < 1 )
+				{
+					throw new IllegalArgumentException( "Block sizes must be at least 1." );
+				}
+				gridDims[ d ] = ( interval.dimension( d ) + blockSize[ d ] - 1 ) / blockSize[ d ];
+				gridStrides[ d ] = numBlocks;
+				numBlocks *= gridDims[ d ];
+			}
+			if ( numBlocks > Integer.MAX_VALUE )
+			{
+				throw new IllegalArgumentException( "Too many blocks: " + numBlocks + "." );
+			}
+
+			blocks = new Block[ ( int ) numBlocks ];
+			final long[] min = new long[ n ];
+			final long[] max = new long[ n ];
+			final IntervalIterator it = new IntervalIterator( gridDims );
+			for ( int b = 0; b < blocks.length; b++ )
+			{
+				it.fwd();
+				for ( int d = 0; d < n; d++ )
+				{
+					min[ d ] = interval.min( d ) + it.getLongPosition( d ) * blockSize[ d ];
+					max[ d ] = Math.min( interval.max( d ), min[ d ] + blockSize[ d ] - 1 );
+				}
+				blocks[ b ] = new Block( min, max );
+			}
+		}
+
+		/**
+		 * Returns the label, offset in the union-find, of a pixel of the
+		 * output. 0 for background and for pixels outside of the output.
+		 *
+		 * @param local
+		 *            a buffer for the position in the block, reused between
+		 *            calls of the same thread.
+		 */
+		private long label( final long[] position, final long[] local )
+		{
+			long b = 0;
+			int index = 0;
+			final int n = position.length;
+			for ( int d = 0; d < n; d++ )
+			{
+				final long p = position[ d ] - interval.min( d );
+				if ( p < 0 || position[ d ] > interval.max( d ) )
+				{
+					return 0;
+				}
+				final long g = p / blockSize[ d ];
+				b += g * gridStrides[ d ];
+				local[ d ] = p - g * blockSize[ d ];
+			}
+			final Block block = blocks[ ( int ) b ];
+			for ( int d = 0; d < n; d++ )
+			{
+				index += local[ d ] * block.strides[ d ];
+			}
+			final int label = block.labels[ index ];
+			return label == 0 ? 0 : block.offset + label;
+		}
+	}
+
+	/**
+	 * A sequential union-find over <code>int</code> labels, for the labels of
+	 * a single block. Label 0 is the background.
+	 */
+	static final class IntUnionFind
+	{
+		private int[] parent = new int[ 64 ];
+
+		private int size = 1;
+
+		/**
+		 * @return a new label, in a set of its own.
+		 */
+		int add()
+		{
+			if ( size == parent.length )
+			{
+				final int[] tmp = new int[ 2 * parent.length ];
+				System.arraycopy( parent, 0, tmp, 0, size );
+				parent = tmp;
+			}
+			parent[ size ] = size;
+			return size++;
+		}
+
+		int find( int x )
+		{
+			while ( parent[ x ] != x )
+			{
+				parent[ x ] = parent[ parent[ x ] ];
+				x = parent[ x ];
+			}
+			return x;
+		}
+
+		/**
+		 * Merges two sets, under the smaller root.
+		 *
+		 * @return the root of the merged set.
+		 */
+		int union( final int a, final int b )
+		{
+			final int ra = find( a );
+			final int rb = find( b );
+			if ( ra < rb )
+			{
+				parent[ rb ] = ra;
+				return ra;
+			}
+			parent[ ra ] = rb;
+			return rb;
+		}
+
+		/**
+		 * Numbers the sets <code>1, 2, 3, ...</code> in the order of their
+		 * smallest label. After this, only {@link #getSetId(int)} can be
+		 * called.
+		 *
+		 * @return the number of sets.
+		 */
+		int compress()
+		{
+			int count = 0;
+			for ( int x = 1; x < size; x++ )
+			{
+				final int p = parent[ x ];
+				parent[ x ] = ( p == x ) ? -( ++count ) : parent[ p ];
+			}
+			return count;
+		}
+
+		int getSetId( final int x )
+		{
+			return -parent[ x ];
+		}
+
+		/**
+		 * @return the number of labels, including the background.
+		 */
+		int size()
+		{
+			return size;
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package net.imglib2.algorithm.labeling;
+
+/**
+ * Statistics of the connected components of a labeling, accumulated while
+ * the labels are written, in primitive arrays indexed by label.
+ * <p>
+ * Labels run from 1 to {@link #numComponents()}; index 0, the background, is
+ * left empty. For each component, this stores the number of pixels, the
+ * bounding box, the sums of the coordinates and of their pairwise products,
+ * from which the centroid and the second order central moments are derived,
+ * and optionally the sum of the intensities of a second image.
+ * <p>
+ * Created by
+ * {@link RunLengthConnectedComponents#labelAndMeasure(net.imglib2.RandomAccessible, net.imglib2.RandomAccessibleInterval, ConnectedComponents.StructuringElement)}
+ * .
+ */
+public final class ComponentStatistics
+{
+	private final int n;
+
+	private final int numComponents;
+
+	private final long[] counts;
+
+	private final long[] min;
+
+	private final long[] max;
+
+	private final double[] sums;
+
+	private final double[] sumsOfProducts;
+
+	private final double[] intensities;
+
+	ComponentStatistics( final int numDimensions, final int numComponents, final boolean withIntensity )
+	{
+		this.n = numDimensions;
+		this.numComponents = numComponents;
+		final int size = numComponents + 1;
+		counts = new long[ size ];
+		min = new long[ size * n ];
+		max = new long[ size * n ];
+		sums = new double[ size * n ];
+		sumsOfProducts = new double[ size * n * n ];
+		intensities = withIntensity ? new double[ size ] : null;
+		for ( int i = 0; i < min.length; i++ )
+		{
+			min[ i ] = Long.MAX_VALUE;
+			max[ i ] = Long.MIN_VALUE;
+		}
+	}
+
+	/**
+	 * Adds a run of pixels along dimension 0.
+	 *
+	 * @param label
+	 *            the label of the run.
+	 * @param start
+	 *            the position of the first pixel of the run.
+	 * @param length
+	 *            the number of pixels of the run.
+	 */
+	void addRun( final int label, final long[] start, final long length )
+	{
+		counts[ label ] += length;
+		final int o = label * n;
+		final long first = start[ 0 ];
+		final long last = first + length - 1;
+		min[ o ] = Math.min( min[ o ], first );
+		max[ o ] = Math.max( max[ o ], last );
+		for ( int d = 1; d < n; d++ )
+		{
+			min[ o + d ] = Math.min( min[ o + d ], start[ d ] );
+			max[ o + d ] = Math.max( max[ o + d ], start[ d ] );
+		}
+
+		// Closed forms of the sums of x and x^2 over the run.
+		final double l = length;
+		final double p = first;
+		final double sx = l * p + l * ( l - 1 ) / 2;
+		final double sxx = l * p * p + p * l * ( l - 1 ) + ( l - 1 ) * l * ( 2 * l - 1 ) / 6;
+
+		sums[ o ] += sx;
+		final int oo = label * n * n;
+		sumsOfProducts[ oo ] += sxx;
+		for ( int d = 1; d < n; d++ )
+		{
+			final double xd = start[ d ];
+			sums[ o + d ] += l * xd;
+			sumsOfProducts[ oo + d ] += sx * xd;
+			for ( int e = d; e < n; e++ )
+			{
+				sumsOfProducts[ oo + d * n + e ] += l * xd * start[ e ];
+			}
+		}
+	}
+
+	void addIntensity( final int label, final double value )
+	{
+		intensities[ label ] += value;
+	}
+
+	/**
+	 * @return the number of dimensions of the labeled image.
+	 */
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * @return the number of components, which is also the highest label.
+	 */
+	public int numComponents()
+	{
+		return numComponents;
+	}
+
+	/**
+	 * @return whether intensity sums were accumulated.
+	 */
+	public boolean hasIntensity()
+	{
+		return null != intensities;
+	}
+
+	/**
+	 * @return the number of pixels of a component.
+	 */
+	public long getCount( final int label )
+	{
+		return counts[ label ];
+	}
+
+	/**
+	 * @return the minimum of the bounding box of a component, in dimension
+	 *         <code>d</code>.
+	 */
+	public long getMin( final int label, final int d )
+	{
+		return min[ label * n + d ];
+	}
+
+	/**
+	 * @return the maximum of the bounding box of a component, in dimension
+	 *         <code>d</code>.
+	 */
+	public long getMax( final int label, final int d )
+	{
+		return max[ label * n + d ];
+	}
+
+	/**
+	 * @return the sum of the coordinates of the pixels of a component, in
+	 *         dimension <code>d</code>.
+	 */
+	public double getSum( final int label, final int d )
+	{
+		return sums[ label * n + d ];
+	}
+
+	/**
+	 * @return the centroid of a component, in dimension <code>d</code>.
+	 */
+	public double getCentroid( final int label, final int d )
+	{
+		return sums[ label * n + d ] / counts[ label ];
+	}
+
+	/**
+	 * Returns the second order central moment of a component, normalized by
+	 * its number of pixels: the covariance of the coordinates of its pixels
+	 * in dimensions <code>d1</code> and <code>d2</code>.
+	 */
+	public double getCentralMoment( final int label, final int d1, final int d2 )
+	{
+		final int a = Math.min( d1, d2 );
+		final int b = Math.max( d1, d2 );
+		final double count = counts[ label ];
+		final double sab = sumsOfProducts[ label * n * n + a * n + b ];
+		return sab / count - getCentroid( label, a ) * getCentroid( label, b );
+	}
+
+	/**
+	 * @return the sum of the intensities over a component.
+	 * @throws IllegalStateException
+	 *             if no intensity image was given.
+	 */
+	public double getIntensitySum( final int label )
+	{
+		if ( null == intensities )
+		{
+			throw new IllegalStateException( "No intensity image was measured." );
+		}
+		return intensities[ label ];
+	}
+
+	/**
+	 * @return the mean intensity over a component.
+	 * @throws IllegalStateException
+	 *             if no intensity image was given.
+	 */
+	public double getMeanIntensity( final int label )
+	{
+		return getIntensitySum( label ) / counts[ label ];
+	}
+
+	/**
+	 * @return the pixel counts, indexed by label. The array is not copied.
+	 */
+	public long[] getCounts()
+	{
+		return counts;
+	}
+
+	/**
+	 * @return the minima of the bounding boxes, at
+	 *         <code>label * numDimensions + d</code>. The array is not
+	 *         copied.
+	 */
+	public long[] getMins()
+	{
+		return min;
+	}
+
+	/**
+	 * @return the maxima of the bounding boxes, at
+	 *         <code>label * numDimensions + d</code>. The array is not
+	 *         copied.
+	 */
+	public long[] getMaxs()
+	{
+		return max;
+	}
+
+	/**
+	 * @return the coordinate sums, at <code>label * numDimensions + d</code>.
+	 *         The array is not copied.
+	 */
+	public double[] getSums()
+	{
+		return sums;
+	}
+
+	/**
+	 * @return the intensity sums, indexed by label, or <code>null</code>.
+	 *         The array is not copied.
+	 */
+	public double[] getIntensitySums()
+	{
+		return intensities;
+	}
+}
@@ -0,0 +1,193 @@
+package net.imglib2.algorithm.labeling;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free union-find over the elements <code>0 ... size-1</code>, with
+ * <code>long</code> indices.
+ * <p>
+ * Parents are stored in pages of <code>long</code>s, updated with
+ * compare-and-set, so that the number of elements is not limited to
+ * 2<sup>31</sup>. The root of a set is always its smallest element: a union
+ * links the larger root under the smaller one, and {@link #find(long)} halves
+ * the paths it walks. Several threads can call {@link #find(long)} and
+ * {@link #union(long, long)} concurrently.
+ * <p>
+ * Once all the unions are done, {@link #compress()} numbers the sets
+ * <code>1, 2, 3, ...</code> in the order of their smallest element, in a
+ * single pass.
+ */
+public final class ConcurrentUnionFind
+{
+	private static final int PAGE_BITS = 20;
+
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+	private static final long PAGE_MASK = PAGE_SIZE - 1;
+
+	private final long size;
+
+	private final AtomicLongArray[] pages;
+
+	private boolean compressed;
+
+	/**
+	 * Creates a union-find where each element is a set of its own.
+	 *
+	 * @param size
+	 *            the number of elements.
+	 */
+	public ConcurrentUnionFind( final long size )
+	{
+		if ( size < 0 )
+		{
+			throw new IllegalArgumentException( "Size must not be negative, got " + size + "." );
+		}
+		this.size = size;
+		final int numPages = ( int ) ( ( size + PAGE_SIZE - 1 ) >>> PAGE_BITS );
+		pages = new AtomicLongArray[ numPages ];
+		for ( int p = 0; p < numPages; p++ )
+		{
+			final long first = ( long ) p << PAGE_BITS;
+			final int length = ( int ) Math.min( PAGE_SIZE, size - first );
+			final AtomicLongArray page = new AtomicLongArray( length );
+			for ( int i = 0; i < length; i++ )
+			{
+				page.set( i, first + i );
+			}
+			pages[ p ] = page;
+		}
+	}
+
+	/**
+	 * @return the number of elements.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the root of the set of an element, and halves the path to it.
+	 *
+	 * @param x
+	 *            the element.
+	 * @return the smallest element of its set.
+	 */
+	public long find( long x )
+	{
+		while ( true )
+		{
+			final long p = parent( x );
+			if ( p == x )
+			{
+				return x;
+			}
+			final long gp = parent( p );
+			if ( gp != p )
+			{
+				// Path halving. A failed exchange only means another thread
+				// shortened the path already.
+				exchange( x, p, gp );
+			}
+			x = gp;
+		}
+	}
+
+	/**
+	 * Merges the sets of two elements.
+	 *
+	 * @param a
+	 *            an element.
+	 * @param b
+	 *            another element.
+	 * @return the root of the merged set.
+	 */
+	public long union( long a, long b )
+	{
+		while ( true )
+		{
+			a = find( a );
+			b = find( b );
+			if ( a == b )
+			{
+				return a;
+			}
+			if ( a < b )
+			{
+				final long tmp = a;
+				a = b;
+				b = tmp;
+			}
+			// Link the larger root under the smaller one, if it is still a
+			// root.
+			if ( exchange( a, a, b ) )
+			{
+				return b;
+			}
+		}
+	}
+
+	/**
+	 * Numbers the sets <code>1, 2, 3, ...</code> in the order of their
+	 * smallest element. After this, only {@link #getSetId(long)} can be
+	 * called. Not thread-safe.
+	 *
+	 * @param first
+	 *            the first element to number. Elements before it are
+	 *            ignored, and must not be in the same set as elements after
+	 *            it; for instance, 1 to leave element 0 out as background.
+	 * @return the number of sets.
+	 */
+	public long compress( final long first )
+	{
+		long count = 0;
+		for ( long x = first; x < size; x++ )
+		{
+			final long p = parent( x );
+			if ( p == x )
+			{
+				set( x, -( ++count ) );
+			}
+			else
+			{
+				// p < x is already numbered.
+				set( x, parent( p ) );
+			}
+		}
+		compressed = true;
+		return count;
+	}
+
+	/**
+	 * Returns the number of the set of an element, after
+	 * {@link #compress(long)}.
+	 *
+	 * @param x
+	 *            the element.
+	 * @return the set number, starting at 1.
+	 */
+	public long getSetId( final long x )
+	{
+		if ( !compressed )
+		{
+			throw new IllegalStateException( "Sets are numbered by compress()." );
+		}
+		return -parent( x );
+	}
+
+	private long parent( final long x )
+	{
+		return pages[ ( int ) ( x >>> PAGE_BITS ) ].get( ( int ) ( x & PAGE_MASK ) );
+	}
+
+	private void set( final long x, final long value )
+	{
+		pages[ ( int ) ( x >>> PAGE_BITS ) ].set( ( int ) ( x & PAGE_MASK ), value );
+	}
+
+	private boolean exchange( final long x, final long expect, final long update )
+	{
+		return pages[ ( int ) ( x >>> PAGE_BITS ) ].compareAndSet( ( int ) ( x & PAGE_MASK ), expect, update );
+	}
+}
@@ -0,0 +1,88 @@
+package net.imglib2.algorithm.labeling;
+
+/**
+ * A hierarchical queue: one FIFO of pixel indices per integer priority level.
+ * Push and pop take constant time, plus the scan for the next non-empty level
+ * when the current one is exhausted.
+ * <p>
+ * Priorities are truncated to integers, and must lie in
+ * <code>[minLevel, minLevel + numLevels)</code>.
+ */
+final class HierarchicalQueue implements PixelQueue
+{
+	private final int minLevel;
+
+	private final int[][] buckets;
+
+	private final int[] heads;
+
+	private final int[] tails;
+
+	/**
+	 * The lowest level that may not be empty.
+	 */
+	private int current;
+
+	private long size;
+
+	HierarchicalQueue( final int minLevel, final int numLevels )
+	{
+		this.minLevel = minLevel;
+		buckets = new int[ numLevels ][];
+		heads = new int[ numLevels ];
+		tails = new int[ numLevels ];
+		current = numLevels;
+	}
+
+	@Override
+	public void push( final int index, final double priority )
+	{
+		final int level = ( int ) priority - minLevel;
+		int[] bucket = buckets[ level ];
+		if ( null == bucket )
+		{
+			bucket = new int[ 16 ];
+			buckets[ level ] = bucket;
+		}
+		else if ( tails[ level ] == bucket.length )
+		{
+			final int used = tails[ level ] - heads[ level ];
+			// Compact, or grow if more than half is used.
+			final int[] tmp = used > bucket.length / 2 ? new int[ 2 * bucket.length ] : bucket;
+			System.arraycopy( bucket, heads[ level ], tmp, 0, used );
+			bucket = tmp;
+			buckets[ level ] = bucket;
+			heads[ level ] = 0;
+			tails[ level ] = used;
+		}
+		bucket[ tails[ level ]++ ] = index;
+		if ( level < current )
+		{
+			current = level;
+		}
+		size++;
+	}
+
+	@Override
+	public int pop()
+	{
+		while ( heads[ current ] == tails[ current ] )
+		{
+			current++;
+		}
+		final int index = buckets[ current ][ heads[ current ]++ ];
+		if ( heads[ current ] == tails[ current ] )
+		{
+			heads[ current ] = 0;
+			tails[ current ] = 0;
+		}
+		size--;
+		return index;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+}
@@ -0,0 +1,129 @@
+package net.imglib2.algorithm.labeling;
+
+/**
+ * A binary min-heap of pixel indices, keyed by a <code>double</code> priority
+ * and by the order of insertion, or an explicit order, in parallel primitive
+ * arrays.
+ */
+final class PixelHeap implements PixelQueue
+{
+	private int[] indices;
+
+	private double[] priorities;
+
+	private long[] ages;
+
+	private int size;
+
+	private long age;
+
+	PixelHeap( final int capacity )
+	{
+		final int c = Math.max( 16, capacity );
+		indices = new int[ c ];
+		priorities = new double[ c ];
+		ages = new long[ c ];
+	}
+
+	@Override
+	public void push( final int index, final double priority )
+	{
+		push( index, priority, age++ );
+	}
+
+	/**
+	 * Pushes a pixel with an explicit order for equal priorities, instead of
+	 * the order of insertion.
+	 */
+	void push( final int index, final double priority, final long order )
+	{
+		if ( size == indices.length )
+		{
+			grow();
+		}
+		final long a = order;
+		int i = size++;
+		while ( i > 0 )
+		{
+			final int parent = ( i - 1 ) >>> 1;
+			if ( !less( priority, a, priorities[ parent ], ages[ parent ] ) )
+			{
+				break;
+			}
+			move( parent, i );
+			i = parent;
+		}
+		set( i, index, priority, a );
+	}
+
+	@Override
+	public int pop()
+	{
+		final int top = indices[ 0 ];
+		final int last = --size;
+		if ( last > 0 )
+		{
+			final int index = indices[ last ];
+			final double priority = priorities[ last ];
+			final long a = ages[ last ];
+			int i = 0;
+			while ( true )
+			{
+				int child = 2 * i + 1;
+				if ( child >= last )
+				{
+					break;
+				}
+				if ( child + 1 < last && less( priorities[ child + 1 ], ages[ child + 1 ], priorities[ child ], ages[ child ] ) )
+				{
+					child++;
+				}
+				if ( !less( priorities[ child ], ages[ child ], priority, a ) )
+				{
+					break;
+				}
+				move( child, i );
+				i = child;
+			}
+			set( i, index, priority, a );
+		}
+		return top;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	private static boolean less( final double p1, final long a1, final double p2, final long a2 )
+	{
+		return p1 < p2 || ( p1 == p2 && a1 < a2 );
+	}
+
+	private void move( final int from, final int to )
+	{
+		set( to, indices[ from ], priorities[ from ], ages[ from ] );
+	}
+
+	private void set( final int i, final int index, final double priority, final long a )
+	{
+		indices[ i ] = index;
+		priorities[ i ] = priority;
+		ages[ i ] = a;
+	}
+
+	private void grow()
+	{
+		final int c = 2 * indices.length;
+		final int[] i = new int[ c ];
+		final double[] p = new double[ c ];
+		final long[] a = new long[ c ];
+		System.arraycopy( indices, 0, i, 0, size );
+		System.arraycopy( priorities, 0, p, 0, size );
+		System.arraycopy( ages, 0, a, 0, size );
+		indices = i;
+		priorities = p;
+		ages = a;
+	}
+}
@@ -0,0 +1,20 @@
+package net.imglib2.algorithm.labeling;
+
+/**
+ * A priority queue of pixel indices, for the flooding of
+ * {@link PrimitiveWatershed}. Pixels of equal priority are popped in the order
+ * they were pushed.
+ */
+interface PixelQueue
+{
+	public void push( int index, double priority );
+
+	/**
+	 * Removes the pixel with the lowest priority, the oldest one first.
+	 *
+	 * @return its index.
+	 */
+	public int pop();
+
+	public boolean isEmpty();
+}
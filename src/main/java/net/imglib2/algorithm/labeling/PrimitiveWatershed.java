@@ -0,0 +1,938 @@
+package net.imglib2.algorithm.labeling;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.concurrent.ExecutorService;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.labeling.BlockConnectedComponents.IntUnionFind;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Seeded watershed on primitive arrays.
+ * <p>
+ * This floods the image like {@link Watershed} and gives the same result: a
+ * pixel takes the label of the neighbor that reaches it first, the pixels
+ * being processed by increasing intensity, and in the order they were reached
+ * for equal intensities. But instead of one object per pixel in a
+ * {@link java.util.PriorityQueue}, the pixels are flat indices in primitive
+ * queues, and the labels are integers in an <code>int</code> array:
+ * <ul>
+ * <li>for integer images whose values span less than
+ * {@value #MAX_LEVELS} levels, a hierarchical queue, one FIFO per level, with
+ * constant time push and pop;
+ * <li>otherwise a binary heap over primitive arrays.
+ * </ul>
+ * The seeds and the output are integer images, 0 being the background.
+ * Images are limited to 2<sup>31</sup> pixels.
+ */
+public class PrimitiveWatershed
+{
+
+	/**
+	 * The maximal number of levels of the hierarchical queue.
+	 */
+	public static final int MAX_LEVELS = 1 << 16;
+
+	private static final int TILE_PIXELS = 1 << 20;
+
+	/**
+	 * Floods an image from seeds.
+	 *
+	 * @param image
+	 *            the intensity image that defines the watershed landscape.
+	 *            Lower values will be labeled first.
+	 * @param seeds
+	 *            the seeds, with the ids of the basins, 0 for unseeded
+	 *            pixels. The ids must fit in an <code>int</code>. Must have
+	 *            the dimensions of the image.
+	 * @param output
+	 *            the labels of the basins, with the ids of the seeds. Must
+	 *            have the dimensions of the image. Can be the seed image.
+	 * @param structuringElement
+	 *            the offsets of the neighbors of a pixel. You can use
+	 *            {@link AllConnectedComponents#getStructuringElement(int)} for
+	 *            an 8-connected (or N-dimensional equivalent) structuring
+	 *            element.
+	 */
+	public static < T extends RealType< T >, S extends IntegerType< S >, L extends IntegerType< L > > void floodFromSeeds(
+			final RandomAccessibleInterval< T > image,
+			final RandomAccessibleInterval< S > seeds,
+			final RandomAccessibleInterval< L > output,
+			final long[][] structuringElement )
+	{
+		checkDimensions( image, seeds );
+		checkDimensions( image, output );
+		final int[] labels = readLabels( seeds );
+		flood( image, labels, structuringElement );
+		writeLabels( labels, output );
+	}
+
+	/**
+	 * Floods an image from seeds, in parallel, in tiles.
+	 * <p>
+	 * Each tile is flooded from its own seeds, then from the labels that
+	 * reach its faces from the neighboring tiles, in rounds, until no label
+	 * can spread further. A pixel takes the label that reaches it at the
+	 * lowest level, like with
+	 * {@link #floodFromSeeds(RandomAccessibleInterval, RandomAccessibleInterval, RandomAccessibleInterval, long[][])}
+	 * . Pixels reached at the same level from two basins go to the basin that
+	 * reached them first in their tile, which depends on the tiles.
+	 * <p>
+	 * If deterministic, they go to the basin with the smallest label instead:
+	 * the result is then the same whatever the tiles and the number of
+	 * threads, and is the sequential result of this mode, with one tile. It
+	 * equals the result of
+	 * {@link #floodFromSeeds(RandomAccessibleInterval, RandomAccessibleInterval, RandomAccessibleInterval, long[][])}
+	 * wherever two basins do not meet at the same level, for instance if all
+	 * the intensities are different.
+	 *
+	 * @param image
+	 *            the intensity image that defines the watershed landscape.
+	 *            Lower values will be labeled first.
+	 * @param seeds
+	 *            the seeds, with the ids of the basins, 0 for unseeded
+	 *            pixels. The ids must fit in an <code>int</code>. Must have
+	 *            the dimensions of the image.
+	 * @param output
+	 *            the labels of the basins, with the ids of the seeds. Must
+	 *            have the dimensions of the image. Can be the seed image.
+	 * @param structuringElement
+	 *            the offsets of the neighbors of a pixel.
+	 * @param tileSize
+	 *            the size of the tiles along each dimension.
+	 * @param service
+	 *            service providing threads for multi-threading
+	 * @param deterministic
+	 *            whether ties are broken by the smallest label, so that the
+	 *            result does not depend on the tiles.
+	 */
+	public static < T extends RealType< T >, S extends IntegerType< S >, L extends IntegerType< L > > void floodFromSeeds(
+			final RandomAccessibleInterval< T > image,
+			final RandomAccessibleInterval< S > seeds,
+			final RandomAccessibleInterval< L > output,
+			final long[][] structuringElement,
+			final int[] tileSize,
+			final ExecutorService service,
+			final boolean deterministic )
+	{
+		checkDimensions( image, seeds );
+		checkDimensions( image, output );
+		final Intensities intensities = Intensities.create( image );
+		final int[] labels = readLabels( seeds );
+		final Neighbors neighbors = new Neighbors( dimensions( image ), structuringElement );
+		new TiledFlooding( intensities, neighbors, labels, tileSize, deterministic ).run( service );
+		writeLabels( labels, output );
+	}
+
+	/**
+	 * Compact watershed: floods an image from seeds, with the priority of a
+	 * pixel being its intensity plus its distance to the seed of the basin
+	 * that reaches it, times a compactness factor.
+	 * <p>
+	 * The distance is computed when the pixel is pushed, so this takes no
+	 * distance map, and no blended copy of the image. With a high
+	 * compactness, basins tend to regular cells around their seeds, which
+	 * makes superpixels from a grid of seeds in a single pass. With a
+	 * compactness of 0, this is
+	 * {@link #floodFromSeeds(RandomAccessibleInterval, RandomAccessibleInterval, RandomAccessibleInterval, long[][])}
+	 * .
+	 *
+	 * @param image
+	 *            the intensity image that defines the watershed landscape.
+	 * @param seeds
+	 *            the seeds, with the ids of the basins, 0 for unseeded
+	 *            pixels. The seed of a basin is the centroid of its pixels.
+	 *            The ids must fit in an <code>int</code>. Must have the
+	 *            dimensions of the image.
+	 * @param output
+	 *            the labels of the basins, with the ids of the seeds. Must
+	 *            have the dimensions of the image. Can be the seed image.
+	 * @param structuringElement
+	 *            the offsets of the neighbors of a pixel.
+	 * @param compactness
+	 *            the weight of the distance to the seed, in intensity per
+	 *            pixel. Must not be negative.
+	 */
+	public static < T extends RealType< T >, S extends IntegerType< S >, L extends IntegerType< L > > void floodCompact(
+			final RandomAccessibleInterval< T > image,
+			final RandomAccessibleInterval< S > seeds,
+			final RandomAccessibleInterval< L > output,
+			final long[][] structuringElement,
+			final double compactness )
+	{
+		if ( !( compactness >= 0 ) )
+		{
+			throw new IllegalArgumentException( "The compactness must not be negative, got " + compactness + "." );
+		}
+		if ( compactness == 0 )
+		{
+			floodFromSeeds( image, seeds, output, structuringElement );
+			return;
+		}
+		checkDimensions( image, seeds );
+		checkDimensions( image, output );
+		final Intensities intensities = Intensities.create( image );
+		final int[] labels = readLabels( seeds );
+		final Neighbors neighbors = new Neighbors( dimensions( image ), structuringElement );
+		final int n = neighbors.numDimensions();
+
+		/*
+		 * Flood with dense basin indices, from 1, so that the seed centroids
+		 * are indexed by basin whatever the ids. ids[ b ] is the id of basin b.
+		 */
+		final TIntIntHashMap basins = new TIntIntHashMap();
+		final TIntArrayList ids = new TIntArrayList();
+		ids.add( 0 );
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			final int l = labels[ i ];
+			if ( l < 0 )
+			{
+				throw new IllegalArgumentException( "Seed ids must not be negative, got " + l + "." );
+			}
+			if ( l != 0 )
+			{
+				int b = basins.get( l );
+				if ( b == 0 )
+				{
+					b = ids.size();
+					basins.put( l, b );
+					ids.add( l );
+				}
+				labels[ i ] = b;
+			}
+		}
+		final int numBasins = ids.size() - 1;
+		if ( ( long ) ( numBasins + 1 ) * n > Integer.MAX_VALUE )
+		{
+			throw new IllegalArgumentException( "Too many seeds: " + numBasins + "." );
+		}
+		final double[] centers = new double[ ( numBasins + 1 ) * n ];
+		final long[] counts = new long[ numBasins + 1 ];
+		final int[] position = new int[ n ];
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			final int l = labels[ i ];
+			if ( l != 0 )
+			{
+				neighbors.localize( i, position );
+				for ( int d = 0; d < n; d++ )
+				{
+					centers[ l * n + d ] += position[ d ];
+				}
+				counts[ l ]++;
+			}
+		}
+		for ( int l = 1; l <= numBasins; l++ )
+		{
+			for ( int d = 0; d < n; d++ )
+			{
+				centers[ l * n + d ] /= Math.max( 1, counts[ l ] );
+			}
+		}
+
+		final PixelQueue queue = new PixelHeap( labels.length );
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			if ( labels[ i ] != 0 )
+			{
+				neighbors.localize( i, position );
+				queue.push( i, intensities.get( i ) + compactness * distance( position, null, centers, labels[ i ] ) );
+			}
+		}
+		floodCompact( queue, labels, intensities, neighbors, centers, compactness );
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			labels[ i ] = ids.getQuick( labels[ i ] );
+		}
+		writeLabels( labels, output );
+	}
+
+	/**
+	 * Floods an image from its regional minima, without seeds.
+	 * <p>
+	 * The regional minima are found in a single scan: the plateaus of equal
+	 * intensity are joined with a union-find, and a plateau is a minimum if
+	 * none of its pixels has a lower neighbor. Each minimum then seeds a
+	 * basin, and the image is flooded in the same queue as
+	 * {@link #floodFromSeeds(RandomAccessibleInterval, RandomAccessibleInterval, RandomAccessibleInterval, long[][])}
+	 * .
+	 * <p>
+	 * If <code>h > 0</code>, shallow minima are suppressed while flooding, as
+	 * the h-minima transform would: when two basins meet, the shallower one is
+	 * merged into the other if the level at which they meet is not more than
+	 * <code>h</code> above its minimum. This takes no extra pass.
+	 * <p>
+	 * If <code>lines</code> is <code>true</code>, the basins are separated by
+	 * watershed lines, labeled 0: of two neighbors in different basins, at
+	 * least one is on a line.
+	 *
+	 * @param image
+	 *            the intensity image that defines the watershed landscape.
+	 * @param output
+	 *            the labels of the basins, <code>1, 2, 3, ...</code> in the
+	 *            order of their first minimum pixel. Must have the dimensions
+	 *            of the image.
+	 * @param structuringElement
+	 *            the offsets of the neighbors of a pixel, symmetric.
+	 * @param h
+	 *            the minimal depth of the minima kept, or 0 to keep all
+	 *            regional minima.
+	 * @param lines
+	 *            whether to separate the basins with watershed lines.
+	 * @return the number of basins.
+	 */
+	public static < T extends RealType< T >, L extends IntegerType< L > > int floodFromMinima(
+			final RandomAccessibleInterval< T > image,
+			final RandomAccessibleInterval< L > output,
+			final long[][] structuringElement,
+			final double h,
+			final boolean lines )
+	{
+		checkDimensions( image, output );
+		final Intensities intensities = Intensities.create( image );
+		final Neighbors neighbors = new Neighbors( dimensions( image ), structuringElement );
+		final int[] labels = new int[ intensities.size() ];
+		final IntUnionFind basins = new IntUnionFind();
+		final TDoubleArrayList minima = new TDoubleArrayList();
+		minima.add( 0 );
+		findRegionalMinima( intensities, neighbors, labels, basins, minima );
+
+		final PixelQueue queue = intensities.createQueue( labels.length );
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			if ( labels[ i ] != 0 )
+			{
+				queue.push( i, intensities.get( i ) );
+			}
+		}
+		if ( h > 0 )
+		{
+			floodAndMerge( queue, labels, intensities, neighbors, basins, minima, h );
+		}
+		else
+		{
+			flood( queue, labels, intensities, neighbors );
+		}
+
+		final int numBasins = basins.compress();
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			labels[ i ] = basins.getSetId( labels[ i ] );
+		}
+		if ( lines )
+		{
+			drawLines( labels, neighbors );
+		}
+		writeLabels( labels, output );
+		return numBasins;
+	}
+
+	/**
+	 * Returns the default tile size for an interval: tiles of about
+	 * 2<sup>20</sup> pixels, as cubic as the interval allows.
+	 *
+	 * @param interval
+	 *            the interval to flood.
+	 * @return the size of the tiles along each dimension.
+	 */
+	public static int[] defaultTileSize( final Interval interval )
+	{
+		final int n = interval.numDimensions();
+		final int[] tileSize = new int[ n ];
+		final int side = ( int ) Math.max( 1, Math.floor( Math.pow( TILE_PIXELS, 1. / n ) ) );
+		for ( int d = 0; d < n; d++ )
+		{
+			tileSize[ d ] = ( int ) Math.min( side, interval.dimension( d ) );
+		}
+		return tileSize;
+	}
+
+	/*
+	 * FLOODING
+	 */
+
+	/**
+	 * Floods the seeds of a flat label array in place.
+	 */
+	static < T extends RealType< T > > void flood( final RandomAccessibleInterval< T > image, final int[] labels, final long[][] structuringElement )
+	{
+		final Intensities intensities = Intensities.create( image );
+		final Neighbors neighbors = new Neighbors( dimensions( image ), structuringElement );
+		final PixelQueue queue = intensities.createQueue( labels.length );
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			if ( labels[ i ] != 0 )
+			{
+				queue.push( i, intensities.get( i ) );
+			}
+		}
+		flood( queue, labels, intensities, neighbors );
+	}
+
+	/**
+	 * Pops pixels until the queue is empty, and gives their label to their
+	 * unlabeled neighbors, which are pushed in turn.
+	 */
+	static void flood( final PixelQueue queue, final int[] labels, final Intensities intensities, final Neighbors neighbors )
+	{
+		final int[] deltas = neighbors.deltas;
+		final int[] position = new int[ neighbors.numDimensions() ];
+		while ( !queue.isEmpty() )
+		{
+			final int index = queue.pop();
+			final int label = labels[ index ];
+			neighbors.localize( index, position );
+			final boolean interior = neighbors.isInterior( position );
+			for ( int k = 0; k < deltas.length; k++ )
+			{
+				if ( !interior && !neighbors.isInside( position, k ) )
+				{
+					continue;
+				}
+				final int j = index + deltas[ k ];
+				if ( labels[ j ] != 0 )
+				{
+					continue;
+				}
+				labels[ j ] = label;
+				queue.push( j, intensities.get( j ) );
+			}
+		}
+	}
+
+	/**
+	 * Floods like {@link #flood(PixelQueue, int[], Intensities, Neighbors)},
+	 * with priorities raised by the distance to the seed.
+	 */
+	private static void floodCompact( final PixelQueue queue, final int[] labels, final Intensities intensities, final Neighbors neighbors, final double[] centers, final double compactness )
+	{
+		final int[] deltas = neighbors.deltas;
+		final int[] position = new int[ neighbors.numDimensions() ];
+		while ( !queue.isEmpty() )
+		{
+			final int index = queue.pop();
+			final int label = labels[ index ];
+			neighbors.localize( index, position );
+			final boolean interior = neighbors.isInterior( position );
+			for ( int k = 0; k < deltas.length; k++ )
+			{
+				if ( !interior && !neighbors.isInside( position, k ) )
+				{
+					continue;
+				}
+				final int j = index + deltas[ k ];
+				if ( labels[ j ] != 0 )
+				{
+					continue;
+				}
+				labels[ j ] = label;
+				final double distance = distance( position, neighbors.offsets[ k ], centers, label );
+				queue.push( j, intensities.get( j ) + compactness * distance );
+			}
+		}
+	}
+
+	/**
+	 * Returns the Euclidean distance from a position, plus an optional
+	 * offset, to the seed of a label.
+	 */
+	private static double distance( final int[] position, final long[] offset, final double[] centers, final int label )
+	{
+		final int n = position.length;
+		double sum = 0;
+		for ( int d = 0; d < n; d++ )
+		{
+			final double dx = position[ d ] + ( offset == null ? 0 : offset[ d ] ) - centers[ label * n + d ];
+			sum += dx * dx;
+		}
+		return Math.sqrt( sum );
+	}
+
+	/**
+	 * Labels the regional minima, one new basin per minimum, and stores the
+	 * intensity of each minimum.
+	 */
+	private static void findRegionalMinima( final Intensities intensities, final Neighbors neighbors, final int[] labels, final IntUnionFind basins, final TDoubleArrayList minima )
+	{
+		final int size = labels.length;
+		final int[] deltas = neighbors.deltas;
+		final int[] position = new int[ neighbors.numDimensions() ];
+
+		/*
+		 * Join the plateaus, the root of a plateau being its first pixel, and
+		 * mark the plateaus that have a lower neighbor. The labels hold the
+		 * parents meanwhile.
+		 */
+		final int[] parents = labels;
+		final boolean[] notMinimum = new boolean[ size ];
+		for ( int i = 0; i < size; i++ )
+		{
+			parents[ i ] = i;
+		}
+		for ( int i = 0; i < size; i++ )
+		{
+			final double v = intensities.get( i );
+			neighbors.localize( i, position );
+			final boolean interior = neighbors.isInterior( position );
+			for ( int k = 0; k < deltas.length; k++ )
+			{
+				if ( !interior && !neighbors.isInside( position, k ) )
+				{
+					continue;
+				}
+				final int j = i + deltas[ k ];
+				final double w = intensities.get( j );
+				if ( w < v )
+				{
+					notMinimum[ i ] = true;
+				}
+				else if ( w == v && j < i )
+				{
+					final int ri = root( parents, i );
+					final int rj = root( parents, j );
+					if ( ri != rj )
+					{
+						parents[ Math.max( ri, rj ) ] = Math.min( ri, rj );
+					}
+				}
+			}
+		}
+		for ( int i = 0; i < size; i++ )
+		{
+			// Parents come first: theirs already point to the root.
+			parents[ i ] = parents[ parents[ i ] ];
+			if ( notMinimum[ i ] )
+			{
+				notMinimum[ parents[ i ] ] = true;
+			}
+		}
+
+		/*
+		 * Roots come first in their plateau: they are relabeled before the
+		 * other pixels, which take their label.
+		 */
+		for ( int i = 0; i < size; i++ )
+		{
+			final int r = parents[ i ];
+			if ( notMinimum[ r ] )
+			{
+				labels[ i ] = 0;
+			}
+			else if ( r == i )
+			{
+				labels[ i ] = basins.add();
+				minima.add( intensities.get( i ) );
+			}
+			else
+			{
+				labels[ i ] = labels[ r ];
+			}
+		}
+	}
+
+	/**
+	 * Returns the root of a plateau, and halves the path to it. Parents always
+	 * have a smaller index than their children.
+	 */
+	private static int root( final int[] parents, int i )
+	{
+		while ( parents[ i ] != i )
+		{
+			parents[ i ] = parents[ parents[ i ] ];
+			i = parents[ i ];
+		}
+		return i;
+	}
+
+	/**
+	 * Floods like {@link #flood(PixelQueue, int[], Intensities, Neighbors)},
+	 * and merges the basins that meet at a level not more than <code>h</code>
+	 * above the minimum of one of them.
+	 */
+	private static void floodAndMerge( final PixelQueue queue, final int[] labels, final Intensities intensities, final Neighbors neighbors, final IntUnionFind basins, final TDoubleArrayList minima, final double h )
+	{
+		final int[] deltas = neighbors.deltas;
+		final int[] position = new int[ neighbors.numDimensions() ];
+		double level = Double.NEGATIVE_INFINITY;
+		while ( !queue.isEmpty() )
+		{
+			final int index = queue.pop();
+			final int label = labels[ index ];
+			level = Math.max( level, intensities.get( index ) );
+			neighbors.localize( index, position );
+			final boolean interior = neighbors.isInterior( position );
+			for ( int k = 0; k < deltas.length; k++ )
+			{
+				if ( !interior && !neighbors.isInside( position, k ) )
+				{
+					continue;
+				}
+				final int j = index + deltas[ k ];
+				final int other = labels[ j ];
+				if ( other == 0 )
+				{
+					labels[ j ] = label;
+					queue.push( j, intensities.get( j ) );
+					continue;
+				}
+				if ( other == label )
+				{
+					continue;
+				}
+				final int a = basins.find( label );
+				final int b = basins.find( other );
+				if ( a == b )
+				{
+					continue;
+				}
+				// The basins meet through both pixels, at the highest of them.
+				final double meet = Math.max( level, intensities.get( j ) );
+				final double ma = minima.get( a );
+				final double mb = minima.get( b );
+				if ( meet - Math.max( ma, mb ) <= h )
+				{
+					final int r = basins.union( a, b );
+					minima.set( r, Math.min( ma, mb ) );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets to 0 the pixels that have a neighbor in another basin, unless
+	 * this neighbor is already on a line. Pixels are visited in flat order.
+	 */
+	private static void drawLines( final int[] labels, final Neighbors neighbors )
+	{
+		final int[] deltas = neighbors.deltas;
+		final int[] position = new int[ neighbors.numDimensions() ];
+		final boolean[] line = new boolean[ labels.length ];
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			neighbors.localize( i, position );
+			final boolean interior = neighbors.isInterior( position );
+			for ( int k = 0; k < deltas.length; k++ )
+			{
+				if ( !interior && !neighbors.isInside( position, k ) )
+				{
+					continue;
+				}
+				final int j = i + deltas[ k ];
+				if ( labels[ j ] != labels[ i ] && !line[ j ] )
+				{
+					line[ i ] = true;
+					break;
+				}
+			}
+		}
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			if ( line[ i ] )
+			{
+				labels[ i ] = 0;
+			}
+		}
+	}
+
+	/**
+	 * The neighbors of a pixel, as flat index offsets, with the bounds checks
+	 * only done near the border.
+	 */
+	static final class Neighbors
+	{
+		final int[] dimensions;
+
+		final int[] strides;
+
+		final long[][] offsets;
+
+		final int[] deltas;
+
+		/**
+		 * Pixels further than this from the border have all their neighbors
+		 * inside.
+		 */
+		final int[] margins;
+
+		Neighbors( final int[] dimensions, final long[][] structuringElement )
+		{
+			final int n = dimensions.length;
+			this.dimensions = dimensions;
+			this.offsets = structuringElement;
+			strides = new int[ n ];
+			int stride = 1;
+			for ( int d = 0; d < n; d++ )
+			{
+				strides[ d ] = stride;
+				stride *= dimensions[ d ];
+			}
+			deltas = new int[ structuringElement.length ];
+			margins = new int[ n ];
+			for ( int k = 0; k < structuringElement.length; k++ )
+			{
+				if ( structuringElement[ k ].length != n )
+				{
+					throw new IllegalArgumentException( "Some or all of the structuring element offsets do not have the same number of dimensions as the image." );
+				}
+				for ( int d = 0; d < n; d++ )
+				{
+					final long o = structuringElement[ k ][ d ];
+					deltas[ k ] += o * strides[ d ];
+					margins[ d ] = ( int ) Math.max( margins[ d ], Math.abs( o ) );
+				}
+			}
+		}
+
+		int numDimensions()
+		{
+			return dimensions.length;
+		}
+
+		void localize( int index, final int[] position )
+		{
+			for ( int d = 0; d < dimensions.length; d++ )
+			{
+				position[ d ] = index % dimensions[ d ];
+				index /= dimensions[ d ];
+			}
+		}
+
+		boolean isInterior( final int[] position )
+		{
+			for ( int d = 0; d < dimensions.length; d++ )
+			{
+				if ( position[ d ] < margins[ d ] || position[ d ] >= dimensions[ d ] - margins[ d ] )
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		boolean isInside( final int[] position, final int k )
+		{
+			final long[] offset = offsets[ k ];
+			for ( int d = 0; d < dimensions.length; d++ )
+			{
+				final long p = position[ d ] + offset[ d ];
+				if ( p < 0 || p >= dimensions[ d ] )
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * The intensities of an image, copied in a primitive array.
+	 */
+	static abstract class Intensities
+	{
+		abstract double get( int index );
+
+		abstract int size();
+
+		/**
+		 * @return a hierarchical queue if the intensities are integers of a
+		 *         small enough range, a heap otherwise.
+		 */
+		abstract PixelQueue createQueue( int capacity );
+
+		static < T extends RealType< T > > Intensities create( final RandomAccessibleInterval< T > image )
+		{
+			final long size = Intervals.numElements( image );
+			if ( size >= Integer.MAX_VALUE )
+			{
+				throw new IllegalArgumentException( "Images must have less than 2^31 pixels." );
+			}
+			final T type = Views.iterable( image ).firstElement();
+			if ( type instanceof IntegerType && type.getMinValue() >= Integer.MIN_VALUE && type.getMaxValue() <= Integer.MAX_VALUE )
+			{
+				final int[] values = new int[ ( int ) size ];
+				int min = Integer.MAX_VALUE;
+				int max = Integer.MIN_VALUE;
+				int i = 0;
+				for ( final T t : Views.flatIterable( image ) )
+				{
+					final int v = ( int ) t.getRealDouble();
+					values[ i++ ] = v;
+					min = Math.min( min, v );
+					max = Math.max( max, v );
+				}
+				return new IntIntensities( values, min, max );
+			}
+			final double[] values = new double[ ( int ) size ];
+			int i = 0;
+			for ( final T t : Views.flatIterable( image ) )
+			{
+				values[ i++ ] = t.getRealDouble();
+			}
+			return new DoubleIntensities( values );
+		}
+	}
+
+	static final class IntIntensities extends Intensities
+	{
+		final int[] values;
+
+		final int min;
+
+		final int max;
+
+		IntIntensities( final int[] values, final int min, final int max )
+		{
+			this.values = values;
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		double get( final int index )
+		{
+			return values[ index ];
+		}
+
+		@Override
+		int size()
+		{
+			return values.length;
+		}
+
+		@Override
+		PixelQueue createQueue( final int capacity )
+		{
+			if ( ( long ) max - min < MAX_LEVELS )
+			{
+				return new HierarchicalQueue( min, Math.max( 1, max - min + 1 ) );
+			}
+			return new PixelHeap( capacity );
+		}
+	}
+
+	static final class DoubleIntensities extends Intensities
+	{
+		final double[] values;
+
+		DoubleIntensities( final double[] values )
+		{
+			this.values = values;
+		}
+
+		@Override
+		double get( final int index )
+		{
+			return values[ index ];
+		}
+
+		@Override
+		int size()
+		{
+			return values.length;
+		}
+
+		@Override
+		PixelQueue createQueue( final int capacity )
+		{
+			return new PixelHeap( capacity );
+		}
+	}
+
+	/*
+	 * UTILS
+	 */
+
+	static int[] dimensions( final Interval interval )
+	{
+		final int[] dimensions = new int[ interval.numDimensions() ];
+		for ( int d = 0; d < dimensions.length; d++ )
+		{
+			dimensions[ d ] = ( int ) interval.dimension( d );
+		}
+		return dimensions;
+	}
+
+	static boolean equalDimensions( final Interval a, final Interval b )
+	{
+		if ( a.numDimensions() != b.numDimensions() )
+		{
+			return false;
+		}
+		for ( int d = 0; d < a.numDimensions(); d++ )
+		{
+			if ( a.dimension( d ) != b.dimension( d ) )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return whether two intervals have the same min and max, so that their
+	 *         pixels match by flat index and by position alike.
+	 */
+	static boolean equalIntervals( final Interval a, final Interval b )
+	{
+		if ( a.numDimensions() != b.numDimensions() )
+		{
+			return false;
+		}
+		for ( int d = 0; d < a.numDimensions(); d++ )
+		{
+			if ( a.min( d ) != b.min( d ) || a.max( d ) != b.max( d ) )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static void checkDimensions( final Interval image, final Interval other )
+	{
+		if ( !equalDimensions( image, other ) )
+		{
+			throw new IllegalArgumentException( "The dimensions of the image and of the labels do not match." );
+		}
+	}
+
+	/**
+	 * Reads the ids of the seeds in flat order.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if an id does not fit in an <code>int</code>.
+	 */
+	static int[] readLabels( final RandomAccessibleInterval< ? extends IntegerType< ? > > seeds )
+	{
+		final int[] labels = new int[ ( int ) Intervals.numElements( seeds ) ];
+		int i = 0;
+		for ( final IntegerType< ? > s : Views.flatIterable( seeds ) )
+		{
+			final long id = s.getIntegerLong();
+			if ( id < Integer.MIN_VALUE || id > Integer.MAX_VALUE )
+			{
+				throw new IllegalArgumentException( "Seed ids must fit in an int, got " + id + "." );
+			}
+			labels[ i++ ] = ( int ) id;
+		}
+		return labels;
+	}
+
+	static void writeLabels( final int[] labels, final RandomAccessibleInterval< ? extends IntegerType< ? > > output )
+	{
+		final Cursor< ? extends IntegerType< ? > > c = Views.flatIterable( output ).cursor();
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			c.next().setInteger( labels[ i ] );
+		}
+	}
+}
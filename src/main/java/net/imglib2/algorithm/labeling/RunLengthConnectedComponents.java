@@ -0,0 +1,628 @@
+package net.imglib2.algorithm.labeling;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.labeling.BlockConnectedComponents.IntUnionFind;
+import net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.IntervalView;
+import net.imglib2.view.Views;
+
+/**
+ * Label all connected components of a binary image, from the runs of
+ * foreground pixels along dimension 0.
+ * <p>
+ * {@link ConnectedComponents} looks up the labeled neighbors of every
+ * foreground pixel. Here, the foreground of each line is first compiled into
+ * runs, and the runs are connected to the runs they overlap in the previous
+ * neighboring lines, one union per pair of runs. The runs of a line are
+ * walked along with the runs of each of its neighbor lines, so that the cost
+ * of the connection is linear in the number of runs, not pixels. This is the
+ * run-based two-pass scheme of He, Chao and Suzuki, in n-D:
+ * <ul>
+ * <li>{@link StructuringElement#FOUR_CONNECTED}: two runs of lines that are
+ * face neighbors are connected if their extents overlap;
+ * <li>{@link StructuringElement#EIGHT_CONNECTED}: two runs of lines that
+ * differ by at most one in every other dimension are connected if their
+ * extents, grown by one pixel, overlap.
+ * </ul>
+ * If the input is an {@link ArrayImg} of bits, or of signed or unsigned
+ * bytes, shorts or ints, the runs are read straight from its backing array.
+ * With bits, whole words of background are skipped at once.
+ * <p>
+ * Components are numbered <code>1, 2, 3, ...</code> in the flat order of
+ * their first pixel.
+ */
+public class RunLengthConnectedComponents
+{
+
+	/**
+	 * "Label" all connected components in the given input image. In the output
+	 * image, all background pixels will be set to 0 and foreground components
+	 * set to 1, 2, 3, etc. The output does not need to be cleared.
+	 *
+	 * @param input
+	 *            input image with pixels > 0 belonging to foreground.
+	 * @param output
+	 *            output image.
+	 * @param se
+	 *            structuring element to use. 8-connected or 4-connected
+	 *            (respectively n-dimensional analog)
+	 * @return the number of connected components (that is, the highest value
+	 *         occurring in the output image).
+	 */
+	public static < T extends IntegerType< T >, L extends IntegerType< L > > int labelAllConnectedComponents(
+			final RandomAccessible< T > input,
+			final RandomAccessibleInterval< L > output,
+			final StructuringElement se )
+	{
+		final Runs runs = extractRuns( input, output );
+		final IntUnionFind uf = connect( runs, output, se );
+		final int numComponents = uf.compress();
+		write( runs, uf, output, null, null );
+		return numComponents;
+	}
+
+	/**
+	 * Labels all connected components like
+	 * {@link #labelAllConnectedComponents(RandomAccessible, RandomAccessibleInterval, StructuringElement)}
+	 * , and measures them while the labels are written: the pixel count,
+	 * bounding box, centroid and second order moments of each component are
+	 * accumulated per run, without another pass over the output.
+	 *
+	 * @param input
+	 *            input image with pixels > 0 belonging to foreground.
+	 * @param output
+	 *            output image.
+	 * @param se
+	 *            structuring element to use. 8-connected or 4-connected
+	 *            (respectively n-dimensional analog)
+	 * @return the statistics of the components, indexed by label.
+	 */
+	public static < T extends IntegerType< T >, L extends IntegerType< L > > ComponentStatistics labelAndMeasure(
+			final RandomAccessible< T > input,
+			final RandomAccessibleInterval< L > output,
+			final StructuringElement se )
+	{
+		final Runs runs = extractRuns( input, output );
+		final IntUnionFind uf = connect( runs, output, se );
+		final int numComponents = uf.compress();
+		final ComponentStatistics stats = new ComponentStatistics( output.numDimensions(), numComponents, false );
+		write( runs, uf, output, stats, null );
+		return stats;
+	}
+
+	/**
+	 * Labels and measures all connected components like
+	 * {@link #labelAndMeasure(RandomAccessible, RandomAccessibleInterval, StructuringElement)}
+	 * , and also sums the intensities of a second image over each component.
+	 *
+	 * @param input
+	 *            input image with pixels > 0 belonging to foreground.
+	 * @param output
+	 *            output image.
+	 * @param se
+	 *            structuring element to use. 8-connected or 4-connected
+	 *            (respectively n-dimensional analog)
+	 * @param intensity
+	 *            the image whose values are summed, defined over the output
+	 *            interval.
+	 * @return the statistics of the components, indexed by label.
+	 */
+	public static < T extends IntegerType< T >, L extends IntegerType< L >, R extends RealType< R > > ComponentStatistics labelAndMeasure(
+			final RandomAccessible< T > input,
+			final RandomAccessibleInterval< L > output,
+			final StructuringElement se,
+			final RandomAccessible< R > intensity )
+	{
+		final Runs runs = extractRuns( input, output );
+		final IntUnionFind uf = connect( runs, output, se );
+		final int numComponents = uf.compress();
+		final ComponentStatistics stats = new ComponentStatistics( output.numDimensions(), numComponents, true );
+		write( runs, uf, output, stats, intensity.randomAccess( output ) );
+		return stats;
+	}
+
+	/*
+	 * RUNS
+	 */
+
+	/**
+	 * The runs of foreground pixels of all the lines, in flat order.
+	 */
+	static final class Runs
+	{
+		/**
+		 * Index of the first run of each line, plus the total number of runs.
+		 */
+		final int[] lineStarts;
+
+		int[] starts = new int[ 1024 ];
+
+		int[] ends = new int[ 1024 ];
+
+		int size;
+
+		Runs( final int numLines )
+		{
+			lineStarts = new int[ numLines + 1 ];
+		}
+
+		void add( final int start, final int end )
+		{
+			if ( size == starts.length )
+			{
+				final int[] s = new int[ 2 * size ];
+				final int[] e = new int[ 2 * size ];
+				System.arraycopy( starts, 0, s, 0, size );
+				System.arraycopy( ends, 0, e, 0, size );
+				starts = s;
+				ends = e;
+			}
+			starts[ size ] = start;
+			ends[ size ] = end;
+			size++;
+		}
+	}
+
+	/**
+	 * Reads the runs of all the lines of the interval, through the backing
+	 * array of the input if possible.
+	 */
+	static < T extends IntegerType< T > > Runs extractRuns( final RandomAccessible< T > input, final Interval interval )
+	{
+		final int n = interval.numDimensions();
+		final long numLines = numLines( interval );
+		if ( numLines > Integer.MAX_VALUE - 1 || interval.dimension( 0 ) > Integer.MAX_VALUE )
+		{
+			throw new IllegalArgumentException( "Too many lines, or lines too long, in " + interval + "." );
+		}
+		final int length = ( int ) interval.dimension( 0 );
+		final Runs runs = new Runs( ( int ) numLines );
+		final LineReader reader = lineReader( input, interval );
+
+		final long[] position = new long[ n ];
+		interval.min( position );
+		for ( int line = 0; line < numLines; line++ )
+		{
+			runs.lineStarts[ line ] = runs.size;
+			reader.read( position, length, runs );
+			for ( int d = 1; d < n; d++ )
+			{
+				if ( ++position[ d ] <= interval.max( d ) )
+				{
+					break;
+				}
+				position[ d ] = interval.min( d );
+			}
+		}
+		runs.lineStarts[ ( int ) numLines ] = runs.size;
+		return runs;
+	}
+
+	/**
+	 * Connects the runs that touch, and returns the union-find of the runs.
+	 * Run <code>r</code> is element <code>r + 1</code> of the union-find.
+	 */
+	static IntUnionFind connect( final Runs runs, final Interval interval, final StructuringElement se )
+	{
+		final int n = interval.numDimensions();
+		final IntUnionFind uf = new IntUnionFind();
+		for ( int r = 0; r < runs.size; r++ )
+		{
+			uf.add();
+		}
+		if ( n == 1 )
+		{
+			return uf;
+		}
+
+		// Backward neighbor lines, in dimensions 1 ... n-1.
+		final long[][] lineOffsets = BlockConnectedComponents.backwardOffsets( se, n - 1 );
+		final int slack = se == StructuringElement.FOUR_CONNECTED ? 0 : 1;
+		final long[] lineDims = new long[ n - 1 ];
+		final long[] lineStrides = new long[ n - 1 ];
+		long stride = 1;
+		for ( int d = 0; d < n - 1; d++ )
+		{
+			lineDims[ d ] = interval.dimension( d + 1 );
+			lineStrides[ d ] = stride;
+			stride *= lineDims[ d ];
+		}
+
+		final int numLines = runs.lineStarts.length - 1;
+		final long[] linePos = new long[ n - 1 ];
+		for ( int line = 0; line < numLines; line++ )
+		{
+			final int first = runs.lineStarts[ line ];
+			final int last = runs.lineStarts[ line + 1 ];
+			if ( first < last )
+			{
+				for ( final long[] offset : lineOffsets )
+				{
+					long neighbor = line;
+					boolean inside = true;
+					for ( int d = 0; d < n - 1; d++ )
+					{
+						final long p = linePos[ d ] + offset[ d ];
+						inside = inside && p >= 0 && p < lineDims[ d ];
+						neighbor += offset[ d ] * lineStrides[ d ];
+					}
+					if ( inside )
+					{
+						connectLines( runs, first, last, runs.lineStarts[ ( int ) neighbor ], runs.lineStarts[ ( int ) neighbor + 1 ], slack, uf );
+					}
+				}
+			}
+			for ( int d = 0; d < n - 1; d++ )
+			{
+				if ( ++linePos[ d ] < lineDims[ d ] )
+				{
+					break;
+				}
+				linePos[ d ] = 0;
+			}
+		}
+		return uf;
+	}
+
+	/**
+	 * Connects the runs of a line with the runs they overlap in a neighbor
+	 * line. Both lists of runs are sorted, and walked together.
+	 */
+	private static void connectLines( final Runs runs, final int first, final int last, final int nFirst, final int nLast, final int slack, final IntUnionFind uf )
+	{
+		int j = nFirst;
+		for ( int r = first; r < last && j < nLast; r++ )
+		{
+			final int s = runs.starts[ r ] - slack;
+			final int e = runs.ends[ r ] + slack;
+			// Neighbor runs that end before this run cannot touch the next
+			// ones either.
+			while ( j < nLast && runs.ends[ j ] < s )
+			{
+				j++;
+			}
+			for ( int k = j; k < nLast && runs.starts[ k ] <= e; k++ )
+			{
+				uf.union( r + 1, k + 1 );
+			}
+		}
+	}
+
+	/**
+	 * Writes the labels of the runs, and feeds them to the statistics if
+	 * these are not <code>null</code>.
+	 */
+	private static < L extends IntegerType< L > > void write(
+			final Runs runs,
+			final IntUnionFind uf,
+			final RandomAccessibleInterval< L > output,
+			final ComponentStatistics stats,
+			final RandomAccess< ? extends RealType< ? > > intensity )
+	{
+		final int n = output.numDimensions();
+		final Cursor< L > out = Views.flatIterable( output ).cursor();
+		final long length = output.dimension( 0 );
+		final int numLines = runs.lineStarts.length - 1;
+		final long[] position = new long[ n ];
+		final long[] runStart = new long[ n ];
+		output.min( position );
+		for ( int line = 0; line < numLines; line++ )
+		{
+			long x = 0;
+			for ( int r = runs.lineStarts[ line ]; r < runs.lineStarts[ line + 1 ]; r++ )
+			{
+				for ( ; x < runs.starts[ r ]; x++ )
+				{
+					out.next().setZero();
+				}
+				final int label = uf.getSetId( r + 1 );
+				for ( ; x <= runs.ends[ r ]; x++ )
+				{
+					out.next().setInteger( label );
+				}
+				if ( null != stats )
+				{
+					System.arraycopy( position, 0, runStart, 0, n );
+					runStart[ 0 ] += runs.starts[ r ];
+					final int runLength = runs.ends[ r ] - runs.starts[ r ] + 1;
+					stats.addRun( label, runStart, runLength );
+					if ( null != intensity )
+					{
+						intensity.setPosition( runStart );
+						double sum = 0;
+						for ( int i = 0; i < runLength; i++ )
+						{
+							sum += intensity.get().getRealDouble();
+							intensity.fwd( 0 );
+						}
+						stats.addIntensity( label, sum );
+					}
+				}
+			}
+			for ( ; x < length; x++ )
+			{
+				out.next().setZero();
+			}
+			for ( int d = 1; d < n; d++ )
+			{
+				if ( ++position[ d ] <= output.max( d ) )
+				{
+					break;
+				}
+				position[ d ] = output.min( d );
+			}
+		}
+	}
+
+	static long numLines( final Interval interval )
+	{
+		long numLines = 1;
+		for ( int d = 1; d < interval.numDimensions(); d++ )
+		{
+			numLines *= interval.dimension( d );
+		}
+		return numLines;
+	}
+
+	/*
+	 * LINE READERS
+	 */
+
+	/**
+	 * Appends the runs of foreground pixels of a line to a list of runs, with
+	 * coordinates relative to the start of the line.
+	 */
+	static interface LineReader
+	{
+		public void read( long[] lineStart, int length, Runs runs );
+	}
+
+	static < T extends IntegerType< T > > LineReader lineReader( final RandomAccessible< T > input, final Interval interval )
+	{
+		final LineReader direct = ArrayLineReader.create( input, interval );
+		if ( null != direct )
+		{
+			return direct;
+		}
+		final RandomAccess< T > ra = input.randomAccess( interval );
+		return new LineReader()
+		{
+			@Override
+			public void read( final long[] lineStart, final int length, final Runs runs )
+			{
+				ra.setPosition( lineStart );
+				int start = -1;
+				for ( int x = 0; x < length; x++ )
+				{
+					final boolean in = ra.get().getIntegerLong() > 0;
+					if ( in && start < 0 )
+					{
+						start = x;
+					}
+					else if ( !in && start >= 0 )
+					{
+						runs.add( start, x - 1 );
+						start = -1;
+					}
+					ra.fwd( 0 );
+				}
+				if ( start >= 0 )
+				{
+					runs.add( start, length - 1 );
+				}
+			}
+		};
+	}
+
+	/**
+	 * Reads runs straight from the backing array of an {@link ArrayImg}.
+	 */
+	private static final class ArrayLineReader implements LineReader
+	{
+		private static enum Storage
+		{
+			BIT, BYTE, UNSIGNED_BYTE, SHORT, UNSIGNED_SHORT, INT, UNSIGNED_INT;
+		}
+
+		private final Storage storage;
+
+		private final Object data;
+
+		private final long[] strides;
+
+		private ArrayLineReader( final Storage storage, final Object data, final long[] strides )
+		{
+			this.storage = storage;
+			this.data = data;
+			this.strides = strides;
+		}
+
+		/**
+		 * Returns a reader if the input is an array image of a supported
+		 * type that contains the interval, <code>null</code> otherwise.
+		 */
+		private static ArrayLineReader create( final RandomAccessible< ? > input, final Interval interval )
+		{
+			Object view = input;
+			while ( view instanceof IntervalView )
+			{
+				view = ( ( IntervalView< ? > ) view ).getSource();
+			}
+			if ( !( view instanceof ArrayImg ) )
+			{
+				return null;
+			}
+			final ArrayImg< ?, ? > img = ( ArrayImg< ?, ? > ) view;
+			final Storage storage = storage( img.firstElement() );
+			if ( null == storage )
+			{
+				return null;
+			}
+			final int n = img.numDimensions();
+			final long[] strides = new long[ n ];
+			long stride = 1;
+			for ( int d = 0; d < n; d++ )
+			{
+				if ( interval.min( d ) < 0 || interval.max( d ) >= img.dimension( d ) )
+				{
+					return null;
+				}
+				strides[ d ] = stride;
+				stride *= img.dimension( d );
+			}
+			final Object data = ( ( ArrayDataAccess< ? > ) img.update( null ) ).getCurrentStorageArray();
+			return new ArrayLineReader( storage, data, strides );
+		}
+
+		private static Storage storage( final Object type )
+		{
+			if ( type instanceof BitType )
+			{
+				return Storage.BIT;
+			}
+			if ( type instanceof UnsignedByteType )
+			{
+				return Storage.UNSIGNED_BYTE;
+			}
+			if ( type instanceof ByteType )
+			{
+				return Storage.BYTE;
+			}
+			if ( type instanceof UnsignedShortType )
+			{
+				return Storage.UNSIGNED_SHORT;
+			}
+			if ( type instanceof ShortType )
+			{
+				return Storage.SHORT;
+			}
+			if ( type instanceof UnsignedIntType )
+			{
+				return Storage.UNSIGNED_INT;
+			}
+			if ( type instanceof IntType )
+			{
+				return Storage.INT;
+			}
+			return null;
+		}
+
+		@Override
+		public void read( final long[] lineStart, final int length, final Runs runs )
+		{
+			long offset = 0;
+			for ( int d = 0; d < strides.length; d++ )
+			{
+				offset += lineStart[ d ] * strides[ d ];
+			}
+			if ( storage == Storage.BIT )
+			{
+				readBits( ( long[] ) data, offset, length, runs );
+				return;
+			}
+			final int o = ( int ) offset;
+			int start = -1;
+			for ( int x = 0; x < length; x++ )
+			{
+				final boolean in;
+				switch ( storage )
+				{
+				case BYTE:
+					in = ( ( byte[] ) data )[ o + x ] > 0;
+					break;
+				case UNSIGNED_BYTE:
+					in = ( ( byte[] ) data )[ o + x ] != 0;
+					break;
+				case SHORT:
+					in = ( ( short[] ) data )[ o + x ] > 0;
+					break;
+				case UNSIGNED_SHORT:
+					in = ( ( short[] ) data )[ o + x ] != 0;
+					break;
+				case INT:
+					in = ( ( int[] ) data )[ o + x ] > 0;
+					break;
+				case UNSIGNED_INT:
+				default:
+					in = ( ( int[] ) data )[ o + x ] != 0;
+					break;
+				}
+				if ( in && start < 0 )
+				{
+					start = x;
+				}
+				else if ( !in && start >= 0 )
+				{
+					runs.add( start, x - 1 );
+					start = -1;
+				}
+			}
+			if ( start >= 0 )
+			{
+				runs.add( start, length - 1 );
+			}
+		}
+
+		/**
+		 * Reads the runs of a line of bits, skipping whole words of
+		 * background or foreground at once.
+		 */
+		private static void readBits( final long[] bits, final long offset, final int length, final Runs runs )
+		{
+			int start = -1;
+			int x = 0;
+			while ( x < length )
+			{
+				final long i = offset + x;
+				final int bit = ( int ) ( i & 63 );
+				final long word = bits[ ( int ) ( i >>> 6 ) ] >>> bit;
+				final int available = Math.min( 64 - bit, length - x );
+				if ( start < 0 && word == 0 )
+				{
+					// Only background up to the end of the word.
+					x += available;
+					continue;
+				}
+				if ( start >= 0 && available == 64 && word == -1l )
+				{
+					// Only foreground in the whole word.
+					x += available;
+					continue;
+				}
+				for ( int b = 0; b < available; b++ )
+				{
+					final boolean in = ( ( word >>> b ) & 1l ) != 0;
+					if ( in && start < 0 )
+					{
+						start = x + b;
+					}
+					else if ( !in && start >= 0 )
+					{
+						runs.add( start, x + b - 1 );
+						start = -1;
+					}
+				}
+				x += available;
+			}
+			if ( start >= 0 )
+			{
+				runs.add( start, length - 1 );
+			}
+		}
+	}
+}
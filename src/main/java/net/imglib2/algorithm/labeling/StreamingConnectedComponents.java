@@ -0,0 +1,462 @@
+package net.imglib2.algorithm.labeling;
+
+import java.util.Arrays;
+
+import gnu.trove.list.array.TLongArrayList;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Label the connected components of a volume that arrives one slice at a
+ * time, along its last dimension.
+ * <p>
+ * Each slice is labeled on its own, with
+ * {@link RunLengthConnectedComponents}, and its components are joined to the
+ * components of the previous slice they touch. Only the labels of the
+ * previous slice and the components that are still active are kept, so the
+ * memory is proportional to the size of a slice plus the number of active
+ * components, not to the size of the volume.
+ * <p>
+ * When a component has no pixel in the slice just added, it cannot grow
+ * anymore: it is reported to the {@link Listener} with its statistics. The
+ * components still active after the last slice are reported by
+ * {@link #finish()}.
+ * <p>
+ * The labels written for a slice are the ids of the components as they are
+ * known when the slice is added. A component that later merges with another
+ * one keeps the smallest id, and reports all the ids it was known by in
+ * {@link Component#getIds()}.
+ */
+public class StreamingConnectedComponents
+{
+
+	/**
+	 * Interface for classes that are notified when a component is complete.
+	 */
+	public static interface Listener
+	{
+		/**
+		 * Called when a component cannot grow anymore.
+		 *
+		 * @param component
+		 *            the finished component.
+		 */
+		public void componentFinished( Component component );
+	}
+
+	/**
+	 * A connected component of the volume, and its statistics. Coordinates in
+	 * the slice dimensions are relative to the minimum of the slices; the
+	 * coordinate in the last dimension is the index of the slice.
+	 */
+	public static final class Component
+	{
+		private final int n;
+
+		private Component parent;
+
+		private final TLongArrayList ids;
+
+		private long count;
+
+		private final long[] min;
+
+		private final long[] max;
+
+		private final double[] sum;
+
+		private long lastSlice;
+
+		private boolean finished;
+
+		private Component( final long id, final int n )
+		{
+			this.n = n;
+			this.parent = this;
+			this.ids = new TLongArrayList( 1 );
+			ids.add( id );
+			this.min = new long[ n ];
+			this.max = new long[ n ];
+			this.sum = new double[ n ];
+		}
+
+		/**
+		 * @return the id of the component, the smallest of the ids it was
+		 *         labeled with.
+		 */
+		public long getId()
+		{
+			return ids.get( 0 );
+		}
+
+		/**
+		 * @return all the ids the pixels of this component were labeled with,
+		 *         smallest first.
+		 */
+		public long[] getIds()
+		{
+			final long[] array = ids.toArray();
+			Arrays.sort( array );
+			return array;
+		}
+
+		public int numDimensions()
+		{
+			return n;
+		}
+
+		/**
+		 * @return the number of pixels of the component.
+		 */
+		public long getCount()
+		{
+			return count;
+		}
+
+		public long getMin( final int d )
+		{
+			return min[ d ];
+		}
+
+		public long getMax( final int d )
+		{
+			return max[ d ];
+		}
+
+		public double getCentroid( final int d )
+		{
+			return sum[ d ] / count;
+		}
+
+		private Component find()
+		{
+			Component c = this;
+			while ( c.parent != c )
+			{
+				c.parent = c.parent.parent;
+				c = c.parent;
+			}
+			return c;
+		}
+
+		/**
+		 * Merges the root of another component in this root, which has the
+		 * smallest id.
+		 */
+		private void absorb( final Component other )
+		{
+			other.parent = this;
+			// New components have no id yet.
+			if ( other.getId() != 0 )
+			{
+				ids.addAll( other.ids );
+			}
+			other.ids.clear();
+			count += other.count;
+			for ( int d = 0; d < n; d++ )
+			{
+				min[ d ] = Math.min( min[ d ], other.min[ d ] );
+				max[ d ] = Math.max( max[ d ], other.max[ d ] );
+				sum[ d ] += other.sum[ d ];
+			}
+			lastSlice = Math.max( lastSlice, other.lastSlice );
+		}
+	}
+
+	private final long[] sliceDimensions;
+
+	private final int n;
+
+	private final StructuringElement se;
+
+	private final Listener listener;
+
+	private final ArrayImg< IntType, IntArray > sliceLabels;
+
+	private final int[] labels;
+
+	private int[] previousLabels;
+
+	private Component[] previousComponents;
+
+	private long numSlices;
+
+	private long nextId = 1;
+
+	/**
+	 * Creates a streaming labeler for slices of the specified size.
+	 *
+	 * @param sliceDimensions
+	 *            the dimensions of the slices.
+	 * @param se
+	 *            structuring element to use. 8-connected or 4-connected
+	 *            (respectively n-dimensional analog), within and across
+	 *            slices.
+	 * @param listener
+	 *            notified of the finished components.
+	 */
+	public StreamingConnectedComponents( final long[] sliceDimensions, final StructuringElement se, final Listener listener )
+	{
+		final long size = Intervals.numElements( sliceDimensions );
+		if ( sliceDimensions.length < 1 || size >= Integer.MAX_VALUE )
+		{
+			throw new IllegalArgumentException( "Slices must have at least one dimension, and less than 2^31 pixels." );
+		}
+		this.sliceDimensions = sliceDimensions.clone();
+		this.n = sliceDimensions.length + 1;
+		this.se = se;
+		this.listener = listener;
+		this.sliceLabels = ArrayImgs.ints( sliceDimensions );
+		this.labels = sliceLabels.update( null ).getCurrentStorageArray();
+		this.previousLabels = new int[ ( int ) size ];
+		this.previousComponents = new Component[ 1 ];
+	}
+
+	/**
+	 * @return the number of slices added so far.
+	 */
+	public long numSlices()
+	{
+		return numSlices;
+	}
+
+	/**
+	 * Adds the next slice.
+	 *
+	 * @param slice
+	 *            the slice, with pixels > 0 belonging to foreground.
+	 */
+	public < T extends IntegerType< T > > void addSlice( final RandomAccessibleInterval< T > slice )
+	{
+		addSlice( slice, ( RandomAccessibleInterval< IntType > ) null );
+	}
+
+	/**
+	 * Adds the next slice, and writes the ids of the components of its pixels
+	 * in the specified image.
+	 *
+	 * @param slice
+	 *            the slice, with pixels > 0 belonging to foreground.
+	 * @param output
+	 *            the labels of the slice, 0 for the background. Can be
+	 *            <code>null</code>.
+	 */
+	public < T extends IntegerType< T >, L extends IntegerType< L > > void addSlice( final RandomAccessibleInterval< T > slice, final RandomAccessibleInterval< L > output )
+	{
+		for ( int d = 0; d < n - 1; d++ )
+		{
+			if ( slice.dimension( d ) != sliceDimensions[ d ] )
+			{
+				throw new IllegalArgumentException( "Slice has dimensions different from " + Arrays.toString( sliceDimensions ) + "." );
+			}
+		}
+		final long z = numSlices++;
+
+		/*
+		 * Label the slice, and create one component per label.
+		 */
+
+		final ComponentStatistics stats = RunLengthConnectedComponents.labelAndMeasure( Views.zeroMin( slice ), sliceLabels, se );
+		final int numComponents = stats.numComponents();
+		final Component[] components = new Component[ numComponents + 1 ];
+		for ( int l = 1; l <= numComponents; l++ )
+		{
+			final Component c = new Component( 0, n );
+			c.count = stats.getCount( l );
+			for ( int d = 0; d < n - 1; d++ )
+			{
+				c.min[ d ] = stats.getMin( l, d );
+				c.max[ d ] = stats.getMax( l, d );
+				c.sum[ d ] = stats.getSum( l, d );
+			}
+			c.min[ n - 1 ] = z;
+			c.max[ n - 1 ] = z;
+			c.sum[ n - 1 ] = ( double ) z * c.count;
+			c.lastSlice = z;
+			components[ l ] = c;
+		}
+
+		/*
+		 * Join with the components of the previous slice.
+		 */
+
+		if ( z > 0 )
+		{
+			connect( components );
+		}
+
+		/*
+		 * New components get new ids.
+		 */
+
+		for ( int l = 1; l <= numComponents; l++ )
+		{
+			final Component c = components[ l ];
+			if ( c.parent == c && c.getId() == 0 )
+			{
+				c.ids.set( 0, nextId++ );
+			}
+		}
+		for ( int l = 1; l <= numComponents; l++ )
+		{
+			components[ l ].find().lastSlice = z;
+		}
+
+		if ( null != output )
+		{
+			final Cursor< L > out = Views.flatIterable( output ).cursor();
+			for ( int i = 0; i < labels.length; i++ )
+			{
+				final int l = labels[ i ];
+				out.next().setInteger( l == 0 ? 0 : components[ l ].find().getId() );
+			}
+		}
+
+		/*
+		 * Components of the previous slice that did not reach this one are
+		 * finished.
+		 */
+
+		for ( int l = 1; l < previousComponents.length; l++ )
+		{
+			final Component root = previousComponents[ l ].find();
+			if ( root.lastSlice < z && !root.finished )
+			{
+				root.finished = true;
+				listener.componentFinished( root );
+			}
+		}
+
+		System.arraycopy( labels, 0, previousLabels, 0, labels.length );
+		previousComponents = components;
+	}
+
+	/**
+	 * Reports the components that are still active. Call after the last
+	 * slice.
+	 */
+	public void finish()
+	{
+		for ( int l = 1; l < previousComponents.length; l++ )
+		{
+			final Component root = previousComponents[ l ].find();
+			if ( !root.finished )
+			{
+				root.finished = true;
+				listener.componentFinished( root );
+			}
+		}
+		previousComponents = new Component[ 1 ];
+	}
+
+	/**
+	 * Unites the components of the current slice with the components of the
+	 * previous slice they touch.
+	 */
+	private void connect( final Component[] components )
+	{
+		final int sn = n - 1;
+		final int[] strides = new int[ sn ];
+		int stride = 1;
+		for ( int d = 0; d < sn; d++ )
+		{
+			strides[ d ] = stride;
+			stride *= sliceDimensions[ d ];
+		}
+
+		// Offsets in the previous slice: the same pixel, or all the pixels
+		// within one pixel in every dimension.
+		final long[][] offsets;
+		if ( se == StructuringElement.FOUR_CONNECTED )
+		{
+			offsets = new long[][] { new long[ sn ] };
+		}
+		else
+		{
+			final int numOffsets = ( int ) Math.pow( 3, sn );
+			offsets = new long[ numOffsets ][ sn ];
+			for ( int i = 0; i < numOffsets; i++ )
+			{
+				int k = i;
+				for ( int d = 0; d < sn; d++ )
+				{
+					offsets[ i ][ d ] = k % 3 - 1;
+					k /= 3;
+				}
+			}
+		}
+
+		final long[] position = new long[ sn ];
+		int lastLabel = 0;
+		int lastPrevious = 0;
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			final int l = labels[ i ];
+			if ( l != 0 )
+			{
+				for ( final long[] offset : offsets )
+				{
+					int j = i;
+					boolean inside = true;
+					for ( int d = 0; d < sn && inside; d++ )
+					{
+						final long p = position[ d ] + offset[ d ];
+						inside = p >= 0 && p < sliceDimensions[ d ];
+						j += offset[ d ] * strides[ d ];
+					}
+					if ( !inside )
+					{
+						continue;
+					}
+					final int pl = previousLabels[ j ];
+					if ( pl == 0 || ( pl == lastPrevious && l == lastLabel ) )
+					{
+						continue;
+					}
+					lastLabel = l;
+					lastPrevious = pl;
+					union( components[ l ], previousComponents[ pl ] );
+				}
+			}
+			for ( int d = 0; d < sn; d++ )
+			{
+				if ( ++position[ d ] < sliceDimensions[ d ] )
+				{
+					break;
+				}
+				position[ d ] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Unites two components. The root with the smallest id absorbs the other
+	 * one; a new component (id 0) is always absorbed by an older one, so that
+	 * it takes its id.
+	 */
+	private static void union( final Component a, final Component b )
+	{
+		final Component ra = a.find();
+		final Component rb = b.find();
+		if ( ra == rb )
+		{
+			return;
+		}
+		if ( ra.getId() == 0 || ( rb.getId() != 0 && rb.getId() < ra.getId() ) )
+		{
+			rb.absorb( ra );
+		}
+		else
+		{
+			ra.absorb( rb );
+		}
+	}
+}
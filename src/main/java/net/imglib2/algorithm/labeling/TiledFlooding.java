@@ -0,0 +1,397 @@
+package net.imglib2.algorithm.labeling;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.imglib2.algorithm.labeling.PrimitiveWatershed.Intensities;
+import net.imglib2.algorithm.labeling.PrimitiveWatershed.Neighbors;
+import net.imglib2.algorithm.util.Futures;
+
+/**
+ * Seeded flooding of an image split in tiles, flooded in parallel.
+ * <p>
+ * A pixel is reached from a neighbor at the level of that neighbor: the
+ * highest intensity along the path from the seed to the neighbor, the
+ * neighbor included. Each pixel keeps the lowest level it was reached at, and
+ * the label it was reached with. Tiles are first flooded from their own seeds.
+ * Then, in rounds, the levels and labels along the faces of each tile are
+ * offered to the pixels across, and the tiles that improved are flooded
+ * again, until no tile improves. Within a round, all tiles read the state of
+ * the previous round, so that the result does not depend on the scheduling of
+ * the threads.
+ * <p>
+ * The levels found are the same as those of a sequential flooding. Pixels
+ * reached at the same level from different basins are labeled in the order
+ * they are popped from the queue of their tile, or, if deterministic, with the
+ * smallest label, which makes the result independent of the tiles.
+ */
+final class TiledFlooding
+{
+
+	private final Intensities intensities;
+
+	private final Neighbors neighbors;
+
+	private final int[] labels;
+
+	private final double[] arrivals;
+
+	private final boolean[] fixed;
+
+	private final boolean deterministic;
+
+	private final List< Tile > tiles;
+
+	/**
+	 * @param labels
+	 *            the seeds, 0 for unseeded pixels. Flooded in place.
+	 */
+	TiledFlooding( final Intensities intensities, final Neighbors neighbors, final int[] labels, final int[] tileSize, final boolean deterministic )
+	{
+		this.intensities = intensities;
+		this.neighbors = neighbors;
+		this.labels = labels;
+		this.deterministic = deterministic;
+		arrivals = new double[ labels.length ];
+		fixed = new boolean[ labels.length ];
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			fixed[ i ] = labels[ i ] != 0;
+			arrivals[ i ] = fixed[ i ] ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		}
+		tiles = createTiles( tileSize );
+	}
+
+	void run( final ExecutorService service )
+	{
+		final List< Future< ? > > futures = new ArrayList< Future< ? > >();
+
+		/*
+		 * Flood the tiles from their seeds.
+		 */
+
+		for ( final Tile tile : tiles )
+		{
+			futures.add( service.submit( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					final PixelQueue queue = createQueue( tile );
+					for ( int i = 0; i < tile.seeds.size(); i++ )
+					{
+						final int index = tile.seeds.get( i );
+						push( queue, index, intensities.get( index ), labels[ index ] );
+					}
+					flood( tile, queue );
+				}
+			} ) );
+		}
+		Futures.getAll( futures );
+
+		/*
+		 * Exchange along the faces, until stable.
+		 */
+
+		while ( true )
+		{
+			for ( final Tile tile : tiles )
+			{
+				futures.add( service.submit( new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						collect( tile );
+					}
+				} ) );
+			}
+			Futures.getAll( futures );
+
+			boolean changed = false;
+			for ( final Tile tile : tiles )
+			{
+				if ( tile.updates.isEmpty() )
+				{
+					continue;
+				}
+				changed = true;
+				futures.add( service.submit( new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						final PixelQueue queue = createQueue( tile );
+						for ( int i = 0; i < tile.updates.size(); i++ )
+						{
+							final int q = tile.updates.get( i );
+							final double a = tile.updateArrivals.get( i );
+							final int l = tile.updateLabels.get( i );
+							arrivals[ q ] = a;
+							labels[ q ] = l;
+							push( queue, q, Math.max( a, intensities.get( q ) ), l );
+						}
+						tile.updates.resetQuick();
+						tile.updateArrivals.resetQuick();
+						tile.updateLabels.resetQuick();
+						flood( tile, queue );
+					}
+				} ) );
+			}
+			Futures.getAll( futures );
+			if ( !changed )
+			{
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Floods the pixels of a tile from the pixels in the queue.
+	 */
+	private void flood( final Tile tile, final PixelQueue queue )
+	{
+		final int[] deltas = neighbors.deltas;
+		final int[] position = new int[ neighbors.numDimensions() ];
+		while ( !queue.isEmpty() )
+		{
+			final int p = queue.pop();
+			final int label = labels[ p ];
+			final double level = Math.max( arrivals[ p ], intensities.get( p ) );
+			neighbors.localize( p, position );
+			final boolean interior = tile.isInterior( position );
+			for ( int k = 0; k < deltas.length; k++ )
+			{
+				if ( !interior && !tile.contains( position, neighbors.offsets[ k ] ) )
+				{
+					continue;
+				}
+				final int q = p + deltas[ k ];
+				if ( fixed[ q ] || !isBetter( level, label, q ) )
+				{
+					continue;
+				}
+				arrivals[ q ] = level;
+				labels[ q ] = label;
+				push( queue, q, Math.max( level, intensities.get( q ) ), label );
+			}
+		}
+	}
+
+	/**
+	 * Finds the pixels of the faces of a tile that can be reached at a lower
+	 * level from across the faces. Only reads the labels and levels.
+	 */
+	private void collect( final Tile tile )
+	{
+		final int[] deltas = neighbors.deltas;
+		final int[] position = new int[ neighbors.numDimensions() ];
+		for ( final int q : tile.shell )
+		{
+			if ( fixed[ q ] )
+			{
+				continue;
+			}
+			neighbors.localize( q, position );
+			double bestArrival = arrivals[ q ];
+			int bestLabel = labels[ q ];
+			for ( int k = 0; k < deltas.length; k++ )
+			{
+				final long[] offset = neighbors.offsets[ k ];
+				if ( tile.contains( position, offset ) || !neighbors.isInside( position, k ) )
+				{
+					continue;
+				}
+				final int p = q + deltas[ k ];
+				final int label = labels[ p ];
+				if ( label == 0 )
+				{
+					continue;
+				}
+				final double level = Math.max( arrivals[ p ], intensities.get( p ) );
+				if ( level < bestArrival || ( deterministic && level == bestArrival && label < bestLabel ) )
+				{
+					bestArrival = level;
+					bestLabel = label;
+				}
+			}
+			if ( bestLabel != labels[ q ] || bestArrival != arrivals[ q ] )
+			{
+				tile.updates.add( q );
+				tile.updateArrivals.add( bestArrival );
+				tile.updateLabels.add( bestLabel );
+			}
+		}
+	}
+
+	private boolean isBetter( final double level, final int label, final int q )
+	{
+		return level < arrivals[ q ] || ( deterministic && level == arrivals[ q ] && label < labels[ q ] );
+	}
+
+	private PixelQueue createQueue( final Tile tile )
+	{
+		return deterministic ? new PixelHeap( tile.size ) : intensities.createQueue( tile.size );
+	}
+
+	private void push( final PixelQueue queue, final int index, final double priority, final int label )
+	{
+		if ( deterministic )
+		{
+			( ( PixelHeap ) queue ).push( index, priority, label );
+		}
+		else
+		{
+			queue.push( index, priority );
+		}
+	}
+
+	/*
+	 * TILES
+	 */
+
+	private List< Tile > createTiles( final int[] tileSize )
+	{
+		final int[] dimensions = neighbors.dimensions;
+		final int n = dimensions.length;
+		if ( tileSize.length != n )
+		{
+			throw new IllegalArgumentException( "There must be one tile size per dimension." );
+		}
+		final int[] numTiles = new int[ n ];
+		int total = 1;
+		for ( int d = 0; d < n; d++ )
+		{
+			numTiles[ d ] = ( dimensions[ d ] + tileSize[ d ] - 1 ) / tileSize[ d ];
+			total *= numTiles[ d ];
+		}
+		final List< Tile > list = new ArrayList< Tile >( total );
+		final int[] t = new int[ n ];
+		for ( int i = 0; i < total; i++ )
+		{
+			final int[] min = new int[ n ];
+			final int[] max = new int[ n ];
+			for ( int d = 0; d < n; d++ )
+			{
+				min[ d ] = t[ d ] * tileSize[ d ];
+				max[ d ] = Math.min( dimensions[ d ], min[ d ] + tileSize[ d ] ) - 1;
+			}
+			list.add( new Tile( min, max ) );
+			for ( int d = 0; d < n; d++ )
+			{
+				if ( ++t[ d ] < numTiles[ d ] )
+				{
+					break;
+				}
+				t[ d ] = 0;
+			}
+		}
+		return list;
+	}
+
+	private final class Tile
+	{
+		private final int[] min;
+
+		private final int[] max;
+
+		private final int size;
+
+		/**
+		 * The seeds of the tile.
+		 */
+		private final TIntArrayList seeds = new TIntArrayList();
+
+		/**
+		 * The pixels that have neighbors in other tiles.
+		 */
+		private final int[] shell;
+
+		private final TIntArrayList updates = new TIntArrayList();
+
+		private final TDoubleArrayList updateArrivals = new TDoubleArrayList();
+
+		private final TIntArrayList updateLabels = new TIntArrayList();
+
+		private Tile( final int[] min, final int[] max )
+		{
+			this.min = min;
+			this.max = max;
+			final int n = min.length;
+			int s = 1;
+			for ( int d = 0; d < n; d++ )
+			{
+				s *= max[ d ] - min[ d ] + 1;
+			}
+			size = s;
+
+			final TIntArrayList shellList = new TIntArrayList();
+			final int[] position = min.clone();
+			final int[] margins = neighbors.margins;
+			final int[] dimensions = neighbors.dimensions;
+			for ( int i = 0; i < size; i++ )
+			{
+				int index = 0;
+				boolean onShell = false;
+				for ( int d = 0; d < n; d++ )
+				{
+					index += position[ d ] * neighbors.strides[ d ];
+					onShell = onShell
+							|| ( min[ d ] > 0 && position[ d ] < min[ d ] + margins[ d ] )
+							|| ( max[ d ] < dimensions[ d ] - 1 && position[ d ] > max[ d ] - margins[ d ] );
+				}
+				if ( labels[ index ] != 0 )
+				{
+					seeds.add( index );
+				}
+				if ( onShell )
+				{
+					shellList.add( index );
+				}
+				for ( int d = 0; d < n; d++ )
+				{
+					if ( ++position[ d ] <= max[ d ] )
+					{
+						break;
+					}
+					position[ d ] = min[ d ];
+				}
+			}
+			shell = shellList.toArray();
+		}
+
+		/**
+		 * @return whether all the neighbors of a pixel are in the tile.
+		 */
+		private boolean isInterior( final int[] position )
+		{
+			final int[] margins = neighbors.margins;
+			for ( int d = 0; d < min.length; d++ )
+			{
+				if ( position[ d ] < min[ d ] + margins[ d ] || position[ d ] > max[ d ] - margins[ d ] )
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean contains( final int[] position, final long[] offset )
+		{
+			for ( int d = 0; d < min.length; d++ )
+			{
+				final long p = position[ d ] + offset[ d ];
+				if ( p < min[ d ] || p > max[ d ] )
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -34,12 +34,16 @@
 
 package net.imglib2.algorithm.labeling;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 
 import net.imglib2.Cursor;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.OutputAlgorithm;
+import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.labeling.Labeling;
 import net.imglib2.labeling.LabelingOutOfBoundsRandomAccessFactory;
@@ -48,8 +52,10 @@ import net.imglib2.labeling.NativeImgLabeling;
 import net.imglib2.outofbounds.OutOfBounds;
 import net.imglib2.outofbounds.OutOfBoundsConstantValueFactory;
 import net.imglib2.outofbounds.OutOfBoundsFactory;
+import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 
 /**
@@ -132,6 +138,16 @@ public class Watershed< T extends RealType< T >, L extends Comparable< L >> impl
 
 	protected Labeling< L > output;
 
+	protected RandomAccessibleInterval< ? extends IntegerType< ? > > seedImage;
+
+	protected RandomAccessibleInterval< ? extends IntegerType< ? > > outputImage;
+
+	/**
+	 * The labels of the ids of the output image, when flooded from a seed
+	 * labeling.
+	 */
+	protected List< List< L > > labelLists;
+
 	String errorMessage;
 
 	/**
@@ -159,6 +175,60 @@ public class Watershed< T extends RealType< T >, L extends Comparable< L >> impl
 		this.seeds = seeds;
 	}
 
+	/**
+	 * Provide the seeds as an integer image, instead of a labeling. The output
+	 * is then an integer image too, see {@link #getOutputImage()}, and no
+	 * labeling is involved.
+	 * 
+	 * @param seeds
+	 *            the ids of the seeds, 0 for unseeded pixels. The ids must fit
+	 *            in an <code>int</code>. Must have the interval of the
+	 *            intensity image.
+	 */
+	public void setSeedImage( final RandomAccessibleInterval< ? extends IntegerType< ? > > seeds )
+	{
+		this.seedImage = seeds;
+	}
+
+	/**
+	 * Set the integer image where the results of the flooding from a seed
+	 * image will be stored. The class will provide one if none is supplied.
+	 * Can be the seed image.
+	 * 
+	 * @param outputImage
+	 */
+	public void setOutputImage( final RandomAccessibleInterval< ? extends IntegerType< ? > > outputImage )
+	{
+		this.outputImage = outputImage;
+	}
+
+	/**
+	 * Returns the integer output. When flooding from a seed image, these are
+	 * the ids of the seeds. When flooding from a seed labeling without an
+	 * output labeling, these are ids whose labels are given by
+	 * {@link #getLabels(int)}.
+	 * 
+	 * @return the output image, or <code>null</code> if the output was
+	 *         written to an output labeling.
+	 */
+	public RandomAccessibleInterval< ? extends IntegerType< ? > > getOutputImage()
+	{
+		return outputImage;
+	}
+
+	/**
+	 * Returns the labels of an id of the output image, when flooding from a
+	 * seed labeling.
+	 * 
+	 * @param id
+	 *            an id of the output image, greater than 0.
+	 * @return the labels of the seeds with this id.
+	 */
+	public List< L > getLabels( final int id )
+	{
+		return labelLists.get( id );
+	}
+
 	/**
 	 * Set the structuring element that defines the connectivity
 	 * 
@@ -201,6 +271,39 @@ public class Watershed< T extends RealType< T >, L extends Comparable< L >> impl
 		if ( !checkInput() )
 			return false;
 
+		if ( seedImage != null )
+		{
+			/*
+			 * Integer seeds: flood straight into an integer image.
+			 */
+			if ( outputImage == null )
+			{
+				final long[] dimensions = new long[ seedImage.numDimensions() ];
+				seedImage.dimensions( dimensions );
+				final long[] min = new long[ seedImage.numDimensions() ];
+				seedImage.min( min );
+				outputImage = Views.translate( new ArrayImgFactory< IntType >().create( dimensions, new IntType() ), min );
+			}
+			final int[] labels = PrimitiveWatershed.readLabels( seedImage );
+			PrimitiveWatershed.flood( image, labels, structuringElement );
+			PrimitiveWatershed.writeLabels( labels, outputImage );
+			return true;
+		}
+
+		if ( output == null && PrimitiveWatershed.equalIntervals( seeds, image ) )
+		{
+			/*
+			 * No output labeling: flood an integer image, and only build the
+			 * labeling if it is asked for. Seeds and intensities are matched
+			 * by flat index, so this needs them on the same interval; otherwise
+			 * they are matched by position below.
+			 */
+			processToOutputImage();
+			return true;
+		}
+		outputImage = null;
+		labelLists = null;
+
 		if ( output == null )
 		{
 			final long[] dimensions = new long[ seeds.numDimensions() ];
@@ -303,9 +406,95 @@ public class Watershed< T extends RealType< T >, L extends Comparable< L >> impl
 		return true;
 	}
 
+	/**
+	 * Gives an id to each distinct labeling of the seeds, and floods the ids
+	 * in an integer image.
+	 */
+	private void processToOutputImage()
+	{
+		final Map< List< L >, Integer > ids = new HashMap< List< L >, Integer >();
+		labelLists = new ArrayList< List< L > >();
+		labelLists.add( null );
+		final int[] labels = new int[ ( int ) Intervals.numElements( seeds ) ];
+		int i = 0;
+		for ( final LabelingType< L > t : Views.flatIterable( seeds ) )
+		{
+			final List< L > l = t.getLabeling();
+			if ( !l.isEmpty() )
+			{
+				Integer id = ids.get( l );
+				if ( id == null )
+				{
+					id = labelLists.size();
+					ids.put( l, id );
+					labelLists.add( l );
+				}
+				labels[ i ] = id;
+			}
+			i++;
+		}
+		PrimitiveWatershed.flood( image, labels, structuringElement );
+
+		final long[] dimensions = new long[ seeds.numDimensions() ];
+		seeds.dimensions( dimensions );
+		final Img< IntType > img = new ArrayImgFactory< IntType >().create( dimensions, new IntType() );
+		PrimitiveWatershed.writeLabels( labels, img );
+		outputImage = img;
+	}
+
+	/**
+	 * Builds the output labeling from the output image, interning the labels
+	 * of each id once.
+	 */
+	private Labeling< L > toLabeling()
+	{
+		final long[] dimensions = new long[ outputImage.numDimensions() ];
+		outputImage.dimensions( dimensions );
+		final NativeImgLabeling< L, IntType > labeling = new NativeImgLabeling< L, IntType >( new ArrayImgFactory< IntType >().create( dimensions, new IntType() ) );
+		final List< List< L > > interned = new ArrayList< List< L > >( labelLists.size() );
+		for ( int i = 0; i < labelLists.size(); i++ )
+		{
+			interned.add( null );
+		}
+		final Cursor< LabelingType< L > > out = Views.flatIterable( labeling ).cursor();
+		for ( final IntegerType< ? > t : Views.flatIterable( outputImage ) )
+		{
+			final LabelingType< L > lt = out.next();
+			final int id = t.getInteger();
+			if ( id == 0 )
+			{
+				continue;
+			}
+			List< L > l = interned.get( id );
+			if ( l == null )
+			{
+				l = lt.intern( labelLists.get( id ) );
+				interned.set( id, l );
+			}
+			lt.setLabeling( l );
+		}
+		return labeling;
+	}
+
 	@Override
 	public boolean checkInput()
 	{
+		if ( seedImage != null )
+		{
+			if ( image == null )
+			{
+				errorMessage = "The intensity image was not provided. Call \"setIntensityImage\" to do this";
+				return false;
+			}
+			if ( !PrimitiveWatershed.equalIntervals( seedImage, image ) || ( outputImage != null && !PrimitiveWatershed.equalIntervals( seedImage, outputImage ) ) )
+			{
+				errorMessage = "The seed image, the intensity image and the output image must have the same interval";
+				return false;
+			}
+			if ( structuringElement == null )
+				structuringElement = AllConnectedComponents.getStructuringElement( image.numDimensions() );
+			return true;
+		}
 		if ( seeds == null )
 		{
 			errorMessage = "The seed labeling was not provided. Call \"setSeeds\" to do this";
@@ -345,9 +534,18 @@ public class Watershed< T extends RealType< T >, L extends Comparable< L >> impl
 		return errorMessage;
 	}
 
+	/**
+	 * Returns the output labeling. If the seeds were a labeling and no output
+	 * labeling was provided, it is built from the output image on the first
+	 * call.
+	 */
 	@Override
 	public Labeling< L > getResult()
 	{
+		if ( output == null && labelLists != null )
+		{
+			output = toLabeling();
+		}
 		return output;
 	}
 }
@@ -46,10 +46,16 @@ import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.Localizable;
 import net.imglib2.Point;
+import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Sampler;
+import net.imglib2.algorithm.neighborhood.BorderSplit;
+import net.imglib2.algorithm.neighborhood.BufferReducers;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.NeighborhoodGatherer;
 import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.type.numeric.RealType;
 import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 
@@ -90,13 +96,47 @@ public class LocalExtrema
 		public < C extends Localizable & Sampler< T > > P check( C center, Neighborhood< T > neighborhood );
 	}
 
+	/**
+	 * A local extremum check on the values of the neighborhood gathered in a
+	 * buffer by a {@link NeighborhoodGatherer}.
+	 * <p>
+	 * When a {@link LocalNeighborhoodCheck} also implements this interface,
+	 * and the source is an array image of a primitive {@link RealType},
+	 * {@link LocalExtrema#findLocalExtrema(RandomAccessible, Interval, LocalNeighborhoodCheck, Shape, ExecutorService)}
+	 * calls this method instead, away from the image border. Both methods must
+	 * give the same result.
+	 * 
+	 * @param <P>
+	 *            A representation of the extremum.
+	 */
+	public interface GatheredNeighborhoodCheck< P >
+	{
+		/**
+		 * Determine whether a pixel is a local extremum. If so, return a
+		 * <code>P</code> that represents the maximum. Otherwise return
+		 * <code>null</code>.
+		 * 
+		 * @param center
+		 *            the position of the pixel to test.
+		 * @param value
+		 *            the value of the pixel to test.
+		 * @param neighborhood
+		 *            the values of the neighborhood of the pixel, not
+		 *            containing the pixel itself.
+		 * @param size
+		 *            the number of values in the neighborhood buffer.
+		 * @return null if the center not a local extremum, a P if it is.
+		 */
+		public P check( Localizable center, double value, double[] neighborhood, int size );
+	}
+
 	/**
 	 * Find pixels that are extrema in their local neighborhood. The specific
 	 * test for being an extremum can is specified as an implementation of the
 	 * {@link LocalNeighborhoodCheck} interface.
-	 * 
-	 * TODO: Make neighborhood shape configurable. This will require that Shape
-	 * can give a bounding box.
+	 * <p>
+	 * The neighborhood is the 8-neighborhood (in 2D) and the one pixel border
+	 * of the image is not searched.
 	 * 
 	 * @param img
 	 * @param localNeighborhoodCheck
@@ -104,11 +144,40 @@ public class LocalExtrema
 	 * @return
 	 */
 	public static < P, T extends Comparable< T > > ArrayList< P > findLocalExtrema( final RandomAccessibleInterval< T > img, final LocalNeighborhoodCheck< P, T > localNeighborhoodCheck, final ExecutorService service )
+	{
+		return findLocalExtrema( img, Intervals.expand( img, -1 ), localNeighborhoodCheck, new RectangleShape( 1, true ), service );
+	}
+
+	/**
+	 * Find pixels that are extrema in their local neighborhood, given by a
+	 * {@link Shape}, within the specified interval. The specific test for
+	 * being an extremum is specified as an implementation of the
+	 * {@link LocalNeighborhoodCheck} interface.
+	 * <p>
+	 * The source must be defined over the interval expanded by the shape. To
+	 * search the whole image, pass an out-of-bounds view of it: only the pixels
+	 * whose neighborhood crosses the image border then go through the
+	 * out-of-bounds view (see {@link BorderSplit}).
+	 * 
+	 * @param source
+	 *            the source image.
+	 * @param interval
+	 *            the interval to search.
+	 * @param localNeighborhoodCheck
+	 *            the extremum test.
+	 * @param shape
+	 *            the neighborhood of each pixel. Should not contain the pixel
+	 *            itself.
+	 * @param service
+	 *            the executor service to run the search with.
+	 * @return the extrema found, in no particular order.
+	 */
+	public static < P, T extends Comparable< T > > ArrayList< P > findLocalExtrema( final RandomAccessible< T > source, final Interval interval, final LocalNeighborhoodCheck< P, T > localNeighborhoodCheck, final Shape shape, final ExecutorService service )
 	{
 		final ArrayList< P > allExtrema = new ArrayList< P >();
 
-		final Interval full = Intervals.expand( img, -1 );
-		final int n = img.numDimensions();
+		final Interval full = interval;
+		final int n = full.numDimensions();
 		final int splitd = n - 1;
 		// FIXME is there a better way to determine number of threads
 		final int numThreads = Runtime.getRuntime().availableProcessors();
@@ -119,28 +188,26 @@ public class LocalExtrema
 		full.min( min );
 		full.max( max );
 
-		final RectangleShape shape = new RectangleShape( 1, true );
-
 		final ArrayList< Future< Void > > futures = new ArrayList< Future< Void > >();
 		final List< P > synchronizedAllExtrema = Collections.synchronizedList( allExtrema );
 		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
 		{
 			min[ splitd ] = full.min( splitd ) + taskNum * dsize;
 			max[ splitd ] = ( taskNum == numTasks - 1 ) ? full.max( splitd ) : min[ splitd ] + dsize - 1;
-			final RandomAccessibleInterval< T > source = Views.interval( img, new FinalInterval( min, max ) );
+			final BorderSplit< T > split = new BorderSplit< T >( source, new FinalInterval( min, max ), shape );
 			final ArrayList< P > extrema = new ArrayList< P >( 128 );
 			final Callable< Void > r = new Callable< Void >()
 			{
 				@Override
 				public Void call()
 				{
-					final Cursor< T > center = Views.flatIterable( source ).cursor();
-					for ( final Neighborhood< T > neighborhood : shape.neighborhoods( source ) )
+					if ( null != split.getInterior() )
+					{
+						findLocalExtrema( split.getInteriorSource(), split.getInterior(), localNeighborhoodCheck, shape, extrema );
+					}
+					for ( final Interval border : split.getBorder() )
 					{
-						center.fwd();
-						final P p = localNeighborhoodCheck.check( center, neighborhood );
-						if ( p != null )
-							extrema.add( p );
+						findLocalExtrema( split.getBorderSource(), border, localNeighborhoodCheck, shape, extrema );
 					}
 					synchronizedAllExtrema.addAll( extrema );
 					return null;
@@ -167,6 +234,55 @@ public class LocalExtrema
 		return allExtrema;
 	}
 
+	private static < P, T extends Comparable< T > > void findLocalExtrema( final RandomAccessible< T > source, final Interval interval, final LocalNeighborhoodCheck< P, T > localNeighborhoodCheck, final Shape shape, final List< P > extrema )
+	{
+		final RandomAccessibleInterval< T > view = Views.interval( source, interval );
+		final Cursor< T > center = Views.flatIterable( view ).cursor();
+		if ( findLocalExtremaGathered( source, center, localNeighborhoodCheck, shape, extrema ) )
+		{
+			return;
+		}
+		for ( final Neighborhood< T > neighborhood : shape.neighborhoods( view ) )
+		{
+			center.fwd();
+			final P p = localNeighborhoodCheck.check( center, neighborhood );
+			if ( p != null )
+				extrema.add( p );
+		}
+	}
+
+	/**
+	 * Runs the check on gathered neighborhood values, if the check supports it
+	 * and the values can be read directly from the source array.
+	 * 
+	 * @return <code>false</code> if nothing was done.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	private static < P, T extends Comparable< T > > boolean findLocalExtremaGathered( final RandomAccessible< T > source, final Cursor< T > center, final LocalNeighborhoodCheck< P, T > localNeighborhoodCheck, final Shape shape, final List< P > extrema )
+	{
+		if ( !( localNeighborhoodCheck instanceof GatheredNeighborhoodCheck ) || !center.hasNext() || !( center.copyCursor().next() instanceof RealType ) )
+		{
+			return false;
+		}
+		final NeighborhoodGatherer gatherer = new NeighborhoodGatherer( ( RandomAccessible ) source, shape );
+		if ( !gatherer.isDirect() )
+		{
+			return false;
+		}
+
+		final GatheredNeighborhoodCheck< P > check = ( GatheredNeighborhoodCheck< P > ) localNeighborhoodCheck;
+		final double[] values = new double[ gatherer.size() ];
+		while ( center.hasNext() )
+		{
+			center.fwd();
+			final int size = gatherer.gather( center, values );
+			final P p = check.check( center, ( ( RealType ) center.get() ).getRealDouble(), values, size );
+			if ( p != null )
+				extrema.add( p );
+		}
+		return true;
+	}
+
 	/**
 	 * A {@link LocalNeighborhoodCheck} to test whether a pixel is a local
 	 * maximum. A pixel is considered a maximum if its value is greater than or
@@ -179,7 +295,7 @@ public class LocalExtrema
 	 * 
 	 * @author Tobias Pietzsch <tobias.pietzsch@gmail.com>
 	 */
-	public static class MaximumCheck< T extends Comparable< T > > implements LocalNeighborhoodCheck< Point, T >
+	public static class MaximumCheck< T extends Comparable< T > > implements LocalNeighborhoodCheck< Point, T >, GatheredNeighborhoodCheck< Point >
 	{
 		final T minPeakValue;
 
@@ -201,6 +317,18 @@ public class LocalExtrema
 
 			return new Point( center );
 		}
+
+		@Override
+		public Point check( final Localizable center, final double value, final double[] neighborhood, final int size )
+		{
+			if ( ( ( RealType< ? > ) minPeakValue ).getRealDouble() > value )
+				return null;
+
+			if ( BufferReducers.max( neighborhood, size ) > value )
+				return null;
+
+			return new Point( center );
+		}
 	}
 
 	/**
@@ -215,7 +343,7 @@ public class LocalExtrema
 	 * 
 	 * @author Tobias Pietzsch <tobias.pietzsch@gmail.com>
 	 */
-	public static class MinimumCheck< T extends Comparable< T > > implements LocalNeighborhoodCheck< Point, T >
+	public static class MinimumCheck< T extends Comparable< T > > implements LocalNeighborhoodCheck< Point, T >, GatheredNeighborhoodCheck< Point >
 	{
 		final T maxPeakValue;
 
@@ -237,5 +365,17 @@ public class LocalExtrema
 
 			return new Point( center );
 		}
+
+		@Override
+		public Point check( final Localizable center, final double value, final double[] neighborhood, final int size )
+		{
+			if ( ( ( RealType< ? > ) maxPeakValue ).getRealDouble() < value )
+				return null;
+
+			if ( BufferReducers.min( neighborhood, size ) < value )
+				return null;
+
+			return new Point( center );
+		}
 	}
 }
@@ -0,0 +1,510 @@
+package net.imglib2.algorithm.morphology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.imglib2.Dimensions;
+import net.imglib2.FinalDimensions;
+import net.imglib2.RandomAccess;
+import net.imglib2.algorithm.neighborhood.CenteredRectangleShape;
+import net.imglib2.algorithm.neighborhood.DiamondShape;
+import net.imglib2.algorithm.neighborhood.HorizontalLineShape;
+import net.imglib2.algorithm.neighborhood.HyperSphereShape;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.PeriodicLineShape;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Util;
+
+/**
+ * Chooses the cheapest way to apply a flat structuring element, among its
+ * direct form and its possible decompositions.
+ * <p>
+ * The cost of a candidate is estimated from the sizes of the neighborhoods of
+ * its shapes, as given by {@link MorphologyUtils#getNeighborhood(Shape,
+ * net.imglib2.EuclideanSpace)}, multiplied by the number of pixels they are
+ * iterated over. Decomposed structuring elements are applied through
+ * successive full dilations or erosions, on an image that grows with each
+ * shape, and the planner accounts for this growth. Each neighborhood also
+ * bears a fixed overhead, so that a long list of tiny shapes is not
+ * automatically preferred. For {@link BitType} images, the early exit of the
+ * morphological operations halves the expected cost of iterating a
+ * neighborhood.
+ * <p>
+ * Exact decompositions (rectangles, diamonds) are always admissible.
+ * Decompositions that only approximate the structuring element (periodic-line
+ * decompositions of disks and spheres) are admissible only if their
+ * approximation error is below a tolerance. The error is the number of pixels
+ * in the symmetric difference between the approximation and the exact shape,
+ * divided by the number of pixels in the exact shape.
+ * <p>
+ * Candidates are only generated for the {@link Engine}s the planner is
+ * allowed to use.
+ * <p>
+ * Planning is opt-in: the factories of {@link StructuringElements} keep their
+ * own fixed rules, and only the {@link Img} and {@link Shape} entry points of
+ * {@link Dilation} and {@link Erosion} use a planner, for the exact
+ * decompositions only.
+ */
+public class DecompositionPlanner
+{
+
+	/**
+	 * The line-based engines a decomposition can rely on. The generic
+	 * neighborhood engine is always available.
+	 */
+	public static enum Engine
+	{
+		/**
+		 * Lines along the image axes, with {@link HorizontalLineShape}.
+		 */
+		LINE,
+		/**
+		 * Lines along arbitrary integer directions, with
+		 * {@link PeriodicLineShape}.
+		 */
+		PERIODIC_LINE;
+	}
+
+	/**
+	 * The default tolerated approximation error for disks and spheres.
+	 */
+	public static final double DEFAULT_TOLERANCE = 0.1;
+
+	/**
+	 * Fixed cost of processing one neighborhood, in units of the cost of
+	 * visiting one of its elements.
+	 */
+	private static final double NEIGHBORHOOD_OVERHEAD = 4.;
+
+	/**
+	 * The number of approximation errors kept in the cache.
+	 */
+	private static final int ERROR_CACHE_SIZE = 256;
+
+	/**
+	 * The largest volume of the exact disk, <code>(2 × radius + 1)^n</code>,
+	 * on which approximation errors are computed. Larger disks are estimated
+	 * on a smaller radius.
+	 */
+	private static final long MAX_ERROR_VOLUME = 1l << 18;
+
+	/**
+	 * Cache for the approximation errors of disk decompositions, which are
+	 * costly to compute for large radii, least recently used first.
+	 */
+	private static final Map< String, Double > ERROR_CACHE = new LinkedHashMap< String, Double >( 16, 0.75f, true )
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry( final Map.Entry< String, Double > eldest )
+		{
+			return size() > ERROR_CACHE_SIZE;
+		}
+	};
+
+	private final long[] imageSize;
+
+	private final double elementCost;
+
+	private final Set< Engine > engines;
+
+	private final double tolerance;
+
+	/**
+	 * Creates a planner for images of the specified size and type, that may
+	 * use all the engines and the default tolerance.
+	 *
+	 * @param image
+	 *            the size of the images the structuring elements will be
+	 *            applied to.
+	 * @param type
+	 *            an instance of the type of these images. Can be
+	 *            <code>null</code> if unknown.
+	 */
+	public DecompositionPlanner( final Dimensions image, final Object type )
+	{
+		this( image, type, EnumSet.allOf( Engine.class ), DEFAULT_TOLERANCE );
+	}
+
+	/**
+	 * Creates a planner.
+	 *
+	 * @param image
+	 *            the size of the images the structuring elements will be
+	 *            applied to.
+	 * @param type
+	 *            an instance of the type of these images. Can be
+	 *            <code>null</code> if unknown.
+	 * @param engines
+	 *            the engines decompositions may rely on.
+	 * @param tolerance
+	 *            the tolerated approximation error, for decompositions that
+	 *            only approximate the structuring element.
+	 */
+	public DecompositionPlanner( final Dimensions image, final Object type, final Set< Engine > engines, final double tolerance )
+	{
+		this.imageSize = new long[ image.numDimensions() ];
+		image.dimensions( imageSize );
+		this.elementCost = ( type instanceof BitType ) ? 0.5 : 1.;
+		this.engines = engines.isEmpty() ? EnumSet.noneOf( Engine.class ) : EnumSet.copyOf( engines );
+		this.tolerance = tolerance;
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Estimates the cost of applying the specified structuring element to an
+	 * image of the size and type of this planner. A list with a single shape is
+	 * applied directly on the image, while longer lists are applied through
+	 * successive full operations.
+	 *
+	 * @param strel
+	 *            the structuring element, as a list of {@link Shape}s.
+	 * @return the estimated cost, in arbitrary units.
+	 */
+	public double cost( final List< Shape > strel )
+	{
+		final int n = imageSize.length;
+		final FinalDimensions space = new FinalDimensions( imageSize );
+		if ( strel.size() == 1 )
+		{
+			final Neighborhood< BitType > neighborhood = MorphologyUtils.getNeighborhood( strel.get( 0 ), space );
+			return numElements( imageSize ) * neighborhoodCost( neighborhood );
+		}
+
+		final long[] dims = imageSize.clone();
+		double cost = 0;
+		for ( final Shape shape : strel )
+		{
+			final Neighborhood< BitType > neighborhood = MorphologyUtils.getNeighborhood( shape, space );
+			for ( int d = 0; d < n; d++ )
+			{
+				dims[ d ] += neighborhood.dimension( d ) - 1;
+			}
+			cost += numElements( dims ) * neighborhoodCost( neighborhood );
+		}
+		// Final crop.
+		cost += numElements( imageSize );
+		return cost;
+	}
+
+	/**
+	 * Returns the cheapest exact equivalent of the specified shape. Rectangles
+	 * and diamonds can be decomposed exactly; other shapes are returned as
+	 * is.
+	 *
+	 * @param shape
+	 *            the shape to plan.
+	 * @return a list of {@link Shape}s, equivalent to the specified shape.
+	 */
+	public List< Shape > plan( final Shape shape )
+	{
+		if ( shape instanceof RectangleShape )
+		{
+			final RectangleShape rectangle = ( RectangleShape ) shape;
+			if ( !rectangle.isSkippingCenter() )
+			{
+				return square( rectangle.getSpan() );
+			}
+		}
+		else if ( shape instanceof CenteredRectangleShape )
+		{
+			final CenteredRectangleShape rectangle = ( CenteredRectangleShape ) shape;
+			if ( !rectangle.isSkippingCenter() && rectangle.getSpan().length == imageSize.length )
+			{
+				return rectangle( rectangle.getSpan() );
+			}
+		}
+		else if ( shape instanceof DiamondShape )
+		{
+			final long radius = ( ( DiamondShape ) shape ).getRadius();
+			if ( radius <= Integer.MAX_VALUE )
+			{
+				return diamond( ( int ) radius );
+			}
+		}
+		return Collections.singletonList( shape );
+	}
+
+	/**
+	 * Plans a disk (or sphere, or hypersphere) structuring element. Besides
+	 * the exact {@link HyperSphereShape}, the candidates are the radial
+	 * decompositions of
+	 * {@link StructuringElements#disk(long, int, int)}, in 2D and 3D, whose
+	 * approximation error is within the tolerance.
+	 *
+	 * @param radius
+	 *            the radius of the disk.
+	 * @return the cheapest admissible structuring element.
+	 */
+	public List< Shape > disk( final long radius )
+	{
+		final int n = imageSize.length;
+		final List< List< Shape > > candidates = new ArrayList< List< Shape > >();
+		candidates.add( StructuringElements.disk( radius, n, 0 ) );
+		if ( engines.contains( Engine.PERIODIC_LINE ) && engines.contains( Engine.LINE ) )
+		{
+			final int[] decompositions;
+			if ( n == 2 )
+			{
+				decompositions = new int[] { 4, 6, 8 };
+			}
+			else if ( n == 3 )
+			{
+				decompositions = new int[] { 9, 13 };
+			}
+			else
+			{
+				decompositions = new int[ 0 ];
+			}
+			for ( final int decomposition : decompositions )
+			{
+				if ( diskApproximationError( radius, n, decomposition ) <= tolerance )
+				{
+					candidates.add( StructuringElements.disk( radius, n, decomposition ) );
+				}
+			}
+		}
+		return cheapest( candidates );
+	}
+
+	/**
+	 * Plans a square (or cube, or hypercube) structuring element.
+	 *
+	 * @param radius
+	 *            the radius of the square.
+	 * @return the cheapest exact structuring element.
+	 */
+	public List< Shape > square( final int radius )
+	{
+		final int n = imageSize.length;
+		final List< List< Shape > > candidates = new ArrayList< List< Shape > >( 2 );
+		candidates.add( StructuringElements.square( radius, n, false ) );
+		if ( engines.contains( Engine.LINE ) && radius > 0 )
+		{
+			candidates.add( StructuringElements.square( radius, n, true ) );
+		}
+		return cheapest( candidates );
+	}
+
+	/**
+	 * Plans a rectangle structuring element.
+	 *
+	 * @param halfSpans
+	 *            the half-span of the rectangle in each dimension.
+	 * @return the cheapest exact structuring element.
+	 */
+	public List< Shape > rectangle( final int[] halfSpans )
+	{
+		final List< List< Shape > > candidates = new ArrayList< List< Shape > >( 2 );
+		candidates.add( StructuringElements.rectangle( halfSpans, false ) );
+		if ( engines.contains( Engine.LINE ) )
+		{
+			final List< Shape > decomposed = StructuringElements.rectangle( halfSpans, true );
+			if ( !decomposed.isEmpty() )
+			{
+				candidates.add( decomposed );
+			}
+		}
+		return cheapest( candidates );
+	}
+
+	/**
+	 * Plans a diamond structuring element.
+	 *
+	 * @param radius
+	 *            the radius of the diamond.
+	 * @return the cheapest exact structuring element.
+	 */
+	public List< Shape > diamond( final int radius )
+	{
+		final int n = imageSize.length;
+		final List< List< Shape > > candidates = new ArrayList< List< Shape > >( 2 );
+		candidates.add( StructuringElements.diamond( radius, n, false ) );
+		if ( radius > 1 )
+		{
+			candidates.add( StructuringElements.diamond( radius, n, true ) );
+		}
+		return cheapest( candidates );
+	}
+
+	@Override
+	public String toString()
+	{
+		return "DecompositionPlanner, image size = " + Util.printCoordinates( imageSize ) + ", engines = " + engines + ", tolerance = " + tolerance;
+	}
+
+	/*
+	 * STATIC METHODS
+	 */
+
+	/**
+	 * Computes the approximation error of a disk decomposition, as the number
+	 * of pixels in the symmetric difference between the decomposed and the
+	 * exact disk, divided by the number of pixels in the exact disk.
+	 * <p>
+	 * The error is computed by rasterizing the decomposition, which gets
+	 * costly for large disks. The decompositions of disks of different radii
+	 * have the same shape up to the rounding of their line lengths, so for
+	 * disks whose bounding box exceeds 2<sup>18</sup> pixels the error is
+	 * estimated on the largest radius within that volume.
+	 *
+	 * @param radius
+	 *            the radius of the disk.
+	 * @param dimensionality
+	 *            the dimensionality of the disk.
+	 * @param decomposition
+	 *            the decomposition, as accepted by
+	 *            {@link StructuringElements#disk(long, int, int)}.
+	 * @return the approximation error.
+	 */
+	public static double diskApproximationError( final long radius, final int dimensionality, final int decomposition )
+	{
+		if ( decomposition == 0 )
+		{
+			return 0.;
+		}
+		final long r = errorRadius( radius, dimensionality );
+		final String key = r + "_" + dimensionality + "_" + decomposition;
+		synchronized ( ERROR_CACHE )
+		{
+			final Double cached = ERROR_CACHE.get( key );
+			if ( cached != null )
+			{
+				return cached.doubleValue();
+			}
+		}
+
+		final Img< BitType > approximation = rasterize( StructuringElements.disk( r, dimensionality, decomposition ), dimensionality );
+		final long[] dims = new long[ dimensionality ];
+		approximation.dimensions( dims );
+		final long[] extent = new long[ dimensionality ];
+		for ( int d = 0; d < dimensionality; d++ )
+		{
+			extent[ d ] = Math.max( dims[ d ], 2 * r + 1 );
+		}
+
+		final RandomAccess< BitType > ra = approximation.randomAccess();
+		final long[] box = new long[ dimensionality ];
+		final long size = numElements( extent );
+		long difference = 0;
+		long reference = 0;
+		final double r2 = r * r;
+		for ( long index = 0; index < size; index++ )
+		{
+			IntervalIndexer.indexToPosition( index, extent, box );
+			double d2 = 0;
+			boolean inApproximation = true;
+			for ( int d = 0; d < dimensionality; d++ )
+			{
+				final long offset = box[ d ] - ( extent[ d ] - 1 ) / 2;
+				d2 += offset * offset;
+				final long p = offset + ( dims[ d ] - 1 ) / 2;
+				if ( p < 0 || p >= dims[ d ] )
+				{
+					inApproximation = false;
+				}
+				box[ d ] = p;
+			}
+			if ( inApproximation )
+			{
+				ra.setPosition( box );
+				inApproximation = ra.get().get();
+			}
+			final boolean inReference = d2 <= r2;
+			if ( inReference )
+			{
+				reference++;
+			}
+			if ( inReference != inApproximation )
+			{
+				difference++;
+			}
+		}
+
+		final double error = ( double ) difference / reference;
+		synchronized ( ERROR_CACHE )
+		{
+			ERROR_CACHE.put( key, Double.valueOf( error ) );
+		}
+		return error;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private List< Shape > cheapest( final List< List< Shape > > candidates )
+	{
+		List< Shape > best = candidates.get( 0 );
+		double bestCost = cost( best );
+		for ( int i = 1; i < candidates.size(); i++ )
+		{
+			final List< Shape > candidate = candidates.get( i );
+			final double c = cost( candidate );
+			if ( c < bestCost )
+			{
+				bestCost = c;
+				best = candidate;
+			}
+		}
+		return best;
+	}
+
+	private double neighborhoodCost( final Neighborhood< BitType > neighborhood )
+	{
+		return NEIGHBORHOOD_OVERHEAD + elementCost * neighborhood.size();
+	}
+
+	/**
+	 * Returns the radius on which the approximation error of a disk is
+	 * computed: the specified radius, or the largest radius whose exact disk
+	 * fits in {@link #MAX_ERROR_VOLUME}.
+	 */
+	private static long errorRadius( final long radius, final int dimensionality )
+	{
+		long r = ( long ) ( ( Math.pow( MAX_ERROR_VOLUME, 1. / dimensionality ) - 1 ) / 2 );
+		while ( r > 0 && Math.pow( 2 * r + 1, dimensionality ) > MAX_ERROR_VOLUME )
+		{
+			r--;
+		}
+		return Math.min( radius, r );
+	}
+
+	/**
+	 * Returns the structuring element as a {@link BitType} image, by full
+	 * dilation of a single pixel.
+	 */
+	private static Img< BitType > rasterize( final List< Shape > strel, final int dimensionality )
+	{
+		final long[] dimensions = Util.getArrayFromValue( 1l, dimensionality );
+		final ArrayImg< BitType, LongArray > img = ArrayImgs.bits( dimensions );
+		img.firstElement().set( true );
+		return Dilation.dilateFull( img, strel, 1 );
+	}
+
+	private static long numElements( final long[] dimensions )
+	{
+		long size = 1;
+		for ( final long d : dimensions )
+		{
+			size *= d;
+		}
+		return size;
+	}
+}
@@ -9,7 +9,10 @@ import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.BorderSplit;
+import net.imglib2.algorithm.neighborhood.BufferReducers;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.NeighborhoodGatherer;
 import net.imglib2.algorithm.neighborhood.Shape;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
@@ -125,6 +128,10 @@ public class Dilation
 	 * limited to flat structuring elements, only having <code>on/off</code>
 	 * pixels, contrary to grayscale structuring elements. This allows to simply
 	 * use a {@link Shape} as a type for these structuring elements.
+	 * <p>
+	 * If the shape can be decomposed exactly into a cheaper sequence of
+	 * shapes, as estimated by a {@link DecompositionPlanner}, this sequence is
+	 * used instead.
 	 *
 	 * @param source
 	 *            the source image.
@@ -139,6 +146,11 @@ public class Dilation
 	 */
 	public static < T extends RealType< T >> Img< T > dilate( final Img< T > source, final Shape strel, final int numThreads )
 	{
+		final List< Shape > plan = new DecompositionPlanner( source, source.firstElement() ).plan( strel );
+		if ( plan.size() > 1 )
+		{
+			return dilate( source, plan, numThreads );
+		}
 		final Img< T > target = source.factory().create( source, source.firstElement().copy() );
 		final T minVal = source.firstElement().createVariable();
 		minVal.setReal( minVal.getMinValue() );
@@ -165,6 +177,10 @@ public class Dilation
 	 * (against {@link Comparable}) than any of the value found in the source
 	 * image. This normally unseen parameter is required to operate on
 	 * <code>T extends {@link Comparable} & {@link Type}</code>.
+	 * <p>
+	 * If the shape can be decomposed exactly into a cheaper sequence of
+	 * shapes, as estimated by a {@link DecompositionPlanner}, this sequence is
+	 * used instead.
 	 *
 	 * @param source
 	 *            the source image.
@@ -186,6 +202,11 @@ public class Dilation
 	 */
 	public static < T extends Type< T > & Comparable< T > > Img< T > dilate( final Img< T > source, final Shape strel, final T minVal, final int numThreads )
 	{
+		final List< Shape > plan = new DecompositionPlanner( source, source.firstElement() ).plan( strel );
+		if ( plan.size() > 1 )
+		{
+			return dilate( source, plan, minVal, numThreads );
+		}
 		final Img< T > target = source.factory().create( source, source.firstElement().copy() );
 		final ExtendedRandomAccessibleInterval< T, Img< T >> extended = Views.extendValue( source, minVal );
 		dilate( extended, target, strel, minVal, numThreads );
@@ -424,7 +445,9 @@ public class Dilation
 		 * Prepare iteration.
 		 */
 
-		final RandomAccessible< Neighborhood< T >> accessible = strel.neighborhoodsRandomAccessible( source );
+		final BorderSplit< T > split = new BorderSplit< T >( source, target, strel );
+		final RandomAccessible< Neighborhood< T >> accessible = strel.neighborhoodsRandomAccessible( split.getBorderSource() );
+		final RandomAccessible< Neighborhood< T >> interiorAccessible = strel.neighborhoodsRandomAccessible( split.getInteriorSource() );
 
 		/*
 		 * Multithread
@@ -449,7 +472,8 @@ public class Dilation
 					@Override
 					public void run()
 					{
-						final RandomAccess< Neighborhood< T >> randomAccess = accessible.randomAccess( target );
+						final RandomAccess< Neighborhood< T >> borderAccess = accessible.randomAccess( target );
+						final RandomAccess< Neighborhood< T >> interiorAccess = interiorAccessible.randomAccess();
 						final Object tmp2 = target.cursor();
 						@SuppressWarnings( "unchecked" )
 						final Cursor< BitType > cursorDilated = ( Cursor< BitType > ) tmp2;
@@ -458,6 +482,7 @@ public class Dilation
 						for ( long steps = 0; steps < chunk.getLoopSize(); steps++ )
 						{
 							cursorDilated.fwd();
+							final RandomAccess< Neighborhood< T >> randomAccess = split.isInterior( cursorDilated ) ? interiorAccess : borderAccess;
 							randomAccess.setPosition( cursorDilated );
 							final Neighborhood< T > neighborhood = randomAccess.get();
 							final Object tmp3 = neighborhood.cursor();
@@ -494,14 +519,32 @@ public class Dilation
 					@Override
 					public void run()
 					{
-						final RandomAccess< Neighborhood< T >> randomAccess = accessible.randomAccess( target );
+						final RandomAccess< Neighborhood< T >> borderAccess = accessible.randomAccess( target );
+						final RandomAccess< Neighborhood< T >> interiorAccess = interiorAccessible.randomAccess();
 						final Cursor< T > cursorDilated = target.cursor();
 						cursorDilated.jumpFwd( chunk.getStartPosition() );
 
 						final T max = MorphologyUtils.createVariable( source, target );
+
+						/*
+						 * Primitive real types on array images: the interior
+						 * neighborhoods are gathered from the backing array.
+						 */
+
+						final NeighborhoodGatherer< ? > gatherer = MorphologyUtils.createGatherer( split, strel, max );
+						final double[] values = null == gatherer ? null : new double[ gatherer.size() ];
+						final double minValue = null == gatherer ? 0 : ( ( RealType< ? > ) minVal ).getRealDouble();
+
 						for ( long steps = 0; steps < chunk.getLoopSize(); steps++ )
 						{
 							cursorDilated.fwd();
+							if ( null != gatherer && split.isInterior( cursorDilated ) )
+							{
+								final int size = gatherer.gather( cursorDilated, values );
+								( ( RealType< ? > ) cursorDilated.get() ).setReal( Math.max( minValue, BufferReducers.max( values, size ) ) );
+								continue;
+							}
+							final RandomAccess< Neighborhood< T >> randomAccess = split.isInterior( cursorDilated ) ? interiorAccess : borderAccess;
 							randomAccess.setPosition( cursorDilated );
 							final Neighborhood< T > neighborhood = randomAccess.get();
 							final Cursor< T > nc = neighborhood.cursor();
@@ -883,6 +926,8 @@ public class Dilation
 	 * padded to properly cover the target range plus the shape size. See
 	 * <i>e.g.</i> {@link Views#extendValue(RandomAccessibleInterval, Type)}
 	 * <p>
+	 * Only a rolling buffer of the original values is allocated, spanning the
+	 * structuring element extent along the last dimension of the interval.
 	 *
 	 * @param source
 	 *            the source image.
@@ -901,15 +946,7 @@ public class Dilation
 		final T minVal = MorphologyUtils.createVariable( source, interval );
 		minVal.setReal( minVal.getMinValue() );
 		final ExtendedRandomAccessibleInterval< T, RandomAccessibleInterval< T >> extended = Views.extendValue( source, minVal );
-
-		final ImgFactory< T > factory = MorphologyUtils.getSuitableFactory( interval, minVal );
-		final Img< T > img = factory.create( interval, minVal );
-		final long[] min = new long[ interval.numDimensions() ];
-		interval.min( min );
-		final IntervalView< T > translated = Views.translate( img, min );
-
-		dilate( extended, translated, strel, numThreads );
-		MorphologyUtils.copy( translated, extended, numThreads );
+		MorphologyUtils.morphologyInPlace( extended, interval, strel, minVal, true, numThreads );
 	}
 
 	/**
@@ -935,6 +972,9 @@ public class Dilation
 	 * (against {@link Comparable}) than any of the value found in the source
 	 * image. This normally unseen parameter is required to operate on
 	 * <code>T extends {@link Comparable} & {@link Type}</code>.
+	 * <p>
+	 * Only a rolling buffer of the original values is allocated, spanning the
+	 * structuring element extent along the last dimension of the interval.
 	 *
 	 * @param source
 	 *            the source image.
@@ -966,15 +1006,68 @@ public class Dilation
 		// minVal );
 
 		final ExtendedRandomAccessibleInterval< T, RandomAccessibleInterval< T >> extended = Views.extendValue( source, minVal );
+		MorphologyUtils.morphologyInPlace( extended, interval, strel, minVal, true, numThreads );
+	}
 
-		final ImgFactory< T > factory = MorphologyUtils.getSuitableFactory( interval, minVal );
-		final Img< T > img = factory.create( interval, minVal );
-		final long[] min = new long[ interval.numDimensions() ];
-		interval.min( min );
-		final IntervalView< T > translated = Views.translate( img, min );
+	/**
+	 * Performs the dilation morphological operation, on a {@link RealType}
+	 * {@link Img} using a grayscale structuring element.
+	 * <p>
+	 * Contrary to flat structuring elements, the weights of a
+	 * {@link GrayscaleStructuringElement} are added to the source values
+	 * before taking the maximum. Separable and paraboloid structuring elements
+	 * are processed one dimension at a time.
+	 * <p>
+	 * The result image has the same dimensions that of the source image. Its
+	 * values are clamped to the range of the type.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param strel
+	 *            the grayscale structuring element.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation.
+	 * @param <T>
+	 *            the type of the source image and the dilation result. Must be
+	 *            a sub-type of <code>T extends {@link RealType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the source.
+	 */
+	public static < T extends RealType< T > > Img< T > dilate( final Img< T > source, final GrayscaleStructuringElement strel, final int numThreads )
+	{
+		final Img< T > target = source.factory().create( source, source.firstElement().copy() );
+		final T minVal = source.firstElement().createVariable();
+		minVal.setReal( minVal.getMinValue() );
+		final ExtendedRandomAccessibleInterval< T, Img< T >> extended = Views.extendValue( source, minVal );
+		dilate( extended, target, strel, numThreads );
+		return target;
+	}
 
-		dilate( extended, translated, strel, minVal, numThreads );
-		MorphologyUtils.copy( translated, extended, numThreads );
+	/**
+	 * Performs the dilation morphological operation, using a grayscale
+	 * structuring element, and writes the result on a specified target.
+	 * <p>
+	 * <b>Careful: Target must point to a different structure than source.</b>
+	 * <p>
+	 * It is the caller responsibility to ensure that the source is sufficiently
+	 * padded to properly cover the target range plus the structuring element
+	 * size. For paraboloid structuring elements, whose support is unbounded,
+	 * only the source values within the target interval are considered.
+	 *
+	 * @param source
+	 *            the {@link RandomAccessible} to operate on.
+	 * @param target
+	 *            the {@link RandomAccessibleInterval} to write the results on.
+	 * @param strel
+	 *            the grayscale structuring element.
+	 * @param numThreads
+	 *            the number of threads to use for calculation.
+	 * @param <T>
+	 *            the type of the source and the result. Must extends
+	 *            <code>RealType</code>.
+	 */
+	public static < T extends RealType< T > > void dilate( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final GrayscaleStructuringElement strel, final int numThreads )
+	{
+		GrayscaleMorphology.dilate( source, target, strel, numThreads );
 	}
 
 	/**
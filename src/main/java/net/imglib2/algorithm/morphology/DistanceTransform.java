@@ -0,0 +1,611 @@
+package net.imglib2.algorithm.morphology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.HyperSphereShape;
+import net.imglib2.algorithm.util.Futures;
+import net.imglib2.img.Img;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Exact squared Euclidean distance transform, and the disk erosion and
+ * dilation that derive from it.
+ * <p>
+ * The transform is separable: it is computed by successive 1D passes along
+ * each dimension, each pass computing the lower envelope of parabolas rooted
+ * at the values of the previous pass, as described in P. F. Felzenszwalb and
+ * D. P. Huttenlocher, <i>Distance Transforms of Sampled Functions</i>, Theory
+ * of Computing 8, 2012. The cost is linear in the number of pixels,
+ * independently of the distances involved. Each pass is parallelized over the
+ * lines of the image.
+ * <p>
+ * The distances are measured to the closest <i>feature</i> pixel. By default,
+ * feature pixels are the pixels of the source whose value is zero, so that for
+ * a binary mask or a label image each foreground pixel gets its distance to the
+ * background. The <code>invert</code> flag makes the non-zero pixels the
+ * features instead. Pixels outside the source interval are not features.
+ * <p>
+ * Anisotropic sampling is handled through per-dimension weights: the squared
+ * distance between two pixels is <code>&Sigma; w<sub>d</sub>
+ * &Delta;<sub>d</sub><sup>2</sup></code>, so for a pixel spacing
+ * <code>s<sub>d</sub></code> the weight is <code>s<sub>d</sub><sup>2</sup></code>.
+ * No weights means isotropic sampling, and a single weight applies to all
+ * dimensions.
+ */
+public class DistanceTransform
+{
+
+	/**
+	 * Computes the squared Euclidean distance transform of the source image
+	 * and writes it in the target image.
+	 * <p>
+	 * The target is used to store the intermediate passes, so its type must be
+	 * able to represent the squared distances. Larger values, and the infinite
+	 * distance obtained when there is no feature pixel at all, are saturated
+	 * to the maximal value of the target type.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param target
+	 *            the target image. Must have the same interval as the source.
+	 * @param invert
+	 *            if <code>false</code>, the feature pixels are the zero pixels
+	 *            of the source. If <code>true</code>, they are the non-zero
+	 *            pixels.
+	 * @param service
+	 *            service providing threads for multi-threading.
+	 * @param numTasks
+	 *            the number of tasks to split each pass into. Values below 1
+	 *            are treated as 1.
+	 * @param weights
+	 *            the squared pixel spacing in each dimension.
+	 * @param <B>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>B extends {@link IntegerType}</code>.
+	 * @param <T>
+	 *            the type of the target image. Must be a sub-type of
+	 *            <code>T extends {@link RealType}</code>.
+	 */
+	public static < B extends IntegerType< B >, T extends RealType< T > > void squaredDistances( final RandomAccessibleInterval< B > source, final RandomAccessibleInterval< T > target, final boolean invert, final ExecutorService service, final int numTasks, final double... weights )
+	{
+		final int n = target.numDimensions();
+		final double[] w = getWeights( n, weights );
+		final double maxVal = Util.getTypeFromInterval( target ).getMaxValue();
+		final int tasks = Math.max( 1, numTasks );
+
+		final LineReader< B > fromSource = new LineReader< B >()
+		{
+			@Override
+			public RandomAccess< B > randomAccess()
+			{
+				return source.randomAccess( target );
+			}
+
+			@Override
+			public double get( final B value )
+			{
+				final boolean isZero = value.getIntegerLong() == 0;
+				return isZero != invert ? 0 : Double.POSITIVE_INFINITY;
+			}
+		};
+		transformLines( fromSource, target, 0, w[ 0 ], maxVal, service, tasks );
+
+		final LineReader< T > fromTarget = new LineReader< T >()
+		{
+			@Override
+			public RandomAccess< T > randomAccess()
+			{
+				return target.randomAccess();
+			}
+
+			@Override
+			public double get( final T value )
+			{
+				final double v = value.getRealDouble();
+				return v >= maxVal ? Double.POSITIVE_INFINITY : v;
+			}
+		};
+		for ( int d = 1; d < n; d++ )
+		{
+			transformLines( fromTarget, target, d, w[ d ], maxVal, service, tasks );
+		}
+	}
+
+	/**
+	 * Computes the squared Euclidean distance transform of the source image,
+	 * as a new {@link FloatType} image.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param invert
+	 *            if <code>false</code>, the feature pixels are the zero pixels
+	 *            of the source. If <code>true</code>, they are the non-zero
+	 *            pixels.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation. Values
+	 *            below 1 are treated as 1.
+	 * @param weights
+	 *            the squared pixel spacing in each dimension.
+	 * @param <B>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>B extends {@link IntegerType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the source, and with a
+	 *         zero min.
+	 * @see #squaredDistances(RandomAccessibleInterval, RandomAccessibleInterval,
+	 *      boolean, ExecutorService, int, double...)
+	 */
+	public static < B extends IntegerType< B > > Img< FloatType > squaredDistancesFloat( final RandomAccessibleInterval< B > source, final boolean invert, final int numThreads, final double... weights )
+	{
+		final Img< FloatType > target = createTarget( source, new FloatType() );
+		squaredDistances( Views.zeroMin( source ), target, invert, numThreads, weights );
+		return target;
+	}
+
+	/**
+	 * Computes the squared Euclidean distance transform of the source image,
+	 * as a new {@link FloatType} image, using the specified service.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param invert
+	 *            if <code>false</code>, the feature pixels are the zero pixels
+	 *            of the source. If <code>true</code>, they are the non-zero
+	 *            pixels.
+	 * @param service
+	 *            service providing threads for multi-threading.
+	 * @param numTasks
+	 *            the number of tasks to split each pass into.
+	 * @param weights
+	 *            the squared pixel spacing in each dimension.
+	 * @param <B>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>B extends {@link IntegerType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the source, and with a
+	 *         zero min.
+	 */
+	public static < B extends IntegerType< B > > Img< FloatType > squaredDistancesFloat( final RandomAccessibleInterval< B > source, final boolean invert, final ExecutorService service, final int numTasks, final double... weights )
+	{
+		final Img< FloatType > target = createTarget( source, new FloatType() );
+		squaredDistances( Views.zeroMin( source ), target, invert, service, numTasks, weights );
+		return target;
+	}
+
+	/**
+	 * Computes the squared Euclidean distance transform of the source image,
+	 * as a new {@link LongType} image. With integer weights, the squared
+	 * distances are exact integers.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param invert
+	 *            if <code>false</code>, the feature pixels are the zero pixels
+	 *            of the source. If <code>true</code>, they are the non-zero
+	 *            pixels.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation. Values
+	 *            below 1 are treated as 1.
+	 * @param weights
+	 *            the squared pixel spacing in each dimension.
+	 * @param <B>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>B extends {@link IntegerType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the source, and with a
+	 *         zero min.
+	 * @see #squaredDistances(RandomAccessibleInterval, RandomAccessibleInterval,
+	 *      boolean, ExecutorService, int, double...)
+	 */
+	public static < B extends IntegerType< B > > Img< LongType > squaredDistancesLong( final RandomAccessibleInterval< B > source, final boolean invert, final int numThreads, final double... weights )
+	{
+		final Img< LongType > target = createTarget( source, new LongType() );
+		squaredDistances( Views.zeroMin( source ), target, invert, numThreads, weights );
+		return target;
+	}
+
+	/**
+	 * Computes the squared Euclidean distance transform of the source image,
+	 * as a new {@link LongType} image, using the specified service.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param invert
+	 *            if <code>false</code>, the feature pixels are the zero pixels
+	 *            of the source. If <code>true</code>, they are the non-zero
+	 *            pixels.
+	 * @param service
+	 *            service providing threads for multi-threading.
+	 * @param numTasks
+	 *            the number of tasks to split each pass into.
+	 * @param weights
+	 *            the squared pixel spacing in each dimension.
+	 * @param <B>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>B extends {@link IntegerType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the source, and with a
+	 *         zero min.
+	 */
+	public static < B extends IntegerType< B > > Img< LongType > squaredDistancesLong( final RandomAccessibleInterval< B > source, final boolean invert, final ExecutorService service, final int numTasks, final double... weights )
+	{
+		final Img< LongType > target = createTarget( source, new LongType() );
+		squaredDistances( Views.zeroMin( source ), target, invert, service, numTasks, weights );
+		return target;
+	}
+
+	/**
+	 * Erodes the foreground (non-zero pixels) of the source image by a disk
+	 * of the specified radius, by thresholding its distance transform. The
+	 * result is identical to an erosion with a {@link HyperSphereShape} of the
+	 * same radius, but the cost does not depend on the radius.
+	 * <p>
+	 * As for {@link Erosion}, pixels outside the source are considered
+	 * foreground.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param target
+	 *            the target image. Must have the same interval as the source.
+	 * @param radius
+	 *            the radius of the disk, in the same unit as the square root
+	 *            of the weights.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation. Values
+	 *            below 1 are treated as 1.
+	 * @param weights
+	 *            the squared pixel spacing in each dimension.
+	 * @param <B>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>B extends {@link IntegerType}</code>.
+	 */
+	public static < B extends IntegerType< B > > void erodeDisk( final RandomAccessibleInterval< B > source, final RandomAccessibleInterval< BitType > target, final double radius, final int numThreads, final double... weights )
+	{
+		final Img< FloatType > distances = squaredDistancesFloat( source, false, numThreads, weights );
+		threshold( distances, Views.zeroMin( target ), radius * radius, false );
+	}
+
+	/**
+	 * Erodes the foreground (non-zero pixels) of the source image by a disk
+	 * of the specified radius, using the specified service.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param target
+	 *            the target image. Must have the same interval as the source.
+	 * @param radius
+	 *            the radius of the disk, in the same unit as the square root
+	 *            of the weights.
+	 * @param service
+	 *            service providing threads for multi-threading.
+	 * @param numTasks
+	 *            the number of tasks to split each pass into.
+	 * @param weights
+	 *            the squared pixel spacing in each dimension.
+	 * @param <B>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>B extends {@link IntegerType}</code>.
+	 * @see #erodeDisk(RandomAccessibleInterval, RandomAccessibleInterval,
+	 *      double, int, double...)
+	 */
+	public static < B extends IntegerType< B > > void erodeDisk( final RandomAccessibleInterval< B > source, final RandomAccessibleInterval< BitType > target, final double radius, final ExecutorService service, final int numTasks, final double... weights )
+	{
+		final Img< FloatType > distances = squaredDistancesFloat( source, false, service, numTasks, weights );
+		threshold( distances, Views.zeroMin( target ), radius * radius, false );
+	}
+
+	/**
+	 * Dilates the foreground (non-zero pixels) of the source image by a disk
+	 * of the specified radius, by thresholding its distance transform. The
+	 * result is identical to a dilation with a {@link HyperSphereShape} of the
+	 * same radius, but the cost does not depend on the radius.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param target
+	 *            the target image. Must have the same interval as the source.
+	 * @param radius
+	 *            the radius of the disk, in the same unit as the square root
+	 *            of the weights.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation. Values
+	 *            below 1 are treated as 1.
+	 * @param weights
+	 *            the squared pixel spacing in each dimension.
+	 * @param <B>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>B extends {@link IntegerType}</code>.
+	 */
+	public static < B extends IntegerType< B > > void dilateDisk( final RandomAccessibleInterval< B > source, final RandomAccessibleInterval< BitType > target, final double radius, final int numThreads, final double... weights )
+	{
+		final Img< FloatType > distances = squaredDistancesFloat( source, true, numThreads, weights );
+		threshold( distances, Views.zeroMin( target ), radius * radius, true );
+	}
+
+	/**
+	 * Dilates the foreground (non-zero pixels) of the source image by a disk
+	 * of the specified radius, using the specified service.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param target
+	 *            the target image. Must have the same interval as the source.
+	 * @param radius
+	 *            the radius of the disk, in the same unit as the square root
+	 *            of the weights.
+	 * @param service
+	 *            service providing threads for multi-threading.
+	 * @param numTasks
+	 *            the number of tasks to split each pass into.
+	 * @param weights
+	 *            the squared pixel spacing in each dimension.
+	 * @param <B>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>B extends {@link IntegerType}</code>.
+	 * @see #dilateDisk(RandomAccessibleInterval, RandomAccessibleInterval,
+	 *      double, int, double...)
+	 */
+	public static < B extends IntegerType< B > > void dilateDisk( final RandomAccessibleInterval< B > source, final RandomAccessibleInterval< BitType > target, final double radius, final ExecutorService service, final int numTasks, final double... weights )
+	{
+		final Img< FloatType > distances = squaredDistancesFloat( source, true, service, numTasks, weights );
+		threshold( distances, Views.zeroMin( target ), radius * radius, true );
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private static < B extends IntegerType< B >, T extends RealType< T > > void squaredDistances( final RandomAccessibleInterval< B > source, final RandomAccessibleInterval< T > target, final boolean invert, final int numThreads, final double... weights )
+	{
+		final int nThreads = Math.max( 1, numThreads );
+		final int numTasks = nThreads > 1 ? nThreads * 4 : 1;
+		final ExecutorService service = Executors.newFixedThreadPool( nThreads );
+		try
+		{
+			squaredDistances( source, target, invert, service, numTasks, weights );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	private static < B, T > Img< T > createTarget( final RandomAccessibleInterval< B > source, final T type )
+	{
+		final long[] dimensions = new long[ source.numDimensions() ];
+		source.dimensions( dimensions );
+		return MorphologyUtils.getSuitableFactory( dimensions, type ).create( dimensions, type );
+	}
+
+	private static void threshold( final Img< FloatType > distances, final RandomAccessibleInterval< BitType > target, final double squaredRadius, final boolean below )
+	{
+		final Cursor< FloatType > cursor = distances.localizingCursor();
+		final RandomAccess< BitType > ra = target.randomAccess();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			ra.setPosition( cursor );
+			final boolean isBelow = cursor.get().getRealDouble() <= squaredRadius;
+			ra.get().set( isBelow == below );
+		}
+	}
+
+	private static double[] getWeights( final int n, final double[] weights )
+	{
+		final double[] w = new double[ n ];
+		if ( weights == null || weights.length == 0 )
+		{
+			Arrays.fill( w, 1. );
+		}
+		else if ( weights.length == 1 )
+		{
+			Arrays.fill( w, weights[ 0 ] );
+		}
+		else if ( weights.length == n )
+		{
+			System.arraycopy( weights, 0, w, 0, n );
+		}
+		else
+		{
+			throw new IllegalArgumentException( "Expected 1 or " + n + " weights, got " + weights.length + "." );
+		}
+		for ( int d = 0; d < n; d++ )
+		{
+			if ( w[ d ] <= 0 )
+			{
+				throw new IllegalArgumentException( "Weights must be strictly positive, got " + w[ d ] + " in dimension " + d + "." );
+			}
+		}
+		return w;
+	}
+
+	/**
+	 * Provides the input of a 1D pass, converted to <code>double</code>.
+	 */
+	private static interface LineReader< A >
+	{
+		public RandomAccess< A > randomAccess();
+
+		public double get( A value );
+	}
+
+	/**
+	 * 1D distance transform of all the lines along dimension d.
+	 */
+	private static < A, T extends RealType< T > > void transformLines( final LineReader< A > reader, final RandomAccessibleInterval< T > target, final int d, final double weight, final double maxVal, final ExecutorService service, final int numTasks )
+	{
+		final int n = target.numDimensions();
+		long tmp = 1;
+		for ( int i = 0; i < n; ++i )
+			if ( i != d )
+				tmp *= target.dimension( i );
+		final long endIndex = tmp;
+		final long taskSize = tmp / numTasks;
+
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		final long[] dim = new long[ n ];
+		target.min( min );
+		target.max( max );
+		target.dimensions( dim );
+		dim[ d ] = 1;
+		final int length = ( int ) target.dimension( d );
+
+		final ArrayList< Future< Void > > futures = new ArrayList< Future< Void > >();
+
+		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+		{
+			final long myStartIndex = taskNum * taskSize;
+			final long myEndIndex = ( taskNum == numTasks - 1 ) ?
+					endIndex :
+					myStartIndex + taskSize;
+			final Callable< Void > r = new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					final RandomAccess< A > in = reader.randomAccess();
+					final RandomAccess< T > out = target.randomAccess();
+
+					final double[] f = new double[ length ];
+					final double[] df = new double[ length ];
+					final int[] v = new int[ length ];
+					final double[] z = new double[ length + 1 ];
+
+					out.setPosition( min );
+					final long[] moveToStart = new long[ n ];
+					IntervalIndexer.indexToPosition( myStartIndex, dim, moveToStart );
+					out.move( moveToStart );
+
+					for ( long index = myStartIndex; index < myEndIndex; ++index )
+					{
+						in.setPosition( out );
+						for ( int i = 0; i < length; i++ )
+						{
+							f[ i ] = reader.get( in.get() );
+							in.fwd( d );
+						}
+
+						transform1D( f, df, v, z, length, weight );
+
+						for ( int i = 0; i < length; i++ )
+						{
+							out.get().setReal( Math.min( maxVal, df[ i ] ) );
+							out.fwd( d );
+						}
+
+						out.setPosition( min[ d ], d );
+						for ( int i = 0; i < n; ++i )
+						{
+							if ( i != d )
+							{
+								out.fwd( i );
+								if ( out.getLongPosition( i ) > max[ i ] )
+								{
+									out.setPosition( min[ i ], i );
+								}
+								else
+								{
+									break;
+								}
+							}
+						}
+					}
+					return null;
+				}
+			};
+			futures.add( service.submit( r ) );
+		}
+		Futures.getAll( futures );
+	}
+
+	/**
+	 * Computes the 1D weighted squared distance transform of a sampled
+	 * function, <code>d(p) = min<sub>q</sub> ( f(q) + w (p - q)<sup>2</sup>
+	 * )</code>, as the lower envelope of the parabolas rooted at each finite
+	 * sample. Infinite samples are skipped. If all the samples are infinite,
+	 * so is the result.
+	 *
+	 * @param f
+	 *            the sampled function.
+	 * @param d
+	 *            the array to write the result in.
+	 * @param v
+	 *            buffer for the locations of the parabolas in the envelope,
+	 *            of length at least <code>length</code>.
+	 * @param z
+	 *            buffer for the boundaries between parabolas, of length at
+	 *            least <code>length + 1</code>.
+	 * @param length
+	 *            the number of samples to process.
+	 * @param w
+	 *            the weight of the squared distance.
+	 */
+	static void transform1D( final double[] f, final double[] d, final int[] v, final double[] z, final int length, final double w )
+	{
+		int k = -1;
+		for ( int q = 0; q < length; q++ )
+		{
+			final double fq = f[ q ];
+			if ( fq == Double.POSITIVE_INFINITY )
+			{
+				continue;
+			}
+			if ( k < 0 )
+			{
+				k = 0;
+				v[ 0 ] = q;
+				z[ 0 ] = Double.NEGATIVE_INFINITY;
+				z[ 1 ] = Double.POSITIVE_INFINITY;
+				continue;
+			}
+			double s = intersection( f, v[ k ], q, w );
+			while ( s <= z[ k ] )
+			{
+				k--;
+				s = intersection( f, v[ k ], q, w );
+			}
+			k++;
+			v[ k ] = q;
+			z[ k ] = s;
+			z[ k + 1 ] = Double.POSITIVE_INFINITY;
+		}
+
+		if ( k < 0 )
+		{
+			Arrays.fill( d, 0, length, Double.POSITIVE_INFINITY );
+			return;
+		}
+
+		k = 0;
+		for ( int q = 0; q < length; q++ )
+		{
+			while ( z[ k + 1 ] < q )
+			{
+				k++;
+			}
+			final double dq = q - v[ k ];
+			d[ q ] = w * dq * dq + f[ v[ k ] ];
+		}
+	}
+
+	/**
+	 * Abscissa of the intersection of the parabolas rooted at p and q, with
+	 * p &lt; q.
+	 */
+	private static final double intersection( final double[] f, final int p, final int q, final double w )
+	{
+		return ( ( f[ q ] + w * q * q ) - ( f[ p ] + w * p * p ) ) / ( 2 * w * ( q - p ) );
+	}
+}
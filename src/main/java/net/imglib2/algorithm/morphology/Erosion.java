@@ -9,7 +9,10 @@ import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.BorderSplit;
+import net.imglib2.algorithm.neighborhood.BufferReducers;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.NeighborhoodGatherer;
 import net.imglib2.algorithm.neighborhood.Shape;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
@@ -125,6 +128,10 @@ public class Erosion
 	 * limited to flat structuring elements, only having <code>on/off</code>
 	 * pixels, contrary to grayscale structuring elements. This allows to simply
 	 * use a {@link Shape} as a type for these structuring elements.
+	 * <p>
+	 * If the shape can be decomposed exactly into a cheaper sequence of
+	 * shapes, as estimated by a {@link DecompositionPlanner}, this sequence is
+	 * used instead.
 	 *
 	 * @param source
 	 *            the source image.
@@ -139,6 +146,11 @@ public class Erosion
 	 */
 	public static < T extends RealType< T >> Img< T > erode( final Img< T > source, final Shape strel, final int numThreads )
 	{
+		final List< Shape > plan = new DecompositionPlanner( source, source.firstElement() ).plan( strel );
+		if ( plan.size() > 1 )
+		{
+			return erode( source, plan, numThreads );
+		}
 		final Img< T > target = source.factory().create( source, source.firstElement().copy() );
 		final T maxVal = source.firstElement().createVariable();
 		maxVal.setReal( maxVal.getMaxValue() );
@@ -165,6 +177,10 @@ public class Erosion
 	 * {@link Comparable}) than any of the value found in the source image. This
 	 * normally unseen parameter is required to operate on
 	 * <code>T extends {@link Comparable} & {@link Type}</code>.
+	 * <p>
+	 * If the shape can be decomposed exactly into a cheaper sequence of
+	 * shapes, as estimated by a {@link DecompositionPlanner}, this sequence is
+	 * used instead.
 	 *
 	 * @param source
 	 *            the source image.
@@ -186,6 +202,11 @@ public class Erosion
 	 */
 	public static < T extends Type< T > & Comparable< T > > Img< T > erode( final Img< T > source, final Shape strel, final T maxVal, final int numThreads )
 	{
+		final List< Shape > plan = new DecompositionPlanner( source, source.firstElement() ).plan( strel );
+		if ( plan.size() > 1 )
+		{
+			return erode( source, plan, maxVal, numThreads );
+		}
 		final Img< T > target = source.factory().create( source, source.firstElement().copy() );
 		final ExtendedRandomAccessibleInterval< T, Img< T >> extended = Views.extendValue( source, maxVal );
 		erode( extended, target, strel, maxVal, numThreads );
@@ -424,7 +445,9 @@ public class Erosion
 		 * Prepare iteration.
 		 */
 
-		final RandomAccessible< Neighborhood< T >> accessible = strel.neighborhoodsRandomAccessible( source );
+		final BorderSplit< T > split = new BorderSplit< T >( source, target, strel );
+		final RandomAccessible< Neighborhood< T >> accessible = strel.neighborhoodsRandomAccessible( split.getBorderSource() );
+		final RandomAccessible< Neighborhood< T >> interiorAccessible = strel.neighborhoodsRandomAccessible( split.getInteriorSource() );
 
 		/*
 		 * Multithread
@@ -448,7 +471,8 @@ public class Erosion
 					@Override
 					public void run()
 					{
-						final RandomAccess< Neighborhood< T >> randomAccess = accessible.randomAccess( target );
+						final RandomAccess< Neighborhood< T >> borderAccess = accessible.randomAccess( target );
+						final RandomAccess< Neighborhood< T >> interiorAccess = interiorAccessible.randomAccess();
 						final Object tmp2 = target.cursor();
 						@SuppressWarnings( "unchecked" )
 						final Cursor< BitType > cursorTarget = ( Cursor< BitType > ) tmp2;
@@ -457,6 +481,7 @@ public class Erosion
 						for ( long steps = 0; steps < chunk.getLoopSize(); steps++ )
 						{
 							cursorTarget.fwd();
+							final RandomAccess< Neighborhood< T >> randomAccess = split.isInterior( cursorTarget ) ? interiorAccess : borderAccess;
 							randomAccess.setPosition( cursorTarget );
 							final Object tmp3 = randomAccess.get();
 							@SuppressWarnings( "unchecked" )
@@ -494,14 +519,32 @@ public class Erosion
 					@Override
 					public void run()
 					{
-						final RandomAccess< Neighborhood< T >> randomAccess = accessible.randomAccess( target );
+						final RandomAccess< Neighborhood< T >> borderAccess = accessible.randomAccess( target );
+						final RandomAccess< Neighborhood< T >> interiorAccess = interiorAccessible.randomAccess();
 						final Cursor< T > cursorTarget = target.cursor();
 						cursorTarget.jumpFwd( chunk.getStartPosition() );
 
 						final T max = MorphologyUtils.createVariable( source, target );
+
+						/*
+						 * Primitive real types on array images: the interior
+						 * neighborhoods are gathered from the backing array.
+						 */
+
+						final NeighborhoodGatherer< ? > gatherer = MorphologyUtils.createGatherer( split, strel, max );
+						final double[] values = null == gatherer ? null : new double[ gatherer.size() ];
+						final double maxValue = null == gatherer ? 0 : ( ( RealType< ? > ) maxVal ).getRealDouble();
+
 						for ( long steps = 0; steps < chunk.getLoopSize(); steps++ )
 						{
 							cursorTarget.fwd();
+							if ( null != gatherer && split.isInterior( cursorTarget ) )
+							{
+								final int size = gatherer.gather( cursorTarget, values );
+								( ( RealType< ? > ) cursorTarget.get() ).setReal( Math.min( maxValue, BufferReducers.min( values, size ) ) );
+								continue;
+							}
+							final RandomAccess< Neighborhood< T >> randomAccess = split.isInterior( cursorTarget ) ? interiorAccess : borderAccess;
 							randomAccess.setPosition( cursorTarget );
 							final Neighborhood< T > neighborhood = randomAccess.get();
 							final Cursor< T > nc = neighborhood.cursor();
@@ -883,6 +926,8 @@ public class Erosion
 	 * padded to properly cover the target range plus the shape size. See
 	 * <i>e.g.</i> {@link Views#extendValue(RandomAccessibleInterval, Type)}
 	 * <p>
+	 * Only a rolling buffer of the original values is allocated, spanning the
+	 * structuring element extent along the last dimension of the interval.
 	 *
 	 * @param source
 	 *            the source image.
@@ -899,14 +944,8 @@ public class Erosion
 	public static < T extends RealType< T > > void erodeInPlace( final RandomAccessible< T > source, final Interval interval, final Shape strel, final int numThreads )
 	{
 		final T maxVal = MorphologyUtils.createVariable( source, interval );
-		final ImgFactory< T > factory = MorphologyUtils.getSuitableFactory( interval, maxVal );
-		final Img< T > img = factory.create( interval, maxVal );
-		final long[] min = new long[ interval.numDimensions() ];
-		interval.min( min );
-		final IntervalView< T > translated = Views.translate( img, min );
-
-		erode( source, translated, strel, numThreads );
-		MorphologyUtils.copy( translated, source, numThreads );
+		maxVal.setReal( maxVal.getMaxValue() );
+		MorphologyUtils.morphologyInPlace( source, interval, strel, maxVal, false, numThreads );
 	}
 
 	/**
@@ -932,6 +971,9 @@ public class Erosion
 	 * {@link Comparable}) than any of the value found in the source image. This
 	 * normally unseen parameter is required to operate on
 	 * <code>T extends {@link Comparable} & {@link Type}</code>.
+	 * <p>
+	 * Only a rolling buffer of the original values is allocated, spanning the
+	 * structuring element extent along the last dimension of the interval.
 	 *
 	 * @param source
 	 *            the source image.
@@ -954,15 +996,68 @@ public class Erosion
 	{
 
 		final ExtendedRandomAccessibleInterval< T, RandomAccessibleInterval< T >> extended = Views.extendValue( source, maxVal );
+		MorphologyUtils.morphologyInPlace( extended, interval, strel, maxVal, false, numThreads );
+	}
 
-		final ImgFactory< T > factory = MorphologyUtils.getSuitableFactory( interval, maxVal );
-		final Img< T > img = factory.create( interval, maxVal );
-		final long[] min = new long[ interval.numDimensions() ];
-		interval.min( min );
-		final IntervalView< T > translated = Views.translate( img, min );
+	/**
+	 * Performs the erosion morphological operation, on a {@link RealType}
+	 * {@link Img} using a grayscale structuring element.
+	 * <p>
+	 * Contrary to flat structuring elements, the weights of a
+	 * {@link GrayscaleStructuringElement} are subtracted from the source
+	 * values before taking the minimum. Separable and paraboloid structuring
+	 * elements are processed one dimension at a time.
+	 * <p>
+	 * The result image has the same dimensions that of the source image. Its
+	 * values are clamped to the range of the type.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param strel
+	 *            the grayscale structuring element.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation.
+	 * @param <T>
+	 *            the type of the source image and the erosion result. Must be
+	 *            a sub-type of <code>T extends {@link RealType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the source.
+	 */
+	public static < T extends RealType< T > > Img< T > erode( final Img< T > source, final GrayscaleStructuringElement strel, final int numThreads )
+	{
+		final Img< T > target = source.factory().create( source, source.firstElement().copy() );
+		final T maxVal = source.firstElement().createVariable();
+		maxVal.setReal( maxVal.getMaxValue() );
+		final ExtendedRandomAccessibleInterval< T, Img< T >> extended = Views.extendValue( source, maxVal );
+		erode( extended, target, strel, numThreads );
+		return target;
+	}
 
-		erode( extended, translated, strel, maxVal, numThreads );
-		MorphologyUtils.copy( translated, extended, numThreads );
+	/**
+	 * Performs the erosion morphological operation, using a grayscale
+	 * structuring element, and writes the result on a specified target.
+	 * <p>
+	 * <b>Careful: Target must point to a different structure than source.</b>
+	 * <p>
+	 * It is the caller responsibility to ensure that the source is sufficiently
+	 * padded to properly cover the target range plus the structuring element
+	 * size. For paraboloid structuring elements, whose support is unbounded,
+	 * only the source values within the target interval are considered.
+	 *
+	 * @param source
+	 *            the {@link RandomAccessible} to operate on.
+	 * @param target
+	 *            the {@link RandomAccessibleInterval} to write the results on.
+	 * @param strel
+	 *            the grayscale structuring element.
+	 * @param numThreads
+	 *            the number of threads to use for calculation.
+	 * @param <T>
+	 *            the type of the source and the result. Must extends
+	 *            <code>RealType</code>.
+	 */
+	public static < T extends RealType< T > > void erode( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final GrayscaleStructuringElement strel, final int numThreads )
+	{
+		GrayscaleMorphology.erode( source, target, strel, numThreads );
 	}
 
 	/**
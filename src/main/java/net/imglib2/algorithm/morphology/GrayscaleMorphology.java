@@ -0,0 +1,301 @@
+package net.imglib2.algorithm.morphology;
+
+import java.util.Vector;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.multithreading.Chunk;
+import net.imglib2.multithreading.SimpleMultiThreading;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Implementation of the dilation and erosion by a
+ * {@link GrayscaleStructuringElement}.
+ * <p>
+ * Table structuring elements are processed by brute force, in parallel over
+ * chunks of the target. Decomposable structuring elements are processed by 1D
+ * passes over a <code>double</code> buffer covering the target, in parallel
+ * over lines.
+ */
+final class GrayscaleMorphology
+{
+
+	private GrayscaleMorphology()
+	{}
+
+	static < T extends RealType< T > > void dilate( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final GrayscaleStructuringElement strel, final int numThreads )
+	{
+		apply( source, target, strel, true, numThreads );
+	}
+
+	static < T extends RealType< T > > void erode( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final GrayscaleStructuringElement strel, final int numThreads )
+	{
+		apply( source, target, strel, false, numThreads );
+	}
+
+	private static < T extends RealType< T > > void apply( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final GrayscaleStructuringElement strel, final boolean dilate, final int numThreads )
+	{
+		if ( strel.numDimensions() != target.numDimensions() )
+		{
+			throw new IllegalArgumentException( "Structuring element dimensionality (" + strel.numDimensions() + ") does not match target dimensionality (" + target.numDimensions() + ")." );
+		}
+		if ( strel.isDecomposable() )
+		{
+			applyDecomposed( source, target, strel, dilate, numThreads );
+		}
+		else
+		{
+			applyTable( source, target, strel.getOffsets(), strel.getWeights(), dilate, numThreads );
+		}
+	}
+
+	private static < T extends RealType< T > > void applyTable( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final long[][] offsets, final double[] weights, final boolean dilate, final int numThreads )
+	{
+		final IterableInterval< T > iterable = Views.iterable( target );
+		final T type = Util.getTypeFromInterval( target );
+		final double minVal = type.getMinValue();
+		final double maxVal = type.getMaxValue();
+		final int n = target.numDimensions();
+		// Dilation reads at x - y, erosion at x + y.
+		final int sign = dilate ? -1 : 1;
+
+		final Vector< Chunk > chunks = SimpleMultiThreading.divideIntoChunks( iterable.size(), numThreads );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		for ( int i = 0; i < threads.length; i++ )
+		{
+			final Chunk chunk = chunks.get( i );
+			threads[ i ] = new Thread( "Morphology grayscale thread " + i )
+			{
+				@Override
+				public void run()
+				{
+					final Cursor< T > cursor = iterable.localizingCursor();
+					cursor.jumpFwd( chunk.getStartPosition() );
+					final RandomAccess< T > ra = source.randomAccess();
+					final long[] position = new long[ n ];
+					final long[] neighbor = new long[ n ];
+
+					for ( long step = 0; step < chunk.getLoopSize(); step++ )
+					{
+						cursor.fwd();
+						cursor.localize( position );
+						double best = dilate ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+						for ( int k = 0; k < offsets.length; k++ )
+						{
+							final long[] offset = offsets[ k ];
+							for ( int d = 0; d < n; d++ )
+							{
+								neighbor[ d ] = position[ d ] + sign * offset[ d ];
+							}
+							ra.setPosition( neighbor );
+							final double v = ra.get().getRealDouble();
+							if ( dilate )
+							{
+								best = Math.max( best, v + weights[ k ] );
+							}
+							else
+							{
+								best = Math.min( best, v - weights[ k ] );
+							}
+						}
+						cursor.get().setReal( clamp( best, minVal, maxVal ) );
+					}
+				}
+			};
+		}
+
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+
+	private static < T extends RealType< T > > void applyDecomposed( final RandomAccessible< T > source, final RandomAccessibleInterval< T > target, final GrayscaleStructuringElement strel, final boolean dilate, final int numThreads )
+	{
+		final int n = target.numDimensions();
+
+		/*
+		 * The buffer covers the target, plus the half-size of each profile for
+		 * separable elements, so that each pass reads all it needs from the
+		 * previous one. Paraboloids have an unbounded support, so we limit
+		 * them to the target interval.
+		 */
+
+		final long[] border = new long[ n ];
+		if ( strel.getKind() == GrayscaleStructuringElement.Kind.SEPARABLE )
+		{
+			final double[][] profiles = strel.getProfiles();
+			for ( int d = 0; d < n; d++ )
+			{
+				border[ d ] = profiles[ d ].length / 2;
+			}
+		}
+		final Interval bufferInterval = Intervals.expand( target, border );
+		final long[] dimensions = new long[ n ];
+		bufferInterval.dimensions( dimensions );
+		final DoubleType doubleType = new DoubleType();
+		final Img< DoubleType > buffer = MorphologyUtils.getSuitableFactory( dimensions, doubleType ).create( dimensions, doubleType );
+
+		// Copy source to buffer.
+		final RandomAccessibleInterval< T > sourceView = Views.zeroMin( Views.interval( source, bufferInterval ) );
+		final Cursor< DoubleType > bufferCursor = buffer.localizingCursor();
+		final RandomAccess< T > sourceRA = sourceView.randomAccess();
+		while ( bufferCursor.hasNext() )
+		{
+			bufferCursor.fwd();
+			sourceRA.setPosition( bufferCursor );
+			bufferCursor.get().set( sourceRA.get().getRealDouble() );
+		}
+
+		// 1D passes.
+		for ( int d = 0; d < n; d++ )
+		{
+			processLines( buffer, dimensions, d, strel, dilate, numThreads );
+		}
+
+		// Copy back to target.
+		final T type = Util.getTypeFromInterval( target );
+		final double minVal = type.getMinValue();
+		final double maxVal = type.getMaxValue();
+		final long[] bufferMin = new long[ n ];
+		bufferInterval.min( bufferMin );
+		final RandomAccessibleInterval< DoubleType > bufferView = Views.interval( Views.translate( buffer, bufferMin ), target );
+		final Cursor< T > targetCursor = Views.iterable( target ).localizingCursor();
+		final RandomAccess< DoubleType > bufferRA = bufferView.randomAccess();
+		while ( targetCursor.hasNext() )
+		{
+			targetCursor.fwd();
+			bufferRA.setPosition( targetCursor );
+			targetCursor.get().setReal( clamp( bufferRA.get().get(), minVal, maxVal ) );
+		}
+	}
+
+	private static void processLines( final Img< DoubleType > buffer, final long[] dimensions, final int d, final GrayscaleStructuringElement strel, final boolean dilate, final int numThreads )
+	{
+		final int n = dimensions.length;
+		final int length = ( int ) dimensions[ d ];
+		final long[] lineDims = dimensions.clone();
+		lineDims[ d ] = 1;
+		long numLines = 1;
+		for ( int i = 0; i < n; i++ )
+		{
+			numLines *= lineDims[ i ];
+		}
+
+		final Vector< Chunk > chunks = SimpleMultiThreading.divideIntoChunks( numLines, numThreads );
+		final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+		for ( int i = 0; i < threads.length; i++ )
+		{
+			final Chunk chunk = chunks.get( i );
+			threads[ i ] = new Thread( "Morphology grayscale lines thread " + i )
+			{
+				@Override
+				public void run()
+				{
+					final RandomAccess< DoubleType > ra = buffer.randomAccess();
+					final long[] position = new long[ n ];
+					final double[] f = new double[ length ];
+					final double[] g = new double[ length ];
+					final int[] v = new int[ length ];
+					final double[] z = new double[ length + 1 ];
+
+					final long start = chunk.getStartPosition();
+					final long end = start + chunk.getLoopSize();
+					for ( long line = start; line < end; line++ )
+					{
+						IntervalIndexer.indexToPosition( line, lineDims, position );
+						ra.setPosition( position );
+						for ( int j = 0; j < length; j++ )
+						{
+							f[ j ] = ra.get().get();
+							ra.fwd( d );
+						}
+
+						if ( strel.getKind() == GrayscaleStructuringElement.Kind.PARABOLOID )
+						{
+							parabolic1D( f, g, v, z, length, strel.getCurvatures()[ d ], dilate );
+						}
+						else
+						{
+							profile1D( f, g, length, strel.getProfiles()[ d ], dilate );
+						}
+
+						ra.setPosition( position );
+						for ( int j = 0; j < length; j++ )
+						{
+							ra.get().set( g[ j ] );
+							ra.fwd( d );
+						}
+					}
+				}
+			};
+		}
+
+		SimpleMultiThreading.startAndJoin( threads );
+	}
+
+	/**
+	 * 1D dilation or erosion by a sampled profile. Samples outside the line are
+	 * ignored.
+	 */
+	static void profile1D( final double[] f, final double[] g, final int length, final double[] profile, final boolean dilate )
+	{
+		final int r = profile.length / 2;
+		for ( int i = 0; i < length; i++ )
+		{
+			double best = dilate ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+			final int jmin = Math.max( -r, dilate ? i - length + 1 : -i );
+			final int jmax = Math.min( r, dilate ? i : length - 1 - i );
+			for ( int j = jmin; j <= jmax; j++ )
+			{
+				if ( dilate )
+				{
+					best = Math.max( best, f[ i - j ] + profile[ j + r ] );
+				}
+				else
+				{
+					best = Math.min( best, f[ i + j ] - profile[ j + r ] );
+				}
+			}
+			g[ i ] = best;
+		}
+	}
+
+	/**
+	 * 1D dilation or erosion by the parabola <code>-c y<sup>2</sup></code>,
+	 * through the lower envelope of parabolas of
+	 * {@link DistanceTransform#transform1D(double[], double[], int[], double[], int, double)}
+	 * .
+	 */
+	static void parabolic1D( final double[] f, final double[] g, final int[] v, final double[] z, final int length, final double c, final boolean dilate )
+	{
+		if ( dilate )
+		{
+			for ( int i = 0; i < length; i++ )
+			{
+				f[ i ] = -f[ i ];
+			}
+			DistanceTransform.transform1D( f, g, v, z, length, c );
+			for ( int i = 0; i < length; i++ )
+			{
+				g[ i ] = -g[ i ];
+			}
+		}
+		else
+		{
+			DistanceTransform.transform1D( f, g, v, z, length, c );
+		}
+	}
+
+	private static final double clamp( final double value, final double minVal, final double maxVal )
+	{
+		return Math.max( minVal, Math.min( maxVal, value ) );
+	}
+}
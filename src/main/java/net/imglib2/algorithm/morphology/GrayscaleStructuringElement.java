@@ -0,0 +1,339 @@
+package net.imglib2.algorithm.morphology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.algorithm.neighborhood.Shape;
+
+/**
+ * A grayscale (non-flat) structuring element, for use with {@link Dilation},
+ * {@link Erosion} and {@link TopHat}.
+ * <p>
+ * Contrary to the flat structuring elements given as a {@link Shape}, each
+ * element of a grayscale structuring element carries a weight, that is added
+ * to the source values when dilating and subtracted from them when eroding:
+ * <ul>
+ * <li>dilation: <code>(f &oplus; b)(x) = max<sub>y</sub> f(x - y) + b(y)</code>
+ * <li>erosion: <code>(f &ominus; b)(x) = min<sub>y</sub> f(x + y) - b(y)</code>
+ * </ul>
+ * A structuring element is either a plain table of offsets and weights,
+ * processed by brute force, or one of two decomposable forms that are
+ * processed dimension by dimension:
+ * <ul>
+ * <li>a <b>separable</b> element, whose weight is the sum of one 1D profile
+ * per dimension. Its cost is the sum of the profile lengths instead of their
+ * product.
+ * <li>a <b>paraboloid</b>, <code>b(y) = - &Sigma; c<sub>d</sub>
+ * y<sub>d</sub><sup>2</sup></code>, with unbounded support. It is processed
+ * with a lower envelope of parabolas, and its cost does not depend on the
+ * curvature at all. A paraboloid of curvature <code>1 / (2R)</code> is the
+ * usual fast approximation of a rolling ball of radius <code>R</code>.
+ * </ul>
+ */
+public class GrayscaleStructuringElement
+{
+
+	static enum Kind
+	{
+		TABLE, SEPARABLE, PARABOLOID;
+	}
+
+	private final Kind kind;
+
+	private final int n;
+
+	private long[][] offsets;
+
+	private double[] weights;
+
+	private final double[][] profiles;
+
+	private final double[] curvatures;
+
+	private GrayscaleStructuringElement( final Kind kind, final int n, final long[][] offsets, final double[] weights, final double[][] profiles, final double[] curvatures )
+	{
+		this.kind = kind;
+		this.n = n;
+		this.offsets = offsets;
+		this.weights = weights;
+		this.profiles = profiles;
+		this.curvatures = curvatures;
+	}
+
+	/*
+	 * STATIC FACTORIES
+	 */
+
+	/**
+	 * Creates a grayscale structuring element from a table of offsets and
+	 * weights.
+	 *
+	 * @param offsets
+	 *            the offsets of the elements, relative to the center. All
+	 *            offsets must have the same length.
+	 * @param weights
+	 *            the weight of each element.
+	 * @return a new grayscale structuring element.
+	 */
+	public static GrayscaleStructuringElement fromTable( final long[][] offsets, final double[] weights )
+	{
+		if ( offsets.length != weights.length )
+		{
+			throw new IllegalArgumentException( "Got " + offsets.length + " offsets but " + weights.length + " weights." );
+		}
+		if ( offsets.length == 0 )
+		{
+			throw new IllegalArgumentException( "A structuring element must have at least one element." );
+		}
+		final int n = offsets[ 0 ].length;
+		final long[][] o = new long[ offsets.length ][];
+		for ( int i = 0; i < offsets.length; i++ )
+		{
+			if ( offsets[ i ].length != n )
+			{
+				throw new IllegalArgumentException( "All offsets must have the same dimensionality." );
+			}
+			o[ i ] = offsets[ i ].clone();
+		}
+		return new GrayscaleStructuringElement( Kind.TABLE, n, o, weights.clone(), null, null );
+	}
+
+	/**
+	 * Creates the upper half of a ball of the specified radius, such that the
+	 * weight at the center is 0 and the weight at distance <code>r</code> is
+	 * <code>sqrt(R<sup>2</sup> - r<sup>2</sup>) - R</code>. This is the
+	 * structuring element of the rolling-ball background subtraction.
+	 * <p>
+	 * A ball is not decomposable, and is processed by brute force. See
+	 * {@link #paraboloid(double, int)} for a fast approximation.
+	 *
+	 * @param radius
+	 *            the radius of the ball.
+	 * @param n
+	 *            the dimensionality of the ball.
+	 * @return a new grayscale structuring element.
+	 */
+	public static GrayscaleStructuringElement ball( final double radius, final int n )
+	{
+		final long r = ( long ) Math.floor( radius );
+		final double r2 = radius * radius;
+		final List< long[] > offsetList = new ArrayList< long[] >();
+		final List< Double > weightList = new ArrayList< Double >();
+		final long[] position = new long[ n ];
+		Arrays.fill( position, -r );
+		boolean done = n == 0;
+		while ( !done )
+		{
+			double d2 = 0;
+			for ( int d = 0; d < n; d++ )
+			{
+				d2 += position[ d ] * position[ d ];
+			}
+			if ( d2 <= r2 )
+			{
+				offsetList.add( position.clone() );
+				weightList.add( Math.sqrt( r2 - d2 ) - radius );
+			}
+
+			done = true;
+			for ( int d = 0; d < n; d++ )
+			{
+				if ( ++position[ d ] <= r )
+				{
+					done = false;
+					break;
+				}
+				position[ d ] = -r;
+			}
+		}
+
+		final double[] weights = new double[ weightList.size() ];
+		for ( int i = 0; i < weights.length; i++ )
+		{
+			weights[ i ] = weightList.get( i );
+		}
+		return new GrayscaleStructuringElement( Kind.TABLE, n, offsetList.toArray( new long[ offsetList.size() ][] ), weights, null, null );
+	}
+
+	/**
+	 * Creates an isotropic paraboloid <code>b(y) = - c |y|<sup>2</sup></code>.
+	 *
+	 * @param curvature
+	 *            the curvature <code>c</code> of the paraboloid. Must be
+	 *            strictly positive.
+	 * @param n
+	 *            the dimensionality of the paraboloid.
+	 * @return a new grayscale structuring element.
+	 */
+	public static GrayscaleStructuringElement paraboloid( final double curvature, final int n )
+	{
+		final double[] curvatures = new double[ n ];
+		Arrays.fill( curvatures, curvature );
+		return paraboloid( curvatures );
+	}
+
+	/**
+	 * Creates an anisotropic paraboloid <code>b(y) = - &Sigma;
+	 * c<sub>d</sub> y<sub>d</sub><sup>2</sup></code>.
+	 *
+	 * @param curvatures
+	 *            the curvature in each dimension. Must be strictly positive.
+	 * @return a new grayscale structuring element.
+	 */
+	public static GrayscaleStructuringElement paraboloid( final double[] curvatures )
+	{
+		for ( int d = 0; d < curvatures.length; d++ )
+		{
+			if ( curvatures[ d ] <= 0 )
+			{
+				throw new IllegalArgumentException( "Paraboloid curvatures must be strictly positive, got " + curvatures[ d ] + " in dimension " + d + "." );
+			}
+		}
+		return new GrayscaleStructuringElement( Kind.PARABOLOID, curvatures.length, null, null, null, curvatures.clone() );
+	}
+
+	/**
+	 * Creates a separable structuring element, whose weight at offset
+	 * <code>y</code> is <code>&Sigma; p<sub>d</sub>(y<sub>d</sub>)</code>.
+	 *
+	 * @param profiles
+	 *            the 1D profile for each dimension. Each profile must have an
+	 *            odd length <code>2r+1</code>, and its element <code>r</code>
+	 *            is the weight at offset 0.
+	 * @return a new grayscale structuring element.
+	 */
+	public static GrayscaleStructuringElement separable( final double[]... profiles )
+	{
+		final double[][] p = new double[ profiles.length ][];
+		for ( int d = 0; d < profiles.length; d++ )
+		{
+			if ( profiles[ d ].length % 2 != 1 )
+			{
+				throw new IllegalArgumentException( "Profiles must have an odd length, got " + profiles[ d ].length + " in dimension " + d + "." );
+			}
+			p[ d ] = profiles[ d ].clone();
+		}
+		return new GrayscaleStructuringElement( Kind.SEPARABLE, profiles.length, null, null, p, null );
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * @return the dimensionality of this structuring element.
+	 */
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * @return <code>true</code> if this structuring element is processed one
+	 *         dimension at a time.
+	 */
+	public boolean isDecomposable()
+	{
+		return kind != Kind.TABLE;
+	}
+
+	/**
+	 * Returns the offsets of the elements of this structuring element. For a
+	 * separable element, the table is expanded on first call.
+	 *
+	 * @return the offsets, or <code>null</code> for a paraboloid, whose
+	 *         support is unbounded.
+	 */
+	public long[][] getOffsets()
+	{
+		expand();
+		return offsets;
+	}
+
+	/**
+	 * Returns the weights of the elements of this structuring element, in the
+	 * order of {@link #getOffsets()}.
+	 *
+	 * @return the weights, or <code>null</code> for a paraboloid, whose
+	 *         support is unbounded.
+	 */
+	public double[] getWeights()
+	{
+		expand();
+		return weights;
+	}
+
+	Kind getKind()
+	{
+		return kind;
+	}
+
+	double[][] getProfiles()
+	{
+		return profiles;
+	}
+
+	double[] getCurvatures()
+	{
+		return curvatures;
+	}
+
+	@Override
+	public String toString()
+	{
+		switch ( kind )
+		{
+		case PARABOLOID:
+			return "Grayscale paraboloid, curvatures = " + Arrays.toString( curvatures );
+		case SEPARABLE:
+			final StringBuilder str = new StringBuilder( "Grayscale separable strel, profile sizes = [" );
+			for ( int d = 0; d < n; d++ )
+			{
+				str.append( profiles[ d ].length );
+				if ( d < n - 1 )
+				{
+					str.append( ", " );
+				}
+			}
+			return str.append( ']' ).toString();
+		default:
+			return "Grayscale strel, " + offsets.length + " elements in " + n + "D";
+		}
+	}
+
+	private synchronized void expand()
+	{
+		if ( offsets != null || kind != Kind.SEPARABLE )
+		{
+			return;
+		}
+		int size = 1;
+		for ( int d = 0; d < n; d++ )
+		{
+			size *= profiles[ d ].length;
+		}
+		final long[][] o = new long[ size ][ n ];
+		final double[] w = new double[ size ];
+		final int[] index = new int[ n ];
+		for ( int i = 0; i < size; i++ )
+		{
+			for ( int d = 0; d < n; d++ )
+			{
+				final int r = profiles[ d ].length / 2;
+				o[ i ][ d ] = index[ d ] - r;
+				w[ i ] += profiles[ d ][ index[ d ] ];
+			}
+			for ( int d = 0; d < n; d++ )
+			{
+				if ( ++index[ d ] < profiles[ d ].length )
+				{
+					break;
+				}
+				index[ d ] = 0;
+			}
+		}
+		offsets = o;
+		weights = w;
+	}
+}
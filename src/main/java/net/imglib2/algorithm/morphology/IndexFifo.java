@@ -0,0 +1,79 @@
+package net.imglib2.algorithm.morphology;
+
+/**
+ * A growable first-in first-out queue of <code>long</code> pixel indices,
+ * backed by a primitive ring buffer so that no boxing happens while
+ * propagating a front.
+ */
+final class IndexFifo
+{
+	private long[] data;
+
+	private int head;
+
+	private int size;
+
+	IndexFifo()
+	{
+		this( 1024 );
+	}
+
+	IndexFifo( final int initialCapacity )
+	{
+		data = new long[ Math.max( 16, initialCapacity ) ];
+		head = 0;
+		size = 0;
+	}
+
+	void push( final long index )
+	{
+		if ( size == data.length )
+		{
+			grow();
+		}
+		int tail = head + size;
+		if ( tail >= data.length )
+		{
+			tail -= data.length;
+		}
+		data[ tail ] = index;
+		++size;
+	}
+
+	long pop()
+	{
+		final long index = data[ head ];
+		if ( ++head == data.length )
+		{
+			head = 0;
+		}
+		--size;
+		return index;
+	}
+
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	void clear()
+	{
+		head = 0;
+		size = 0;
+	}
+
+	private void grow()
+	{
+		final long[] newData = new long[ data.length * 2 ];
+		final int firstPart = data.length - head;
+		System.arraycopy( data, head, newData, 0, firstPart );
+		System.arraycopy( data, 0, newData, firstPart, head );
+		data = newData;
+		head = 0;
+	}
+}
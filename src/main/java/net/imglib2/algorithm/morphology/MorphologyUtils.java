@@ -6,12 +6,16 @@ import net.imglib2.Cursor;
 import net.imglib2.Dimensions;
 import net.imglib2.EuclideanSpace;
 import net.imglib2.FinalDimensions;
+import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.BorderSplit;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.NeighborhoodGatherer;
+import net.imglib2.algorithm.neighborhood.OffsetTable;
 import net.imglib2.algorithm.neighborhood.Shape;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
@@ -27,6 +31,7 @@ import net.imglib2.multithreading.SimpleMultiThreading;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.Type;
 import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.operators.Sub;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.Util;
@@ -36,6 +41,11 @@ import net.imglib2.view.Views;
 public class MorphologyUtils
 {
 
+	/**
+	 * Minimal number of pixels processed at once by in-place operations.
+	 */
+	private static final long IN_PLACE_BLOCK_SIZE = 1 << 16;
+
 	/**
 	 * Static util to compute the final image dimensions and required offset
 	 * when performing a full dilation with the specified strel.
@@ -374,6 +384,29 @@ public class MorphologyUtils
 		return a.get().createVariable();
 	}
 
+	/**
+	 * Returns a gatherer over the interior of a split, if the pixel type is a
+	 * primitive real type backed by an array image, and if the structuring
+	 * element is small enough to be gathered from an offset table. Returns
+	 * <code>null</code> if the neighborhoods must be iterated.
+	 *
+	 * @param split
+	 * @param strel
+	 * @param type
+	 *            an instance of the pixel type.
+	 * @return a new gatherer, for a single thread, or <code>null</code>.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	static NeighborhoodGatherer< ? > createGatherer( final BorderSplit< ? > split, final Shape strel, final Object type )
+	{
+		if ( !( type instanceof RealType ) || null == split.getInterior() || !OffsetTable.fitsInTable( split.getSpan() ) )
+		{
+			return null;
+		}
+		final NeighborhoodGatherer< ? > gatherer = new NeighborhoodGatherer( ( RandomAccessible ) split.getInteriorSource(), strel );
+		return gatherer.isDirect() ? gatherer : null;
+	}
+
 	public static final Neighborhood< BitType > getNeighborhood( final Shape shape, final EuclideanSpace space )
 	{
 		final int numDims = space.numDimensions();
@@ -468,6 +501,105 @@ public class MorphologyUtils
 		return str.toString();
 	}
 
+	/**
+	 * Performs a dilation or an erosion in place, without copying the whole
+	 * processed interval.
+	 * <p>
+	 * The interval is processed in blocks of consecutive slices along its last
+	 * dimension, and the results are written directly in the source. A rolling
+	 * buffer keeps the original values of the slices still needed by the
+	 * structuring element, so that it never reads already overwritten pixels.
+	 * The buffer spans the structuring element extent along the last
+	 * dimension, plus the block size, and the source slices plus the
+	 * structuring element extent in the other dimensions.
+	 *
+	 * @param source
+	 *            the source, sufficiently padded to cover the interval plus
+	 *            the shape size. Results are written in it.
+	 * @param interval
+	 *            the interval to process.
+	 * @param strel
+	 *            the structuring element.
+	 * @param extremum
+	 *            the min value for dilation, max value for erosion.
+	 * @param dilate
+	 *            if <code>true</code> a dilation is performed, an erosion
+	 *            otherwise.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation.
+	 */
+	static < T extends Type< T > & Comparable< T > > void morphologyInPlace( final RandomAccessible< T > source, final Interval interval, final Shape strel, final T extremum, final boolean dilate, final int numThreads )
+	{
+		final int n = interval.numDimensions();
+		if ( n == 0 )
+		{
+			return;
+		}
+		final int z = n - 1;
+		final Neighborhood< BitType > neighborhood = getNeighborhood( strel, interval );
+
+		/*
+		 * Block size: enough slices to keep the threads busy, but not more.
+		 */
+
+		long sliceSize = 1;
+		for ( int d = 0; d < z; d++ )
+		{
+			sliceSize *= interval.dimension( d );
+		}
+		final long blockSize = Math.max( 1, Math.min( interval.dimension( z ), IN_PLACE_BLOCK_SIZE / Math.max( 1, sliceSize ) ) );
+		final long before = -neighborhood.min( z );
+		final long after = neighborhood.max( z );
+		final long depth = before + after + blockSize;
+
+		/*
+		 * Rolling buffer. Slice s of the source is stored in the buffer slice s
+		 * mod depth, through a periodic extension.
+		 */
+
+		final long[] bufferMin = new long[ n ];
+		final long[] bufferMax = new long[ n ];
+		final long[] bufferDims = new long[ n ];
+		for ( int d = 0; d < z; d++ )
+		{
+			bufferMin[ d ] = interval.min( d ) + neighborhood.min( d );
+			bufferMax[ d ] = interval.max( d ) + neighborhood.max( d );
+			bufferDims[ d ] = bufferMax[ d ] - bufferMin[ d ] + 1;
+		}
+		bufferDims[ z ] = depth;
+		final Img< T > buffer = getSuitableFactory( bufferDims, extremum ).create( bufferDims, extremum );
+		final RandomAccessible< T > rolling = Views.extendPeriodic( Views.translate( buffer, bufferMin ) );
+
+		long loaded = interval.min( z ) - before;
+		for ( long start = interval.min( z ); start <= interval.max( z ); start += blockSize )
+		{
+			final long end = Math.min( interval.max( z ), start + blockSize - 1 );
+
+			// Load the original slices still missing from the buffer.
+			bufferMin[ z ] = loaded;
+			bufferMax[ z ] = end + after;
+			copy2( source, Views.interval( rolling, bufferMin, bufferMax ), numThreads );
+			loaded = end + after + 1;
+
+			// Process the block, writing in the source.
+			final long[] min = new long[ n ];
+			final long[] max = new long[ n ];
+			interval.min( min );
+			interval.max( max );
+			min[ z ] = start;
+			max[ z ] = end;
+			final IntervalView< T > target = Views.interval( source, new FinalInterval( min, max ) );
+			if ( dilate )
+			{
+				Dilation.dilate( rolling, target, strel, extremum, numThreads );
+			}
+			else
+			{
+				Erosion.erode( rolling, target, strel, extremum, numThreads );
+			}
+		}
+	}
+
 	/**
 	 * Does A = A - B. Writes the results in A.
 	 *
@@ -0,0 +1,610 @@
+package net.imglib2.algorithm.morphology;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalDimensions;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.DiamondShape;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.img.Img;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Geodesic morphological reconstruction and the operators built on top of it.
+ * <p>
+ * Reconstruction is computed with the hybrid algorithm of L. Vincent,
+ * <i>Morphological grayscale reconstruction in image analysis: applications
+ * and efficient algorithms</i>, IEEE Trans. Image Processing 2(2), 1993. A
+ * forward and a backward raster scan propagate values along the causal and
+ * anti-causal halves of the neighborhood, and a FIFO queue then finishes the
+ * propagation from the pixels that can still change. Each pixel enters the
+ * queue a bounded number of times, so the cost is linear in the number of
+ * pixels instead of proportional to the number of iterations of a naive
+ * dilation-until-stability loop.
+ * <p>
+ * The connectivity is given as a {@link Shape}, typically a
+ * {@link RectangleShape} of radius 1 (8-connectivity in 2D, 26 in 3D) or a
+ * {@link DiamondShape} of radius 1 (4-connectivity in 2D, 6 in 3D). The shape
+ * must be symmetric with respect to its center. The center pixel itself is
+ * ignored if the shape contains it.
+ */
+public class Reconstruction
+{
+
+	/**
+	 * Performs the morphological reconstruction by dilation of a marker image
+	 * under a mask image. The marker is dilated repeatedly, each time being
+	 * clipped by the mask, until stability.
+	 * <p>
+	 * The marker is expected to be lower than or equal to the mask everywhere.
+	 * Pixels where this is not the case are clipped to the mask value.
+	 *
+	 * @param marker
+	 *            the marker image. Is not modified.
+	 * @param mask
+	 *            the mask image. Must be defined over the interval of the
+	 *            marker.
+	 * @param shape
+	 *            the connectivity, as a symmetric {@link Shape}.
+	 * @param <T>
+	 *            the type of the images. Must be a sub-type of
+	 *            <code>T extends {@link RealType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the marker.
+	 */
+	public static < T extends RealType< T > > Img< T > reconstructionByDilation( final Img< T > marker, final RandomAccessible< T > mask, final Shape shape )
+	{
+		final Img< T > target = marker.copy();
+		reconstructionByDilationInPlace( target, mask, shape );
+		return target;
+	}
+
+	/**
+	 * Performs the morphological reconstruction by dilation of a marker image
+	 * under a mask image, writing the result in the marker image.
+	 *
+	 * @param marker
+	 *            the marker image. Its interval defines the domain of the
+	 *            reconstruction. Is overwritten by the result.
+	 * @param mask
+	 *            the mask image. Must be defined over the interval of the
+	 *            marker.
+	 * @param shape
+	 *            the connectivity, as a symmetric {@link Shape}.
+	 * @param <T>
+	 *            the type of the images. Must be a sub-type of
+	 *            <code>T extends {@link RealType}</code>.
+	 * @see #reconstructionByDilation(Img, RandomAccessible, Shape)
+	 */
+	public static < T extends RealType< T > > void reconstructionByDilationInPlace( final RandomAccessibleInterval< T > marker, final RandomAccessible< T > mask, final Shape shape )
+	{
+		reconstruct( marker, mask, shape, true );
+	}
+
+	/**
+	 * Performs the morphological reconstruction by erosion of a marker image
+	 * above a mask image. The marker is eroded repeatedly, each time being
+	 * clipped by the mask, until stability.
+	 * <p>
+	 * The marker is expected to be greater than or equal to the mask
+	 * everywhere. Pixels where this is not the case are clipped to the mask
+	 * value.
+	 *
+	 * @param marker
+	 *            the marker image. Is not modified.
+	 * @param mask
+	 *            the mask image. Must be defined over the interval of the
+	 *            marker.
+	 * @param shape
+	 *            the connectivity, as a symmetric {@link Shape}.
+	 * @param <T>
+	 *            the type of the images. Must be a sub-type of
+	 *            <code>T extends {@link RealType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the marker.
+	 */
+	public static < T extends RealType< T > > Img< T > reconstructionByErosion( final Img< T > marker, final RandomAccessible< T > mask, final Shape shape )
+	{
+		final Img< T > target = marker.copy();
+		reconstructionByErosionInPlace( target, mask, shape );
+		return target;
+	}
+
+	/**
+	 * Performs the morphological reconstruction by erosion of a marker image
+	 * above a mask image, writing the result in the marker image.
+	 *
+	 * @param marker
+	 *            the marker image. Its interval defines the domain of the
+	 *            reconstruction. Is overwritten by the result.
+	 * @param mask
+	 *            the mask image. Must be defined over the interval of the
+	 *            marker.
+	 * @param shape
+	 *            the connectivity, as a symmetric {@link Shape}.
+	 * @param <T>
+	 *            the type of the images. Must be a sub-type of
+	 *            <code>T extends {@link RealType}</code>.
+	 * @see #reconstructionByErosion(Img, RandomAccessible, Shape)
+	 */
+	public static < T extends RealType< T > > void reconstructionByErosionInPlace( final RandomAccessibleInterval< T > marker, final RandomAccessible< T > mask, final Shape shape )
+	{
+		reconstruct( marker, mask, shape, false );
+	}
+
+	/**
+	 * Computes the h-maxima transform of the source image: all the regional
+	 * maxima whose height (dynamic) is lower than or equal to <code>h</code>
+	 * are suppressed. This is the reconstruction by dilation of
+	 * <code>source - h</code> under <code>source</code>.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param h
+	 *            the height threshold.
+	 * @param shape
+	 *            the connectivity, as a symmetric {@link Shape}.
+	 * @param <T>
+	 *            the type of the source image and of the result. Must be a
+	 *            sub-type of <code>T extends {@link RealType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the source.
+	 */
+	public static < T extends RealType< T > > Img< T > hMaxima( final Img< T > source, final double h, final Shape shape )
+	{
+		final Img< T > marker = source.copy();
+		final double minVal = marker.firstElement().getMinValue();
+		for ( final T t : marker )
+		{
+			t.setReal( Math.max( minVal, t.getRealDouble() - h ) );
+		}
+		reconstructionByDilationInPlace( marker, source, shape );
+		return marker;
+	}
+
+	/**
+	 * Computes the h-minima transform of the source image: all the regional
+	 * minima whose depth (dynamic) is lower than or equal to <code>h</code>
+	 * are suppressed. This is the reconstruction by erosion of
+	 * <code>source + h</code> above <code>source</code>.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param h
+	 *            the depth threshold.
+	 * @param shape
+	 *            the connectivity, as a symmetric {@link Shape}.
+	 * @param <T>
+	 *            the type of the source image and of the result. Must be a
+	 *            sub-type of <code>T extends {@link RealType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the source.
+	 */
+	public static < T extends RealType< T > > Img< T > hMinima( final Img< T > source, final double h, final Shape shape )
+	{
+		final Img< T > marker = source.copy();
+		final double maxVal = marker.firstElement().getMaxValue();
+		for ( final T t : marker )
+		{
+			t.setReal( Math.min( maxVal, t.getRealDouble() + h ) );
+		}
+		reconstructionByErosionInPlace( marker, source, shape );
+		return marker;
+	}
+
+	/**
+	 * Fills the holes of the source image. A hole is a regional minimum that
+	 * is not connected to the image border. For binary images, this fills all
+	 * the background regions that are enclosed by foreground. For grayscale
+	 * images, this fills the basins that do not reach the border up to the
+	 * level of their lowest pass.
+	 * <p>
+	 * This is the reconstruction by erosion, above the source, of a marker
+	 * that equals the source on the border and the maximal value of the type
+	 * everywhere else.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param shape
+	 *            the connectivity of the holes, as a symmetric {@link Shape}.
+	 * @param <T>
+	 *            the type of the source image and of the result. Must be a
+	 *            sub-type of <code>T extends {@link RealType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the source.
+	 */
+	public static < T extends RealType< T > > Img< T > fillHoles( final Img< T > source, final Shape shape )
+	{
+		final Img< T > marker = source.copy();
+		final double maxVal = marker.firstElement().getMaxValue();
+		final int n = marker.numDimensions();
+		final Cursor< T > cursor = marker.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			boolean onBorder = false;
+			for ( int d = 0; d < n; d++ )
+			{
+				final long p = cursor.getLongPosition( d );
+				if ( p == marker.min( d ) || p == marker.max( d ) )
+				{
+					onBorder = true;
+					break;
+				}
+			}
+			if ( !onBorder )
+			{
+				cursor.get().setReal( maxVal );
+			}
+		}
+		reconstructionByErosionInPlace( marker, source, shape );
+		return marker;
+	}
+
+	/**
+	 * Finds the regional maxima of the source image. A regional maximum is a
+	 * connected plateau of constant value whose neighbors all have a strictly
+	 * lower value.
+	 * <p>
+	 * Combined with {@link #hMaxima(Img, double, Shape)}, this yields the
+	 * extended maxima of the image.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param shape
+	 *            the connectivity of the plateaus, as a symmetric
+	 *            {@link Shape}.
+	 * @param <T>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>T extends {@link RealType}</code>.
+	 * @return a new {@link BitType} {@link Img}, of same dimensions than the
+	 *         source, where regional maxima are <code>true</code>.
+	 */
+	public static < T extends RealType< T > > Img< BitType > regionalMaxima( final RandomAccessibleInterval< T > source, final Shape shape )
+	{
+		return regionalExtrema( source, shape, true );
+	}
+
+	/**
+	 * Finds the regional minima of the source image. A regional minimum is a
+	 * connected plateau of constant value whose neighbors all have a strictly
+	 * greater value.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param shape
+	 *            the connectivity of the plateaus, as a symmetric
+	 *            {@link Shape}.
+	 * @param <T>
+	 *            the type of the source image. Must be a sub-type of
+	 *            <code>T extends {@link RealType}</code>.
+	 * @return a new {@link BitType} {@link Img}, of same dimensions than the
+	 *         source, where regional minima are <code>true</code>.
+	 * @see #regionalMaxima(RandomAccessibleInterval, Shape)
+	 */
+	public static < T extends RealType< T > > Img< BitType > regionalMinima( final RandomAccessibleInterval< T > source, final Shape shape )
+	{
+		return regionalExtrema( source, shape, false );
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private static < T extends RealType< T > > void reconstruct( final RandomAccessibleInterval< T > marker, final RandomAccessible< T > mask, final Shape shape, final boolean byDilation )
+	{
+		final long size = Intervals.numElements( marker );
+		if ( size == 0 )
+		{
+			return;
+		}
+
+		final int n = marker.numDimensions();
+		final long[] dimensions = new long[ n ];
+		marker.dimensions( dimensions );
+
+		final RandomAccessibleInterval< T > J = Views.zeroMin( marker );
+		final RandomAccessibleInterval< T > I = Views.zeroMin( Views.interval( mask, marker ) );
+		final RandomAccess< T > jp = J.randomAccess();
+		final RandomAccess< T > ip = I.randomAccess();
+		final RandomAccess< T > jq = J.randomAccess();
+		final RandomAccess< T > iq = I.randomAccess();
+
+		final long[][] offsets = getOffsets( shape, n );
+		final long[][] causal = getHalfOffsets( offsets, true );
+		final long[][] antiCausal = getHalfOffsets( offsets, false );
+
+		final T current = Util.getTypeFromInterval( marker ).createVariable();
+		final long[] position = new long[ n ];
+		final long[] neighbor = new long[ n ];
+
+		/*
+		 * Forward raster scan.
+		 */
+
+		for ( long index = 0; index < size; index++ )
+		{
+			IntervalIndexer.indexToPosition( index, dimensions, position );
+			jp.setPosition( position );
+			current.set( jp.get() );
+			for ( final long[] offset : causal )
+			{
+				if ( !translate( position, offset, dimensions, neighbor ) )
+				{
+					continue;
+				}
+				jq.setPosition( neighbor );
+				if ( isBetter( jq.get(), current, byDilation ) )
+				{
+					current.set( jq.get() );
+				}
+			}
+			ip.setPosition( position );
+			if ( isBetter( current, ip.get(), byDilation ) )
+			{
+				current.set( ip.get() );
+			}
+			jp.get().set( current );
+		}
+
+		/*
+		 * Backward raster scan, collecting the pixels that can still propagate
+		 * their value.
+		 */
+
+		final IndexFifo fifo = new IndexFifo();
+		for ( long index = size - 1; index >= 0; index-- )
+		{
+			IntervalIndexer.indexToPosition( index, dimensions, position );
+			jp.setPosition( position );
+			current.set( jp.get() );
+			for ( final long[] offset : antiCausal )
+			{
+				if ( !translate( position, offset, dimensions, neighbor ) )
+				{
+					continue;
+				}
+				jq.setPosition( neighbor );
+				if ( isBetter( jq.get(), current, byDilation ) )
+				{
+					current.set( jq.get() );
+				}
+			}
+			ip.setPosition( position );
+			if ( isBetter( current, ip.get(), byDilation ) )
+			{
+				current.set( ip.get() );
+			}
+			jp.get().set( current );
+
+			for ( final long[] offset : antiCausal )
+			{
+				if ( !translate( position, offset, dimensions, neighbor ) )
+				{
+					continue;
+				}
+				jq.setPosition( neighbor );
+				iq.setPosition( neighbor );
+				if ( isBetter( current, jq.get(), byDilation ) && isBetter( iq.get(), jq.get(), byDilation ) )
+				{
+					fifo.push( index );
+					break;
+				}
+			}
+		}
+
+		/*
+		 * FIFO propagation.
+		 */
+
+		while ( !fifo.isEmpty() )
+		{
+			final long index = fifo.pop();
+			IntervalIndexer.indexToPosition( index, dimensions, position );
+			jp.setPosition( position );
+			final T vp = jp.get();
+			for ( final long[] offset : offsets )
+			{
+				if ( !translate( position, offset, dimensions, neighbor ) )
+				{
+					continue;
+				}
+				jq.setPosition( neighbor );
+				final T vq = jq.get();
+				if ( !isBetter( vp, vq, byDilation ) )
+				{
+					continue;
+				}
+				iq.setPosition( neighbor );
+				final T mq = iq.get();
+				if ( vq.compareTo( mq ) == 0 )
+				{
+					continue;
+				}
+				if ( isBetter( vp, mq, byDilation ) )
+				{
+					vq.set( mq );
+				}
+				else
+				{
+					vq.set( vp );
+				}
+				fifo.push( IntervalIndexer.positionToIndex( neighbor, dimensions ) );
+			}
+		}
+	}
+
+	private static < T extends RealType< T > > Img< BitType > regionalExtrema( final RandomAccessibleInterval< T > source, final Shape shape, final boolean maxima )
+	{
+		final int n = source.numDimensions();
+		final long[] dimensions = new long[ n ];
+		source.dimensions( dimensions );
+		final long size = Intervals.numElements( source );
+
+		final BitType bit = new BitType();
+		final Img< BitType > result = MorphologyUtils.getSuitableFactory( dimensions, bit ).create( dimensions, bit );
+		final Img< BitType > visited = MorphologyUtils.getSuitableFactory( dimensions, bit ).create( dimensions, bit );
+		final RandomAccess< BitType > resultRA = result.randomAccess();
+		final RandomAccess< BitType > visitedRA = visited.randomAccess();
+
+		final RandomAccessibleInterval< T > zeroMin = Views.zeroMin( source );
+		final RandomAccess< T > ra = zeroMin.randomAccess();
+		final T value = Util.getTypeFromInterval( source ).createVariable();
+
+		final long[][] offsets = getOffsets( shape, n );
+		final long[] position = new long[ n ];
+		final long[] neighbor = new long[ n ];
+		final IndexFifo fifo = new IndexFifo();
+		final IndexFifo plateau = new IndexFifo();
+
+		for ( long index = 0; index < size; index++ )
+		{
+			IntervalIndexer.indexToPosition( index, dimensions, position );
+			visitedRA.setPosition( position );
+			if ( visitedRA.get().get() )
+			{
+				continue;
+			}
+			visitedRA.get().set( true );
+			ra.setPosition( position );
+			value.set( ra.get() );
+
+			/*
+			 * Flood the plateau this pixel belongs to, and check whether any of
+			 * its neighbors is strictly better.
+			 */
+
+			boolean isExtremum = true;
+			fifo.push( index );
+			plateau.push( index );
+			while ( !fifo.isEmpty() )
+			{
+				IntervalIndexer.indexToPosition( fifo.pop(), dimensions, position );
+				for ( final long[] offset : offsets )
+				{
+					if ( !translate( position, offset, dimensions, neighbor ) )
+					{
+						continue;
+					}
+					ra.setPosition( neighbor );
+					final int cmp = ra.get().compareTo( value );
+					if ( maxima ? cmp > 0 : cmp < 0 )
+					{
+						isExtremum = false;
+					}
+					else if ( cmp == 0 )
+					{
+						visitedRA.setPosition( neighbor );
+						if ( !visitedRA.get().get() )
+						{
+							visitedRA.get().set( true );
+							final long neighborIndex = IntervalIndexer.positionToIndex( neighbor, dimensions );
+							fifo.push( neighborIndex );
+							plateau.push( neighborIndex );
+						}
+					}
+				}
+			}
+
+			while ( !plateau.isEmpty() )
+			{
+				final long plateauIndex = plateau.pop();
+				if ( isExtremum )
+				{
+					IntervalIndexer.indexToPosition( plateauIndex, dimensions, position );
+					resultRA.setPosition( position );
+					resultRA.get().set( true );
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private static final < T extends RealType< T > > boolean isBetter( final T a, final T b, final boolean greater )
+	{
+		final int cmp = a.compareTo( b );
+		return greater ? cmp > 0 : cmp < 0;
+	}
+
+	/**
+	 * Writes <code>position + offset</code> in <code>target</code> and returns
+	 * whether it lies within the zero-min interval of the specified
+	 * dimensions.
+	 */
+	private static final boolean translate( final long[] position, final long[] offset, final long[] dimensions, final long[] target )
+	{
+		for ( int d = 0; d < position.length; d++ )
+		{
+			final long p = position[ d ] + offset[ d ];
+			if ( p < 0 || p >= dimensions[ d ] )
+			{
+				return false;
+			}
+			target[ d ] = p;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the offsets of the non-central elements of the specified shape,
+	 * cast over the specified dimensionality.
+	 */
+	static final long[][] getOffsets( final Shape shape, final int numDimensions )
+	{
+		final Neighborhood< BitType > neighborhood = MorphologyUtils.getNeighborhood( shape, new FinalDimensions( Util.getArrayFromValue( 1l, numDimensions ) ) );
+		final List< long[] > offsets = new ArrayList< long[] >( ( int ) neighborhood.size() );
+		final Cursor< BitType > cursor = neighborhood.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			final long[] offset = new long[ numDimensions ];
+			cursor.localize( offset );
+			boolean isCenter = true;
+			for ( int d = 0; d < numDimensions; d++ )
+			{
+				if ( offset[ d ] != 0 )
+				{
+					isCenter = false;
+					break;
+				}
+			}
+			if ( !isCenter )
+			{
+				offsets.add( offset );
+			}
+		}
+		return offsets.toArray( new long[ offsets.size() ][] );
+	}
+
+	/**
+	 * Returns the offsets that point to pixels visited before (
+	 * <code>causal</code> is <code>true</code>) or after the central pixel in
+	 * flat iteration order.
+	 */
+	private static final long[][] getHalfOffsets( final long[][] offsets, final boolean causal )
+	{
+		final List< long[] > half = new ArrayList< long[] >( offsets.length / 2 + 1 );
+		for ( final long[] offset : offsets )
+		{
+			for ( int d = offset.length - 1; d >= 0; d-- )
+			{
+				if ( offset[ d ] != 0 )
+				{
+					if ( ( offset[ d ] < 0 ) == causal )
+					{
+						half.add( offset );
+					}
+					break;
+				}
+			}
+		}
+		return half.toArray( new long[ half.size() ][] );
+	}
+}
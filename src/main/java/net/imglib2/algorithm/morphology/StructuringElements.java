@@ -6,6 +6,7 @@ import java.util.List;
 import net.imglib2.algorithm.neighborhood.CenteredRectangleShape;
 import net.imglib2.algorithm.neighborhood.DiamondShape;
 import net.imglib2.algorithm.neighborhood.DiamondTipsShape;
+import net.imglib2.algorithm.neighborhood.EllipsoidShape;
 import net.imglib2.algorithm.neighborhood.HorizontalLineShape;
 import net.imglib2.algorithm.neighborhood.HyperSphereShape;
 import net.imglib2.algorithm.neighborhood.PeriodicLineShape;
@@ -53,7 +54,8 @@ public class StructuringElements
 	 * optimization are available yet and the parameter is ignored.
 	 * <p>
 	 * This methods relies on heuristics to determine automatically what
-	 * decomposition level to use.
+	 * decomposition level to use. To choose it from the size and type of the
+	 * actual image instead, use {@link DecompositionPlanner#disk(long)}.
 	 *
 	 * @param radius
 	 *            the radius of the disk, so that it extends over
@@ -107,10 +109,11 @@ public class StructuringElements
 	 * The structuring element (strel) is returned as a {@link List} of
 	 * {@link Shape}s, for structuring elements can be decomposed to yield a
 	 * better performance. In <b>2D</b>, the disk strel can be
-	 * <b>approximated</b> by several periodic lines. The resulting strel is
-	 * only an approximation of a disk, and this method offers a parameter to
-	 * select the level of approximation. For other dimensionalities, no
-	 * optimization are available yet and the parameter is ignored.
+	 * <b>approximated</b> by several periodic lines, and in <b>3D</b> the
+	 * sphere strel as well. The resulting strel is only an approximation of a
+	 * disk, and this method offers a parameter to select the level of
+	 * approximation. For other dimensionalities, no optimization are available
+	 * yet and the parameter is ignored.
 	 *
 	 * @param radius
 	 *            the radius of the disk, so that it extends over
@@ -129,7 +132,15 @@ public class StructuringElements
 	 *            decomposed in 8 periodic lines, plus in some cases 2
 	 *            horizontal lines.
 	 *            </ol>
-	 *            This parameter is ignored for dimensionality other than 2.
+	 *            In 3D, values 9 and 13 select a decomposition, and any other
+	 *            value returns the full sphere:
+	 *            <ol start="9">
+	 *            <li value="9"> The sphere is decomposed in 9 periodic lines,
+	 *            along the 3 axes and the 6 face diagonals, plus in some cases 3
+	 *            horizontal lines. <li value="13"> The sphere is decomposed in
+	 *            13 periodic lines, adding the 4 body diagonals.
+	 *            </ol>
+	 *            This parameter is ignored for other dimensionalities.
 	 * @return a disk structuring element as a new list of {@link Shape}s.
 	 */
 	public static final List< Shape > disk( final long radius, final int dimensionality, final int decomposition )
@@ -227,6 +238,73 @@ public class StructuringElements
 			}
 
 		}
+		else if ( dimensionality == 3 && ( decomposition == 9 || decomposition == 13 ) )
+		{
+			/*
+			 * Same radial decomposition as in 2D, with a set of directions that
+			 * is invariant by permutation of the axes, so that the resulting
+			 * polyhedron has the same extent along all of them.
+			 */
+
+			final List< int[] > vectors = new ArrayList< int[] >( decomposition );
+			// Axes.
+			vectors.add( new int[] { 1, 0, 0 } );
+			vectors.add( new int[] { 0, 1, 0 } );
+			vectors.add( new int[] { 0, 0, 1 } );
+			// Face diagonals.
+			vectors.add( new int[] { 1, 1, 0 } );
+			vectors.add( new int[] { 1, -1, 0 } );
+			vectors.add( new int[] { 1, 0, 1 } );
+			vectors.add( new int[] { 1, 0, -1 } );
+			vectors.add( new int[] { 0, 1, 1 } );
+			vectors.add( new int[] { 0, 1, -1 } );
+			if ( decomposition == 13 )
+			{
+				// Body diagonals.
+				vectors.add( new int[] { 1, 1, 1 } );
+				vectors.add( new int[] { 1, 1, -1 } );
+				vectors.add( new int[] { 1, -1, 1 } );
+				vectors.add( new int[] { -1, 1, 1 } );
+			}
+
+			/*
+			 * The extent of the sum of segments along X is the sum of the
+			 * projections of the segments on X. We choose a common length for
+			 * all segments so that this extent matches the radius.
+			 */
+			double projections = 0;
+			for ( final int[] vector : vectors )
+			{
+				projections += Math.abs( vector[ 0 ] ) / norm( vector );
+			}
+			final double radialExtent = radius / projections;
+
+			final List< Shape > lines = new ArrayList< Shape >( decomposition + 3 );
+			long actualRadius = 0;
+			for ( final int[] vector : vectors )
+			{
+				final long span = ( long ) Math.floor( radialExtent / norm( vector ) );
+				if ( span == 0 )
+				{
+					continue;
+				}
+				lines.add( new PeriodicLineShape( span, vector ) );
+				actualRadius += span * Math.abs( vector[ 0 ] );
+			}
+
+			/*
+			 * Compensate for the actual strel being too small
+			 */
+			if ( actualRadius < radius )
+			{
+				final long dif = radius - actualRadius;
+				for ( int d = 0; d < 3; d++ )
+				{
+					lines.add( new HorizontalLineShape( dif, d, false ) );
+				}
+			}
+			return lines;
+		}
 		else
 		{
 			/*
@@ -304,7 +382,8 @@ public class StructuringElements
 	 * version are dimension-generic.
 	 * <p>
 	 * This method determines whether it is worth returning a decomposed strel
-	 * based on simple heuristics.
+	 * based on simple heuristics. To decide from the size and type of the
+	 * actual image instead, use {@link DecompositionPlanner#square(int)}.
 	 *
 	 * @param radius
 	 *            the radius of the square.
@@ -604,4 +683,56 @@ public class StructuringElements
 	{
 		return new PeriodicLineShape( span, increments );
 	}
+
+	/**
+	 * Generates a centered ellipsoid flat structuring element for
+	 * morphological operations, with one radius per dimension.
+	 * <p>
+	 * This is the structuring element to use for a ball of a given physical
+	 * size on anisotropic data, for instance in microscopy stacks sampled more
+	 * coarsely in Z (see {@link #ellipsoid(double, double[])}). The ellipsoid
+	 * is not decomposed: the list contains a single {@link EllipsoidShape}.
+	 *
+	 * @param radii
+	 *            the radius of the ellipsoid along each dimension, in pixels.
+	 *            The dimensionality of the strel is the number of radii.
+	 * @return an ellipsoid structuring element as a new list of
+	 *         {@link Shape}s.
+	 */
+	public static final List< Shape > ellipsoid( final double[] radii )
+	{
+		final List< Shape > strel = new ArrayList< Shape >( 1 );
+		strel.add( new EllipsoidShape( radii ) );
+		return strel;
+	}
+
+	/**
+	 * Generates the ellipsoid flat structuring element that samples a ball of
+	 * the specified physical radius, on an image with the specified pixel
+	 * sizes.
+	 *
+	 * @param radius
+	 *            the radius of the ball, in physical units.
+	 * @param calibration
+	 *            the pixel size along each dimension, in the same units.
+	 * @return an ellipsoid structuring element as a new list of
+	 *         {@link Shape}s.
+	 * @see #ellipsoid(double[])
+	 */
+	public static final List< Shape > ellipsoid( final double radius, final double[] calibration )
+	{
+		final List< Shape > strel = new ArrayList< Shape >( 1 );
+		strel.add( EllipsoidShape.fromCalibration( radius, calibration ) );
+		return strel;
+	}
+
+	private static final double norm( final int[] vector )
+	{
+		double sum = 0;
+		for ( final int v : vector )
+		{
+			sum += v * v;
+		}
+		return Math.sqrt( sum );
+	}
 }
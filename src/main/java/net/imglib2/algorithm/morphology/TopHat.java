@@ -603,6 +603,34 @@ public class TopHat
 	}
 
 
+	/**
+	 * Performs the top-hat (white top-hat) morphological operation, on a
+	 * {@link RealType} {@link Img} using a grayscale structuring element.
+	 * <p>
+	 * With a {@link GrayscaleStructuringElement#ball(double, int) ball}, this
+	 * is the rolling-ball background subtraction. With a
+	 * {@link GrayscaleStructuringElement#paraboloid(double, int) paraboloid},
+	 * this is its fast sliding-paraboloid approximation, whose cost does not
+	 * depend on the size of the structuring element.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param strel
+	 *            the grayscale structuring element.
+	 * @param numThreads
+	 *            the number of threads to use for the calculation.
+	 * @param <T>
+	 *            the type of the source image and the top-hat result. Must be a
+	 *            sub-type of <code>T extends {@link RealType}</code>.
+	 * @return a new {@link Img}, of same dimensions than the source.
+	 */
+	public static < T extends RealType< T >> Img< T > topHat( final Img< T > source, final GrayscaleStructuringElement strel, final int numThreads )
+	{
+		final Img< T > opened = Dilation.dilate( Erosion.erode( source, strel, numThreads ), strel, numThreads );
+		MorphologyUtils.subABA( opened, source, numThreads );
+		return opened;
+	}
+
 	/**
 	 * Private default constructor.
 	 */
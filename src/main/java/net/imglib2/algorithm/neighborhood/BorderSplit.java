@@ -0,0 +1,249 @@
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.util.Util;
+import net.imglib2.view.ExtendedRandomAccessibleInterval;
+import net.imglib2.view.IntervalView;
+
+/**
+ * Splits a target interval into an interior, where the neighborhoods of a
+ * shape lie entirely within the bounds of the source image, and a thin border
+ * shell where they do not.
+ * <p>
+ * When the source is an out-of-bounds view of an image (as returned by
+ * {@link net.imglib2.view.Views#extendMirrorSingle(RandomAccessibleInterval)}
+ * and the like), every access through it pays for the bounds check, even far
+ * from the image edges. The interior can instead be processed with the
+ * wrapped image itself ({@link #getInteriorSource()}), and only the border
+ * goes through the out-of-bounds view ({@link #getBorderSource()}). On array
+ * images, this also lets neighborhoods walk the underlying array directly.
+ * <p>
+ * If the source is not an out-of-bounds view, nothing is checked anyway: the
+ * whole target is interior and both sources are the source itself.
+ */
+public class BorderSplit< T >
+{
+	private final RandomAccessible< T > borderSource;
+
+	private final RandomAccessible< T > interiorSource;
+
+	private final Interval interior;
+
+	private final List< Interval > border;
+
+	private final Interval span;
+
+	/**
+	 * Splits the target interval for the specified shape.
+	 *
+	 * @param source
+	 *            the source image, possibly an out-of-bounds view.
+	 * @param target
+	 *            the interval to process.
+	 * @param shape
+	 *            the shape whose neighborhoods are accessed around each pixel
+	 *            of the target.
+	 */
+	public BorderSplit( final RandomAccessible< T > source, final Interval target, final Shape shape )
+	{
+		this( source, target, span( shape, target.numDimensions() ) );
+	}
+
+	/**
+	 * Splits the target interval for neighborhoods with the specified
+	 * bounding box.
+	 *
+	 * @param source
+	 *            the source image, possibly an out-of-bounds view.
+	 * @param target
+	 *            the interval to process.
+	 * @param span
+	 *            the bounding box of the neighborhood offsets, relative to
+	 *            their center.
+	 */
+	public BorderSplit( final RandomAccessible< T > source, final Interval target, final Interval span )
+	{
+		this.borderSource = source;
+		this.span = span;
+		final RandomAccessibleInterval< T > bounds = unwrap( source );
+		if ( null == bounds )
+		{
+			interiorSource = source;
+			interior = target;
+			border = Collections.emptyList();
+			return;
+		}
+
+		interiorSource = bounds;
+		final int n = target.numDimensions();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		boolean empty = false;
+		for ( int d = 0; d < n; d++ )
+		{
+			min[ d ] = Math.max( target.min( d ), bounds.min( d ) - span.min( d ) );
+			max[ d ] = Math.min( target.max( d ), bounds.max( d ) - span.max( d ) );
+			empty = empty || min[ d ] > max[ d ];
+		}
+
+		border = new ArrayList< Interval >( 2 * n );
+		if ( empty )
+		{
+			interior = null;
+			border.add( target );
+			return;
+		}
+		interior = new FinalInterval( min, max );
+
+		// Slabs below and above the interior, one dimension after the other.
+		final long[] smin = new long[ n ];
+		final long[] smax = new long[ n ];
+		target.min( smin );
+		target.max( smax );
+		for ( int d = 0; d < n; d++ )
+		{
+			if ( min[ d ] > smin[ d ] )
+			{
+				final long[] bmax = smax.clone();
+				bmax[ d ] = min[ d ] - 1;
+				border.add( new FinalInterval( smin.clone(), bmax ) );
+			}
+			if ( max[ d ] < smax[ d ] )
+			{
+				final long[] bmin = smin.clone();
+				bmin[ d ] = max[ d ] + 1;
+				border.add( new FinalInterval( bmin, smax.clone() ) );
+			}
+			smin[ d ] = min[ d ];
+			smax[ d ] = max[ d ];
+		}
+	}
+
+	/**
+	 * Returns the bounding box of the neighborhoods of a shape, relative to
+	 * their center. Only the shapes that already hold a table read it from
+	 * their table: the others are asked for the bounding box of a single
+	 * neighborhood, which does not iterate over its elements.
+	 *
+	 * @param shape
+	 *            the shape.
+	 * @param n
+	 *            the dimensionality to cast the shape over.
+	 * @return the bounding box of the neighborhoods of the shape.
+	 */
+	public static Interval span( final Shape shape, final int n )
+	{
+		if ( shape instanceof OffsetTableShape )
+		{
+			return ( ( OffsetTableShape ) shape ).getTable().getBoundingBox();
+		}
+		if ( shape instanceof MaskShape )
+		{
+			return ( ( MaskShape ) shape ).getTable().getBoundingBox();
+		}
+		final Img< BitType > img = ArrayImgs.bits( Util.getArrayFromValue( 1l, n ) );
+		final Neighborhood< BitType > neighborhood = shape.neighborhoodsRandomAccessibleSafe( img ).randomAccess().get();
+		return neighborhood.getStructuringElementBoundingBox();
+	}
+
+	/**
+	 * @return the bounding box of the neighborhoods this split was made for,
+	 *         relative to their center.
+	 */
+	public Interval getSpan()
+	{
+		return span;
+	}
+
+	/**
+	 * @return the interior of the target, where neighborhoods can be accessed
+	 *         through {@link #getInteriorSource()}. <code>null</code> if the
+	 *         interior is empty.
+	 */
+	public Interval getInterior()
+	{
+		return interior;
+	}
+
+	/**
+	 * @return the disjoint intervals that cover the rest of the target, to be
+	 *         accessed through {@link #getBorderSource()}. Empty if the
+	 *         interior is the whole target.
+	 */
+	public List< Interval > getBorder()
+	{
+		return border;
+	}
+
+	/**
+	 * @return the source to use in the interior, without bounds checks.
+	 */
+	public RandomAccessible< T > getInteriorSource()
+	{
+		return interiorSource;
+	}
+
+	/**
+	 * @return the source to use on the border, the one given at construction.
+	 */
+	public RandomAccessible< T > getBorderSource()
+	{
+		return borderSource;
+	}
+
+	/**
+	 * Returns whether the specified position lies in the interior, for
+	 * algorithms that cannot iterate the interior and the border separately.
+	 *
+	 * @param position
+	 *            the position to test.
+	 * @return <code>true</code> if the neighborhood of this position can be
+	 *         accessed through {@link #getInteriorSource()}.
+	 */
+	public boolean isInterior( final Localizable position )
+	{
+		if ( null == interior )
+		{
+			return false;
+		}
+		for ( int d = 0; d < interior.numDimensions(); d++ )
+		{
+			final long p = position.getLongPosition( d );
+			if ( p < interior.min( d ) || p > interior.max( d ) )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the image wrapped by an out-of-bounds view, possibly restricted
+	 * to an interval, or <code>null</code> if the source is something else.
+	 */
+	private static < T > RandomAccessibleInterval< T > unwrap( final RandomAccessible< T > source )
+	{
+		RandomAccessible< T > view = source;
+		while ( view instanceof IntervalView )
+		{
+			view = ( ( IntervalView< T > ) view ).getSource();
+		}
+		if ( view instanceof ExtendedRandomAccessibleInterval )
+		{
+			return ( ( ExtendedRandomAccessibleInterval< T, ? > ) view ).getSource();
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,334 @@
+package net.imglib2.algorithm.neighborhood;
+
+/**
+ * Reductions over the primitive buffers filled by a
+ * {@link NeighborhoodGatherer}.
+ * <p>
+ * These are plain counted loops over the first <code>size</code> elements of
+ * the buffer, without branches in the loop body when possible, so that the
+ * JIT can unroll and vectorize them. The buffers are not modified, except by
+ * the medians.
+ */
+public class BufferReducers
+{
+
+	/*
+	 * MIN
+	 */
+
+	public static double min( final double[] values, final int size )
+	{
+		double min = Double.POSITIVE_INFINITY;
+		for ( int i = 0; i < size; i++ )
+		{
+			min = Math.min( min, values[ i ] );
+		}
+		return min;
+	}
+
+	public static float min( final float[] values, final int size )
+	{
+		float min = Float.POSITIVE_INFINITY;
+		for ( int i = 0; i < size; i++ )
+		{
+			min = Math.min( min, values[ i ] );
+		}
+		return min;
+	}
+
+	public static int min( final int[] values, final int size )
+	{
+		int min = Integer.MAX_VALUE;
+		for ( int i = 0; i < size; i++ )
+		{
+			min = Math.min( min, values[ i ] );
+		}
+		return min;
+	}
+
+	/*
+	 * MAX
+	 */
+
+	public static double max( final double[] values, final int size )
+	{
+		double max = Double.NEGATIVE_INFINITY;
+		for ( int i = 0; i < size; i++ )
+		{
+			max = Math.max( max, values[ i ] );
+		}
+		return max;
+	}
+
+	public static float max( final float[] values, final int size )
+	{
+		float max = Float.NEGATIVE_INFINITY;
+		for ( int i = 0; i < size; i++ )
+		{
+			max = Math.max( max, values[ i ] );
+		}
+		return max;
+	}
+
+	public static int max( final int[] values, final int size )
+	{
+		int max = Integer.MIN_VALUE;
+		for ( int i = 0; i < size; i++ )
+		{
+			max = Math.max( max, values[ i ] );
+		}
+		return max;
+	}
+
+	/*
+	 * SUM
+	 */
+
+	public static double sum( final double[] values, final int size )
+	{
+		double sum = 0;
+		for ( int i = 0; i < size; i++ )
+		{
+			sum += values[ i ];
+		}
+		return sum;
+	}
+
+	/**
+	 * Sums float values, accumulated as a <code>double</code>.
+	 */
+	public static double sum( final float[] values, final int size )
+	{
+		double sum = 0;
+		for ( int i = 0; i < size; i++ )
+		{
+			sum += values[ i ];
+		}
+		return sum;
+	}
+
+	/**
+	 * Sums int values, accumulated as a <code>long</code>, which cannot
+	 * overflow for buffers of less than 2<sup>32</sup> elements.
+	 */
+	public static long sum( final int[] values, final int size )
+	{
+		long sum = 0;
+		for ( int i = 0; i < size; i++ )
+		{
+			sum += values[ i ];
+		}
+		return sum;
+	}
+
+	/*
+	 * MEAN
+	 */
+
+	public static double mean( final double[] values, final int size )
+	{
+		return sum( values, size ) / size;
+	}
+
+	public static double mean( final float[] values, final int size )
+	{
+		return sum( values, size ) / size;
+	}
+
+	public static double mean( final int[] values, final int size )
+	{
+		return ( double ) sum( values, size ) / size;
+	}
+
+	/*
+	 * MEDIAN
+	 */
+
+	/**
+	 * Returns the median of the values: the middle value if
+	 * <code>size</code> is odd, the mean of the two middle values otherwise.
+	 * The first <code>size</code> elements of the buffer are reordered.
+	 */
+	public static double median( final double[] values, final int size )
+	{
+		final int k = size / 2;
+		select( values, size, k );
+		if ( ( size & 1 ) == 1 )
+		{
+			return values[ k ];
+		}
+		// After the selection, the lower middle value is the largest value
+		// below k.
+		return 0.5 * ( values[ k ] + max( values, k ) );
+	}
+
+	/**
+	 * Returns the median of the values: the middle value if
+	 * <code>size</code> is odd, the mean of the two middle values otherwise.
+	 * The first <code>size</code> elements of the buffer are reordered.
+	 */
+	public static double median( final float[] values, final int size )
+	{
+		final int k = size / 2;
+		select( values, size, k );
+		if ( ( size & 1 ) == 1 )
+		{
+			return values[ k ];
+		}
+		return 0.5 * ( ( double ) values[ k ] + max( values, k ) );
+	}
+
+	/**
+	 * Returns the median of the values: the middle value if
+	 * <code>size</code> is odd, the mean of the two middle values otherwise.
+	 * The first <code>size</code> elements of the buffer are reordered.
+	 */
+	public static double median( final int[] values, final int size )
+	{
+		final int k = size / 2;
+		select( values, size, k );
+		if ( ( size & 1 ) == 1 )
+		{
+			return values[ k ];
+		}
+		return 0.5 * ( ( double ) values[ k ] + max( values, k ) );
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Quickselect: reorders the first <code>size</code> values so that the
+	 * value at <code>k</code> is the one of rank <code>k</code>, with smaller
+	 * or equal values before it and larger or equal values after it.
+	 */
+	private static void select( final double[] values, final int size, final int k )
+	{
+		int lo = 0;
+		int hi = size - 1;
+		while ( hi > lo )
+		{
+			final double pivot = values[ ( lo + hi ) >>> 1 ];
+			int i = lo;
+			int j = hi;
+			while ( i <= j )
+			{
+				while ( values[ i ] < pivot )
+				{
+					i++;
+				}
+				while ( values[ j ] > pivot )
+				{
+					j--;
+				}
+				if ( i <= j )
+				{
+					final double tmp = values[ i ];
+					values[ i ] = values[ j ];
+					values[ j ] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if ( k <= j )
+			{
+				hi = j;
+			}
+			else if ( k >= i )
+			{
+				lo = i;
+			}
+			else
+			{
+				return;
+			}
+		}
+	}
+
+	private static void select( final float[] values, final int size, final int k )
+	{
+		int lo = 0;
+		int hi = size - 1;
+		while ( hi > lo )
+		{
+			final float pivot = values[ ( lo + hi ) >>> 1 ];
+			int i = lo;
+			int j = hi;
+			while ( i <= j )
+			{
+				while ( values[ i ] < pivot )
+				{
+					i++;
+				}
+				while ( values[ j ] > pivot )
+				{
+					j--;
+				}
+				if ( i <= j )
+				{
+					final float tmp = values[ i ];
+					values[ i ] = values[ j ];
+					values[ j ] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if ( k <= j )
+			{
+				hi = j;
+			}
+			else if ( k >= i )
+			{
+				lo = i;
+			}
+			else
+			{
+				return;
+			}
+		}
+	}
+
+	private static void select( final int[] values, final int size, final int k )
+	{
+		int lo = 0;
+		int hi = size - 1;
+		while ( hi > lo )
+		{
+			final int pivot = values[ ( lo + hi ) >>> 1 ];
+			int i = lo;
+			int j = hi;
+			while ( i <= j )
+			{
+				while ( values[ i ] < pivot )
+				{
+					i++;
+				}
+				while ( values[ j ] > pivot )
+				{
+					j--;
+				}
+				if ( i <= j )
+				{
+					final int tmp = values[ i ];
+					values[ i ] = values[ j ];
+					values[ j ] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if ( k <= j )
+			{
+				hi = j;
+			}
+			else if ( k >= i )
+			{
+				lo = i;
+			}
+			else
+			{
+				return;
+			}
+		}
+	}
+}
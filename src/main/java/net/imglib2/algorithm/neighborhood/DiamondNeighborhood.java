@@ -17,10 +17,14 @@ public class DiamondNeighborhood< T > extends AbstractLocalizable implements Nei
 	{
 		return new DiamondNeighborhoodFactory< T >()
 		{
+			private SharedOffsetTable table;
+
 			@Override
 			public Neighborhood< T > create( final long[] position, final long radius, final RandomAccess< T > sourceRandomAccess )
 			{
-				return new DiamondNeighborhood< T >( position, radius, sourceRandomAccess );
+				final SharedOffsetTable t = SharedOffsetTable.diamond( table, radius, position.length );
+				table = t;
+				return new DiamondNeighborhood< T >( position, radius, sourceRandomAccess, t );
 			}
 		};
 	}
@@ -31,17 +35,34 @@ public class DiamondNeighborhood< T > extends AbstractLocalizable implements Nei
 
 	private final int maxDim;
 
-	// private final long size;
+	/**
+	 * The precomputed offsets of the elements, shared by all the diamonds of
+	 * the same radius and dimensionality, or <code>null</code> if the diamond
+	 * is too large for a table.
+	 */
+	private final OffsetTable table;
+
+	/**
+	 * The table and its index deltas, shared with the other neighborhoods of
+	 * the same factory.
+	 */
+	private final SharedOffsetTable sharedTable;
 
 	private final FinalInterval structuringElementBoundingBox;
 
 	DiamondNeighborhood( final long[] position, final long radius, final RandomAccess< T > sourceRandomAccess )
+	{
+		this( position, radius, sourceRandomAccess, SharedOffsetTable.diamond( null, radius, position.length ) );
+	}
+
+	DiamondNeighborhood( final long[] position, final long radius, final RandomAccess< T > sourceRandomAccess, final SharedOffsetTable sharedTable )
 	{
 		super( position );
+		this.sharedTable = sharedTable;
 		this.sourceRandomAccess = sourceRandomAccess;
 		this.radius = radius;
 		maxDim = n - 1;
-		// size = computeSize();
+		table = sharedTable.getTable();
 
 		final long[] min = new long[ n ];
 		final long[] max = new long[ n ];
@@ -54,8 +75,14 @@ public class DiamondNeighborhood< T > extends AbstractLocalizable implements Nei
 		structuringElementBoundingBox = new FinalInterval( min, max );
 	}
 
+	/**
+	 * Iterates the elements of the offset table, or, for diamonds too large
+	 * for a table, computes the span of each line of the diamond on the fly.
+	 */
 	public class LocalCursor extends AbstractEuclideanSpace implements Cursor< T >
 	{
+		private final OffsetTableWalker< T > walker;
+
 		protected final RandomAccess< T > source;
 
 		/** The current radius in each dimension we are at. */
@@ -68,29 +95,54 @@ public class DiamondNeighborhood< T > extends AbstractLocalizable implements Nei
 		{
 			super( source.numDimensions() );
 			this.source = source;
-			ri = new long[ n ];
-			s = new long[ n ];
+			if ( table != null )
+			{
+				walker = new OffsetTableWalker< T >( table, source, sharedTable.indexDeltas( source ) );
+				ri = null;
+				s = null;
+			}
+			else
+			{
+				walker = null;
+				ri = new long[ n ];
+				s = new long[ n ];
+			}
 			reset();
 		}
 
 		protected LocalCursor( final LocalCursor c )
 		{
 			super( c.numDimensions() );
-			source = c.source.copyRandomAccess();
-			ri = c.ri.clone();
-			s = c.s.clone();
+			if ( c.walker != null )
+			{
+				walker = c.walker.copy();
+				source = null;
+				ri = null;
+				s = null;
+			}
+			else
+			{
+				walker = null;
+				source = c.source.copyRandomAccess();
+				ri = c.ri.clone();
+				s = c.s.clone();
+			}
 		}
 
 		@Override
 		public T get()
 		{
-			return source.get();
+			return walker != null ? walker.get() : source.get();
 		}
 
 		@Override
 		public void fwd()
 		{
-			if ( --s[ 0 ] >= 0 )
+			if ( walker != null )
+			{
+				walker.fwd();
+			}
+			else if ( --s[ 0 ] >= 0 )
 			{
 				source.fwd( 0 );
 			}
@@ -144,6 +196,11 @@ public class DiamondNeighborhood< T > extends AbstractLocalizable implements Nei
 		@Override
 		public void reset()
 		{
+			if ( walker != null )
+			{
+				walker.reset( position );
+				return;
+			}
 			for ( int d = 0; d < maxDim; ++d )
 			{
 				ri[ d ] = s[ d ] = 0;
@@ -157,55 +214,67 @@ public class DiamondNeighborhood< T > extends AbstractLocalizable implements Nei
 		@Override
 		public boolean hasNext()
 		{
-			return s[ maxDim ] > 0;
+			return walker != null ? walker.hasNext() : s[ maxDim ] > 0;
 		}
 
 		@Override
 		public float getFloatPosition( final int d )
 		{
-			return source.getFloatPosition( d );
+			return getLongPosition( d );
 		}
 
 		@Override
 		public double getDoublePosition( final int d )
 		{
-			return source.getDoublePosition( d );
+			return getLongPosition( d );
 		}
 
 		@Override
 		public int getIntPosition( final int d )
 		{
-			return source.getIntPosition( d );
+			return ( int ) getLongPosition( d );
 		}
 
 		@Override
 		public long getLongPosition( final int d )
 		{
-			return source.getLongPosition( d );
+			return walker != null ? walker.getLongPosition( d ) : source.getLongPosition( d );
 		}
 
 		@Override
 		public void localize( final long[] position )
 		{
-			source.localize( position );
+			if ( walker != null )
+				walker.localize( position );
+			else
+				source.localize( position );
 		}
 
 		@Override
 		public void localize( final float[] position )
 		{
-			source.localize( position );
+			if ( walker != null )
+				walker.localize( position );
+			else
+				source.localize( position );
 		}
 
 		@Override
 		public void localize( final double[] position )
 		{
-			source.localize( position );
+			if ( walker != null )
+				walker.localize( position );
+			else
+				source.localize( position );
 		}
 
 		@Override
 		public void localize( final int[] position )
 		{
-			source.localize( position );
+			if ( walker != null )
+				walker.localize( position );
+			else
+				source.localize( position );
 		}
 
 		@Override
@@ -8,10 +8,14 @@ public class DiamondNeighborhoodUnsafe< T > extends DiamondNeighborhood< T >
 	{
 		return new DiamondNeighborhoodFactory< T >()
 		{
+			private SharedOffsetTable table;
+
 			@Override
 			public Neighborhood< T > create( final long[] position, final long radius, final RandomAccess< T > sourceRandomAccess )
 			{
-				return new DiamondNeighborhoodUnsafe< T >( position, radius, sourceRandomAccess );
+				final SharedOffsetTable t = SharedOffsetTable.diamond( table, radius, position.length );
+				table = t;
+				return new DiamondNeighborhoodUnsafe< T >( position, radius, sourceRandomAccess, t );
 			}
 		};
 	}
@@ -22,7 +26,12 @@ public class DiamondNeighborhoodUnsafe< T > extends DiamondNeighborhood< T >
 
 	DiamondNeighborhoodUnsafe( final long[] position, final long radius, final RandomAccess< T > sourceRandomAccess )
 	{
-		super( position, radius, sourceRandomAccess );
+		this( position, radius, sourceRandomAccess, SharedOffsetTable.diamond( null, radius, position.length ) );
+	}
+
+	DiamondNeighborhoodUnsafe( final long[] position, final long radius, final RandomAccess< T > sourceRandomAccess, final SharedOffsetTable sharedTable )
+	{
+		super( position, radius, sourceRandomAccess, sharedTable );
 		theCursor = super.cursor();
 		firstElementCursor = super.cursor();
 	}
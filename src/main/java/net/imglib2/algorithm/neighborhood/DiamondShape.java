@@ -18,7 +18,7 @@ import net.imglib2.RandomAccessibleInterval;
  * @author Jean-Yves Tinevez <jeanyves.tinevez@gmail.com>
  * @author Jonathan Hale (University of Konstanz)
  */
-public class DiamondShape implements Shape
+public class DiamondShape implements IncrementalShape
 {
 
 	private final long radius;
@@ -68,6 +68,24 @@ public class DiamondShape implements Shape
 		return radius;
 	}
 
+	@Override
+	public OffsetTable getOffsetTable( final int numDimensions )
+	{
+		return OffsetTable.diamond( radius, numDimensions );
+	}
+
+	@Override
+	public OffsetTable getEnteringOffsets( final int d, final int numDimensions )
+	{
+		return getOffsetTable( numDimensions ).entering( d );
+	}
+
+	@Override
+	public OffsetTable getLeavingOffsets( final int d, final int numDimensions )
+	{
+		return getOffsetTable( numDimensions ).leaving( d );
+	}
+
 	@Override
 	public String toString()
 	{
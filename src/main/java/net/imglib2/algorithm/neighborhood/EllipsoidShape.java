@@ -0,0 +1,172 @@
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An axis-aligned ellipsoid {@link Shape}, with one radius per dimension.
+ * <p>
+ * This is the shape to use for spherical neighborhoods on anisotropic data,
+ * such as microscopy stacks with a coarser sampling in Z: a sphere of a given
+ * physical radius is an ellipsoid in pixel units (see
+ * {@link #fromCalibration(double, double[])}). An element at offset
+ * <code>o</code> is in the shape if
+ * <code>&sum;<sub>d</sub> (o<sub>d</sub> / r<sub>d</sub>)<sup>2</sup> &le; 1</code>.
+ * With equal integer radii, this is the {@link HyperSphereShape}.
+ * <p>
+ * The ellipsoid is computed directly as runs along dimension 0, and its
+ * neighborhoods iterate them like a {@link MaskShape}. Its dimensionality is
+ * the number of radii.
+ */
+public class EllipsoidShape extends MaskShape
+{
+	/**
+	 * Tolerance on the ellipsoid equation, so that elements exactly on the
+	 * surface are not lost to rounding.
+	 */
+	private static final double EPSILON = 1e-9;
+
+	private final double[] radii;
+
+	/**
+	 * Creates a new ellipsoid shape.
+	 *
+	 * @param radii
+	 *            the radius of the ellipsoid along each dimension, in pixels.
+	 *            A radius smaller than 1 confines the shape to the plane of
+	 *            the center in this dimension.
+	 */
+	public EllipsoidShape( final double... radii )
+	{
+		super( runs( radii ) );
+		this.radii = radii.clone();
+	}
+
+	/**
+	 * Creates the ellipsoid shape that samples a sphere of the specified
+	 * physical radius, on an image with the specified pixel sizes.
+	 *
+	 * @param radius
+	 *            the radius of the sphere, in physical units.
+	 * @param calibration
+	 *            the pixel size along each dimension, in the same units.
+	 * @return a new ellipsoid shape.
+	 */
+	public static EllipsoidShape fromCalibration( final double radius, final double[] calibration )
+	{
+		final double[] radii = new double[ calibration.length ];
+		for ( int d = 0; d < radii.length; d++ )
+		{
+			radii[ d ] = radius / calibration[ d ];
+		}
+		return new EllipsoidShape( radii );
+	}
+
+	/**
+	 * @return a copy of the radii of this shape, in pixels.
+	 */
+	public double[] getRadii()
+	{
+		return radii.clone();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "EllipsoidShape, radii = " + Arrays.toString( radii );
+	}
+
+	private static RunLengthTable runs( final double[] radii )
+	{
+		final int n = radii.length;
+		if ( n == 0 )
+		{
+			return new RunLengthTable( 0, new long[ 0 ][], new long[ 0 ] );
+		}
+		final long[] extent = new long[ n ];
+		for ( int d = 0; d < n; d++ )
+		{
+			if ( radii[ d ] < 0 )
+			{
+				throw new IllegalArgumentException( "Radii must not be negative, got " + Arrays.toString( radii ) + "." );
+			}
+			extent[ d ] = ( long ) Math.floor( radii[ d ] );
+		}
+
+		final List< long[] > starts = new ArrayList< long[] >();
+		final List< Long > lengths = new ArrayList< Long >();
+		final long[] position = new long[ n ];
+		for ( int d = 1; d < n; d++ )
+		{
+			position[ d ] = -extent[ d ];
+		}
+		boolean done = false;
+		while ( !done )
+		{
+			// Remaining budget for dimension 0 on this line.
+			double rest = 1;
+			for ( int d = 1; d < n; d++ )
+			{
+				rest -= sq( position[ d ], radii[ d ] );
+			}
+			if ( rest >= -EPSILON )
+			{
+				long half = ( long ) Math.floor( radii[ 0 ] * Math.sqrt( Math.max( 0, rest ) ) );
+				// Correct the rounding of the square root against the exact
+				// test.
+				while ( half >= 0 && sq( half, radii[ 0 ] ) > rest + EPSILON )
+				{
+					half--;
+				}
+				while ( half + 1 <= extent[ 0 ] && sq( half + 1, radii[ 0 ] ) <= rest + EPSILON )
+				{
+					half++;
+				}
+				if ( half >= 0 )
+				{
+					final long[] start = position.clone();
+					start[ 0 ] = -half;
+					starts.add( start );
+					lengths.add( 2 * half + 1 );
+				}
+			}
+
+			done = true;
+			for ( int d = 1; d < n; d++ )
+			{
+				if ( ++position[ d ] <= extent[ d ] )
+				{
+					done = false;
+					break;
+				}
+				position[ d ] = -extent[ d ];
+			}
+		}
+
+		final long[] l = new long[ lengths.size() ];
+		for ( int r = 0; r < l.length; r++ )
+		{
+			l[ r ] = lengths.get( r );
+		}
+		return new RunLengthTable( n, starts.toArray( new long[ starts.size() ][] ), l );
+	}
+
+	/**
+	 * <code>(o / r)<sup>2</sup></code>, with a zero radius only admitting a
+	 * zero offset.
+	 */
+	private static double sq( final long o, final double r )
+	{
+		if ( o == 0 )
+		{
+			return 0;
+		}
+		if ( r == 0 )
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+		final double x = o / r;
+		return x * x;
+	}
+}
@@ -19,7 +19,7 @@ import net.imglib2.RandomAccessibleInterval;
  * @author Jean-Yves Tinevez <jeanyves.tinevez@gmail.com>#
  * @author Jonathan Hale (University of Konstanz)
  */
-public class HorizontalLineShape implements Shape
+public class HorizontalLineShape implements IncrementalShape
 {
 	private final long span;
 
@@ -98,6 +98,24 @@ public class HorizontalLineShape implements Shape
 		return dim;
 	}
 	
+	@Override
+	public OffsetTable getOffsetTable( final int numDimensions )
+	{
+		return OffsetTable.line( span, dim, numDimensions, skipCenter );
+	}
+
+	@Override
+	public OffsetTable getEnteringOffsets( final int d, final int numDimensions )
+	{
+		return getOffsetTable( numDimensions ).entering( d );
+	}
+
+	@Override
+	public OffsetTable getLeavingOffsets( final int d, final int numDimensions )
+	{
+		return getOffsetTable( numDimensions ).leaving( d );
+	}
+
 	@Override
 	public String toString()
 	{
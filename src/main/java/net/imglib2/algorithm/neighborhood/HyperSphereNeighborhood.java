@@ -58,10 +58,14 @@ public class HyperSphereNeighborhood< T > extends AbstractLocalizable implements
 	{
 		return new HyperSphereNeighborhoodFactory< T >()
 		{
+			private SharedOffsetTable table;
+
 			@Override
 			public Neighborhood< T > create( final long[] position, final long radius, final RandomAccess< T > sourceRandomAccess )
 			{
-				return new HyperSphereNeighborhood< T >( position, radius, sourceRandomAccess );
+				final SharedOffsetTable t = SharedOffsetTable.hyperSphere( table, radius, position.length );
+				table = t;
+				return new HyperSphereNeighborhood< T >( position, radius, sourceRandomAccess, t );
 			}
 		};
 	}
@@ -72,16 +76,36 @@ public class HyperSphereNeighborhood< T > extends AbstractLocalizable implements
 
 	private final int maxDim;
 
+	/**
+	 * The precomputed offsets of the elements, shared by all the hyperspheres
+	 * of the same radius and dimensionality, or <code>null</code> if the
+	 * hypersphere is too large for a table.
+	 */
+	private final OffsetTable table;
+
+	/**
+	 * The table and its index deltas, shared with the other neighborhoods of
+	 * the same factory.
+	 */
+	private final SharedOffsetTable sharedTable;
+
 	private final long size;
 
 	private final Interval structuringElementBoundingBox;
 
 	HyperSphereNeighborhood( final long[] position, final long radius, final RandomAccess< T > sourceRandomAccess )
+	{
+		this( position, radius, sourceRandomAccess, SharedOffsetTable.hyperSphere( null, radius, position.length ) );
+	}
+
+	HyperSphereNeighborhood( final long[] position, final long radius, final RandomAccess< T > sourceRandomAccess, final SharedOffsetTable sharedTable )
 	{
 		super( position );
+		this.sharedTable = sharedTable;
 		this.sourceRandomAccess = sourceRandomAccess;
 		this.radius = radius;
 		maxDim = n - 1;
+		table = sharedTable.getTable();
 		size = computeSize();
 
 		final long[] min = new long[ n ];
@@ -101,6 +125,11 @@ public class HyperSphereNeighborhood< T > extends AbstractLocalizable implements
 	 */
 	protected long computeSize()
 	{
+		if ( table != null )
+		{
+			return table.size();
+		}
+
 		final LocalCursor cursor = new LocalCursor( sourceRandomAccess );
 
 		// "compute number of pixels"
@@ -114,8 +143,15 @@ public class HyperSphereNeighborhood< T > extends AbstractLocalizable implements
 		return size;
 	}
 
+	/**
+	 * Iterates the elements of the offset table, or, for hyperspheres too
+	 * large for a table, computes the span of each line of the hypersphere on
+	 * the fly.
+	 */
 	public final class LocalCursor extends AbstractEuclideanSpace implements Cursor< T >
 	{
+		private final OffsetTableWalker< T > walker;
+
 		private final RandomAccess< T > source;
 
 		// the current radius in each dimension we are at
@@ -131,30 +167,58 @@ public class HyperSphereNeighborhood< T > extends AbstractLocalizable implements
 		{
 			super( source.numDimensions() );
 			this.source = source;
-			r = new double[ n ];
-			ri = new long[ n ];
-			s = new long[ n ];
+			if ( table != null )
+			{
+				walker = new OffsetTableWalker< T >( table, source, sharedTable.indexDeltas( source ) );
+				r = null;
+				ri = null;
+				s = null;
+			}
+			else
+			{
+				walker = null;
+				r = new double[ n ];
+				ri = new long[ n ];
+				s = new long[ n ];
+			}
 			reset();
 		}
 
 		protected LocalCursor( final LocalCursor c )
 		{
 			super( c.numDimensions() );
-			source = c.source.copyRandomAccess();
-			r = c.r.clone();
-			ri = c.ri.clone();
-			s = c.s.clone();
+			if ( c.walker != null )
+			{
+				walker = c.walker.copy();
+				source = null;
+				r = null;
+				ri = null;
+				s = null;
+			}
+			else
+			{
+				walker = null;
+				source = c.source.copyRandomAccess();
+				r = c.r.clone();
+				ri = c.ri.clone();
+				s = c.s.clone();
+			}
 		}
 
 		@Override
 		public T get()
 		{
-			return source.get();
+			return walker != null ? walker.get() : source.get();
 		}
 
 		@Override
 		public void fwd()
 		{
+			if ( walker != null )
+			{
+				walker.fwd();
+				return;
+			}
 
 			if ( --s[ 0 ] >= 0 )
 				source.fwd( 0 );
@@ -210,6 +274,12 @@ public class HyperSphereNeighborhood< T > extends AbstractLocalizable implements
 		@Override
 		public void reset()
 		{
+			if ( walker != null )
+			{
+				walker.reset( position );
+				return;
+			}
+
 			for ( int d = 0; d < maxDim; ++d )
 			{
 				r[ d ] = ri[ d ] = s[ d ] = 0;
@@ -226,55 +296,67 @@ public class HyperSphereNeighborhood< T > extends AbstractLocalizable implements
 		@Override
 		public boolean hasNext()
 		{
-			return s[ maxDim ] > 0;
+			return walker != null ? walker.hasNext() : s[ maxDim ] > 0;
 		}
 
 		@Override
 		public float getFloatPosition( final int d )
 		{
-			return source.getFloatPosition( d );
+			return getLongPosition( d );
 		}
 
 		@Override
 		public double getDoublePosition( final int d )
 		{
-			return source.getDoublePosition( d );
+			return getLongPosition( d );
 		}
 
 		@Override
 		public int getIntPosition( final int d )
 		{
-			return source.getIntPosition( d );
+			return ( int ) getLongPosition( d );
 		}
 
 		@Override
 		public long getLongPosition( final int d )
 		{
-			return source.getLongPosition( d );
+			return walker != null ? walker.getLongPosition( d ) : source.getLongPosition( d );
 		}
 
 		@Override
 		public void localize( final long[] position )
 		{
-			source.localize( position );
+			if ( walker != null )
+				walker.localize( position );
+			else
+				source.localize( position );
 		}
 
 		@Override
 		public void localize( final float[] position )
 		{
-			source.localize( position );
+			if ( walker != null )
+				walker.localize( position );
+			else
+				source.localize( position );
 		}
 
 		@Override
 		public void localize( final double[] position )
 		{
-			source.localize( position );
+			if ( walker != null )
+				walker.localize( position );
+			else
+				source.localize( position );
 		}
 
 		@Override
 		public void localize( final int[] position )
 		{
-			source.localize( position );
+			if ( walker != null )
+				walker.localize( position );
+			else
+				source.localize( position );
 		}
 
 		@Override
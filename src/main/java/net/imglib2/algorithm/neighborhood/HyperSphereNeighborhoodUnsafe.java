@@ -42,10 +42,14 @@ public final class HyperSphereNeighborhoodUnsafe< T > extends HyperSphereNeighbo
 	{
 		return new HyperSphereNeighborhoodFactory< T >()
 		{
+			private SharedOffsetTable table;
+
 			@Override
 			public Neighborhood< T > create( final long[] position, final long radius, final RandomAccess< T > sourceRandomAccess )
 			{
-				return new HyperSphereNeighborhoodUnsafe< T >( position, radius, sourceRandomAccess );
+				final SharedOffsetTable t = SharedOffsetTable.hyperSphere( table, radius, position.length );
+				table = t;
+				return new HyperSphereNeighborhoodUnsafe< T >( position, radius, sourceRandomAccess, t );
 			}
 		};
 	}
@@ -56,7 +60,12 @@ public final class HyperSphereNeighborhoodUnsafe< T > extends HyperSphereNeighbo
 
 	HyperSphereNeighborhoodUnsafe( final long[] position, final long radius, final RandomAccess< T > sourceRandomAccess )
 	{
-		super( position, radius, sourceRandomAccess );
+		this( position, radius, sourceRandomAccess, SharedOffsetTable.hyperSphere( null, radius, position.length ) );
+	}
+
+	HyperSphereNeighborhoodUnsafe( final long[] position, final long radius, final RandomAccess< T > sourceRandomAccess, final SharedOffsetTable sharedTable )
+	{
+		super( position, radius, sourceRandomAccess, sharedTable );
 		theCursor = super.cursor();
 		firstElementCursor = super.cursor();
 	}
@@ -52,7 +52,7 @@ import net.imglib2.RandomAccessibleInterval;
  * @author Tobias Pietzsch <tobias.pietzsch@gmail.com>
  * @author Jonathan Hale (University of Konstanz)
  */
-public class HyperSphereShape implements Shape
+public class HyperSphereShape implements IncrementalShape
 {
 	final long radius;
 
@@ -93,6 +93,24 @@ public class HyperSphereShape implements Shape
 		return radius;
 	}
 
+	@Override
+	public OffsetTable getOffsetTable( final int numDimensions )
+	{
+		return OffsetTable.hyperSphere( radius, numDimensions );
+	}
+
+	@Override
+	public OffsetTable getEnteringOffsets( final int d, final int numDimensions )
+	{
+		return getOffsetTable( numDimensions ).entering( d );
+	}
+
+	@Override
+	public OffsetTable getLeavingOffsets( final int d, final int numDimensions )
+	{
+		return getOffsetTable( numDimensions ).leaving( d );
+	}
+
 	@Override
 	public String toString()
 	{
@@ -0,0 +1,57 @@
+package net.imglib2.algorithm.neighborhood;
+
+/**
+ * A {@link Shape} that can describe how its neighborhoods change when their
+ * center moves by one pixel.
+ * <p>
+ * When a neighborhood slides along a line, most of its elements are shared
+ * between two consecutive positions. Algorithms that maintain a running
+ * quantity over the neighborhood (a sum, a histogram, a min or max queue)
+ * only need to visit the elements that enter and leave it, which are
+ * precomputed once per shape and dimensionality.
+ * <p>
+ * All the offsets are relative to the center of the neighborhood <b>after</b>
+ * a unit move in the positive direction along the specified dimension.
+ * @see OffsetTable#entering(int)
+ * @see OffsetTable#leaving(int)
+ */
+public interface IncrementalShape extends Shape
+{
+
+	/**
+	 * Returns the offsets of all the elements of this shape.
+	 *
+	 * @param numDimensions
+	 *            the dimensionality of the neighborhoods.
+	 * @return the offset table.
+	 * @throws IllegalArgumentException
+	 *             if the bounding box of the shape has more than
+	 *             {@link OffsetTable#MAX_SHAPE_SIZE} elements.
+	 */
+	public OffsetTable getOffsetTable( final int numDimensions );
+
+	/**
+	 * Returns the offsets of the elements that enter the neighborhood when
+	 * its center moves by one pixel along the specified dimension.
+	 *
+	 * @param d
+	 *            the dimension of the move.
+	 * @param numDimensions
+	 *            the dimensionality of the neighborhoods.
+	 * @return the entering offsets, relative to the new center.
+	 */
+	public OffsetTable getEnteringOffsets( final int d, final int numDimensions );
+
+	/**
+	 * Returns the offsets of the elements that leave the neighborhood when
+	 * its center moves by one pixel along the specified dimension.
+	 *
+	 * @param d
+	 *            the dimension of the move.
+	 * @param numDimensions
+	 *            the dimensionality of the neighborhoods.
+	 * @return the leaving offsets, relative to the new center.
+	 */
+	public OffsetTable getLeavingOffsets( final int d, final int numDimensions );
+
+}
@@ -0,0 +1,245 @@
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.Iterator;
+
+import net.imglib2.AbstractEuclideanSpace;
+import net.imglib2.AbstractInterval;
+import net.imglib2.Cursor;
+import net.imglib2.FlatIterationOrder;
+import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.BooleanType;
+
+/**
+ * A {@link Shape} made of the <code>true</code> pixels of a mask, for
+ * structuring elements outside of the fixed geometries: annuli, kernels
+ * loaded from a file, etc.
+ * <p>
+ * The mask is compiled once into runs of consecutive pixels along dimension
+ * 0 (see {@link RunLengthTable}). The neighborhoods move to the start of each
+ * run with a single precomputed step, then walk the run with
+ * <code>fwd( 0 )</code>, so that dense masks iterate about as fast as a
+ * {@link RectangleShape}.
+ * <p>
+ * Unlike the other shapes, a mask shape has a fixed dimensionality, the one of
+ * its mask, and using it on a source of another dimensionality throws an
+ * {@link IllegalArgumentException}.
+ */
+public class MaskShape implements IncrementalShape
+{
+	private final RunLengthTable table;
+
+	/**
+	 * Creates a new shape from a mask, centered on the middle pixel of the
+	 * mask, at <code>min + dimension / 2</code> along each dimension.
+	 *
+	 * @param mask
+	 *            the mask. Its <code>true</code> pixels are the elements of
+	 *            the shape.
+	 */
+	public < B extends BooleanType< B > > MaskShape( final RandomAccessibleInterval< B > mask )
+	{
+		this( mask, middle( mask ) );
+	}
+
+	/**
+	 * Creates a new shape from a mask.
+	 *
+	 * @param mask
+	 *            the mask. Its <code>true</code> pixels are the elements of
+	 *            the shape.
+	 * @param center
+	 *            the position, in the mask, of the center of the shape.
+	 */
+	public < B extends BooleanType< B > > MaskShape( final RandomAccessibleInterval< B > mask, final long[] center )
+	{
+		this( RunLengthTable.fromMask( mask, center ) );
+	}
+
+	/**
+	 * Creates a new shape iterating over the runs of the specified table.
+	 *
+	 * @param table
+	 *            the run-length table. Its dimensionality must match the one
+	 *            of the images the shape is used on.
+	 */
+	public MaskShape( final RunLengthTable table )
+	{
+		this.table = table;
+	}
+
+	@Override
+	public < T > NeighborhoodsIterableInterval< T > neighborhoods( final RandomAccessibleInterval< T > source )
+	{
+		checkDimensions( source.numDimensions() );
+		final TableNeighborhoodFactory< T > f = TableNeighborhoodUnsafe.< T >factory();
+		return new NeighborhoodsIterableInterval< T >( source, table, f );
+	}
+
+	@Override
+	public < T > NeighborhoodsAccessible< T > neighborhoodsRandomAccessible( final RandomAccessible< T > source )
+	{
+		checkDimensions( source.numDimensions() );
+		final TableNeighborhoodFactory< T > f = TableNeighborhoodUnsafe.< T >factory();
+		return new NeighborhoodsAccessible< T >( source, table, f );
+	}
+
+	@Override
+	public < T > NeighborhoodsIterableInterval< T > neighborhoodsSafe( final RandomAccessibleInterval< T > source )
+	{
+		checkDimensions( source.numDimensions() );
+		final TableNeighborhoodFactory< T > f = TableNeighborhood.< T >factory();
+		return new NeighborhoodsIterableInterval< T >( source, table, f );
+	}
+
+	@Override
+	public < T > NeighborhoodsAccessible< T > neighborhoodsRandomAccessibleSafe( final RandomAccessible< T > source )
+	{
+		checkDimensions( source.numDimensions() );
+		final TableNeighborhoodFactory< T > f = TableNeighborhood.< T >factory();
+		return new NeighborhoodsAccessible< T >( source, table, f );
+	}
+
+	/**
+	 * @return The run-length table of this shape.
+	 */
+	public RunLengthTable getTable()
+	{
+		return table;
+	}
+
+	@Override
+	public OffsetTable getOffsetTable( final int numDimensions )
+	{
+		checkDimensions( numDimensions );
+		return table.toOffsetTable();
+	}
+
+	@Override
+	public OffsetTable getEnteringOffsets( final int d, final int numDimensions )
+	{
+		return getOffsetTable( numDimensions ).entering( d );
+	}
+
+	@Override
+	public OffsetTable getLeavingOffsets( final int d, final int numDimensions )
+	{
+		return getOffsetTable( numDimensions ).leaving( d );
+	}
+
+	@Override
+	public String toString()
+	{
+		return "MaskShape, " + table.numElements() + " elements in " + table.numRuns() + " runs in " + table.numDimensions() + "D";
+	}
+
+	private void checkDimensions( final int numDimensions )
+	{
+		if ( numDimensions != table.numDimensions() )
+		{
+			throw new IllegalArgumentException( "This shape is " + table.numDimensions() + "D, cannot be used in " + numDimensions + "D." );
+		}
+	}
+
+	private static long[] middle( final Interval mask )
+	{
+		final long[] center = new long[ mask.numDimensions() ];
+		for ( int d = 0; d < center.length; d++ )
+		{
+			center[ d ] = mask.min( d ) + mask.dimension( d ) / 2;
+		}
+		return center;
+	}
+
+	public static final class NeighborhoodsIterableInterval< T > extends AbstractInterval implements IterableInterval< Neighborhood< T > >
+	{
+		final RandomAccessibleInterval< T > source;
+
+		final RunLengthTable table;
+
+		final long size;
+
+		final TableNeighborhoodFactory< T > factory;
+
+		public NeighborhoodsIterableInterval( final RandomAccessibleInterval< T > source, final RunLengthTable table, final TableNeighborhoodFactory< T > factory )
+		{
+			super( source );
+			this.source = source;
+			this.table = table;
+			this.factory = factory;
+
+			long s = source.dimension( 0 );
+			for ( int d = 1; d < n; ++d )
+				s *= source.dimension( d );
+			size = s;
+		}
+
+		@Override
+		public long size()
+		{
+			return size;
+		}
+
+		@Override
+		public Neighborhood< T > firstElement()
+		{
+			return cursor().next();
+		}
+
+		@Override
+		public Object iterationOrder()
+		{
+			return new FlatIterationOrder( this );
+		}
+
+		@Override
+		public Iterator< Neighborhood< T >> iterator()
+		{
+			return cursor();
+		}
+
+		@Override
+		public Cursor< Neighborhood< T >> cursor()
+		{
+			return new TableNeighborhoodCursor< T >( source, table, factory );
+		}
+
+		@Override
+		public Cursor< Neighborhood< T >> localizingCursor()
+		{
+			return cursor();
+		}
+	}
+
+	public static final class NeighborhoodsAccessible< T > extends AbstractEuclideanSpace implements RandomAccessible< Neighborhood< T > >
+	{
+		final RandomAccessible< T > source;
+
+		final RunLengthTable table;
+
+		final TableNeighborhoodFactory< T > factory;
+
+		public NeighborhoodsAccessible( final RandomAccessible< T > source, final RunLengthTable table, final TableNeighborhoodFactory< T > factory )
+		{
+			super( source.numDimensions() );
+			this.source = source;
+			this.table = table;
+			this.factory = factory;
+		}
+
+		@Override
+		public RandomAccess< Neighborhood< T >> randomAccess()
+		{
+			return new TableNeighborhoodRandomAccess< T >( source, table, factory );
+		}
+
+		@Override
+		public RandomAccess< Neighborhood< T >> randomAccess( final Interval interval )
+		{
+			return new TableNeighborhoodRandomAccess< T >( source, table, factory, interval );
+		}
+	}
+}
@@ -0,0 +1,550 @@
+package net.imglib2.algorithm.neighborhood;
+
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccessible;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.IntervalView;
+
+/**
+ * Copies the values of the neighborhood of a pixel into a primitive array, in
+ * the order of an {@link OffsetTable}.
+ * <p>
+ * Reducers that work on a <code>Neighborhood&lt;T&gt;</code> pay for a
+ * generic cursor and a <code>compareTo</code> or <code>getRealDouble</code>
+ * call per element. Once gathered, the values can be reduced with the plain
+ * loops of {@link BufferReducers}, which the JIT can unroll and vectorize.
+ * <p>
+ * If the source is an {@link ArrayImg} of one of the primitive real types
+ * (signed and unsigned bytes, shorts and ints, floats and doubles), the values
+ * are read straight from the backing array, with the index deltas of the
+ * table, for all the centers whose neighborhood is inside the image. Other
+ * sources, and the centers close to the image border, go through an
+ * {@link OffsetTableCursor}.
+ * <p>
+ * A gatherer keeps a cursor on the source, and must not be shared between
+ * threads. See {@link #copy()}.
+ */
+public final class NeighborhoodGatherer< T extends RealType< T > >
+{
+
+	/**
+	 * The primitive storage of the array images with a direct path.
+	 */
+	private static enum Storage
+	{
+		BYTE, UNSIGNED_BYTE, SHORT, UNSIGNED_SHORT, INT, UNSIGNED_INT, FLOAT, DOUBLE;
+	}
+
+	private final RandomAccessible< T > source;
+
+	private final OffsetTable table;
+
+	private final int n;
+
+	private final int size;
+
+	private final OffsetTableCursor< T > cursor;
+
+	/**
+	 * The storage of the backing array. <code>null</code> if there is no
+	 * direct path.
+	 */
+	private final Storage storage;
+
+	private final Object data;
+
+	private final long[] strides;
+
+	private final int[] deltas;
+
+	/**
+	 * The centers whose neighborhood is entirely in the array image.
+	 */
+	private final long[] interiorMin;
+
+	private final long[] interiorMax;
+
+	/**
+	 * Creates a gatherer for the neighborhoods of the specified shape.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param shape
+	 *            the shape of the neighborhoods.
+	 * @throws IllegalArgumentException
+	 *             if the bounding box of the shape has more than
+	 *             {@link OffsetTable#MAX_SHAPE_SIZE} elements.
+	 */
+	public NeighborhoodGatherer( final RandomAccessible< T > source, final Shape shape )
+	{
+		this( source, OffsetTable.forShape( shape, source.numDimensions() ) );
+	}
+
+	/**
+	 * Creates a gatherer for the elements of the specified table.
+	 *
+	 * @param source
+	 *            the source image. It must be defined over all the
+	 *            neighborhoods that will be gathered.
+	 * @param table
+	 *            the offsets of the neighborhood elements.
+	 */
+	public NeighborhoodGatherer( final RandomAccessible< T > source, final OffsetTable table )
+	{
+		if ( source.numDimensions() != table.numDimensions() )
+		{
+			throw new IllegalArgumentException( "Source and offset table must have the same dimensionality." );
+		}
+		this.source = source;
+		this.table = table;
+		this.n = table.numDimensions();
+		this.size = table.size();
+		this.cursor = new OffsetTableCursor< T >( table, source.randomAccess() );
+
+		final ArrayImg< T, ? > img = arrayImg( source );
+		final Storage s = null == img ? null : storage( img.firstElement() );
+		if ( null == s || img.size() > Integer.MAX_VALUE )
+		{
+			storage = null;
+			data = null;
+			strides = null;
+			deltas = null;
+			interiorMin = null;
+			interiorMax = null;
+			return;
+		}
+
+		storage = s;
+		data = ( ( ArrayDataAccess< ? > ) img.update( null ) ).getCurrentStorageArray();
+		strides = new long[ n ];
+		interiorMin = new long[ n ];
+		interiorMax = new long[ n ];
+		long stride = 1;
+		for ( int d = 0; d < n; d++ )
+		{
+			strides[ d ] = stride;
+			stride *= img.dimension( d );
+			interiorMin[ d ] = -table.getBoundingBox().min( d );
+			interiorMax[ d ] = img.dimension( d ) - 1 - table.getBoundingBox().max( d );
+		}
+		deltas = table.indexDeltas( strides );
+	}
+
+	/**
+	 * @return a new gatherer on the same source and table, for another
+	 *         thread.
+	 */
+	public NeighborhoodGatherer< T > copy()
+	{
+		return new NeighborhoodGatherer< T >( source, table );
+	}
+
+	/**
+	 * @return the number of values gathered per neighborhood.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the table that gives the order of the gathered values.
+	 */
+	public OffsetTable getTable()
+	{
+		return table;
+	}
+
+	/**
+	 * @return <code>true</code> if the values can be read straight from the
+	 *         backing array of the source, for the centers away from its
+	 *         border.
+	 */
+	public boolean isDirect()
+	{
+		return null != storage;
+	}
+
+	/**
+	 * Copies the values of the neighborhood of the specified center into the
+	 * specified buffer.
+	 *
+	 * @param center
+	 *            the center of the neighborhood.
+	 * @param buffer
+	 *            the buffer to write, at least {@link #size()} long.
+	 * @return the number of values written.
+	 */
+	public int gather( final Localizable center, final double[] buffer )
+	{
+		final int index = arrayIndex( center );
+		if ( index < 0 )
+		{
+			cursor.setCenter( center );
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = cursor.next().getRealDouble();
+			}
+			return size;
+		}
+		switch ( storage )
+		{
+		case BYTE:
+		{
+			final byte[] a = ( byte[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		case UNSIGNED_BYTE:
+		{
+			final byte[] a = ( byte[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ] & 0xff;
+			}
+			break;
+		}
+		case SHORT:
+		{
+			final short[] a = ( short[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		case UNSIGNED_SHORT:
+		{
+			final short[] a = ( short[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ] & 0xffff;
+			}
+			break;
+		}
+		case INT:
+		{
+			final int[] a = ( int[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		case UNSIGNED_INT:
+		{
+			final int[] a = ( int[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ] & 0xffffffffl;
+			}
+			break;
+		}
+		case FLOAT:
+		{
+			final float[] a = ( float[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		case DOUBLE:
+		{
+			final double[] a = ( double[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		}
+		return size;
+	}
+
+	/**
+	 * Copies the values of the neighborhood of the specified center into the
+	 * specified buffer. Integer values above 2<sup>24</sup> and doubles lose
+	 * precision.
+	 *
+	 * @param center
+	 *            the center of the neighborhood.
+	 * @param buffer
+	 *            the buffer to write, at least {@link #size()} long.
+	 * @return the number of values written.
+	 */
+	public int gather( final Localizable center, final float[] buffer )
+	{
+		final int index = arrayIndex( center );
+		if ( index < 0 )
+		{
+			cursor.setCenter( center );
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = cursor.next().getRealFloat();
+			}
+			return size;
+		}
+		switch ( storage )
+		{
+		case BYTE:
+		{
+			final byte[] a = ( byte[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		case UNSIGNED_BYTE:
+		{
+			final byte[] a = ( byte[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ] & 0xff;
+			}
+			break;
+		}
+		case SHORT:
+		{
+			final short[] a = ( short[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		case UNSIGNED_SHORT:
+		{
+			final short[] a = ( short[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ] & 0xffff;
+			}
+			break;
+		}
+		case INT:
+		{
+			final int[] a = ( int[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		case UNSIGNED_INT:
+		{
+			final int[] a = ( int[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ] & 0xffffffffl;
+			}
+			break;
+		}
+		case FLOAT:
+		{
+			final float[] a = ( float[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		case DOUBLE:
+		{
+			final double[] a = ( double[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = ( float ) a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		}
+		return size;
+	}
+
+	/**
+	 * Copies the values of the neighborhood of the specified center into the
+	 * specified buffer. Values are cast to <code>int</code> like Java primitive
+	 * casts do: unsigned ints above {@link Integer#MAX_VALUE} wrap around, and
+	 * real values are truncated.
+	 *
+	 * @param center
+	 *            the center of the neighborhood.
+	 * @param buffer
+	 *            the buffer to write, at least {@link #size()} long.
+	 * @return the number of values written.
+	 */
+	public int gather( final Localizable center, final int[] buffer )
+	{
+		final int index = arrayIndex( center );
+		if ( index < 0 )
+		{
+			cursor.setCenter( center );
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = ( int ) ( long ) cursor.next().getRealDouble();
+			}
+			return size;
+		}
+		switch ( storage )
+		{
+		case BYTE:
+		{
+			final byte[] a = ( byte[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		case UNSIGNED_BYTE:
+		{
+			final byte[] a = ( byte[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ] & 0xff;
+			}
+			break;
+		}
+		case SHORT:
+		{
+			final short[] a = ( short[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		case UNSIGNED_SHORT:
+		{
+			final short[] a = ( short[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ] & 0xffff;
+			}
+			break;
+		}
+		case INT:
+		case UNSIGNED_INT:
+		{
+			final int[] a = ( int[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		case FLOAT:
+		{
+			final float[] a = ( float[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = ( int ) a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		case DOUBLE:
+		{
+			final double[] a = ( double[] ) data;
+			for ( int i = 0; i < size; i++ )
+			{
+				buffer[ i ] = ( int ) a[ index + deltas[ i ] ];
+			}
+			break;
+		}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the index of the center in the backing array, or -1 if there is
+	 * no direct path or if the neighborhood is not entirely in the image.
+	 */
+	private int arrayIndex( final Localizable center )
+	{
+		if ( null == storage )
+		{
+			return -1;
+		}
+		long index = 0;
+		for ( int d = 0; d < n; d++ )
+		{
+			final long p = center.getLongPosition( d );
+			if ( p < interiorMin[ d ] || p > interiorMax[ d ] )
+			{
+				return -1;
+			}
+			index += p * strides[ d ];
+		}
+		return ( int ) index;
+	}
+
+	/**
+	 * Returns the array image behind the source, possibly restricted to an
+	 * interval, or <code>null</code>.
+	 */
+	private static < T > ArrayImg< T, ? > arrayImg( final RandomAccessible< T > source )
+	{
+		RandomAccessible< T > view = source;
+		while ( view instanceof IntervalView )
+		{
+			view = ( ( IntervalView< T > ) view ).getSource();
+		}
+		if ( view instanceof ArrayImg )
+		{
+			return ( ArrayImg< T, ? > ) view;
+		}
+		return null;
+	}
+
+	private static Storage storage( final Object type )
+	{
+		if ( type instanceof UnsignedByteType )
+		{
+			return Storage.UNSIGNED_BYTE;
+		}
+		if ( type instanceof ByteType )
+		{
+			return Storage.BYTE;
+		}
+		if ( type instanceof UnsignedShortType )
+		{
+			return Storage.UNSIGNED_SHORT;
+		}
+		if ( type instanceof ShortType )
+		{
+			return Storage.SHORT;
+		}
+		if ( type instanceof UnsignedIntType )
+		{
+			return Storage.UNSIGNED_INT;
+		}
+		if ( type instanceof IntType )
+		{
+			return Storage.INT;
+		}
+		if ( type instanceof FloatType )
+		{
+			return Storage.FLOAT;
+		}
+		if ( type instanceof DoubleType )
+		{
+			return Storage.DOUBLE;
+		}
+		return null;
+	}
+}
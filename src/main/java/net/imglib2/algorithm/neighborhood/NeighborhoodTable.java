@@ -0,0 +1,46 @@
+package net.imglib2.algorithm.neighborhood;
+
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+
+/**
+ * The elements of a neighborhood, relative to its center, precomputed in a
+ * form that can be iterated without computing anything. A
+ * {@link TableNeighborhood} iterates any table, and each kind of table brings
+ * its own way of walking over the source:
+ * <ul>
+ * <li>an {@link OffsetTable} moves from one element to the next with a single
+ * precomputed step;
+ * <li>a {@link RunLengthTable} moves to the start of each run of consecutive
+ * elements along dimension 0, then walks the run with <code>fwd( 0 )</code>.
+ * </ul>
+ */
+public abstract class NeighborhoodTable
+{
+
+	NeighborhoodTable()
+	{}
+
+	/**
+	 * @return the dimensionality of this table.
+	 */
+	public abstract int numDimensions();
+
+	/**
+	 * @return the number of elements of the neighborhood.
+	 */
+	public abstract long numElements();
+
+	/**
+	 * @return the bounding box of the elements, relative to the center.
+	 */
+	public abstract Interval getBoundingBox();
+
+	/**
+	 * Creates a walker over the elements of this table.
+	 *
+	 * @param source
+	 *            the random access the walker moves, used by the walker only.
+	 */
+	abstract < T > TableWalker< T > walker( final RandomAccess< T > source );
+}
@@ -0,0 +1,29 @@
+package net.imglib2.algorithm.neighborhood;
+
+/**
+ * An action performed on each {@link Neighborhood} of an iterable of
+ * neighborhoods, by {@link ParallelNeighborhoods#forEach}.
+ * <p>
+ * Each thread works with its own copy of the visitor, so that implementations
+ * can keep per-thread state (a random access on a target image, a partial
+ * result) without synchronization.
+ *
+ * @param <T>
+ *            the pixel type of the neighborhoods.
+ */
+public interface NeighborhoodVisitor< T >
+{
+	/**
+	 * Performs the action on the specified neighborhood. The neighborhood
+	 * instance may be reused for the next call, and must not be kept.
+	 *
+	 * @param neighborhood
+	 *            the neighborhood, positioned on its center.
+	 */
+	public void visit( final Neighborhood< T > neighborhood );
+
+	/**
+	 * @return a new visitor for another thread.
+	 */
+	public NeighborhoodVisitor< T > copy();
+}
@@ -0,0 +1,664 @@
+package net.imglib2.algorithm.neighborhood;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.util.Util;
+
+/**
+ * A flat table of the offsets of the elements of a neighborhood, relative to
+ * its center, in iteration order.
+ * <p>
+ * Neighborhoods backed by an offset table do not compute anything when they
+ * are iterated: a cursor moves from one element to the next with a single
+ * precomputed step. On array-backed images, the table can also be turned into
+ * linear index deltas for a given image stride (see
+ * {@link #indexDeltas(long[])}), and the cursor becomes a loop over an
+ * <code>int[]</code>.
+ * <p>
+ * Tables of the common shapes are cached, in a cache of bounded size whose
+ * tables can be reclaimed by the garbage collector. A table takes
+ * <code>2 * n</code> longs per element, so the neighborhoods of large shapes
+ * (see {@link #MAX_SHAPE_SIZE}) do not use one.
+ */
+public final class OffsetTable extends NeighborhoodTable
+{
+
+	/**
+	 * The number of elements of the bounding box of a shape above which no
+	 * offset table is built for it, to keep the memory footprint of large
+	 * shapes independent of their size. The neighborhoods of large
+	 * hyperspheres and diamonds iterate without a table.
+	 */
+	public static final long MAX_SHAPE_SIZE = 1 << 16;
+
+	/**
+	 * The number of tables kept in the cache.
+	 */
+	private static final int CACHE_SIZE = 32;
+
+	/**
+	 * The cache of the tables of the common shapes, least recently used first.
+	 */
+	private static final Map< String, SoftReference< OffsetTable > > CACHE = new LinkedHashMap< String, SoftReference< OffsetTable > >( 16, 0.75f, true )
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry( final Map.Entry< String, SoftReference< OffsetTable > > eldest )
+		{
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	private final int n;
+
+	private final int size;
+
+	/**
+	 * Offsets of all elements, flattened: element <code>i</code> is at
+	 * <code>offsets[ i * n ]</code> to <code>offsets[ i * n + n - 1 ]</code>.
+	 */
+	private final long[] offsets;
+
+	/**
+	 * Steps to move from one element to the next, flattened the same way. The
+	 * first step moves from the center to the first element.
+	 */
+	private final long[] steps;
+
+	private final Interval boundingBox;
+
+	/**
+	 * Entering and leaving offsets for a unit move along each dimension,
+	 * computed on demand.
+	 */
+	private OffsetTable[] entering;
+
+	private OffsetTable[] leaving;
+
+	/**
+	 * Creates a new offset table.
+	 *
+	 * @param offsets
+	 *            the offsets of the elements, in iteration order. All offsets
+	 *            must have the same length.
+	 */
+	public OffsetTable( final long[][] offsets )
+	{
+		this( offsets.length == 0 ? 0 : offsets[ 0 ].length, offsets );
+	}
+
+	private OffsetTable( final int n, final long[][] offsets )
+	{
+		this.n = n;
+		this.size = offsets.length;
+		this.offsets = new long[ size * n ];
+		this.steps = new long[ size * n ];
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( int i = 0; i < size; i++ )
+		{
+			if ( offsets[ i ].length != n )
+			{
+				throw new IllegalArgumentException( "All offsets must have the same dimensionality." );
+			}
+			for ( int d = 0; d < n; d++ )
+			{
+				final long o = offsets[ i ][ d ];
+				this.offsets[ i * n + d ] = o;
+				this.steps[ i * n + d ] = ( i == 0 ) ? o : o - offsets[ i - 1 ][ d ];
+				if ( i == 0 || o < min[ d ] )
+				{
+					min[ d ] = o;
+				}
+				if ( i == 0 || o > max[ d ] )
+				{
+					max[ d ] = o;
+				}
+			}
+		}
+		this.boundingBox = new FinalInterval( min, max );
+	}
+
+	/*
+	 * STATIC FACTORIES
+	 */
+
+	/**
+	 * Returns the offset table of a hypersphere, made of all the elements
+	 * whose squared distance to the center is not larger than
+	 * <code>radius<sup>2</sup></code>. The elements are in flat iteration
+	 * order, dimension 0 being the fastest.
+	 *
+	 * @param radius
+	 *            the radius of the hypersphere.
+	 * @param n
+	 *            the dimensionality of the hypersphere.
+	 * @return the offset table, shared while it is cached.
+	 * @throws IllegalArgumentException
+	 *             if the bounding box of the shape has more than
+	 *             {@link #MAX_SHAPE_SIZE} elements.
+	 */
+	public static OffsetTable hyperSphere( final long radius, final int n )
+	{
+		final String key = "sphere_" + radius + "_" + n;
+		OffsetTable table = cached( key );
+		if ( null == table )
+		{
+			table = enumerate( radius, n, Metric.L2 );
+			cache( key, table );
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the offset table of a diamond, made of all the elements whose
+	 * L1 distance to the center is not larger than <code>radius</code>. The
+	 * elements are in flat iteration order, dimension 0 being the fastest.
+	 *
+	 * @param radius
+	 *            the radius of the diamond.
+	 * @param n
+	 *            the dimensionality of the diamond.
+	 * @return the offset table, shared while it is cached.
+	 * @throws IllegalArgumentException
+	 *             if the bounding box of the shape has more than
+	 *             {@link #MAX_SHAPE_SIZE} elements.
+	 */
+	public static OffsetTable diamond( final long radius, final int n )
+	{
+		final String key = "diamond_" + radius + "_" + n;
+		OffsetTable table = cached( key );
+		if ( null == table )
+		{
+			table = enumerate( radius, n, Metric.L1 );
+			cache( key, table );
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the offset table of a hyper-rectangle of the specified span,
+	 * matching the one of {@link RectangleShape}. The elements are in flat
+	 * iteration order, dimension 0 being the fastest.
+	 *
+	 * @param span
+	 *            the span of the rectangle in both directions.
+	 * @param n
+	 *            the dimensionality of the rectangle.
+	 * @param skipCenter
+	 *            if <code>true</code>, the center is not part of the table.
+	 * @return the offset table, shared while it is cached.
+	 * @throws IllegalArgumentException
+	 *             if the bounding box of the shape has more than
+	 *             {@link #MAX_SHAPE_SIZE} elements.
+	 */
+	public static OffsetTable rectangle( final long span, final int n, final boolean skipCenter )
+	{
+		final String key = "rectangle_" + span + "_" + n + "_" + skipCenter;
+		OffsetTable table = cached( key );
+		if ( null == table )
+		{
+			final long[] min = new long[ n ];
+			final long[] max = new long[ n ];
+			Arrays.fill( min, -span );
+			Arrays.fill( max, span );
+			table = enumerate( min, max, Metric.NONE, span, skipCenter );
+			cache( key, table );
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the offset table of a line along one dimension, matching the
+	 * one of {@link HorizontalLineShape}.
+	 *
+	 * @param span
+	 *            the span of the line in both directions.
+	 * @param dim
+	 *            the dimension along which the line is laid.
+	 * @param n
+	 *            the dimensionality of the table.
+	 * @param skipCenter
+	 *            if <code>true</code>, the center is not part of the table.
+	 * @return the offset table, shared while it is cached.
+	 * @throws IllegalArgumentException
+	 *             if the bounding box of the shape has more than
+	 *             {@link #MAX_SHAPE_SIZE} elements.
+	 */
+	public static OffsetTable line( final long span, final int dim, final int n, final boolean skipCenter )
+	{
+		final String key = "line_" + span + "_" + dim + "_" + n + "_" + skipCenter;
+		OffsetTable table = cached( key );
+		if ( null == table )
+		{
+			final long[] min = new long[ n ];
+			final long[] max = new long[ n ];
+			min[ dim ] = -span;
+			max[ dim ] = span;
+			table = enumerate( min, max, Metric.NONE, span, skipCenter );
+			cache( key, table );
+		}
+		return table;
+	}
+
+	/**
+	 * Returns whether the neighborhoods of a hypersphere or of a diamond use
+	 * an offset table, that is whether its bounding box has at most
+	 * {@link #MAX_SHAPE_SIZE} elements.
+	 *
+	 * @param radius
+	 *            the radius of the shape.
+	 * @param n
+	 *            the dimensionality of the shape.
+	 * @return <code>true</code> if the shape is small enough for a table.
+	 */
+	public static boolean fitsInTable( final long radius, final int n )
+	{
+		return Math.pow( 2 * radius + 1, n ) <= MAX_SHAPE_SIZE;
+	}
+
+	/**
+	 * Returns whether a shape with the specified bounding box is small enough
+	 * for an offset table, that is whether its bounding box has at most
+	 * {@link #MAX_SHAPE_SIZE} elements.
+	 *
+	 * @param boundingBox
+	 *            the bounding box of the shape, relative to its center.
+	 * @return <code>true</code> if the shape is small enough for a table.
+	 */
+	public static boolean fitsInTable( final Interval boundingBox )
+	{
+		double size = 1;
+		for ( int d = 0; d < boundingBox.numDimensions(); d++ )
+		{
+			size *= boundingBox.dimension( d );
+		}
+		return size <= MAX_SHAPE_SIZE;
+	}
+
+	/**
+	 * Returns the offset table of a {@link Shape}: the cached table of the
+	 * shapes that have one, or a table built with
+	 * {@link #fromShape(Shape, int)} otherwise.
+	 *
+	 * @param shape
+	 *            the shape.
+	 * @param n
+	 *            the dimensionality to cast the shape over.
+	 * @return the offset table.
+	 * @throws IllegalArgumentException
+	 *             if the bounding box of the shape has more than
+	 *             {@link #MAX_SHAPE_SIZE} elements.
+	 */
+	public static OffsetTable forShape( final Shape shape, final int n )
+	{
+		if ( shape instanceof IncrementalShape )
+		{
+			return ( ( IncrementalShape ) shape ).getOffsetTable( n );
+		}
+		if ( shape instanceof OffsetTableShape )
+		{
+			return ( ( OffsetTableShape ) shape ).getTable();
+		}
+		return fromShape( shape, n );
+	}
+
+	/**
+	 * Returns the offset table of any {@link Shape}, by iterating once over
+	 * one of its neighborhoods.
+	 *
+	 * @param shape
+	 *            the shape.
+	 * @param n
+	 *            the dimensionality to cast the shape over.
+	 * @return a new offset table.
+	 * @throws IllegalArgumentException
+	 *             if the bounding box of the shape has more than
+	 *             {@link #MAX_SHAPE_SIZE} elements.
+	 */
+	public static OffsetTable fromShape( final Shape shape, final int n )
+	{
+		final long[] position = new long[ n ];
+		final Img< BitType > img = ArrayImgs.bits( Util.getArrayFromValue( 1l, n ) );
+		final Neighborhood< BitType > neighborhood = shape.neighborhoodsRandomAccessibleSafe( img ).randomAccess().get();
+		checkSize( neighborhood.getStructuringElementBoundingBox() );
+		final List< long[] > offsets = new ArrayList< long[] >( ( int ) neighborhood.size() );
+		final Cursor< BitType > cursor = neighborhood.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.localize( position );
+			offsets.add( position.clone() );
+		}
+		return new OffsetTable( n, offsets.toArray( new long[ offsets.size() ][] ) );
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * @return the number of elements in this table.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public long numElements()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the offset of the specified element in the specified dimension.
+	 *
+	 * @param i
+	 *            the element index.
+	 * @param d
+	 *            the dimension.
+	 * @return the offset.
+	 */
+	public long getOffset( final int i, final int d )
+	{
+		return offsets[ i * n + d ];
+	}
+
+	/**
+	 * Copies the offset of the specified element into the specified array.
+	 *
+	 * @param i
+	 *            the element index.
+	 * @param offset
+	 *            the array to write into.
+	 */
+	public void getOffset( final int i, final long[] offset )
+	{
+		System.arraycopy( offsets, i * n, offset, 0, n );
+	}
+
+	@Override
+	public Interval getBoundingBox()
+	{
+		return boundingBox;
+	}
+
+	/**
+	 * Returns the linear index deltas of the elements for an image with the
+	 * specified strides: element <code>i</code> is at <code>index +
+	 * deltas[ i ]</code> if the center is at <code>index</code>. The result is
+	 * not kept: callers compute it once per image and share it.
+	 *
+	 * @param strides
+	 *            the linear index increment of a unit move along each
+	 *            dimension.
+	 * @return a new array of index deltas.
+	 */
+	public int[] indexDeltas( final long[] strides )
+	{
+		final int[] deltas = new int[ size ];
+		for ( int i = 0; i < size; i++ )
+		{
+			long delta = 0;
+			for ( int d = 0; d < n; d++ )
+			{
+				delta += offsets[ i * n + d ] * strides[ d ];
+			}
+			deltas[ i ] = ( int ) delta;
+		}
+		return deltas;
+	}
+
+	/**
+	 * Returns the offsets that enter the neighborhood when its center moves by
+	 * one pixel in the positive direction along the specified dimension. The
+	 * offsets are relative to the new center: they are the elements
+	 * <code>o</code> of this table for which <code>o + e<sub>d</sub></code> is
+	 * not in this table.
+	 * <p>
+	 * The result is computed once and kept.
+	 *
+	 * @param d
+	 *            the dimension of the move.
+	 * @return the entering offsets, in iteration order.
+	 */
+	public synchronized OffsetTable entering( final int d )
+	{
+		computeIncrements( d );
+		return entering[ d ];
+	}
+
+	/**
+	 * Returns the offsets that leave the neighborhood when its center moves by
+	 * one pixel in the positive direction along the specified dimension. The
+	 * offsets are relative to the new center: they are the
+	 * <code>q - e<sub>d</sub></code> for the elements <code>q</code> of this
+	 * table for which <code>q - e<sub>d</sub></code> is not in this table.
+	 * <p>
+	 * The result is computed once and kept.
+	 *
+	 * @param d
+	 *            the dimension of the move.
+	 * @return the leaving offsets, in iteration order.
+	 */
+	public synchronized OffsetTable leaving( final int d )
+	{
+		computeIncrements( d );
+		return leaving[ d ];
+	}
+
+	@Override
+	< T > OffsetTableWalker< T > walker( final RandomAccess< T > source )
+	{
+		return new OffsetTableWalker< T >( this, source );
+	}
+
+	long[] getSteps()
+	{
+		return steps;
+	}
+
+	long[] getOffsets()
+	{
+		return offsets;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "OffsetTable, " + size + " elements in " + n + "D";
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private static OffsetTable cached( final String key )
+	{
+		synchronized ( CACHE )
+		{
+			final SoftReference< OffsetTable > ref = CACHE.get( key );
+			return null == ref ? null : ref.get();
+		}
+	}
+
+	private static void cache( final String key, final OffsetTable table )
+	{
+		synchronized ( CACHE )
+		{
+			CACHE.put( key, new SoftReference< OffsetTable >( table ) );
+		}
+	}
+
+	private void computeIncrements( final int d )
+	{
+		if ( null == entering )
+		{
+			entering = new OffsetTable[ n ];
+			leaving = new OffsetTable[ n ];
+		}
+		if ( null != entering[ d ] )
+		{
+			return;
+		}
+
+		/*
+		 * Sorted linear indices of the elements in the bounding box. Unlike a
+		 * mask over the bounding box, their size does not depend on how sparse
+		 * the table is.
+		 */
+		final long[] min = new long[ n ];
+		final long[] dims = new long[ n ];
+		boundingBox.min( min );
+		boundingBox.dimensions( dims );
+		double boxSize = 1;
+		for ( int d = 0; d < n; d++ )
+		{
+			boxSize *= dims[ d ];
+		}
+		if ( boxSize >= Long.MAX_VALUE )
+		{
+			throw new IllegalArgumentException( "The bounding box of the table is too large to index its elements: " + Util.printInterval( boundingBox ) );
+		}
+		final long[] indices = new long[ size ];
+		final long[] offset = new long[ n ];
+		for ( int i = 0; i < size; i++ )
+		{
+			getOffset( i, offset );
+			indices[ i ] = maskIndex( offset, min, dims );
+		}
+		Arrays.sort( indices );
+
+		final List< long[] > in = new ArrayList< long[] >();
+		final List< long[] > out = new ArrayList< long[] >();
+		for ( int i = 0; i < size; i++ )
+		{
+			getOffset( i, offset );
+			offset[ d ] += 1;
+			final long forward = maskIndex( offset, min, dims );
+			offset[ d ] -= 2;
+			final long backward = maskIndex( offset, min, dims );
+			if ( forward < 0 || Arrays.binarySearch( indices, forward ) < 0 )
+			{
+				final long[] o = offset.clone();
+				o[ d ] += 1;
+				in.add( o );
+			}
+			if ( backward < 0 || Arrays.binarySearch( indices, backward ) < 0 )
+			{
+				out.add( offset.clone() );
+			}
+		}
+		entering[ d ] = new OffsetTable( n, in.toArray( new long[ in.size() ][] ) );
+		leaving[ d ] = new OffsetTable( n, out.toArray( new long[ out.size() ][] ) );
+	}
+
+	/**
+	 * Linear index of an offset in the bounding box, or -1 if it lies outside.
+	 */
+	private static long maskIndex( final long[] offset, final long[] min, final long[] dims )
+	{
+		long index = 0;
+		for ( int d = offset.length - 1; d >= 0; d-- )
+		{
+			final long o = offset[ d ] - min[ d ];
+			if ( o < 0 || o >= dims[ d ] )
+			{
+				return -1;
+			}
+			index = index * dims[ d ] + o;
+		}
+		return index;
+	}
+
+	private static void checkSize( final Interval boundingBox )
+	{
+		if ( !fitsInTable( boundingBox ) )
+		{
+			throw new IllegalArgumentException( "The shape is too large for an offset table: its bounding box " + Util.printInterval( boundingBox ) + " has more than " + MAX_SHAPE_SIZE + " elements." );
+		}
+	}
+
+	private static enum Metric
+	{
+		L1, L2, NONE;
+	}
+
+	private static OffsetTable enumerate( final long radius, final int n, final Metric metric )
+	{
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		Arrays.fill( min, -radius );
+		Arrays.fill( max, radius );
+		return enumerate( min, max, metric, radius, false );
+	}
+
+	private static OffsetTable enumerate( final long[] min, final long[] max, final Metric metric, final long radius, final boolean skipCenter )
+	{
+		checkSize( new FinalInterval( min, max ) );
+		final int n = min.length;
+		final List< long[] > offsets = new ArrayList< long[] >();
+		final long[] position = min.clone();
+		final long r2 = radius * radius;
+		boolean done = n == 0;
+		while ( !done )
+		{
+			long dist = 0;
+			boolean center = true;
+			for ( int d = 0; d < n; d++ )
+			{
+				dist += ( metric == Metric.L1 ) ? Math.abs( position[ d ] ) : position[ d ] * position[ d ];
+				center = center && position[ d ] == 0;
+			}
+			final boolean inside;
+			switch ( metric )
+			{
+			case L1:
+				inside = dist <= radius;
+				break;
+			case L2:
+				inside = dist <= r2;
+				break;
+			default:
+				inside = true;
+				break;
+			}
+			if ( inside && !( skipCenter && center ) )
+			{
+				offsets.add( position.clone() );
+			}
+
+			done = true;
+			for ( int d = 0; d < n; d++ )
+			{
+				if ( ++position[ d ] <= max[ d ] )
+				{
+					done = false;
+					break;
+				}
+				position[ d ] = min[ d ];
+			}
+		}
+		return new OffsetTable( n, offsets.toArray( new long[ offsets.size() ][] ) );
+	}
+}
@@ -0,0 +1,180 @@
+package net.imglib2.algorithm.neighborhood;
+
+import net.imglib2.AbstractEuclideanSpace;
+import net.imglib2.Cursor;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+
+/**
+ * A cursor over the elements of an {@link OffsetTable} around a center that
+ * can be moved, without creating a new cursor.
+ * <p>
+ * The cursors of neighborhoods are bound to their neighborhood: the unsafe
+ * neighborhoods reuse a single cursor, but the safe ones create a new one each
+ * time. This cursor is meant for hot loops that manage the center themselves:
+ * create it once, then call {@link #setCenter(Localizable)} and iterate, at
+ * every pixel. It works on any shape, through
+ * {@link OffsetTable#fromShape(Shape, int)} or
+ * {@link IncrementalShape#getOffsetTable(int)}.
+ */
+public final class OffsetTableCursor< T > extends AbstractEuclideanSpace implements Cursor< T >
+{
+	private final long[] center;
+
+	private final OffsetTableWalker< T > walker;
+
+	/**
+	 * Creates a new cursor, centered on the origin.
+	 *
+	 * @param table
+	 *            the offsets to iterate.
+	 * @param source
+	 *            a random access on the source image, used by this cursor
+	 *            only. It must be able to reach the elements of the table
+	 *            around all the centers this cursor will be set to.
+	 */
+	public OffsetTableCursor( final OffsetTable table, final RandomAccess< T > source )
+	{
+		super( table.numDimensions() );
+		center = new long[ n ];
+		walker = new OffsetTableWalker< T >( table, source );
+		walker.reset( center );
+	}
+
+	private OffsetTableCursor( final OffsetTableCursor< T > c )
+	{
+		super( c.n );
+		center = c.center.clone();
+		walker = c.walker.copy( center );
+	}
+
+	/**
+	 * Moves the center of this cursor and resets it.
+	 *
+	 * @param position
+	 *            the new center.
+	 */
+	public void setCenter( final Localizable position )
+	{
+		position.localize( center );
+		walker.reset( center );
+	}
+
+	/**
+	 * Moves the center of this cursor and resets it.
+	 *
+	 * @param position
+	 *            the new center. The values are copied.
+	 */
+	public void setCenter( final long[] position )
+	{
+		System.arraycopy( position, 0, center, 0, n );
+		walker.reset( center );
+	}
+
+	@Override
+	public T get()
+	{
+		return walker.get();
+	}
+
+	@Override
+	public void fwd()
+	{
+		walker.fwd();
+	}
+
+	@Override
+	public void jumpFwd( final long steps )
+	{
+		walker.jumpFwd( steps );
+	}
+
+	@Override
+	public T next()
+	{
+		fwd();
+		return get();
+	}
+
+	@Override
+	public void remove()
+	{
+		// NB: no action.
+	}
+
+	/**
+	 * Resets this cursor before the first element, around the current center.
+	 */
+	@Override
+	public void reset()
+	{
+		walker.reset( center );
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		return walker.hasNext();
+	}
+
+	@Override
+	public float getFloatPosition( final int d )
+	{
+		return walker.getLongPosition( d );
+	}
+
+	@Override
+	public double getDoublePosition( final int d )
+	{
+		return walker.getLongPosition( d );
+	}
+
+	@Override
+	public int getIntPosition( final int d )
+	{
+		return ( int ) walker.getLongPosition( d );
+	}
+
+	@Override
+	public long getLongPosition( final int d )
+	{
+		return walker.getLongPosition( d );
+	}
+
+	@Override
+	public void localize( final long[] position )
+	{
+		walker.localize( position );
+	}
+
+	@Override
+	public void localize( final float[] position )
+	{
+		walker.localize( position );
+	}
+
+	@Override
+	public void localize( final double[] position )
+	{
+		walker.localize( position );
+	}
+
+	@Override
+	public void localize( final int[] position )
+	{
+		walker.localize( position );
+	}
+
+	@Override
+	public OffsetTableCursor< T > copy()
+	{
+		return new OffsetTableCursor< T >( this );
+	}
+
+	@Override
+	public OffsetTableCursor< T > copyCursor()
+	{
+		return copy();
+	}
+}
@@ -0,0 +1,170 @@
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.Iterator;
+
+import net.imglib2.AbstractEuclideanSpace;
+import net.imglib2.AbstractInterval;
+import net.imglib2.Cursor;
+import net.imglib2.FlatIterationOrder;
+import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+
+/**
+ * A {@link Shape} made of an arbitrary set of offsets, given as an
+ * {@link OffsetTable}.
+ * <p>
+ * The neighborhoods of this shape iterate over the precomputed offsets of the
+ * table, without any computation per element. Any other shape can be turned
+ * into an offset table shape with {@link OffsetTable#fromShape(Shape, int)},
+ * which pays off for complex shapes visited at every pixel.
+ */
+public class OffsetTableShape implements Shape
+{
+	private final OffsetTable table;
+
+	/**
+	 * Creates a new shape iterating over the offsets of the specified table.
+	 *
+	 * @param table
+	 *            the offset table. Its dimensionality must match the one of
+	 *            the images the shape is used on.
+	 */
+	public OffsetTableShape( final OffsetTable table )
+	{
+		this.table = table;
+	}
+
+	@Override
+	public < T > NeighborhoodsIterableInterval< T > neighborhoods( final RandomAccessibleInterval< T > source )
+	{
+		final TableNeighborhoodFactory< T > f = TableNeighborhoodUnsafe.< T >factory();
+		return new NeighborhoodsIterableInterval< T >( source, table, f );
+	}
+
+	@Override
+	public < T > NeighborhoodsAccessible< T > neighborhoodsRandomAccessible( final RandomAccessible< T > source )
+	{
+		final TableNeighborhoodFactory< T > f = TableNeighborhoodUnsafe.< T >factory();
+		return new NeighborhoodsAccessible< T >( source, table, f );
+	}
+
+	@Override
+	public < T > NeighborhoodsIterableInterval< T > neighborhoodsSafe( final RandomAccessibleInterval< T > source )
+	{
+		final TableNeighborhoodFactory< T > f = TableNeighborhood.< T >factory();
+		return new NeighborhoodsIterableInterval< T >( source, table, f );
+	}
+
+	@Override
+	public < T > NeighborhoodsAccessible< T > neighborhoodsRandomAccessibleSafe( final RandomAccessible< T > source )
+	{
+		final TableNeighborhoodFactory< T > f = TableNeighborhood.< T >factory();
+		return new NeighborhoodsAccessible< T >( source, table, f );
+	}
+
+	/**
+	 * @return The offset table of this shape.
+	 */
+	public OffsetTable getTable()
+	{
+		return table;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "OffsetTableShape, " + table.size() + " elements in " + table.numDimensions() + "D";
+	}
+
+	public static final class NeighborhoodsIterableInterval< T > extends AbstractInterval implements IterableInterval< Neighborhood< T > >
+	{
+		final RandomAccessibleInterval< T > source;
+
+		final OffsetTable table;
+
+		final long size;
+
+		final TableNeighborhoodFactory< T > factory;
+
+		public NeighborhoodsIterableInterval( final RandomAccessibleInterval< T > source, final OffsetTable table, final TableNeighborhoodFactory< T > factory )
+		{
+			super( source );
+			this.source = source;
+			this.table = table;
+			this.factory = factory;
+
+			long s = source.dimension( 0 );
+			for ( int d = 1; d < n; ++d )
+				s *= source.dimension( d );
+			size = s;
+		}
+
+		@Override
+		public long size()
+		{
+			return size;
+		}
+
+		@Override
+		public Neighborhood< T > firstElement()
+		{
+			return cursor().next();
+		}
+
+		@Override
+		public Object iterationOrder()
+		{
+			return new FlatIterationOrder( this );
+		}
+
+		@Override
+		public Iterator< Neighborhood< T >> iterator()
+		{
+			return cursor();
+		}
+
+		@Override
+		public Cursor< Neighborhood< T >> cursor()
+		{
+			return new TableNeighborhoodCursor< T >( source, table, factory );
+		}
+
+		@Override
+		public Cursor< Neighborhood< T >> localizingCursor()
+		{
+			return cursor();
+		}
+	}
+
+	public static final class NeighborhoodsAccessible< T > extends AbstractEuclideanSpace implements RandomAccessible< Neighborhood< T > >
+	{
+		final RandomAccessible< T > source;
+
+		final OffsetTable table;
+
+		final TableNeighborhoodFactory< T > factory;
+
+		public NeighborhoodsAccessible( final RandomAccessible< T > source, final OffsetTable table, final TableNeighborhoodFactory< T > factory )
+		{
+			super( source.numDimensions() );
+			this.source = source;
+			this.table = table;
+			this.factory = factory;
+		}
+
+		@Override
+		public RandomAccess< Neighborhood< T >> randomAccess()
+		{
+			return new TableNeighborhoodRandomAccess< T >( source, table, factory );
+		}
+
+		@Override
+		public RandomAccess< Neighborhood< T >> randomAccess( final Interval interval )
+		{
+			return new TableNeighborhoodRandomAccess< T >( source, table, factory, interval );
+		}
+	}
+}
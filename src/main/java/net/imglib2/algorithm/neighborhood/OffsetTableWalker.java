@@ -0,0 +1,248 @@
+package net.imglib2.algorithm.neighborhood;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayRandomAccess;
+import net.imglib2.type.NativeType;
+
+/**
+ * Walks the elements of an {@link OffsetTable} around a center.
+ * <p>
+ * On a generic {@link RandomAccess}, each element is reached with a single
+ * precomputed move. On an {@link ArrayRandomAccess}, the linked type is moved
+ * directly with the index deltas of the table, and the random access itself
+ * stays at the center. Its linked type is put back at the center index before
+ * the random access is moved again.
+ */
+final class OffsetTableWalker< T > extends TableWalker< T >
+{
+
+	private final OffsetTable table;
+
+	private final RandomAccess< T > source;
+
+	private final int n;
+
+	private final long[] steps;
+
+	private final long[] offsets;
+
+	private final int size;
+
+	/**
+	 * The linked type of the source, if it is an {@link ArrayRandomAccess}.
+	 * <code>null</code> otherwise.
+	 */
+	private final NativeType< ? > linked;
+
+	private final int[] deltas;
+
+	private long[] center;
+
+	private int baseIndex;
+
+	private boolean moved;
+
+	private int index;
+
+	OffsetTableWalker( final OffsetTable table, final RandomAccess< T > source )
+	{
+		this( table, source, indexDeltas( table, source ) );
+	}
+
+	/**
+	 * Creates a walker with index deltas computed beforehand by
+	 * {@link #indexDeltas(OffsetTable, RandomAccess)}, on the same image.
+	 * Neighborhoods compute them once and share them with all their cursors.
+	 */
+	OffsetTableWalker( final OffsetTable table, final RandomAccess< T > source, final int[] deltas )
+	{
+		this.table = table;
+		this.source = source;
+		this.n = table.numDimensions();
+		this.steps = table.getSteps();
+		this.offsets = table.getOffsets();
+		this.size = table.size();
+		this.linked = ( deltas == null ) ? null : ( NativeType< ? > ) source.get();
+		this.deltas = deltas;
+		this.index = size;
+	}
+
+	/**
+	 * Shares the index deltas of this walker.
+	 */
+	@Override
+	OffsetTableWalker< T > walker( final RandomAccess< T > source )
+	{
+		return new OffsetTableWalker< T >( table, source, deltas );
+	}
+
+	/**
+	 * Returns the index deltas of a table on the image of a random access, or
+	 * <code>null</code> if it is not an {@link ArrayRandomAccess}. The random
+	 * access is moved, then put back where it was.
+	 */
+	static int[] indexDeltas( final OffsetTable table, final RandomAccess< ? > source )
+	{
+		if ( !( source instanceof ArrayRandomAccess ) )
+		{
+			return null;
+		}
+		return table.indexDeltas( strides( source, table.numDimensions() ) );
+	}
+
+	/**
+	 * Returns the strides of the image of an {@link ArrayRandomAccess}. The
+	 * random access is moved, then put back where it was.
+	 */
+	static long[] strides( final RandomAccess< ? > source, final int n )
+	{
+		final NativeType< ? > linked = ( NativeType< ? > ) source.get();
+		final long[] strides = new long[ n ];
+		for ( int d = 0; d < n; d++ )
+		{
+			final int i0 = linked.getIndex();
+			source.fwd( d );
+			strides[ d ] = linked.getIndex() - i0;
+			source.bck( d );
+		}
+		return strides;
+	}
+
+	private OffsetTableWalker( final OffsetTableWalker< T > w, final long[] center )
+	{
+		this.table = w.table;
+		this.source = w.source.copyRandomAccess();
+		this.n = w.n;
+		this.steps = w.steps;
+		this.offsets = w.offsets;
+		this.size = w.size;
+		this.linked = ( w.linked == null ) ? null : ( NativeType< ? > ) source.get();
+		this.deltas = w.deltas;
+		this.center = center;
+		this.baseIndex = w.baseIndex;
+		this.moved = w.moved;
+		this.index = w.index;
+		if ( linked != null && index >= 0 && index < size )
+		{
+			linked.updateIndex( baseIndex + deltas[ index ] );
+		}
+	}
+
+	@Override
+	void reset( final long[] center )
+	{
+		this.center = center;
+		if ( linked != null )
+		{
+			if ( moved )
+			{
+				linked.updateIndex( baseIndex );
+			}
+			source.setPosition( center );
+			baseIndex = linked.getIndex();
+			moved = true;
+		}
+		else
+		{
+			source.setPosition( center );
+		}
+		index = -1;
+	}
+
+	@Override
+	void fwd()
+	{
+		++index;
+		if ( linked != null )
+		{
+			linked.updateIndex( baseIndex + deltas[ index ] );
+		}
+		else
+		{
+			final int o = index * n;
+			for ( int d = 0; d < n; d++ )
+			{
+				final long step = steps[ o + d ];
+				if ( step != 0 )
+				{
+					source.move( step, d );
+				}
+			}
+		}
+	}
+
+	@Override
+	boolean hasNext()
+	{
+		return index < size - 1;
+	}
+
+	@Override
+	T get()
+	{
+		return source.get();
+	}
+
+	@Override
+	long getLongPosition( final int d )
+	{
+		return center[ d ] + offset( d );
+	}
+
+	@Override
+	void localize( final long[] position )
+	{
+		for ( int d = 0; d < n; d++ )
+		{
+			position[ d ] = center[ d ] + offset( d );
+		}
+	}
+
+	@Override
+	void localize( final int[] position )
+	{
+		for ( int d = 0; d < n; d++ )
+		{
+			position[ d ] = ( int ) ( center[ d ] + offset( d ) );
+		}
+	}
+
+	@Override
+	void localize( final float[] position )
+	{
+		for ( int d = 0; d < n; d++ )
+		{
+			position[ d ] = center[ d ] + offset( d );
+		}
+	}
+
+	@Override
+	void localize( final double[] position )
+	{
+		for ( int d = 0; d < n; d++ )
+		{
+			position[ d ] = center[ d ] + offset( d );
+		}
+	}
+
+	/**
+	 * Offset of the current element. Before the first element, the walker is
+	 * at the center.
+	 */
+	private long offset( final int d )
+	{
+		return ( index < 0 ) ? 0 : offsets[ index * n + d ];
+	}
+
+	@Override
+	OffsetTableWalker< T > copy()
+	{
+		return new OffsetTableWalker< T >( this, center );
+	}
+
+	@Override
+	OffsetTableWalker< T > copy( final long[] center )
+	{
+		return new OffsetTableWalker< T >( this, center );
+	}
+}
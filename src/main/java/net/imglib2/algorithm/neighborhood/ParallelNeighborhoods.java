@@ -0,0 +1,169 @@
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.algorithm.util.Futures;
+
+/**
+ * Parallel iteration over the neighborhoods returned by
+ * {@link Shape#neighborhoods(net.imglib2.RandomAccessibleInterval)} and
+ * {@link Shape#neighborhoodsSafe(net.imglib2.RandomAccessibleInterval)}.
+ * <p>
+ * The iterable is cut into chunks made of whole lines along dimension 0, so
+ * that each thread walks consecutive neighborhoods and benefits from their
+ * overlap. There are several chunks per thread, and threads claim the next
+ * free chunk when they are done with their current one: a thread that hits a
+ * cheap region of the image simply processes more chunks. The threads can be
+ * those of a caller-supplied {@link ExecutorService}, shared with other
+ * algorithms.
+ * <p>
+ * All the neighborhood iterables of this package iterate in flat order. For
+ * other iteration orders, the chunks are still contiguous in iteration order,
+ * only not aligned on lines.
+ */
+public class ParallelNeighborhoods
+{
+
+	/**
+	 * Number of chunks per thread. More chunks balance the load better, fewer
+	 * chunks reduce the number of cursor jumps.
+	 */
+	private static final int CHUNKS_PER_THREAD = 8;
+
+	/**
+	 * Visits all the neighborhoods of the specified iterable with several
+	 * threads, in a thread pool created for this call.
+	 *
+	 * @param neighborhoods
+	 *            the neighborhoods to visit.
+	 * @param visitor
+	 *            the action to perform on each neighborhood. The first thread
+	 *            uses it, the other threads use a
+	 *            {@link NeighborhoodVisitor#copy()} of it.
+	 * @param numThreads
+	 *            the number of threads to use.
+	 * @return the visitors used, one per thread, starting with the one
+	 *         specified. Visitors that accumulate a result can be merged from
+	 *         this list.
+	 */
+	public static < T > List< NeighborhoodVisitor< T > > forEach( final IterableInterval< Neighborhood< T > > neighborhoods, final NeighborhoodVisitor< T > visitor, final int numThreads )
+	{
+		final ExecutorService service = Executors.newFixedThreadPool( Math.max( 1, numThreads ) );
+		try
+		{
+			return forEach( neighborhoods, visitor, service, numThreads );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	/**
+	 * Visits all the neighborhoods of the specified iterable with tasks
+	 * submitted to the specified service. Each task claims chunks of lines
+	 * until there are none left, so there is no need for more tasks than the
+	 * service has threads.
+	 *
+	 * @param neighborhoods
+	 *            the neighborhoods to visit.
+	 * @param visitor
+	 *            the action to perform on each neighborhood. The first task
+	 *            uses it, the other tasks use a
+	 *            {@link NeighborhoodVisitor#copy()} of it.
+	 * @param service
+	 *            service providing threads for multi-threading.
+	 * @param numTasks
+	 *            the number of tasks to submit.
+	 * @return the visitors used, one per task, starting with the one
+	 *         specified. Visitors that accumulate a result can be merged from
+	 *         this list.
+	 */
+	public static < T > List< NeighborhoodVisitor< T > > forEach( final IterableInterval< Neighborhood< T > > neighborhoods, final NeighborhoodVisitor< T > visitor, final ExecutorService service, final int numTasks )
+	{
+		final long[][] chunks = divideIntoLines( neighborhoods, Math.max( 1, numTasks ) * CHUNKS_PER_THREAD );
+		final int nTasks = ( int ) Math.max( 1, Math.min( numTasks, chunks.length ) );
+
+		final List< NeighborhoodVisitor< T > > visitors = new ArrayList< NeighborhoodVisitor< T > >( nTasks );
+		visitors.add( visitor );
+		for ( int i = 1; i < nTasks; i++ )
+		{
+			visitors.add( visitor.copy() );
+		}
+
+		final AtomicLong nextChunk = new AtomicLong( 0 );
+		final List< Future< ? > > futures = new ArrayList< Future< ? > >( nTasks );
+		for ( final NeighborhoodVisitor< T > v : visitors )
+		{
+			futures.add( service.submit( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					visitChunks( neighborhoods, chunks, nextChunk, v );
+				}
+			} ) );
+		}
+		Futures.getAll( futures );
+		return visitors;
+	}
+
+	/**
+	 * Divides an iterable interval into chunks of whole lines along dimension
+	 * 0.
+	 *
+	 * @param interval
+	 *            the iterable interval to divide.
+	 * @param numChunks
+	 *            the desired number of chunks. Fewer chunks are returned if
+	 *            there are fewer lines.
+	 * @return the chunks as <code>{ start, size }</code> pairs, in iteration
+	 *         order, covering the whole interval.
+	 */
+	public static long[][] divideIntoLines( final IterableInterval< ? > interval, final int numChunks )
+	{
+		final long size = interval.size();
+		if ( size == 0 )
+		{
+			return new long[ 0 ][];
+		}
+		final long lineLength = interval.numDimensions() == 0 ? 1 : interval.dimension( 0 );
+		final long numLines = size / lineLength;
+		final int n = ( int ) Math.max( 1, Math.min( numChunks, numLines ) );
+		final long[][] chunks = new long[ n ][];
+		long start = 0;
+		for ( int i = 0; i < n; i++ )
+		{
+			// Spread the remaining lines over the first chunks.
+			final long lines = numLines / n + ( i < numLines % n ? 1 : 0 );
+			chunks[ i ] = new long[] { start, lines * lineLength };
+			start += lines * lineLength;
+		}
+		return chunks;
+	}
+
+	private static < T > void visitChunks( final IterableInterval< Neighborhood< T > > neighborhoods, final long[][] chunks, final AtomicLong nextChunk, final NeighborhoodVisitor< T > visitor )
+	{
+		final Cursor< Neighborhood< T > > cursor = neighborhoods.cursor();
+		// Index of the cursor in iteration order. Chunks are claimed in
+		// increasing order, so the cursor only moves forward.
+		long index = -1;
+		for ( long c = nextChunk.getAndIncrement(); c < chunks.length; c = nextChunk.getAndIncrement() )
+		{
+			final long[] chunk = chunks[ ( int ) c ];
+			cursor.jumpFwd( chunk[ 0 ] - 1 - index );
+			for ( long i = 0; i < chunk[ 1 ]; i++ )
+			{
+				visitor.visit( cursor.next() );
+			}
+			index = chunk[ 0 ] + chunk[ 1 ] - 1;
+		}
+	}
+}
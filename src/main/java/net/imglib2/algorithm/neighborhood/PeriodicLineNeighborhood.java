@@ -104,6 +104,12 @@ public class PeriodicLineNeighborhood< T > extends AbstractLocalizable implement
 
 	private final long maxIndex;
 
+	/**
+	 * The move from the center to one increment before the first element, so
+	 * that resetting a cursor does not allocate.
+	 */
+	private final long[] resetOffset;
+
 	/**
 	 * Creates a new periodic line, centered on <code>position</code>, and that
 	 * will iterate over <code>2 × span + 1</code> pixels as follow:
@@ -139,6 +145,11 @@ public class PeriodicLineNeighborhood< T > extends AbstractLocalizable implement
 		this.maxIndex = 2 * span + 1;
 		this.sourceRandomAccess = sourceRandomAccess;
 		this.structuringElementBoundingBox = createInterval();
+		this.resetOffset = new long[ increments.length ];
+		for ( int d = 0; d < increments.length; d++ )
+		{
+			resetOffset[ d ] = -( span + 1 ) * increments[ d ];
+		}
 	}
 
 	@Override
@@ -335,16 +346,7 @@ public class PeriodicLineNeighborhood< T > extends AbstractLocalizable implement
 		public void reset()
 		{
 			source.setPosition( position );
-			final int[] minusIncrements = new int[ increments.length ];
-			for ( int i = 0; i < minusIncrements.length; i++ )
-			{
-				minusIncrements[ i ] = -increments[ i ];
-
-			}
-			for ( int i = 0; i <= span; i++ )
-			{
-				source.move( minusIncrements );
-			}
+			source.move( resetOffset );
 			index = 0;
 		}
 
@@ -53,7 +53,7 @@ import net.imglib2.RandomAccessibleInterval;
  * @author Tobias Pietzsch <tobias.pietzsch@gmail.com>
  * @author Jonathan Hale (University of Konstanz)
  */
-public class RectangleShape implements Shape
+public class RectangleShape implements IncrementalShape
 {
 	final int span;
 
@@ -131,6 +131,24 @@ public class RectangleShape implements Shape
 		return span;
 	}
 	
+	@Override
+	public OffsetTable getOffsetTable( final int numDimensions )
+	{
+		return OffsetTable.rectangle( span, numDimensions, skipCenter );
+	}
+
+	@Override
+	public OffsetTable getEnteringOffsets( final int d, final int numDimensions )
+	{
+		return getOffsetTable( numDimensions ).entering( d );
+	}
+
+	@Override
+	public OffsetTable getLeavingOffsets( final int d, final int numDimensions )
+	{
+		return getOffsetTable( numDimensions ).leaving( d );
+	}
+
 	@Override
 	public String toString()
 	{
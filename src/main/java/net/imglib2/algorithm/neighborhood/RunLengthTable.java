@@ -0,0 +1,307 @@
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.BooleanType;
+
+/**
+ * The elements of a neighborhood compiled into runs of consecutive pixels
+ * along dimension 0, relative to the center of the neighborhood.
+ * <p>
+ * A cursor over a run-length table moves to the start of each run with one
+ * precomputed move, then walks the run with <code>fwd( 0 )</code>. The inner
+ * loop is contiguous in memory on array images, whatever the shape.
+ */
+public final class RunLengthTable extends NeighborhoodTable
+{
+
+	private final int n;
+
+	private final int numRuns;
+
+	private final long size;
+
+	/**
+	 * Offsets of the first element of each run, flattened:
+	 * <code>starts[ r * n + d ]</code>.
+	 */
+	private final long[] starts;
+
+	private final long[] lengths;
+
+	/**
+	 * Moves from the last element of a run (or from the center, for the first
+	 * run) to the first element of the next run, flattened the same way.
+	 */
+	private final long[] steps;
+
+	private final Interval boundingBox;
+
+	private OffsetTable offsetTable;
+
+	/**
+	 * Creates a run-length table, with the dimensionality of its runs. Use
+	 * {@link #RunLengthTable(int, long[][], long[])} for tables that may have
+	 * no runs.
+	 *
+	 * @param starts
+	 *            the offset of the first element of each run, relative to the
+	 *            center. Runs must not overlap, and there must be at least one.
+	 * @param lengths
+	 *            the number of elements of each run, at least 1.
+	 */
+	public RunLengthTable( final long[][] starts, final long[] lengths )
+	{
+		this( numDimensions( starts ), starts, lengths );
+	}
+
+	/**
+	 * Creates a run-length table. A table without runs is the empty
+	 * neighborhood, whose bounding box is the center.
+	 *
+	 * @param numDimensions
+	 *            the dimensionality of the table.
+	 * @param starts
+	 *            the offset of the first element of each run, relative to the
+	 *            center. Runs must not overlap.
+	 * @param lengths
+	 *            the number of elements of each run, at least 1.
+	 */
+	public RunLengthTable( final int numDimensions, final long[][] starts, final long[] lengths )
+	{
+		if ( starts.length != lengths.length )
+		{
+			throw new IllegalArgumentException( "There must be one length per run." );
+		}
+		this.numRuns = starts.length;
+		this.n = numDimensions;
+		this.starts = new long[ numRuns * n ];
+		this.steps = new long[ numRuns * n ];
+		this.lengths = lengths.clone();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		long s = 0;
+		for ( int r = 0; r < numRuns; r++ )
+		{
+			if ( starts[ r ].length != n )
+			{
+				throw new IllegalArgumentException( "All runs must have the same dimensionality." );
+			}
+			if ( lengths[ r ] < 1 )
+			{
+				throw new IllegalArgumentException( "Runs must have at least one element." );
+			}
+			s += lengths[ r ];
+			for ( int d = 0; d < n; d++ )
+			{
+				final long o = starts[ r ][ d ];
+				final long end = o + ( d == 0 ? lengths[ r ] - 1 : 0 );
+				this.starts[ r * n + d ] = o;
+				if ( r == 0 )
+				{
+					steps[ d ] = o;
+				}
+				else
+				{
+					final long previousEnd = starts[ r - 1 ][ d ] + ( d == 0 ? lengths[ r - 1 ] - 1 : 0 );
+					steps[ r * n + d ] = o - previousEnd;
+				}
+				if ( r == 0 || o < min[ d ] )
+				{
+					min[ d ] = o;
+				}
+				if ( r == 0 || end > max[ d ] )
+				{
+					max[ d ] = end;
+				}
+			}
+		}
+		this.size = s;
+		this.boundingBox = new FinalInterval( min, max );
+	}
+
+	/**
+	 * Compiles a mask into a run-length table. The pixels of the mask that are
+	 * <code>true</code> are the elements of the neighborhood.
+	 *
+	 * @param mask
+	 *            the mask.
+	 * @param center
+	 *            the position, in the mask, of the center of the neighborhood.
+	 * @return a new run-length table.
+	 */
+	public static < B extends BooleanType< B > > RunLengthTable fromMask( final RandomAccessibleInterval< B > mask, final long[] center )
+	{
+		final int n = mask.numDimensions();
+		final List< long[] > starts = new ArrayList< long[] >();
+		final List< Long > lengths = new ArrayList< Long >();
+
+		final RandomAccess< B > ra = mask.randomAccess();
+		final long[] position = new long[ n ];
+		mask.min( position );
+		boolean done = n == 0;
+		while ( !done )
+		{
+			// Scan the line along dimension 0.
+			ra.setPosition( position );
+			long runStart = 0;
+			boolean inRun = false;
+			for ( long x = mask.min( 0 ); x <= mask.max( 0 ) + 1; x++ )
+			{
+				final boolean in = x <= mask.max( 0 ) && ra.get().get();
+				if ( in && !inRun )
+				{
+					runStart = x;
+					inRun = true;
+				}
+				else if ( !in && inRun )
+				{
+					final long[] start = new long[ n ];
+					for ( int d = 0; d < n; d++ )
+					{
+						start[ d ] = position[ d ] - center[ d ];
+					}
+					start[ 0 ] = runStart - center[ 0 ];
+					starts.add( start );
+					lengths.add( x - runStart );
+					inRun = false;
+				}
+				if ( x <= mask.max( 0 ) )
+				{
+					ra.fwd( 0 );
+				}
+			}
+
+			done = true;
+			for ( int d = 1; d < n; d++ )
+			{
+				if ( ++position[ d ] <= mask.max( d ) )
+				{
+					done = false;
+					break;
+				}
+				position[ d ] = mask.min( d );
+			}
+		}
+
+		final long[] l = new long[ lengths.size() ];
+		for ( int r = 0; r < l.length; r++ )
+		{
+			l[ r ] = lengths.get( r );
+		}
+		return new RunLengthTable( n, starts.toArray( new long[ starts.size() ][] ), l );
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * @return the number of runs.
+	 */
+	public int numRuns()
+	{
+		return numRuns;
+	}
+
+	@Override
+	public long numElements()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the offset of the first element of a run.
+	 *
+	 * @param r
+	 *            the run index.
+	 * @param d
+	 *            the dimension.
+	 * @return the offset, relative to the center.
+	 */
+	public long getRunStart( final int r, final int d )
+	{
+		return starts[ r * n + d ];
+	}
+
+	/**
+	 * @param r
+	 *            the run index.
+	 * @return the number of elements of the run.
+	 */
+	public long getRunLength( final int r )
+	{
+		return lengths[ r ];
+	}
+
+	@Override
+	public Interval getBoundingBox()
+	{
+		return boundingBox;
+	}
+
+	/**
+	 * Returns the elements of this table as an {@link OffsetTable}, in the
+	 * same iteration order.
+	 *
+	 * @return the offset table, computed once.
+	 */
+	public synchronized OffsetTable toOffsetTable()
+	{
+		if ( null == offsetTable )
+		{
+			final long[][] offsets = new long[ ( int ) size ][];
+			int i = 0;
+			for ( int r = 0; r < numRuns; r++ )
+			{
+				for ( long x = 0; x < lengths[ r ]; x++ )
+				{
+					final long[] offset = new long[ n ];
+					System.arraycopy( starts, r * n, offset, 0, n );
+					offset[ 0 ] += x;
+					offsets[ i++ ] = offset;
+				}
+			}
+			offsetTable = new OffsetTable( offsets );
+		}
+		return offsetTable;
+	}
+
+	@Override
+	< T > RunLengthTableWalker< T > walker( final RandomAccess< T > source )
+	{
+		return new RunLengthTableWalker< T >( this, source );
+	}
+
+	long[] getSteps()
+	{
+		return steps;
+	}
+
+	long[] getLengths()
+	{
+		return lengths;
+	}
+
+	private static int numDimensions( final long[][] starts )
+	{
+		if ( starts.length == 0 )
+		{
+			throw new IllegalArgumentException( "The dimensionality of a table without runs must be specified." );
+		}
+		return starts[ 0 ].length;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "RunLengthTable, " + size + " elements in " + numRuns + " runs in " + n + "D";
+	}
+}
@@ -0,0 +1,150 @@
+package net.imglib2.algorithm.neighborhood;
+
+import net.imglib2.RandomAccess;
+
+/**
+ * Walks the runs of a {@link RunLengthTable} around a center: one precomputed
+ * move to the start of each run, then <code>fwd( 0 )</code> along the run.
+ */
+final class RunLengthTableWalker< T > extends TableWalker< T >
+{
+
+	private final RunLengthTable table;
+
+	private final RandomAccess< T > source;
+
+	private final int n;
+
+	private final long[] runSteps;
+
+	private final long[] lengths;
+
+	private final int lastRun;
+
+	private long[] center;
+
+	private int run;
+
+	/**
+	 * Number of elements left in the current run.
+	 */
+	private long left;
+
+	RunLengthTableWalker( final RunLengthTable table, final RandomAccess< T > source )
+	{
+		this.table = table;
+		this.source = source;
+		this.n = table.numDimensions();
+		this.runSteps = table.getSteps();
+		this.lengths = table.getLengths();
+		this.lastRun = table.numRuns() - 1;
+		this.run = lastRun;
+	}
+
+	private RunLengthTableWalker( final RunLengthTableWalker< T > w, final long[] center )
+	{
+		this.table = w.table;
+		this.source = w.source.copyRandomAccess();
+		this.n = w.n;
+		this.runSteps = w.runSteps;
+		this.lengths = w.lengths;
+		this.lastRun = w.lastRun;
+		this.center = center;
+		this.run = w.run;
+		this.left = w.left;
+	}
+
+	/**
+	 * Nothing is precomputed for an image: creates a new walker.
+	 */
+	@Override
+	RunLengthTableWalker< T > walker( final RandomAccess< T > source )
+	{
+		return new RunLengthTableWalker< T >( table, source );
+	}
+
+	@Override
+	void reset( final long[] center )
+	{
+		this.center = center;
+		source.setPosition( center );
+		run = -1;
+		left = 0;
+	}
+
+	@Override
+	void fwd()
+	{
+		if ( left > 0 )
+		{
+			source.fwd( 0 );
+			--left;
+			return;
+		}
+		++run;
+		final int o = run * n;
+		for ( int d = 0; d < n; d++ )
+		{
+			final long step = runSteps[ o + d ];
+			if ( step != 0 )
+			{
+				source.move( step, d );
+			}
+		}
+		left = lengths[ run ] - 1;
+	}
+
+	@Override
+	boolean hasNext()
+	{
+		return left > 0 || run < lastRun;
+	}
+
+	@Override
+	T get()
+	{
+		return source.get();
+	}
+
+	@Override
+	long getLongPosition( final int d )
+	{
+		return source.getLongPosition( d );
+	}
+
+	@Override
+	void localize( final long[] position )
+	{
+		source.localize( position );
+	}
+
+	@Override
+	void localize( final int[] position )
+	{
+		source.localize( position );
+	}
+
+	@Override
+	void localize( final float[] position )
+	{
+		source.localize( position );
+	}
+
+	@Override
+	void localize( final double[] position )
+	{
+		source.localize( position );
+	}
+
+	@Override
+	RunLengthTableWalker< T > copy()
+	{
+		return new RunLengthTableWalker< T >( this, center );
+	}
+
+	@Override
+	RunLengthTableWalker< T > copy( final long[] center )
+	{
+		return new RunLengthTableWalker< T >( this, center );
+	}
+}
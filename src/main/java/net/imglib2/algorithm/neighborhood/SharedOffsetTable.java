@@ -0,0 +1,117 @@
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.Arrays;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayRandomAccess;
+
+/**
+ * The offset table of a hypersphere or of a diamond, and its index deltas on
+ * array images, resolved once by a neighborhood factory and shared by all the
+ * neighborhoods it creates.
+ * <p>
+ * Neighborhoods are created from several threads, so the instances are
+ * immutable, except for the index deltas that are computed on demand: two
+ * threads may compute them at the same time, and either result is kept.
+ */
+final class SharedOffsetTable
+{
+
+	private final long radius;
+
+	private final int n;
+
+	private final boolean diamond;
+
+	private final OffsetTable table;
+
+	private volatile Deltas deltas;
+
+	private SharedOffsetTable( final long radius, final int n, final boolean diamond )
+	{
+		this.radius = radius;
+		this.n = n;
+		this.diamond = diamond;
+		if ( !OffsetTable.fitsInTable( radius, n ) )
+		{
+			table = null;
+		}
+		else
+		{
+			table = diamond ? OffsetTable.diamond( radius, n ) : OffsetTable.hyperSphere( radius, n );
+		}
+	}
+
+	/**
+	 * Returns the shared table of a hypersphere: the previous one if it is for
+	 * the same hypersphere, or a new one.
+	 *
+	 * @param previous
+	 *            the table returned by the previous call, or <code>null</code>.
+	 */
+	static SharedOffsetTable hyperSphere( final SharedOffsetTable previous, final long radius, final int n )
+	{
+		return ( previous != null && previous.isFor( radius, n, false ) ) ? previous : new SharedOffsetTable( radius, n, false );
+	}
+
+	/**
+	 * Returns the shared table of a diamond: the previous one if it is for the
+	 * same diamond, or a new one.
+	 *
+	 * @param previous
+	 *            the table returned by the previous call, or <code>null</code>.
+	 */
+	static SharedOffsetTable diamond( final SharedOffsetTable previous, final long radius, final int n )
+	{
+		return ( previous != null && previous.isFor( radius, n, true ) ) ? previous : new SharedOffsetTable( radius, n, true );
+	}
+
+	private boolean isFor( final long radius, final int n, final boolean diamond )
+	{
+		return this.radius == radius && this.n == n && this.diamond == diamond;
+	}
+
+	/**
+	 * @return the offset table, or <code>null</code> if the shape is too large
+	 *         for a table.
+	 */
+	OffsetTable getTable()
+	{
+		return table;
+	}
+
+	/**
+	 * Returns the index deltas of the table for a random access, or
+	 * <code>null</code> if it is not an {@link ArrayRandomAccess}. The deltas
+	 * are computed again only if the strides of the image differ from the
+	 * ones of the previous call.
+	 */
+	int[] indexDeltas( final RandomAccess< ? > source )
+	{
+		if ( table == null || !( source instanceof ArrayRandomAccess ) )
+		{
+			return null;
+		}
+		final long[] strides = OffsetTableWalker.strides( source, n );
+		Deltas d = deltas;
+		if ( d == null || !Arrays.equals( d.strides, strides ) )
+		{
+			d = new Deltas( strides, table.indexDeltas( strides ) );
+			deltas = d;
+		}
+		return d.deltas;
+	}
+
+	private static final class Deltas
+	{
+		private final long[] strides;
+
+		private final int[] deltas;
+
+		private Deltas( final long[] strides, final int[] deltas )
+		{
+			this.strides = strides;
+			this.deltas = deltas;
+		}
+	}
+}
@@ -0,0 +1,340 @@
+package net.imglib2.algorithm.neighborhood;
+
+import java.util.Iterator;
+
+import net.imglib2.AbstractEuclideanSpace;
+import net.imglib2.AbstractLocalizable;
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.Positionable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RealPositionable;
+
+/**
+ * A neighborhood that iterates over the elements of a
+ * {@link NeighborhoodTable}, around its center. The table decides how the
+ * source is walked: element by element for an {@link OffsetTable}, run by run
+ * for a {@link RunLengthTable}.
+ */
+public class TableNeighborhood< T > extends AbstractLocalizable implements Neighborhood< T >
+{
+	public static < T > TableNeighborhoodFactory< T > factory()
+	{
+		return new TableNeighborhoodFactory< T >()
+		{
+			@Override
+			public Neighborhood< T > create( final long[] position, final NeighborhoodTable table, final RandomAccess< T > sourceRandomAccess )
+			{
+				return new TableNeighborhood< T >( position, table, sourceRandomAccess );
+			}
+		};
+	}
+
+	private final RandomAccess< T > sourceRandomAccess;
+
+	private final NeighborhoodTable table;
+
+	private final long size;
+
+	private final Interval structuringElementBoundingBox;
+
+	/**
+	 * The walker of the first cursor. The next cursors share what it
+	 * precomputed for the source, such as the index deltas of an offset table.
+	 */
+	private TableWalker< T > firstWalker;
+
+	TableNeighborhood( final long[] position, final NeighborhoodTable table, final RandomAccess< T > sourceRandomAccess )
+	{
+		super( position );
+		this.sourceRandomAccess = sourceRandomAccess;
+		this.table = table;
+		size = table.numElements();
+		structuringElementBoundingBox = table.getBoundingBox();
+	}
+
+	private TableWalker< T > createWalker( final RandomAccess< T > source )
+	{
+		if ( firstWalker == null )
+		{
+			firstWalker = table.walker( source );
+			return firstWalker;
+		}
+		return firstWalker.walker( source );
+	}
+
+	public final class LocalCursor extends AbstractEuclideanSpace implements Cursor< T >
+	{
+		private final TableWalker< T > walker;
+
+		public LocalCursor( final RandomAccess< T > source )
+		{
+			super( source.numDimensions() );
+			walker = createWalker( source );
+			reset();
+		}
+
+		protected LocalCursor( final LocalCursor c )
+		{
+			super( c.numDimensions() );
+			walker = c.walker.copy();
+		}
+
+		@Override
+		public T get()
+		{
+			return walker.get();
+		}
+
+		@Override
+		public void fwd()
+		{
+			walker.fwd();
+		}
+
+		@Override
+		public void jumpFwd( final long steps )
+		{
+			walker.jumpFwd( steps );
+		}
+
+		@Override
+		public T next()
+		{
+			fwd();
+			return get();
+		}
+
+		@Override
+		public void remove()
+		{
+			// NB: no action.
+		}
+
+		@Override
+		public void reset()
+		{
+			walker.reset( position );
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return walker.hasNext();
+		}
+
+		@Override
+		public float getFloatPosition( final int d )
+		{
+			return walker.getLongPosition( d );
+		}
+
+		@Override
+		public double getDoublePosition( final int d )
+		{
+			return walker.getLongPosition( d );
+		}
+
+		@Override
+		public int getIntPosition( final int d )
+		{
+			return ( int ) walker.getLongPosition( d );
+		}
+
+		@Override
+		public long getLongPosition( final int d )
+		{
+			return walker.getLongPosition( d );
+		}
+
+		@Override
+		public void localize( final long[] position )
+		{
+			walker.localize( position );
+		}
+
+		@Override
+		public void localize( final float[] position )
+		{
+			walker.localize( position );
+		}
+
+		@Override
+		public void localize( final double[] position )
+		{
+			walker.localize( position );
+		}
+
+		@Override
+		public void localize( final int[] position )
+		{
+			walker.localize( position );
+		}
+
+		@Override
+		public LocalCursor copy()
+		{
+			return new LocalCursor( this );
+		}
+
+		@Override
+		public LocalCursor copyCursor()
+		{
+			return copy();
+		}
+	}
+
+	@Override
+	public Interval getStructuringElementBoundingBox()
+	{
+		return structuringElementBoundingBox;
+	}
+
+	@Override
+	public long size()
+	{
+		return size;
+	}
+
+	@Override
+	public T firstElement()
+	{
+		return cursor().next();
+	}
+
+	@Override
+	public Object iterationOrder()
+	{
+		return this; // iteration order is only compatible with ourselves
+	}
+
+	@Override
+	public double realMin( final int d )
+	{
+		return position[ d ] + structuringElementBoundingBox.min( d );
+	}
+
+	@Override
+	public void realMin( final double[] min )
+	{
+		for ( int d = 0; d < min.length; d++ )
+		{
+			min[ d ] = position[ d ] + structuringElementBoundingBox.min( d );
+		}
+	}
+
+	@Override
+	public void realMin( final RealPositionable min )
+	{
+		for ( int d = 0; d < min.numDimensions(); d++ )
+		{
+			min.setPosition( position[ d ] + structuringElementBoundingBox.min( d ), d );
+		}
+	}
+
+	@Override
+	public double realMax( final int d )
+	{
+		return position[ d ] + structuringElementBoundingBox.max( d );
+	}
+
+	@Override
+	public void realMax( final double[] max )
+	{
+		for ( int d = 0; d < max.length; d++ )
+		{
+			max[ d ] = position[ d ] + structuringElementBoundingBox.max( d );
+		}
+	}
+
+	@Override
+	public void realMax( final RealPositionable max )
+	{
+		for ( int d = 0; d < max.numDimensions(); d++ )
+		{
+			max.setPosition( position[ d ] + structuringElementBoundingBox.max( d ), d );
+		}
+	}
+
+	@Override
+	public Iterator< T > iterator()
+	{
+		return cursor();
+	}
+
+	@Override
+	public long min( final int d )
+	{
+		return position[ d ] + structuringElementBoundingBox.min( d );
+	}
+
+	@Override
+	public void min( final long[] min )
+	{
+		for ( int d = 0; d < min.length; d++ )
+		{
+			min[ d ] = position[ d ] + structuringElementBoundingBox.min( d );
+		}
+	}
+
+	@Override
+	public void min( final Positionable min )
+	{
+		for ( int d = 0; d < min.numDimensions(); d++ )
+		{
+			min.setPosition( position[ d ] + structuringElementBoundingBox.min( d ), d );
+		}
+	}
+
+	@Override
+	public long max( final int d )
+	{
+		return position[ d ] + structuringElementBoundingBox.max( d );
+	}
+
+	@Override
+	public void max( final long[] max )
+	{
+		for ( int d = 0; d < max.length; d++ )
+		{
+			max[ d ] = position[ d ] + structuringElementBoundingBox.max( d );
+		}
+	}
+
+	@Override
+	public void max( final Positionable max )
+	{
+		for ( int d = 0; d < max.numDimensions(); d++ )
+		{
+			max.setPosition( position[ d ] + structuringElementBoundingBox.max( d ), d );
+		}
+	}
+
+	@Override
+	public void dimensions( final long[] dimensions )
+	{
+		for ( int d = 0; d < dimensions.length; d++ )
+		{
+			dimensions[ d ] = structuringElementBoundingBox.dimension( d );
+		}
+	}
+
+	@Override
+	public long dimension( final int d )
+	{
+		return structuringElementBoundingBox.dimension( d );
+	}
+
+	@Override
+	public LocalCursor cursor()
+	{
+		return new LocalCursor( sourceRandomAccess.copyRandomAccess() );
+	}
+
+	@Override
+	public LocalCursor localizingCursor()
+	{
+		return cursor();
+	}
+
+}
@@ -0,0 +1,128 @@
+package net.imglib2.algorithm.neighborhood;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * A cursor over the {@link TableNeighborhood}s centered on the pixels of an
+ * interval.
+ */
+public final class TableNeighborhoodCursor< T > extends TableNeighborhoodLocalizableSampler< T > implements Cursor< Neighborhood< T > >
+{
+	private final long[] dimensions;
+
+	private final long[] min;
+
+	private final long[] max;
+
+	private long index;
+
+	private final long maxIndex;
+
+	private long maxIndexOnLine;
+
+	public TableNeighborhoodCursor( final RandomAccessibleInterval< T > source, final NeighborhoodTable table, final TableNeighborhoodFactory< T > factory )
+	{
+		super( source, table, factory, source );
+
+		dimensions = new long[ n ];
+		min = new long[ n ];
+		max = new long[ n ];
+		source.dimensions( dimensions );
+		source.min( min );
+		source.max( max );
+		long size = dimensions[ 0 ];
+		for ( int d = 1; d < n; ++d )
+			size *= dimensions[ d ];
+		maxIndex = size - 1;
+		reset();
+	}
+
+	private TableNeighborhoodCursor( final TableNeighborhoodCursor< T > c )
+	{
+		super( c );
+		dimensions = c.dimensions.clone();
+		min = c.min.clone();
+		max = c.max.clone();
+		maxIndex = c.maxIndex;
+		index = c.index;
+		maxIndexOnLine = c.maxIndexOnLine;
+	}
+
+	@Override
+	public void fwd()
+	{
+		++currentPos[ 0 ];
+		if ( ++index > maxIndexOnLine )
+			nextLine();
+	}
+
+	private void nextLine()
+	{
+		currentPos[ 0 ] = min[ 0 ];
+		maxIndexOnLine += dimensions[ 0 ];
+		for ( int d = 1; d < n; ++d )
+		{
+			++currentPos[ d ];
+			if ( currentPos[ d ] > max[ d ] )
+			{
+				currentPos[ d ] = min[ d ];
+			}
+			else
+				break;
+		}
+	}
+
+	@Override
+	public void reset()
+	{
+		index = -1;
+		maxIndexOnLine = dimensions[ 0 ] - 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			currentPos[ d ] = ( d == 0 ) ? min[ d ] - 1 : min[ d ];
+		}
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		return index < maxIndex;
+	}
+
+	@Override
+	public void jumpFwd( final long steps )
+	{
+		index += steps;
+		final long l = index / dimensions[ 0 ];
+		maxIndexOnLine = ( l < 0 ) ? ( l * dimensions[ 0 ] ) : ( ( 1 + l ) * dimensions[ 0 ] - 1 );
+		IntervalIndexer.indexToPositionWithOffset( index, dimensions, min, currentPos );
+	}
+
+	@Override
+	public Neighborhood< T > next()
+	{
+		fwd();
+		return get();
+	}
+
+	@Override
+	public void remove()
+	{
+		// NB: no action.
+	}
+
+	@Override
+	public TableNeighborhoodCursor< T > copy()
+	{
+		return new TableNeighborhoodCursor< T >( this );
+	}
+
+	@Override
+	public TableNeighborhoodCursor< T > copyCursor()
+	{
+		return copy();
+	}
+
+}
@@ -0,0 +1,11 @@
+package net.imglib2.algorithm.neighborhood;
+
+import net.imglib2.RandomAccess;
+
+/**
+ * Creates the {@link TableNeighborhood}s of a sampler.
+ */
+public interface TableNeighborhoodFactory< T >
+{
+	public Neighborhood< T > create( final long[] position, final NeighborhoodTable table, final RandomAccess< T > sourceRandomAccess );
+}
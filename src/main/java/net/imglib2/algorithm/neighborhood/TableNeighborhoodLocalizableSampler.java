@@ -0,0 +1,119 @@
+package net.imglib2.algorithm.neighborhood;
+
+import net.imglib2.AbstractEuclideanSpace;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccessible;
+import net.imglib2.Sampler;
+
+/**
+ * Base class of the samplers of {@link TableNeighborhood}s. Each sampler
+ * creates a single neighborhood, moved with the sampler.
+ */
+public abstract class TableNeighborhoodLocalizableSampler< T > extends AbstractEuclideanSpace implements Localizable, Sampler< Neighborhood< T > >
+{
+	protected final RandomAccessible< T > source;
+
+	protected final NeighborhoodTable table;
+
+	protected final Interval sourceInterval;
+
+	protected final TableNeighborhoodFactory< T > neighborhoodFactory;
+
+	protected final Neighborhood< T > currentNeighborhood;
+
+	protected final long[] currentPos;
+
+	public TableNeighborhoodLocalizableSampler( final RandomAccessible< T > source, final NeighborhoodTable table, final TableNeighborhoodFactory< T > factory, final Interval accessInterval )
+	{
+		super( source.numDimensions() );
+		this.source = source;
+		this.table = table;
+		neighborhoodFactory = factory;
+		currentPos = new long[ n ];
+		if ( accessInterval == null )
+			sourceInterval = null;
+		else
+		{
+			final long[] accessMin = new long[ n ];
+			final long[] accessMax = new long[ n ];
+			accessInterval.min( accessMin );
+			accessInterval.max( accessMax );
+			for ( int d = 0; d < n; ++d )
+			{
+				accessMin[ d ] += table.getBoundingBox().min( d );
+				accessMax[ d ] += table.getBoundingBox().max( d );
+			}
+			sourceInterval = new FinalInterval( accessMin, accessMax );
+		}
+		currentNeighborhood = neighborhoodFactory.create( currentPos, table,
+				sourceInterval == null ? source.randomAccess() : source.randomAccess( sourceInterval ) );
+	}
+
+	protected TableNeighborhoodLocalizableSampler( final TableNeighborhoodLocalizableSampler< T > c )
+	{
+		super( c.n );
+		source = c.source;
+		table = c.table;
+		sourceInterval = c.sourceInterval;
+		neighborhoodFactory = c.neighborhoodFactory;
+		currentPos = c.currentPos.clone();
+		currentNeighborhood = neighborhoodFactory.create( currentPos, table,
+				sourceInterval == null ? source.randomAccess() : source.randomAccess( sourceInterval ) );
+	}
+
+	@Override
+	public Neighborhood< T > get()
+	{
+		return currentNeighborhood;
+	}
+
+	@Override
+	public void localize( final int[] position )
+	{
+		currentNeighborhood.localize( position );
+	}
+
+	@Override
+	public void localize( final long[] position )
+	{
+		currentNeighborhood.localize( position );
+	}
+
+	@Override
+	public int getIntPosition( final int d )
+	{
+		return currentNeighborhood.getIntPosition( d );
+	}
+
+	@Override
+	public long getLongPosition( final int d )
+	{
+		return currentNeighborhood.getLongPosition( d );
+	}
+
+	@Override
+	public void localize( final float[] position )
+	{
+		currentNeighborhood.localize( position );
+	}
+
+	@Override
+	public void localize( final double[] position )
+	{
+		currentNeighborhood.localize( position );
+	}
+
+	@Override
+	public float getFloatPosition( final int d )
+	{
+		return currentNeighborhood.getFloatPosition( d );
+	}
+
+	@Override
+	public double getDoublePosition( final int d )
+	{
+		return currentNeighborhood.getDoublePosition( d );
+	}
+}
@@ -0,0 +1,118 @@
+package net.imglib2.algorithm.neighborhood;
+
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+
+/**
+ * A random access to the {@link TableNeighborhood}s centered on the pixels of
+ * a source.
+ */
+public class TableNeighborhoodRandomAccess< T > extends TableNeighborhoodLocalizableSampler< T > implements RandomAccess< Neighborhood< T > >
+{
+	public TableNeighborhoodRandomAccess( final RandomAccessible< T > source, final NeighborhoodTable table, final TableNeighborhoodFactory< T > factory )
+	{
+		super( source, table, factory, null );
+	}
+
+	public TableNeighborhoodRandomAccess( final RandomAccessible< T > source, final NeighborhoodTable table, final TableNeighborhoodFactory< T > factory, final Interval interval )
+	{
+		super( source, table, factory, interval );
+	}
+
+	protected TableNeighborhoodRandomAccess( final TableNeighborhoodRandomAccess< T > c )
+	{
+		super( c );
+	}
+
+	@Override
+	public void fwd( final int d )
+	{
+		++currentPos[ d ];
+	}
+
+	@Override
+	public void bck( final int d )
+	{
+		--currentPos[ d ];
+	}
+
+	@Override
+	public void move( final int distance, final int d )
+	{
+		currentPos[ d ] += distance;
+	}
+
+	@Override
+	public void move( final long distance, final int d )
+	{
+		currentPos[ d ] += distance;
+	}
+
+	@Override
+	public void move( final Localizable localizable )
+	{
+		for ( int d = 0; d < n; ++d )
+			currentPos[ d ] += localizable.getLongPosition( d );
+	}
+
+	@Override
+	public void move( final int[] distance )
+	{
+		for ( int d = 0; d < n; ++d )
+			currentPos[ d ] += distance[ d ];
+	}
+
+	@Override
+	public void move( final long[] distance )
+	{
+		for ( int d = 0; d < n; ++d )
+			currentPos[ d ] += distance[ d ];
+	}
+
+	@Override
+	public void setPosition( final Localizable localizable )
+	{
+		for ( int d = 0; d < n; ++d )
+			currentPos[ d ] = localizable.getLongPosition( d );
+	}
+
+	@Override
+	public void setPosition( final int[] position )
+	{
+		for ( int d = 0; d < n; ++d )
+			currentPos[ d ] = position[ d ];
+	}
+
+	@Override
+	public void setPosition( final long[] position )
+	{
+		for ( int d = 0; d < n; ++d )
+			currentPos[ d ] = position[ d ];
+	}
+
+	@Override
+	public void setPosition( final int position, final int d )
+	{
+		currentPos[ d ] = position;
+	}
+
+	@Override
+	public void setPosition( final long position, final int d )
+	{
+		currentPos[ d ] = position;
+	}
+
+	@Override
+	public TableNeighborhoodRandomAccess< T > copy()
+	{
+		return new TableNeighborhoodRandomAccess< T >( this );
+	}
+
+	@Override
+	public TableNeighborhoodRandomAccess< T > copyRandomAccess()
+	{
+		return copy();
+	}
+}
@@ -0,0 +1,47 @@
+package net.imglib2.algorithm.neighborhood;
+
+import net.imglib2.RandomAccess;
+
+/**
+ * A {@link TableNeighborhood} that reuses a single cursor, reset by each call
+ * to {@link #cursor()}. Only one cursor can be used at a time.
+ */
+public final class TableNeighborhoodUnsafe< T > extends TableNeighborhood< T >
+{
+	public static < T > TableNeighborhoodFactory< T > factory()
+	{
+		return new TableNeighborhoodFactory< T >()
+		{
+			@Override
+			public Neighborhood< T > create( final long[] position, final NeighborhoodTable table, final RandomAccess< T > sourceRandomAccess )
+			{
+				return new TableNeighborhoodUnsafe< T >( position, table, sourceRandomAccess );
+			}
+		};
+	}
+
+	private final LocalCursor theCursor;
+
+	private final LocalCursor firstElementCursor;
+
+	TableNeighborhoodUnsafe( final long[] position, final NeighborhoodTable table, final RandomAccess< T > sourceRandomAccess )
+	{
+		super( position, table, sourceRandomAccess );
+		theCursor = super.cursor();
+		firstElementCursor = super.cursor();
+	}
+
+	@Override
+	public T firstElement()
+	{
+		firstElementCursor.reset();
+		return firstElementCursor.next();
+	}
+
+	@Override
+	public LocalCursor cursor()
+	{
+		theCursor.reset();
+		return theCursor;
+	}
+}
@@ -0,0 +1,57 @@
+package net.imglib2.algorithm.neighborhood;
+
+import net.imglib2.RandomAccess;
+
+/**
+ * Walks the elements of a {@link NeighborhoodTable} around a center, on
+ * behalf of the local cursors of the {@link TableNeighborhood}s and of the
+ * {@link OffsetTableCursor}.
+ * <p>
+ * Before the first element, and after a reset, a walker is at the center.
+ */
+abstract class TableWalker< T >
+{
+
+	/**
+	 * Creates a walker of the same table on another random access on the same
+	 * image, reusing what this walker precomputed for that image.
+	 */
+	abstract TableWalker< T > walker( final RandomAccess< T > source );
+
+	/**
+	 * Positions the walker before the first element around the specified
+	 * center. The array is referenced, not copied.
+	 */
+	abstract void reset( final long[] center );
+
+	abstract void fwd();
+
+	void jumpFwd( final long steps )
+	{
+		for ( long i = 0; i < steps; ++i )
+		{
+			fwd();
+		}
+	}
+
+	abstract boolean hasNext();
+
+	abstract T get();
+
+	abstract long getLongPosition( final int d );
+
+	abstract void localize( final long[] position );
+
+	abstract void localize( final int[] position );
+
+	abstract void localize( final float[] position );
+
+	abstract void localize( final double[] position );
+
+	/**
+	 * Copies this walker, with a copy of the center it refers to.
+	 */
+	abstract TableWalker< T > copy( final long[] center );
+
+	abstract TableWalker< T > copy();
+}
@@ -0,0 +1,498 @@
+package net.imglib2.algorithm.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.NeighborhoodGatherer;
+import net.imglib2.algorithm.neighborhood.NeighborhoodVisitor;
+import net.imglib2.algorithm.neighborhood.OffsetTable;
+import net.imglib2.algorithm.neighborhood.OffsetTableShape;
+import net.imglib2.algorithm.neighborhood.ParallelNeighborhoods;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * Local statistics over several shapes, computed in a single traversal.
+ * <p>
+ * Feature extraction typically needs the same statistics over several
+ * windows, for instance the mean and variance over
+ * <code>RectangleShape( 1 )</code>, <code>RectangleShape( 3 )</code> and
+ * <code>HyperSphereShape( 5 )</code>. Instead of one traversal per shape,
+ * this class visits the union of the offsets of all the shapes once per
+ * pixel.
+ * <p>
+ * The union is split in classes of offsets that belong to the same subset of
+ * the shapes. Each value read is accumulated once, in the accumulator of its
+ * class, and the accumulators of the classes are then merged for each shape.
+ * The classes are iterated from the ones shared by the most shapes to the
+ * ones specific to a single shape: for nested concentric shapes, the smaller
+ * shapes are prefixes of the larger ones, and each shape costs one read per
+ * element of its ring around the previous one.
+ * <p>
+ * The values of each neighborhood are read with a
+ * {@link NeighborhoodGatherer}, straight from the backing array when the
+ * source is an array image. The statistics are all mergeable (see
+ * {@link Statistic}). All values are accumulated as <code>double</code>, and
+ * the variance from sums shifted by one of the values of the neighborhood, so
+ * that it does not cancel out on images with a large mean.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * final MultiShapeStatistics&lt; T &gt; stats = new MultiShapeStatistics&lt; T &gt;( Views.extendMirrorSingle( img ), img );
+ * final Shape r3 = new RectangleShape( 3, false );
+ * stats.add( new RectangleShape( 1, false ), Statistic.MEAN, mean1 );
+ * stats.add( r3, Statistic.MEAN, mean3 );
+ * stats.add( r3, Statistic.VARIANCE, variance3 );
+ * stats.process( 4 );
+ * </pre>
+ *
+ * The source must be defined over the interval expanded by the bounding box
+ * of all the shapes.
+ */
+public class MultiShapeStatistics< T extends RealType< T > >
+{
+
+	/**
+	 * The statistics that can be computed. They can all be merged from the
+	 * statistics of disjoint subsets of the neighborhood, which is what lets
+	 * the shapes share their reads.
+	 */
+	public static enum Statistic
+	{
+		COUNT, SUM, SUM_OF_SQUARES, MEAN, VARIANCE, MIN, MAX;
+	}
+
+	/**
+	 * Shapes are stored as bits of a <code>long</code> membership mask.
+	 */
+	private static final int MAX_SHAPES = 64;
+
+	private final RandomAccessible< T > source;
+
+	private final Interval interval;
+
+	private final List< Shape > shapes = new ArrayList< Shape >();
+
+	private final List< Output > outputs = new ArrayList< Output >();
+
+	/**
+	 * Creates a new multi-shape statistics, with no shape.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param interval
+	 *            the interval to process. The targets must contain it.
+	 */
+	public MultiShapeStatistics( final RandomAccessible< T > source, final Interval interval )
+	{
+		if ( source.numDimensions() != interval.numDimensions() )
+		{
+			throw new IllegalArgumentException( "Source and interval must have the same dimensionality." );
+		}
+		this.source = source;
+		this.interval = interval;
+	}
+
+	/**
+	 * Adds a statistic to compute over a shape. A shape instance can be added
+	 * several times, with different statistics: its values are then
+	 * accumulated only once.
+	 *
+	 * @param shape
+	 *            the shape.
+	 * @param statistic
+	 *            the statistic to compute over the shape.
+	 * @param target
+	 *            the target image, written at each pixel of the interval.
+	 */
+	public < S extends RealType< S > > void add( final Shape shape, final Statistic statistic, final RandomAccessibleInterval< S > target )
+	{
+		if ( target.numDimensions() != interval.numDimensions() )
+		{
+			throw new IllegalArgumentException( "Target and interval must have the same dimensionality." );
+		}
+		int s = shapes.indexOf( shape );
+		if ( s < 0 )
+		{
+			if ( shapes.size() == MAX_SHAPES )
+			{
+				throw new IllegalArgumentException( "Cannot process more than " + MAX_SHAPES + " shapes at once." );
+			}
+			shapes.add( shape );
+			s = shapes.size() - 1;
+		}
+		outputs.add( new Output( s, statistic, target ) );
+	}
+
+	/**
+	 * Computes all the statistics added so far.
+	 *
+	 * @param numThreads
+	 *            the number of threads to use.
+	 * @throws IllegalArgumentException
+	 *             if the bounding box of a shape has more than
+	 *             {@link OffsetTable#MAX_SHAPE_SIZE} elements.
+	 */
+	public void process( final int numThreads )
+	{
+		if ( shapes.isEmpty() )
+		{
+			return;
+		}
+		final Union union = new Union( shapes, interval.numDimensions() );
+		final IterableInterval< Neighborhood< T > > neighborhoods = new OffsetTableShape( union.table ).neighborhoods( Views.interval( source, interval ) );
+		ParallelNeighborhoods.forEach( neighborhoods, new Visitor( union ), numThreads );
+	}
+
+	/*
+	 * INNER CLASSES
+	 */
+
+	private static final class Output
+	{
+		private final int shape;
+
+		private final Statistic statistic;
+
+		private final RandomAccessibleInterval< ? extends RealType< ? > > target;
+
+		private Output( final int shape, final Statistic statistic, final RandomAccessibleInterval< ? extends RealType< ? > > target )
+		{
+			this.shape = shape;
+			this.statistic = statistic;
+			this.target = target;
+		}
+	}
+
+	/**
+	 * Count, sum, sum of squares and extrema of a set of values, plus the sum
+	 * and sum of squares of the values minus a shift, for the variance.
+	 * Accumulators are only merged if they have the same shift.
+	 */
+	private static final class Accumulator
+	{
+		private long count;
+
+		private double sum;
+
+		private double sumSq;
+
+		private double shift;
+
+		private double shiftedSum;
+
+		private double shiftedSumSq;
+
+		private double min;
+
+		private double max;
+
+		private void reset( final double shift )
+		{
+			count = 0;
+			sum = 0;
+			sumSq = 0;
+			this.shift = shift;
+			shiftedSum = 0;
+			shiftedSumSq = 0;
+			min = Double.POSITIVE_INFINITY;
+			max = Double.NEGATIVE_INFINITY;
+		}
+
+		private void add( final double v )
+		{
+			++count;
+			sum += v;
+			sumSq += v * v;
+			final double dv = v - shift;
+			shiftedSum += dv;
+			shiftedSumSq += dv * dv;
+			if ( v < min )
+			{
+				min = v;
+			}
+			if ( v > max )
+			{
+				max = v;
+			}
+		}
+
+		private void add( final Accumulator other )
+		{
+			count += other.count;
+			sum += other.sum;
+			sumSq += other.sumSq;
+			shiftedSum += other.shiftedSum;
+			shiftedSumSq += other.shiftedSumSq;
+			if ( other.min < min )
+			{
+				min = other.min;
+			}
+			if ( other.max > max )
+			{
+				max = other.max;
+			}
+		}
+
+		private double get( final Statistic statistic )
+		{
+			switch ( statistic )
+			{
+			case COUNT:
+				return count;
+			case SUM:
+				return sum;
+			case SUM_OF_SQUARES:
+				return sumSq;
+			case MEAN:
+				return sum / count;
+			case VARIANCE:
+				final double shiftedMean = shiftedSum / count;
+				return Math.max( 0, shiftedSumSq / count - shiftedMean * shiftedMean );
+			case MIN:
+				return min;
+			case MAX:
+			default:
+				return max;
+			}
+		}
+	}
+
+	/**
+	 * The union of the offsets of all the shapes, ordered by membership class.
+	 */
+	private static final class Union
+	{
+		private final OffsetTable table;
+
+		/**
+		 * Index of the first element of each class in the table, plus the
+		 * table size.
+		 */
+		private final int[] classStarts;
+
+		/**
+		 * For each shape, the indices of the classes it is made of.
+		 */
+		private final int[][] shapeClasses;
+
+		private Union( final List< Shape > shapes, final int n )
+		{
+			final int nShapes = shapes.size();
+			final OffsetTable[] tables = new OffsetTable[ nShapes ];
+			final long[] min = new long[ n ];
+			final long[] max = new long[ n ];
+			Arrays.fill( min, Long.MAX_VALUE );
+			Arrays.fill( max, Long.MIN_VALUE );
+			for ( int s = 0; s < nShapes; s++ )
+			{
+				tables[ s ] = OffsetTable.forShape( shapes.get( s ), n );
+				if ( tables[ s ].size() == 0 )
+				{
+					continue;
+				}
+				final Interval bbox = tables[ s ].getBoundingBox();
+				for ( int d = 0; d < n; d++ )
+				{
+					min[ d ] = Math.min( min[ d ], bbox.min( d ) );
+					max[ d ] = Math.max( max[ d ], bbox.max( d ) );
+				}
+			}
+
+			// Membership mask of each offset of the union bounding box.
+			final long[] dims = new long[ n ];
+			long numElements = 1;
+			for ( int d = 0; d < n; d++ )
+			{
+				dims[ d ] = Math.max( 0, max[ d ] - min[ d ] + 1 );
+				numElements *= dims[ d ];
+			}
+			final long[] masks = new long[ ( int ) numElements ];
+			final long[] offset = new long[ n ];
+			for ( int s = 0; s < nShapes; s++ )
+			{
+				for ( int i = 0; i < tables[ s ].size(); i++ )
+				{
+					tables[ s ].getOffset( i, offset );
+					masks[ index( offset, min, dims ) ] |= 1l << s;
+				}
+			}
+
+			final List< long[] > elements = new ArrayList< long[] >();
+			for ( int i = 0; i < masks.length; i++ )
+			{
+				if ( masks[ i ] != 0 )
+				{
+					// { mask, index in bbox }
+					elements.add( new long[] { masks[ i ], i } );
+				}
+			}
+			// Offsets shared by the most shapes first, so that nested shapes
+			// are prefixes of the shapes that contain them. Within a class,
+			// flat order.
+			Collections.sort( elements, new Comparator< long[] >()
+			{
+				@Override
+				public int compare( final long[] o1, final long[] o2 )
+				{
+					final int c1 = Long.bitCount( o1[ 0 ] );
+					final int c2 = Long.bitCount( o2[ 0 ] );
+					if ( c1 != c2 )
+					{
+						return c1 > c2 ? -1 : 1;
+					}
+					if ( o1[ 0 ] != o2[ 0 ] )
+					{
+						return o1[ 0 ] < o2[ 0 ] ? -1 : 1;
+					}
+					return o1[ 1 ] < o2[ 1 ] ? -1 : ( o1[ 1 ] == o2[ 1 ] ? 0 : 1 );
+				}
+			} );
+
+			final long[][] offsets = new long[ elements.size() ][];
+			final List< Integer > starts = new ArrayList< Integer >();
+			final List< Long > classMasks = new ArrayList< Long >();
+			for ( int i = 0; i < offsets.length; i++ )
+			{
+				final long[] element = elements.get( i );
+				if ( i == 0 || element[ 0 ] != elements.get( i - 1 )[ 0 ] )
+				{
+					starts.add( i );
+					classMasks.add( element[ 0 ] );
+				}
+				offsets[ i ] = new long[ n ];
+				long index = element[ 1 ];
+				for ( int d = 0; d < n; d++ )
+				{
+					offsets[ i ][ d ] = min[ d ] + index % dims[ d ];
+					index /= dims[ d ];
+				}
+			}
+			starts.add( offsets.length );
+
+			table = new OffsetTable( offsets );
+			classStarts = new int[ starts.size() ];
+			for ( int c = 0; c < classStarts.length; c++ )
+			{
+				classStarts[ c ] = starts.get( c );
+			}
+			shapeClasses = new int[ nShapes ][];
+			for ( int s = 0; s < nShapes; s++ )
+			{
+				final List< Integer > classes = new ArrayList< Integer >();
+				for ( int c = 0; c < classMasks.size(); c++ )
+				{
+					if ( ( classMasks.get( c ) & ( 1l << s ) ) != 0 )
+					{
+						classes.add( c );
+					}
+				}
+				shapeClasses[ s ] = new int[ classes.size() ];
+				for ( int i = 0; i < shapeClasses[ s ].length; i++ )
+				{
+					shapeClasses[ s ][ i ] = classes.get( i );
+				}
+			}
+		}
+
+		private static int index( final long[] offset, final long[] min, final long[] dims )
+		{
+			long index = 0;
+			for ( int d = offset.length - 1; d >= 0; d-- )
+			{
+				index = index * dims[ d ] + offset[ d ] - min[ d ];
+			}
+			return ( int ) index;
+		}
+	}
+
+	private final class Visitor implements NeighborhoodVisitor< T >
+	{
+		private final Union union;
+
+		private final NeighborhoodGatherer< T > gatherer;
+
+		private final double[] values;
+
+		private final Accumulator[] classes;
+
+		private final Accumulator[] perShape;
+
+		private final RandomAccess< ? extends RealType< ? > >[] targets;
+
+		@SuppressWarnings( "unchecked" )
+		private Visitor( final Union union )
+		{
+			this.union = union;
+			gatherer = new NeighborhoodGatherer< T >( source, union.table );
+			values = new double[ gatherer.size() ];
+			classes = new Accumulator[ union.classStarts.length - 1 ];
+			for ( int c = 0; c < classes.length; c++ )
+			{
+				classes[ c ] = new Accumulator();
+			}
+			perShape = new Accumulator[ shapes.size() ];
+			for ( int s = 0; s < perShape.length; s++ )
+			{
+				perShape[ s ] = new Accumulator();
+			}
+			targets = new RandomAccess[ outputs.size() ];
+			for ( int o = 0; o < targets.length; o++ )
+			{
+				targets[ o ] = outputs.get( o ).target.randomAccess();
+			}
+		}
+
+		@Override
+		public void visit( final Neighborhood< T > neighborhood )
+		{
+			gatherer.gather( neighborhood, values );
+			// The same shift for all the accumulators, so that they merge.
+			final double shift = values.length == 0 ? 0 : values[ 0 ];
+			for ( int c = 0; c < classes.length; c++ )
+			{
+				final Accumulator accumulator = classes[ c ];
+				accumulator.reset( shift );
+				for ( int i = union.classStarts[ c ]; i < union.classStarts[ c + 1 ]; i++ )
+				{
+					accumulator.add( values[ i ] );
+				}
+			}
+
+			for ( int s = 0; s < perShape.length; s++ )
+			{
+				final Accumulator accumulator = perShape[ s ];
+				accumulator.reset( shift );
+				for ( final int c : union.shapeClasses[ s ] )
+				{
+					accumulator.add( classes[ c ] );
+				}
+			}
+
+			for ( int o = 0; o < targets.length; o++ )
+			{
+				final Output output = outputs.get( o );
+				final RandomAccess< ? extends RealType< ? > > target = targets[ o ];
+				target.setPosition( neighborhood );
+				target.get().setReal( perShape[ output.shape ].get( output.statistic ) );
+			}
+		}
+
+		@Override
+		public Visitor copy()
+		{
+			return new Visitor( union );
+		}
+	}
+}
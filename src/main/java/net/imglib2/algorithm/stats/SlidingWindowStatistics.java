@@ -0,0 +1,410 @@
+package net.imglib2.algorithm.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.neighborhood.IncrementalShape;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.OffsetTable;
+import net.imglib2.algorithm.neighborhood.OffsetTableShape;
+import net.imglib2.iterator.LocalizingIntervalIterator;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Local statistics over a sliding window, computed incrementally.
+ * <p>
+ * The window is given by an {@link IncrementalShape} and slides along the
+ * lines of the target interval, in dimension 0. The full neighborhood is only
+ * visited at the start of each line. After that:
+ * <ul>
+ * <li>sums and sums of squares are updated with the elements that enter and
+ * leave the window (see {@link IncrementalShape#getEnteringOffsets(int, int)});
+ * <li>minima and maxima are maintained with one monotone deque per run of the
+ * window along dimension 0, so that each step costs one read per run.
+ * </ul>
+ * For a rectangle of span <code>r</code> in 2D, this brings the cost per pixel
+ * from <code>(2r+1)<sup>2</sup></code> reads to <code>2(2r+1)</code> for
+ * the sums, and <code>2r+1</code> for the extrema.
+ * <p>
+ * All values are accumulated as <code>double</code>. Sums are restarted at
+ * the beginning of each line, which bounds the rounding drift.
+ * <p>
+ * The source must be defined over the target interval expanded by the
+ * bounding box of the shape, for instance by extending it with
+ * {@link net.imglib2.view.Views#extendMirrorSingle(RandomAccessibleInterval)}.
+ * <p>
+ * The window is described by its offset table, so windows whose bounding box
+ * has more than {@link OffsetTable#MAX_SHAPE_SIZE} elements are rejected with
+ * an {@link IllegalArgumentException}.
+ */
+public class SlidingWindowStatistics
+{
+
+	private static enum Moment
+	{
+		SUM, SUM_OF_SQUARES, MEAN, VARIANCE;
+	}
+
+	/**
+	 * Writes the sum of the source values over the window centered on each
+	 * pixel of the target.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param shape
+	 *            the window.
+	 * @param target
+	 *            the target image, also defining the interval to process.
+	 */
+	public static < T extends RealType< T >, S extends RealType< S > > void sum( final RandomAccessible< T > source, final IncrementalShape shape, final RandomAccessibleInterval< S > target )
+	{
+		moment( source, shape, target, Moment.SUM );
+	}
+
+	/**
+	 * Writes the sum of the squared source values over the window centered on
+	 * each pixel of the target.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param shape
+	 *            the window.
+	 * @param target
+	 *            the target image, also defining the interval to process.
+	 */
+	public static < T extends RealType< T >, S extends RealType< S > > void sumOfSquares( final RandomAccessible< T > source, final IncrementalShape shape, final RandomAccessibleInterval< S > target )
+	{
+		moment( source, shape, target, Moment.SUM_OF_SQUARES );
+	}
+
+	/**
+	 * Writes the mean of the source values over the window centered on each
+	 * pixel of the target.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param shape
+	 *            the window.
+	 * @param target
+	 *            the target image, also defining the interval to process.
+	 */
+	public static < T extends RealType< T >, S extends RealType< S > > void mean( final RandomAccessible< T > source, final IncrementalShape shape, final RandomAccessibleInterval< S > target )
+	{
+		moment( source, shape, target, Moment.MEAN );
+	}
+
+	/**
+	 * Writes the population variance of the source values over the window
+	 * centered on each pixel of the target.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param shape
+	 *            the window.
+	 * @param target
+	 *            the target image, also defining the interval to process.
+	 */
+	public static < T extends RealType< T >, S extends RealType< S > > void variance( final RandomAccessible< T > source, final IncrementalShape shape, final RandomAccessibleInterval< S > target )
+	{
+		moment( source, shape, target, Moment.VARIANCE );
+	}
+
+	/**
+	 * Writes the minimum of the source values over the window centered on
+	 * each pixel of the target.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param shape
+	 *            the window.
+	 * @param target
+	 *            the target image, also defining the interval to process.
+	 */
+	public static < T extends RealType< T >, S extends RealType< S > > void min( final RandomAccessible< T > source, final IncrementalShape shape, final RandomAccessibleInterval< S > target )
+	{
+		extremum( source, shape, target, false );
+	}
+
+	/**
+	 * Writes the maximum of the source values over the window centered on
+	 * each pixel of the target.
+	 *
+	 * @param source
+	 *            the source image.
+	 * @param shape
+	 *            the window.
+	 * @param target
+	 *            the target image, also defining the interval to process.
+	 */
+	public static < T extends RealType< T >, S extends RealType< S > > void max( final RandomAccessible< T > source, final IncrementalShape shape, final RandomAccessibleInterval< S > target )
+	{
+		extremum( source, shape, target, true );
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private static < T extends RealType< T >, S extends RealType< S > > void moment( final RandomAccessible< T > source, final IncrementalShape shape, final RandomAccessibleInterval< S > target, final Moment moment )
+	{
+		final int n = target.numDimensions();
+		final double size = shape.getOffsetTable( n ).size();
+		final RandomAccess< Neighborhood< T > > window = new OffsetTableShape( shape.getOffsetTable( n ) ).neighborhoodsRandomAccessible( source ).randomAccess();
+		final RandomAccess< Neighborhood< T > > entering = new OffsetTableShape( shape.getEnteringOffsets( 0, n ) ).neighborhoodsRandomAccessible( source ).randomAccess();
+		final RandomAccess< Neighborhood< T > > leaving = new OffsetTableShape( shape.getLeavingOffsets( 0, n ) ).neighborhoodsRandomAccessible( source ).randomAccess();
+		final RandomAccess< S > out = target.randomAccess();
+		final long lineLength = target.dimension( 0 );
+
+		final long[] position = new long[ n ];
+		final LocalizingIntervalIterator lines = lineStarts( target );
+		while ( lines.hasNext() )
+		{
+			lines.fwd();
+			lines.localize( position );
+
+			double sum = 0;
+			double sumSq = 0;
+			window.setPosition( position );
+			for ( final T t : window.get() )
+			{
+				final double v = t.getRealDouble();
+				sum += v;
+				sumSq += v * v;
+			}
+			out.setPosition( position );
+			write( out.get(), moment, sum, sumSq, size );
+
+			entering.setPosition( position );
+			leaving.setPosition( position );
+			for ( long x = 1; x < lineLength; x++ )
+			{
+				entering.fwd( 0 );
+				leaving.fwd( 0 );
+				for ( final T t : entering.get() )
+				{
+					final double v = t.getRealDouble();
+					sum += v;
+					sumSq += v * v;
+				}
+				for ( final T t : leaving.get() )
+				{
+					final double v = t.getRealDouble();
+					sum -= v;
+					sumSq -= v * v;
+				}
+				out.fwd( 0 );
+				write( out.get(), moment, sum, sumSq, size );
+			}
+		}
+	}
+
+	private static < S extends RealType< S > > void write( final S target, final Moment moment, final double sum, final double sumSq, final double size )
+	{
+		switch ( moment )
+		{
+		case SUM:
+			target.setReal( sum );
+			break;
+		case SUM_OF_SQUARES:
+			target.setReal( sumSq );
+			break;
+		case MEAN:
+			target.setReal( sum / size );
+			break;
+		case VARIANCE:
+			final double mean = sum / size;
+			target.setReal( Math.max( 0, sumSq / size - mean * mean ) );
+			break;
+		}
+	}
+
+	private static < T extends RealType< T >, S extends RealType< S > > void extremum( final RandomAccessible< T > source, final IncrementalShape shape, final RandomAccessibleInterval< S > target, final boolean max )
+	{
+		final int n = target.numDimensions();
+		final long[][] runs = runs( shape.getOffsetTable( n ) );
+		final MonotoneDeque[] deques = new MonotoneDeque[ runs.length ];
+		for ( int r = 0; r < runs.length; r++ )
+		{
+			deques[ r ] = new MonotoneDeque( ( int ) ( runs[ r ][ n ] - runs[ r ][ 0 ] + 2 ), max );
+		}
+
+		final RandomAccess< T > in = source.randomAccess();
+		final RandomAccess< S > out = target.randomAccess();
+		final long lineLength = target.dimension( 0 );
+
+		final long[] position = new long[ n ];
+		final LocalizingIntervalIterator lines = lineStarts( target );
+		while ( lines.hasNext() )
+		{
+			lines.fwd();
+			lines.localize( position );
+			out.setPosition( position );
+
+			for ( long x = 0; x < lineLength; x++ )
+			{
+				final long center = position[ 0 ] + x;
+				double extremum = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+				for ( int r = 0; r < runs.length; r++ )
+				{
+					final long[] run = runs[ r ];
+					final MonotoneDeque deque = deques[ r ];
+					// At the line start the whole run is read, then its head.
+					final long from = ( x == 0 ) ? run[ 0 ] : run[ n ];
+					if ( x == 0 )
+					{
+						deque.clear();
+					}
+					in.setPosition( position );
+					in.setPosition( center + from, 0 );
+					for ( int d = 1; d < n; d++ )
+					{
+						in.move( run[ d ], d );
+					}
+					for ( long o = from; o <= run[ n ]; o++ )
+					{
+						deque.push( center + o, in.get().getRealDouble() );
+						in.fwd( 0 );
+					}
+					deque.evict( center + run[ 0 ] );
+					final double v = deque.front();
+					if ( max ? v > extremum : v < extremum )
+					{
+						extremum = v;
+					}
+				}
+				out.get().setReal( extremum );
+				out.fwd( 0 );
+			}
+		}
+	}
+
+	/**
+	 * Splits a table into runs of consecutive elements along dimension 0.
+	 * Each run is stored as <code>{ lo, o<sub>1</sub>, ..., o<sub>n-1</sub>, hi }</code>.
+	 */
+	static long[][] runs( final OffsetTable table )
+	{
+		final int n = table.numDimensions();
+		final List< long[] > offsets = new ArrayList< long[] >( table.size() );
+		for ( int i = 0; i < table.size(); i++ )
+		{
+			final long[] offset = new long[ n ];
+			table.getOffset( i, offset );
+			offsets.add( offset );
+		}
+		Collections.sort( offsets, new Comparator< long[] >()
+		{
+			@Override
+			public int compare( final long[] o1, final long[] o2 )
+			{
+				for ( int d = n - 1; d >= 0; d-- )
+				{
+					if ( o1[ d ] != o2[ d ] )
+					{
+						return o1[ d ] < o2[ d ] ? -1 : 1;
+					}
+				}
+				return 0;
+			}
+		} );
+
+		final List< long[] > runs = new ArrayList< long[] >();
+		long[] current = null;
+		long[] previous = null;
+		for ( final long[] offset : offsets )
+		{
+			if ( null != current && offset[ 0 ] == previous[ 0 ] + 1 && Arrays.equals( Arrays.copyOfRange( offset, 1, n ), Arrays.copyOfRange( previous, 1, n ) ) )
+			{
+				current[ n ] = offset[ 0 ];
+			}
+			else
+			{
+				current = Arrays.copyOf( offset, n + 1 );
+				current[ n ] = offset[ 0 ];
+				runs.add( current );
+			}
+			previous = offset;
+		}
+		return runs.toArray( new long[ runs.size() ][] );
+	}
+
+	private static LocalizingIntervalIterator lineStarts( final RandomAccessibleInterval< ? > target )
+	{
+		final long[] min = new long[ target.numDimensions() ];
+		final long[] max = new long[ target.numDimensions() ];
+		target.min( min );
+		target.max( max );
+		max[ 0 ] = min[ 0 ];
+		return new LocalizingIntervalIterator( min, max );
+	}
+
+	/**
+	 * A deque of values along a line, kept monotone so that its front is the
+	 * extremum of the values pushed since the last eviction.
+	 */
+	private static final class MonotoneDeque
+	{
+		private final long[] positions;
+
+		private final double[] values;
+
+		private final boolean max;
+
+		private int head;
+
+		private int size;
+
+		MonotoneDeque( final int capacity, final boolean max )
+		{
+			this.positions = new long[ capacity ];
+			this.values = new double[ capacity ];
+			this.max = max;
+		}
+
+		void clear()
+		{
+			head = 0;
+			size = 0;
+		}
+
+		void push( final long position, final double value )
+		{
+			while ( size > 0 )
+			{
+				final double last = values[ ( head + size - 1 ) % values.length ];
+				if ( max ? last > value : last < value )
+				{
+					break;
+				}
+				--size;
+			}
+			final int tail = ( head + size ) % values.length;
+			positions[ tail ] = position;
+			values[ tail ] = value;
+			++size;
+		}
+
+		/**
+		 * Removes the values at positions strictly before the specified one.
+		 */
+		void evict( final long from )
+		{
+			while ( size > 0 && positions[ head ] < from )
+			{
+				head = ( head + 1 ) % values.length;
+				--size;
+			}
+		}
+
+		double front()
+		{
+			return values[ head ];
+		}
+	}
+}
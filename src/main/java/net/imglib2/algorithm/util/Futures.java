@@ -0,0 +1,64 @@
+package net.imglib2.algorithm.util;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Waits for the tasks of a multi-threaded algorithm.
+ */
+public final class Futures
+{
+
+	/**
+	 * Waits for all the futures of a list to complete, then clears the list so
+	 * that it can be reused for the next batch of tasks.
+	 * <p>
+	 * If a task failed, or if the calling thread is interrupted while waiting,
+	 * the tasks that are still pending are cancelled, and the failure is
+	 * rethrown, so that the algorithm does not go on with a partial result.
+	 *
+	 * @param futures
+	 *            the futures of the tasks to wait for.
+	 * @throws RuntimeException
+	 *             wrapping the exception thrown by a failed task, or the
+	 *             {@link InterruptedException} if interrupted, in which case
+	 *             the interrupt flag of the calling thread is set again.
+	 */
+	public static void getAll( final List< ? extends Future< ? > > futures )
+	{
+		try
+		{
+			for ( final Future< ? > future : futures )
+			{
+				future.get();
+			}
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			cancelAll( futures );
+			throw new RuntimeException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			cancelAll( futures );
+			throw new RuntimeException( e.getCause() );
+		}
+		finally
+		{
+			futures.clear();
+		}
+	}
+
+	private static void cancelAll( final List< ? extends Future< ? > > futures )
+	{
+		for ( final Future< ? > future : futures )
+		{
+			future.cancel( true );
+		}
+	}
+
+	private Futures()
+	{}
+}
@@ -0,0 +1,113 @@
+package net.imglib2.algorithm.morphology;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import net.imglib2.FinalDimensions;
+import net.imglib2.algorithm.neighborhood.HyperSphereShape;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DecompositionPlannerTest
+{
+
+	private DecompositionPlanner planner;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		planner = new DecompositionPlanner( new FinalDimensions( 100l, 100l ), new UnsignedByteType() );
+	}
+
+	@Test
+	public void testRectanglePlans()
+	{
+		final List< Shape > large = planner.plan( new RectangleShape( 5, false ) );
+		assertEquals( "A large square should be decomposed in lines.", 2, large.size() );
+
+		final List< Shape > small = planner.plan( new RectangleShape( 1, false ) );
+		assertEquals( "A 3x3 square should not be decomposed.", 1, small.size() );
+
+		final List< Shape > skipping = planner.plan( new RectangleShape( 5, true ) );
+		assertEquals( "A square skipping its center cannot be decomposed.", 1, skipping.size() );
+
+		final DecompositionPlanner noLines = new DecompositionPlanner( new FinalDimensions( 100l, 100l ), null, EnumSet.noneOf( DecompositionPlanner.Engine.class ), 0. );
+		assertEquals( 1, noLines.plan( new RectangleShape( 5, false ) ).size() );
+	}
+
+	@Test
+	public void testCostGrowsWithStrel()
+	{
+		final double c1 = planner.cost( StructuringElements.square( 1, 2, false ) );
+		final double c2 = planner.cost( StructuringElements.square( 2, 2, false ) );
+		assertTrue( c2 > c1 );
+	}
+
+	@Test
+	public void testDiskApproximationError()
+	{
+		assertEquals( 0., DecompositionPlanner.diskApproximationError( 20, 2, 0 ), 0. );
+		final double e4 = DecompositionPlanner.diskApproximationError( 20, 2, 4 );
+		final double e8 = DecompositionPlanner.diskApproximationError( 20, 2, 8 );
+		assertTrue( "8 periodic lines should approximate a disk better than 4.", e8 < e4 );
+
+		final DecompositionPlanner exact = new DecompositionPlanner( new FinalDimensions( 100l, 100l ), null, EnumSet.allOf( DecompositionPlanner.Engine.class ), 0. );
+		final List< Shape > disk = exact.disk( 20 );
+		assertEquals( 1, disk.size() );
+		assertTrue( disk.get( 0 ) instanceof HyperSphereShape );
+
+		final List< Shape > approximate = planner.disk( 20 );
+		assertTrue( "A large disk should be decomposed.", approximate.size() > 1 );
+	}
+
+	@Test
+	public void testSphereDecomposition()
+	{
+		final int radius = 7;
+		for ( final int decomposition : new int[] { 9, 13 } )
+		{
+			final List< Shape > strel = StructuringElements.disk( radius, 3, decomposition );
+			final Img< BitType > img = ArrayImgs.bits( 1l, 1l, 1l );
+			img.firstElement().set( true );
+			final Img< BitType > sphere = Dilation.dilateFull( img, strel, 1 );
+			for ( int d = 0; d < 3; d++ )
+			{
+				assertEquals( 2 * radius + 1, sphere.dimension( d ) );
+			}
+			assertTrue( DecompositionPlanner.diskApproximationError( radius, 3, decomposition ) < 0.5 );
+		}
+		assertTrue( DecompositionPlanner.diskApproximationError( radius, 3, 13 ) < DecompositionPlanner.diskApproximationError( radius, 3, 9 ) );
+	}
+
+	@Test
+	public void testLargeDiskApproximationError()
+	{
+		final double error = DecompositionPlanner.diskApproximationError( 10000, 3, 13 );
+		assertTrue( error < 0.5 );
+		assertEquals( "Large disks should be estimated on the same bounded radius.", error, DecompositionPlanner.diskApproximationError( 5000, 3, 13 ), 0. );
+	}
+
+	@Test
+	public void testStructuringElementsAreNotPlanned()
+	{
+		for ( final long radius : new long[] { 3, 7, 20 } )
+		{
+			final List< Shape > sphere = StructuringElements.disk( radius, 3 );
+			assertEquals( 1, sphere.size() );
+			assertTrue( sphere.get( 0 ) instanceof HyperSphereShape );
+		}
+		final List< Shape > sphere = StructuringElements.disk( 7, 3, 4 );
+		assertEquals( 1, sphere.size() );
+		assertTrue( sphere.get( 0 ) instanceof HyperSphereShape );
+	}
+}
@@ -0,0 +1,157 @@
+package net.imglib2.algorithm.morphology;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.algorithm.neighborhood.HyperSphereShape;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DistanceTransformTest
+{
+
+	private Img< BitType > img;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		img = ArrayImgs.bits( 21l, 17l, 9l );
+		final Random ran = new Random( 1l );
+		for ( final BitType pixel : img )
+		{
+			pixel.set( ran.nextDouble() > 0.01 );
+		}
+	}
+
+	@Test
+	public void testSquaredDistancesAgainstBruteForce()
+	{
+		final double[] weights = new double[] { 1., 2., 4. };
+		final Img< FloatType > distances = DistanceTransform.squaredDistancesFloat( img, false, 3, weights );
+
+		final Cursor< FloatType > cursor = distances.localizingCursor();
+		final long[] pos = new long[ 3 ];
+		final long[] other = new long[ 3 ];
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.localize( pos );
+			double best = Double.POSITIVE_INFINITY;
+			final Cursor< BitType > c = img.localizingCursor();
+			while ( c.hasNext() )
+			{
+				if ( c.next().get() )
+				{
+					continue;
+				}
+				c.localize( other );
+				double d2 = 0;
+				for ( int d = 0; d < 3; d++ )
+				{
+					final double dx = pos[ d ] - other[ d ];
+					d2 += weights[ d ] * dx * dx;
+				}
+				best = Math.min( best, d2 );
+			}
+			assertEquals( "Unexpected squared distance at " + pos[ 0 ] + ", " + pos[ 1 ] + ", " + pos[ 2 ], best, cursor.get().getRealDouble(), 1e-3 );
+		}
+	}
+
+	@Test
+	public void testLongOutputWithoutFeatures()
+	{
+		final Img< BitType > full = ArrayImgs.bits( 10l, 10l );
+		for ( final BitType pixel : full )
+		{
+			pixel.set( true );
+		}
+		final Img< LongType > distances = DistanceTransform.squaredDistancesLong( full, false, 1 );
+		for ( final LongType d : distances )
+		{
+			assertEquals( Long.MAX_VALUE, d.get() );
+		}
+
+		final RandomAccess< BitType > ra = full.randomAccess();
+		ra.setPosition( new int[] { 2, 3 } );
+		ra.get().set( false );
+		final Img< LongType > distances2 = DistanceTransform.squaredDistancesLong( full, false, 1 );
+		final RandomAccess< LongType > dra = distances2.randomAccess();
+		dra.setPosition( new int[] { 9, 9 } );
+		assertEquals( 7 * 7 + 6 * 6, dra.get().get() );
+	}
+
+	@Test
+	public void testDiskMorphologyMatchesHyperSphere()
+	{
+		final Img< BitType > source = ArrayImgs.bits( 60l, 50l );
+		final Random ran = new Random( 2l );
+		for ( final BitType pixel : source )
+		{
+			pixel.set( ran.nextDouble() > 0.3 );
+		}
+		final int radius = 4;
+		final HyperSphereShape shape = new HyperSphereShape( radius );
+
+		final Img< BitType > eroded = ArrayImgs.bits( 60l, 50l );
+		DistanceTransform.erodeDisk( source, eroded, radius, 2 );
+		assertImgEquals( Erosion.erode( source, shape, 1 ), eroded );
+
+		final Img< BitType > sparse = ArrayImgs.bits( 60l, 50l );
+		for ( final BitType pixel : sparse )
+		{
+			pixel.set( ran.nextDouble() > 0.99 );
+		}
+		final Img< BitType > dilated = ArrayImgs.bits( 60l, 50l );
+		DistanceTransform.dilateDisk( sparse, dilated, radius, 2 );
+		assertImgEquals( Dilation.dilate( sparse, shape, 1 ), dilated );
+	}
+
+	private static final void assertImgEquals( final Img< BitType > expected, final Img< BitType > actual )
+	{
+		final Cursor< BitType > ce = expected.localizingCursor();
+		final RandomAccess< BitType > ra = actual.randomAccess();
+		while ( ce.hasNext() )
+		{
+			ce.fwd();
+			ra.setPosition( ce );
+			assertEquals( "Mismatch at " + ce.getLongPosition( 0 ) + ", " + ce.getLongPosition( 1 ), ce.get().get(), ra.get().get() );
+		}
+	}
+
+	@Test
+	public void testThreadsAndService()
+	{
+		final Img< LongType > expected = DistanceTransform.squaredDistancesLong( img, false, 1 );
+		final Img< LongType > noThreads = DistanceTransform.squaredDistancesLong( img, false, 0 );
+		final ExecutorService service = Executors.newFixedThreadPool( 2 );
+		final Img< LongType > withService;
+		try
+		{
+			withService = DistanceTransform.squaredDistancesLong( img, false, service, 5 );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+		final Cursor< LongType > ce = expected.cursor();
+		final Cursor< LongType > c0 = noThreads.cursor();
+		final Cursor< LongType > cs = withService.cursor();
+		while ( ce.hasNext() )
+		{
+			final long e = ce.next().get();
+			assertEquals( e, c0.next().get() );
+			assertEquals( e, cs.next().get() );
+		}
+	}
+}
@@ -8,6 +8,7 @@ import java.util.Random;
 import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
+import net.imglib2.Localizable;
 import net.imglib2.RandomAccess;
 import net.imglib2.algorithm.neighborhood.DiamondShape;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
@@ -207,4 +208,57 @@ public class ErosionTest
 		}
 	}
 
+	@Test
+	public void testErodeInPlace()
+	{
+		// Large enough to be processed in several blocks.
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( 400l, 300l );
+		final Random ran = new Random( 2l );
+		for ( final UnsignedByteType pixel : img )
+		{
+			pixel.set( ran.nextInt( 256 ) );
+		}
+		final Img< UnsignedByteType > copy = img.copy();
+		final Interval largeInterval = FinalInterval.createMinSize( 5, 7, 380, 280 );
+
+		final Img< UnsignedByteType > expected = img.factory().create( largeInterval, img.firstElement().copy() );
+		final long[] min = new long[ largeInterval.numDimensions() ];
+		largeInterval.min( min );
+		Erosion.erode( Views.extendValue( img, new UnsignedByteType( 255 ) ), Views.translate( expected, min ), diamondShape, 1 );
+
+		Erosion.erodeInPlace( Views.extendValue( copy, new UnsignedByteType( 255 ) ), largeInterval, diamondShape, 2 );
+
+		final Cursor< UnsignedByteType > cursor = copy.localizingCursor();
+		final RandomAccess< UnsignedByteType > ra = Views.translate( expected, min ).randomAccess();
+		final RandomAccess< UnsignedByteType > raSource = img.randomAccess();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			if ( contains( largeInterval, cursor ) )
+			{
+				ra.setPosition( cursor );
+				assertEquals( "Mismatch between in place erosion and erosion to target at " + Util.printCoordinates( cursor ) + ".",
+						ra.get().get(), cursor.get().get() );
+			}
+			else
+			{
+				raSource.setPosition( cursor );
+				assertEquals( "Pixel outside of the processed interval was modified at " + Util.printCoordinates( cursor ) + ".",
+						raSource.get().get(), cursor.get().get() );
+			}
+		}
+	}
+
+	private static final boolean contains( final Interval interval, final Localizable position )
+	{
+		for ( int d = 0; d < interval.numDimensions(); d++ )
+		{
+			final long p = position.getLongPosition( d );
+			if ( p < interval.min( d ) || p > interval.max( d ) )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
 }
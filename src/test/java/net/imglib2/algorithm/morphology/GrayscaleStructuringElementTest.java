@@ -0,0 +1,107 @@
+package net.imglib2.algorithm.morphology;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GrayscaleStructuringElementTest
+{
+
+	private Img< FloatType > ranImg;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		ranImg = ArrayImgs.floats( 15l, 12l );
+		final Random ran = new Random( 1l );
+		for ( final FloatType pixel : ranImg )
+		{
+			pixel.set( 100f * ran.nextFloat() );
+		}
+	}
+
+	@Test
+	public void testSeparableMatchesTable()
+	{
+		final GrayscaleStructuringElement separable = GrayscaleStructuringElement.separable( new double[] { -2., -1., 0., -1., -2. }, new double[] { -0.5, 0., -3. } );
+		final GrayscaleStructuringElement table = GrayscaleStructuringElement.fromTable( separable.getOffsets(), separable.getWeights() );
+		assertEquals( 15, table.getOffsets().length );
+
+		assertImgEquals( Dilation.dilate( ranImg, table, 1 ), Dilation.dilate( ranImg, separable, 2 ) );
+		assertImgEquals( Erosion.erode( ranImg, table, 1 ), Erosion.erode( ranImg, separable, 2 ) );
+	}
+
+	@Test
+	public void testParaboloidMatchesTable()
+	{
+		final double c = 0.7;
+		final GrayscaleStructuringElement paraboloid = GrayscaleStructuringElement.paraboloid( c, 2 );
+
+		// Brute-force paraboloid, wide enough to cover the whole image.
+		final int r = 16;
+		final long[][] offsets = new long[ ( 2 * r + 1 ) * ( 2 * r + 1 ) ][];
+		final double[] weights = new double[ offsets.length ];
+		int i = 0;
+		for ( int y = -r; y <= r; y++ )
+		{
+			for ( int x = -r; x <= r; x++ )
+			{
+				offsets[ i ] = new long[] { x, y };
+				weights[ i ] = -c * ( x * x + y * y );
+				i++;
+			}
+		}
+		final GrayscaleStructuringElement table = GrayscaleStructuringElement.fromTable( offsets, weights );
+
+		assertImgEquals( Dilation.dilate( ranImg, table, 1 ), Dilation.dilate( ranImg, paraboloid, 2 ) );
+		assertImgEquals( Erosion.erode( ranImg, table, 1 ), Erosion.erode( ranImg, paraboloid, 2 ) );
+	}
+
+	@Test
+	public void testBallTopHat()
+	{
+		final GrayscaleStructuringElement ball = GrayscaleStructuringElement.ball( 3., 2 );
+		assertEquals( 29, ball.getOffsets().length );
+
+		// A constant image has no foreground.
+		final Img< FloatType > flat = ArrayImgs.floats( 20l, 20l );
+		for ( final FloatType pixel : flat )
+		{
+			pixel.set( 50f );
+		}
+		final Img< FloatType > topHat = TopHat.topHat( flat, ball, 2 );
+		for ( final FloatType pixel : topHat )
+		{
+			assertEquals( 0f, pixel.get(), 1e-4f );
+		}
+
+		// The top-hat is always positive and lower than the source.
+		final Img< FloatType > topHat2 = TopHat.topHat( ranImg, ball, 2 );
+		final Cursor< FloatType > c1 = ranImg.cursor();
+		final Cursor< FloatType > c2 = topHat2.cursor();
+		while ( c1.hasNext() )
+		{
+			final float s = c1.next().get();
+			final float t = c2.next().get();
+			assertEquals( true, t >= -1e-4f && t <= s + 1e-4f );
+		}
+	}
+
+	private static final void assertImgEquals( final Img< FloatType > expected, final Img< FloatType > actual )
+	{
+		final Cursor< FloatType > ce = expected.cursor();
+		final Cursor< FloatType > ca = actual.cursor();
+		while ( ce.hasNext() )
+		{
+			assertEquals( ce.next().get(), ca.next().get(), 1e-3f );
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package net.imglib2.algorithm.morphology;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.algorithm.neighborhood.DiamondShape;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReconstructionTest
+{
+
+	private Img< UnsignedByteType > ranImg;
+
+	private Shape shape;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		ranImg = ArrayImgs.unsignedBytes( 40l, 30l );
+		final Random ran = new Random( 1l );
+		for ( final UnsignedByteType pixel : ranImg )
+		{
+			pixel.set( ran.nextInt( 256 ) );
+		}
+		shape = new RectangleShape( 1, true );
+	}
+
+	@Test
+	public void testReconstructionByDilationMatchesIteratedDilation()
+	{
+		final Img< UnsignedByteType > marker = ranImg.copy();
+		for ( final UnsignedByteType pixel : marker )
+		{
+			pixel.set( Math.max( 0, pixel.get() - 60 ) );
+		}
+
+		final Img< UnsignedByteType > result = Reconstruction.reconstructionByDilation( marker, ranImg, shape );
+
+		// Naive geodesic dilation until stability.
+		Img< UnsignedByteType > expected = marker.copy();
+		boolean changed = true;
+		while ( changed )
+		{
+			final Img< UnsignedByteType > dilated = Dilation.dilate( expected, shape, 1 );
+			final Cursor< UnsignedByteType > dc = dilated.cursor();
+			final Cursor< UnsignedByteType > mc = ranImg.cursor();
+			while ( dc.hasNext() )
+			{
+				dc.fwd();
+				mc.fwd();
+				dc.get().set( Math.min( dc.get().get(), mc.get().get() ) );
+			}
+			changed = !equals( dilated, expected );
+			expected = dilated;
+		}
+
+		assertTrue( "Reconstruction by dilation does not match iterated geodesic dilations.", equals( result, expected ) );
+	}
+
+	@Test
+	public void testReconstructionByErosionMatchesIteratedErosion()
+	{
+		final Img< UnsignedByteType > marker = ranImg.copy();
+		for ( final UnsignedByteType pixel : marker )
+		{
+			pixel.set( Math.min( 255, pixel.get() + 60 ) );
+		}
+
+		final Shape diamond = new DiamondShape( 1 );
+		final Img< UnsignedByteType > result = Reconstruction.reconstructionByErosion( marker, ranImg, diamond );
+
+		Img< UnsignedByteType > expected = marker.copy();
+		boolean changed = true;
+		while ( changed )
+		{
+			final Img< UnsignedByteType > eroded = Erosion.erode( expected, diamond, 1 );
+			final Cursor< UnsignedByteType > ec = eroded.cursor();
+			final Cursor< UnsignedByteType > mc = ranImg.cursor();
+			while ( ec.hasNext() )
+			{
+				ec.fwd();
+				mc.fwd();
+				ec.get().set( Math.max( ec.get().get(), mc.get().get() ) );
+			}
+			changed = !equals( eroded, expected );
+			expected = eroded;
+		}
+
+		assertTrue( "Reconstruction by erosion does not match iterated geodesic erosions.", equals( result, expected ) );
+	}
+
+	@Test
+	public void testReconstructionSelectsComponent()
+	{
+		final Img< BitType > mask = ArrayImgs.bits( 20l, 20l );
+		final RandomAccess< BitType > ra = mask.randomAccess();
+		// Two separate squares.
+		for ( int x = 2; x < 6; x++ )
+		{
+			for ( int y = 2; y < 6; y++ )
+			{
+				ra.setPosition( new int[] { x, y } );
+				ra.get().set( true );
+				ra.setPosition( new int[] { x + 10, y + 10 } );
+				ra.get().set( true );
+			}
+		}
+
+		final Img< BitType > marker = ArrayImgs.bits( 20l, 20l );
+		final RandomAccess< BitType > mra = marker.randomAccess();
+		mra.setPosition( new int[] { 3, 4 } );
+		mra.get().set( true );
+
+		final Img< BitType > result = Reconstruction.reconstructionByDilation( marker, mask, shape );
+		final RandomAccess< BitType > rra = result.randomAccess();
+		for ( int x = 2; x < 6; x++ )
+		{
+			for ( int y = 2; y < 6; y++ )
+			{
+				rra.setPosition( new int[] { x, y } );
+				assertTrue( rra.get().get() );
+				rra.setPosition( new int[] { x + 10, y + 10 } );
+				assertFalse( rra.get().get() );
+			}
+		}
+	}
+
+	@Test
+	public void testFillHoles()
+	{
+		final Img< BitType > img = ArrayImgs.bits( 20l, 20l );
+		final RandomAccess< BitType > ra = img.randomAccess();
+		// A square ring, with a hole from (6,6) to (13,13).
+		for ( int x = 5; x < 15; x++ )
+		{
+			for ( int y = 5; y < 15; y++ )
+			{
+				if ( x == 5 || x == 14 || y == 5 || y == 14 )
+				{
+					ra.setPosition( new int[] { x, y } );
+					ra.get().set( true );
+				}
+			}
+		}
+
+		final Img< BitType > filled = Reconstruction.fillHoles( img, new DiamondShape( 1 ) );
+		final Cursor< BitType > cursor = filled.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			final int x = cursor.getIntPosition( 0 );
+			final int y = cursor.getIntPosition( 1 );
+			final boolean inside = x >= 5 && x < 15 && y >= 5 && y < 15;
+			assertEquals( "Unexpected value at " + x + ", " + y, inside, cursor.get().get() );
+		}
+	}
+
+	@Test
+	public void testHMaximaAndRegionalMaxima()
+	{
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( 30l, 10l );
+		final RandomAccess< UnsignedByteType > ra = img.randomAccess();
+		for ( final UnsignedByteType pixel : img )
+		{
+			pixel.set( 10 );
+		}
+		// A high peak and a low peak.
+		ra.setPosition( new int[] { 5, 5 } );
+		ra.get().set( 100 );
+		ra.setPosition( new int[] { 20, 5 } );
+		ra.get().set( 15 );
+
+		final Img< UnsignedByteType > hmax = Reconstruction.hMaxima( img, 20, shape );
+		final RandomAccess< UnsignedByteType > hra = hmax.randomAccess();
+		hra.setPosition( new int[] { 5, 5 } );
+		assertEquals( 80, hra.get().get() );
+		hra.setPosition( new int[] { 20, 5 } );
+		assertEquals( 10, hra.get().get() );
+
+		final Img< BitType > maxima = Reconstruction.regionalMaxima( img, shape );
+		long count = 0;
+		for ( final BitType b : maxima )
+		{
+			if ( b.get() )
+			{
+				count++;
+			}
+		}
+		assertEquals( 2, count );
+
+		final Img< BitType > extendedMaxima = Reconstruction.regionalMaxima( hmax, shape );
+		count = 0;
+		for ( final BitType b : extendedMaxima )
+		{
+			if ( b.get() )
+			{
+				count++;
+			}
+		}
+		assertEquals( 1, count );
+	}
+
+	private static final boolean equals( final Img< UnsignedByteType > a, final Img< UnsignedByteType > b )
+	{
+		final Cursor< UnsignedByteType > ca = a.cursor();
+		final Cursor< UnsignedByteType > cb = b.cursor();
+		while ( ca.hasNext() )
+		{
+			if ( ca.next().get() != cb.next().get() )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
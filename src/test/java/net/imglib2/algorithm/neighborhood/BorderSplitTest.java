@@ -0,0 +1,106 @@
+package net.imglib2.algorithm.neighborhood;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Point;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.iterator.LocalizingIntervalIterator;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class BorderSplitTest
+{
+
+	private final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( 20l, 15l, 6l );
+
+	@Test
+	public void testPartition()
+	{
+		final Interval target = new FinalInterval( new long[] { -3, 2, 0 }, new long[] { 21, 16, 4 } );
+		final Shape shape = new HyperSphereShape( 2 );
+		final BorderSplit< UnsignedByteType > split = new BorderSplit< UnsignedByteType >( Views.extendZero( img ), target, shape );
+
+		assertSame( img, split.getInteriorSource() );
+		final Interval interior = split.getInterior();
+		assertEquals( 2, interior.min( 0 ) );
+		assertEquals( 17, interior.max( 0 ) );
+		assertEquals( 2, interior.min( 1 ) );
+		assertEquals( 12, interior.max( 1 ) );
+		assertEquals( 2, interior.min( 2 ) );
+		assertEquals( 3, interior.max( 2 ) );
+
+		// Interior and border cover the target exactly once.
+		final List< Interval > parts = new ArrayList< Interval >( split.getBorder() );
+		parts.add( interior );
+		final LocalizingIntervalIterator it = new LocalizingIntervalIterator( target );
+		final Point p = new Point( 3 );
+		while ( it.hasNext() )
+		{
+			it.fwd();
+			p.setPosition( it );
+			int count = 0;
+			for ( final Interval part : parts )
+			{
+				if ( Intervals.contains( part, p ) )
+				{
+					count++;
+				}
+			}
+			assertEquals( 1, count );
+			assertEquals( Intervals.contains( interior, p ), split.isInterior( p ) );
+		}
+	}
+
+	@Test
+	public void testSpan()
+	{
+		final Shape[] shapes = new Shape[] { new HyperSphereShape( 3 ), new DiamondShape( 2 ), new RectangleShape( 2, true ), new PeriodicLineShape( 2, new int[] { 1, -2, 0 } ) };
+		for ( final Shape shape : shapes )
+		{
+			final Interval expected = OffsetTable.fromShape( shape, 3 ).getBoundingBox();
+			final Interval span = BorderSplit.span( shape, 3 );
+			for ( int d = 0; d < 3; d++ )
+			{
+				assertEquals( expected.min( d ), span.min( d ) );
+				assertEquals( expected.max( d ), span.max( d ) );
+			}
+		}
+
+		// Too large for a table, but the span is computed anyway.
+		final Interval span = BorderSplit.span( new RectangleShape( 1000, false ), 3 );
+		for ( int d = 0; d < 3; d++ )
+		{
+			assertEquals( -1000, span.min( d ) );
+			assertEquals( 1000, span.max( d ) );
+		}
+	}
+
+	@Test
+	public void testNoInterior()
+	{
+		final Interval target = new FinalInterval( new long[] { 0, 0, 0 }, new long[] { 19, 14, 5 } );
+		final BorderSplit< UnsignedByteType > split = new BorderSplit< UnsignedByteType >( Views.extendZero( img ), target, new RectangleShape( 3, false ) );
+		assertNull( split.getInterior() );
+		assertEquals( 1, split.getBorder().size() );
+	}
+
+	@Test
+	public void testNotExtended()
+	{
+		final BorderSplit< UnsignedByteType > split = new BorderSplit< UnsignedByteType >( img, img, new RectangleShape( 1, false ) );
+		assertSame( img, split.getInterior() );
+		assertTrue( split.getBorder().isEmpty() );
+	}
+}
@@ -0,0 +1,60 @@
+package net.imglib2.algorithm.neighborhood;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class EllipsoidShapeTest extends AbstractShapeTest
+{
+
+	private static final double[] RADII = new double[] { 3.5, 2, 1.2 };
+
+	@Override
+	protected Shape createShape()
+	{
+		return new EllipsoidShape( RADII );
+	}
+
+	@Override
+	protected boolean isInside( final long[] pos, final long[] center )
+	{
+		double sum = 0;
+		for ( int d = 0; d < pos.length; d++ )
+		{
+			final double x = ( pos[ d ] - center[ d ] ) / RADII[ d ];
+			sum += x * x;
+		}
+		return sum <= 1;
+	}
+
+	@Test
+	public void testEqualRadiiMatchHyperSphere()
+	{
+		for ( int radius = 0; radius < 6; radius++ )
+		{
+			final OffsetTable expected = OffsetTable.hyperSphere( radius, 3 );
+			final OffsetTable actual = new EllipsoidShape( radius, radius, radius ).getOffsetTable( 3 );
+			assertEquals( expected.size(), actual.size() );
+			final long[] o1 = new long[ 3 ];
+			final long[] o2 = new long[ 3 ];
+			for ( int i = 0; i < expected.size(); i++ )
+			{
+				expected.getOffset( i, o1 );
+				actual.getOffset( i, o2 );
+				assertArrayEquals( o1, o2 );
+			}
+		}
+	}
+
+	@Test
+	public void testFromCalibration()
+	{
+		final EllipsoidShape shape = EllipsoidShape.fromCalibration( 1., new double[] { 0.1, 0.1, 0.5 } );
+		assertArrayEquals( new double[] { 10, 10, 2 }, shape.getRadii(), 1e-9 );
+		final OffsetTable table = shape.getOffsetTable( 3 );
+		assertEquals( -2, table.getBoundingBox().min( 2 ) );
+		assertEquals( 2, table.getBoundingBox().max( 2 ) );
+		assertEquals( 10, table.getBoundingBox().max( 0 ) );
+	}
+}
@@ -0,0 +1,104 @@
+package net.imglib2.algorithm.neighborhood;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class MaskShapeTest extends AbstractShapeTest
+{
+
+	@Override
+	protected Shape createShape()
+	{
+		// An annulus, between radii 2 and 3.
+		final Img< BitType > mask = ArrayImgs.bits( 7, 7, 7 );
+		final Cursor< BitType > cursor = mask.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			final long[] pos = new long[ 3 ];
+			cursor.localize( pos );
+			cursor.get().set( isInAnnulus( pos, new long[] { 3, 3, 3 } ) );
+		}
+		return new MaskShape( mask );
+	}
+
+	@Override
+	protected boolean isInside( final long[] pos, final long[] center )
+	{
+		return isInAnnulus( pos, center );
+	}
+
+	private static boolean isInAnnulus( final long[] pos, final long[] center )
+	{
+		long r2 = 0;
+		for ( int d = 0; d < pos.length; d++ )
+		{
+			r2 += ( pos[ d ] - center[ d ] ) * ( pos[ d ] - center[ d ] );
+		}
+		return r2 >= 4 && r2 <= 9;
+	}
+
+	@Test
+	public void testDenseMaskMatchesRectangle()
+	{
+		final Img< BitType > mask = ArrayImgs.bits( 5, 5, 5 );
+		for ( final BitType b : mask )
+		{
+			b.set( true );
+		}
+		final MaskShape maskShape = new MaskShape( mask );
+		assertEquals( 25, maskShape.getTable().numRuns() );
+		assertEquals( 125, maskShape.getTable().numElements() );
+
+		int i = 0;
+		for ( final UnsignedShortType pixel : img )
+		{
+			pixel.set( i++ );
+		}
+		final Cursor< Neighborhood< UnsignedShortType >> c1 = maskShape.neighborhoods( Views.interval( Views.extendMirrorSingle( img ), img ) ).cursor();
+		final Cursor< Neighborhood< UnsignedShortType >> c2 = new RectangleShape( 2, false ).neighborhoods( Views.interval( Views.extendMirrorSingle( img ), img ) ).cursor();
+		while ( c1.hasNext() )
+		{
+			final Cursor< UnsignedShortType > nc1 = c1.next().localizingCursor();
+			final Cursor< UnsignedShortType > nc2 = c2.next().localizingCursor();
+			assertEquals( nc2.hasNext(), nc1.hasNext() );
+			while ( nc1.hasNext() )
+			{
+				assertEquals( nc2.next().get(), nc1.next().get() );
+				for ( int d = 0; d < 3; d++ )
+				{
+					assertEquals( nc2.getLongPosition( d ), nc1.getLongPosition( d ) );
+				}
+			}
+			assertEquals( false, nc2.hasNext() );
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testDimensionalityMismatch()
+	{
+		final MaskShape maskShape = new MaskShape( ArrayImgs.bits( 3, 3 ) );
+		maskShape.neighborhoodsRandomAccessible( img );
+	}
+
+	@Test
+	public void testEmptyMask()
+	{
+		final MaskShape maskShape = new MaskShape( ArrayImgs.bits( 3, 3, 3 ) );
+		assertEquals( 3, maskShape.getTable().numDimensions() );
+		assertEquals( 0, maskShape.getTable().numElements() );
+		assertEquals( 3, maskShape.getTable().getBoundingBox().numDimensions() );
+		final Neighborhood< UnsignedShortType > neighborhood = maskShape.neighborhoodsRandomAccessible( img ).randomAccess().get();
+		assertEquals( 0, neighborhood.size() );
+		assertFalse( neighborhood.cursor().hasNext() );
+	}
+}
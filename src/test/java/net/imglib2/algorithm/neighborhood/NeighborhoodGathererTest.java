@@ -0,0 +1,162 @@
+package net.imglib2.algorithm.neighborhood;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.Point;
+import net.imglib2.RandomAccessible;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class NeighborhoodGathererTest
+{
+
+	private static final long[] DIMS = new long[] { 13, 11, 7 };
+
+	@Test
+	public void testDirectUnsignedBytes()
+	{
+		final Img< UnsignedByteType > img = fill( ArrayImgs.unsignedBytes( DIMS ) );
+		assertGathered( img, new HyperSphereShape( 2 ), true );
+	}
+
+	@Test
+	public void testDirectSignedShorts()
+	{
+		final Img< ShortType > img = fill( ArrayImgs.shorts( DIMS ) );
+		assertGathered( img, new RectangleShape( 1, true ), true );
+	}
+
+	@Test
+	public void testDirectFloats()
+	{
+		final Img< FloatType > img = fill( ArrayImgs.floats( DIMS ) );
+		assertGathered( img, new DiamondShape( 2 ), true );
+	}
+
+	@Test
+	public void testCellImg()
+	{
+		final Img< UnsignedByteType > img = fill( new CellImgFactory< UnsignedByteType >( 5 ).create( DIMS, new UnsignedByteType() ) );
+		assertGathered( img, new HyperSphereShape( 2 ), false );
+	}
+
+	@Test
+	public void testMedian()
+	{
+		final Random ran = new Random( 1l );
+		for ( int size = 1; size < 40; size++ )
+		{
+			final double[] values = new double[ size + 3 ];
+			final int[] ints = new int[ size ];
+			for ( int i = 0; i < size; i++ )
+			{
+				ints[ i ] = ran.nextInt( 10 );
+				values[ i ] = ints[ i ];
+			}
+			final double[] sorted = Arrays.copyOf( values, size );
+			Arrays.sort( sorted );
+			final double expected = ( size % 2 == 1 ) ? sorted[ size / 2 ] : 0.5 * ( sorted[ size / 2 - 1 ] + sorted[ size / 2 ] );
+			assertEquals( expected, BufferReducers.median( values, size ), 0 );
+			assertEquals( expected, BufferReducers.median( ints, size ), 0 );
+		}
+	}
+
+	/**
+	 * Compares the gathered values with the values of the neighborhoods of the
+	 * offset table shape, which iterate the same table, everywhere in the
+	 * image, including close to its border.
+	 */
+	private static < T extends RealType< T > > void assertGathered( final Img< T > img, final Shape shape, final boolean direct )
+	{
+		final OffsetTable table = OffsetTable.forShape( shape, img.numDimensions() );
+		final RandomAccessible< T > source = Views.extendMirrorSingle( img );
+
+		// On the image itself, the border is not readable: only check the
+		// interior.
+		final NeighborhoodGatherer< T > onImg = new NeighborhoodGatherer< T >( img, table );
+		final NeighborhoodGatherer< T > onExtended = new NeighborhoodGatherer< T >( source, table );
+		if ( direct )
+		{
+			assertTrue( onImg.isDirect() );
+		}
+		else
+		{
+			assertFalse( onImg.isDirect() );
+		}
+		assertFalse( onExtended.isDirect() );
+
+		final double[] values = new double[ table.size() ];
+		final float[] floats = new float[ table.size() ];
+		final int[] ints = new int[ table.size() ];
+		final Cursor< Neighborhood< T > > nc = new OffsetTableShape( table ).neighborhoods( Views.interval( source, img ) ).localizingCursor();
+		final Point center = new Point( img.numDimensions() );
+		while ( nc.hasNext() )
+		{
+			final Neighborhood< T > neighborhood = nc.next();
+			center.setPosition( nc );
+			final boolean interior = isInterior( center, table, img );
+			assertEquals( table.size(), onExtended.gather( center, values ) );
+			assertNeighborhood( neighborhood, values );
+			if ( interior )
+			{
+				onImg.gather( center, values );
+				onImg.gather( center, floats );
+				onImg.gather( center, ints );
+				int i = 0;
+				for ( final T t : neighborhood )
+				{
+					assertEquals( t.getRealDouble(), values[ i ], 0 );
+					assertEquals( t.getRealFloat(), floats[ i ], 0 );
+					assertEquals( ( int ) t.getRealDouble(), ints[ i ] );
+					i++;
+				}
+			}
+		}
+	}
+
+	private static < T extends RealType< T > > void assertNeighborhood( final Neighborhood< T > neighborhood, final double[] values )
+	{
+		int i = 0;
+		for ( final T t : neighborhood )
+		{
+			assertEquals( t.getRealDouble(), values[ i++ ], 0 );
+		}
+	}
+
+	private static boolean isInterior( final Point center, final OffsetTable table, final Img< ? > img )
+	{
+		for ( int d = 0; d < img.numDimensions(); d++ )
+		{
+			final long p = center.getLongPosition( d );
+			if ( p + table.getBoundingBox().min( d ) < 0 || p + table.getBoundingBox().max( d ) >= img.dimension( d ) )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static < T extends RealType< T > > Img< T > fill( final Img< T > img )
+	{
+		final Random ran = new Random( 1l );
+		for ( final T t : img )
+		{
+			t.setReal( ran.nextInt( 200 ) - ( t.getMinValue() < 0 ? 100 : 0 ) );
+		}
+		return img;
+	}
+}
@@ -0,0 +1,214 @@
+package net.imglib2.algorithm.neighborhood;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class OffsetTableShapeTest extends AbstractShapeTest
+{
+
+	private static final long[][] OFFSETS = new long[][] {
+			{ 0, 0, 0 },
+			{ 2, 0, 0 },
+			{ -1, 1, 0 },
+			{ 0, -2, 1 },
+			{ 1, 1, -3 } };
+
+	@Override
+	protected Shape createShape()
+	{
+		return new OffsetTableShape( new OffsetTable( OFFSETS ) );
+	}
+
+	@Override
+	protected boolean isInside( final long[] pos, final long[] center )
+	{
+		for ( final long[] offset : OFFSETS )
+		{
+			boolean equal = true;
+			for ( int d = 0; d < pos.length; d++ )
+			{
+				if ( pos[ d ] != center[ d ] + offset[ d ] )
+				{
+					equal = false;
+					break;
+				}
+			}
+			if ( equal )
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void testHyperSphereAndDiamondTables()
+	{
+		for ( int radius = 0; radius < 5; radius++ )
+		{
+			final OffsetTable sphere = OffsetTable.hyperSphere( radius, 3 );
+			final OffsetTable diamond = OffsetTable.diamond( radius, 3 );
+			int iSphere = 0;
+			int iDiamond = 0;
+			// Brute force, in flat iteration order.
+			for ( int z = -radius; z <= radius; z++ )
+			{
+				for ( int y = -radius; y <= radius; y++ )
+				{
+					for ( int x = -radius; x <= radius; x++ )
+					{
+						if ( x * x + y * y + z * z <= radius * radius )
+						{
+							assertOffset( sphere, iSphere++, x, y, z );
+						}
+						if ( Math.abs( x ) + Math.abs( y ) + Math.abs( z ) <= radius )
+						{
+							assertOffset( diamond, iDiamond++, x, y, z );
+						}
+					}
+				}
+			}
+			assertEquals( iSphere, sphere.size() );
+			assertEquals( iDiamond, diamond.size() );
+		}
+		assertSame( OffsetTable.hyperSphere( 3, 2 ), OffsetTable.hyperSphere( 3, 2 ) );
+	}
+
+	@Test
+	public void testArrayAndGenericAccessAgree()
+	{
+		final Random ran = new Random( 1l );
+		for ( final UnsignedShortType pixel : img )
+		{
+			pixel.set( ran.nextInt( 1000 ) );
+		}
+
+		// The view hides the array random access, and forces the generic path.
+		final RandomAccessibleInterval< UnsignedShortType > view = Views.interval( Views.extendZero( img ), img );
+		final Shape sphere = new HyperSphereShape( 2 );
+		final Cursor< Neighborhood< UnsignedShortType >> c1 = sphere.neighborhoods( Views.interval( img, Intervals.expand( img, -2 ) ) ).cursor();
+		final RandomAccess< Neighborhood< UnsignedShortType >> ra2 = sphere.neighborhoodsRandomAccessible( view ).randomAccess();
+		while ( c1.hasNext() )
+		{
+			final Neighborhood< UnsignedShortType > n1 = c1.next();
+			ra2.setPosition( c1 );
+			final Neighborhood< UnsignedShortType > n2 = ra2.get();
+			final Cursor< UnsignedShortType > nc1 = n1.localizingCursor();
+			final Cursor< UnsignedShortType > nc2 = n2.localizingCursor();
+			while ( nc1.hasNext() )
+			{
+				nc1.fwd();
+				nc2.fwd();
+				for ( int d = 0; d < nc1.numDimensions(); d++ )
+				{
+					assertEquals( nc2.getLongPosition( d ), nc1.getLongPosition( d ) );
+				}
+				assertEquals( nc2.get().get(), nc1.get().get() );
+			}
+		}
+	}
+
+	@Test
+	public void testRecenteredCursor()
+	{
+		final Random ran = new Random( 2l );
+		for ( final UnsignedShortType pixel : img )
+		{
+			pixel.set( ran.nextInt( 1000 ) );
+		}
+
+		final Shape diamond = new DiamondShape( 2 );
+		final OffsetTableCursor< UnsignedShortType > oc = new OffsetTableCursor< UnsignedShortType >( OffsetTable.diamond( 2, img.numDimensions() ), Views.extendZero( img ).randomAccess() );
+		final Cursor< Neighborhood< UnsignedShortType >> c = diamond.neighborhoodsSafe( Views.interval( Views.extendZero( img ), img ) ).cursor();
+		while ( c.hasNext() )
+		{
+			final Neighborhood< UnsignedShortType > neighborhood = c.next();
+			oc.setCenter( c );
+			final Cursor< UnsignedShortType > nc = neighborhood.localizingCursor();
+			while ( nc.hasNext() )
+			{
+				assertEquals( nc.next().get(), oc.next().get() );
+				for ( int d = 0; d < nc.numDimensions(); d++ )
+				{
+					assertEquals( nc.getLongPosition( d ), oc.getLongPosition( d ) );
+				}
+			}
+			assertEquals( false, oc.hasNext() );
+		}
+	}
+
+	@Test
+	public void testLargeShapesWithoutTable()
+	{
+		// Just above the size threshold: the neighborhoods iterate spans.
+		final int radius = 128;
+		assertEquals( false, OffsetTable.fitsInTable( radius, 2 ) );
+		final RandomAccessibleInterval< UnsignedShortType > source = Views.interval( Views.extendZero( ArrayImgs.unsignedShorts( 1, 1 ) ), new long[] { 0, 0 }, new long[] { 0, 0 } );
+		final Cursor< UnsignedShortType > sphere = new HyperSphereShape( radius ).neighborhoods( source ).firstElement().localizingCursor();
+		final Cursor< UnsignedShortType > diamond = new DiamondShape( radius ).neighborhoods( source ).firstElement().localizingCursor();
+		// Brute force, in flat iteration order.
+		for ( int y = -radius; y <= radius; y++ )
+		{
+			for ( int x = -radius; x <= radius; x++ )
+			{
+				if ( x * x + y * y <= radius * radius )
+				{
+					sphere.fwd();
+					assertEquals( x, sphere.getLongPosition( 0 ) );
+					assertEquals( y, sphere.getLongPosition( 1 ) );
+				}
+				if ( Math.abs( x ) + Math.abs( y ) <= radius )
+				{
+					diamond.fwd();
+					assertEquals( x, diamond.getLongPosition( 0 ) );
+					assertEquals( y, diamond.getLongPosition( 1 ) );
+				}
+			}
+		}
+		assertFalse( sphere.hasNext() );
+		assertFalse( diamond.hasNext() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testTooLargeForTable()
+	{
+		new RectangleShape( 100, false ).getOffsetTable( 3 );
+	}
+
+	@Test
+	public void testSparseTableIncrements()
+	{
+		// The bounding box of this table has more elements than an int holds.
+		final long far = 1l << 20;
+		final OffsetTable table = new OffsetTable( new long[][] { { 0, 0, 0 }, { 1, 0, 0 }, { far, far, far } } );
+		final OffsetTable entering = table.entering( 0 );
+		assertEquals( 2, entering.size() );
+		assertOffset( entering, 0, 1, 0, 0 );
+		assertOffset( entering, 1, far, far, far );
+		final OffsetTable leaving = table.leaving( 0 );
+		assertEquals( 2, leaving.size() );
+		assertOffset( leaving, 0, -1, 0, 0 );
+		assertOffset( leaving, 1, far - 1, far, far );
+	}
+
+	private static void assertOffset( final OffsetTable table, final int i, final long... expected )
+	{
+		for ( int d = 0; d < expected.length; d++ )
+		{
+			assertEquals( expected[ d ], table.getOffset( i, d ) );
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package net.imglib2.algorithm.neighborhood;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class ParallelNeighborhoodsTest
+{
+
+	private static final long[] DIMS = new long[] { 17, 13, 7 };
+
+	@Test
+	public void testForEach()
+	{
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( DIMS );
+		final Random ran = new Random( 1l );
+		for ( final UnsignedByteType pixel : img )
+		{
+			pixel.set( ran.nextInt( 256 ) );
+		}
+		final Shape shape = new HyperSphereShape( 2 );
+
+		long expected = 0;
+		for ( final Neighborhood< UnsignedByteType > neighborhood : shape.neighborhoods( Views.interval( Views.extendZero( img ), img ) ) )
+		{
+			for ( final UnsignedByteType t : neighborhood )
+			{
+				expected += t.get();
+			}
+		}
+
+		final AtomicIntegerArray visits = new AtomicIntegerArray( ( int ) Intervals.numElements( img ) );
+		final List< NeighborhoodVisitor< UnsignedByteType > > visitors = ParallelNeighborhoods.forEach( shape.neighborhoods( Views.interval( Views.extendZero( img ), img ) ), new SumVisitor( visits ), 4 );
+		assertVisitedOnce( expected, visitors, visits );
+
+		// More tasks than threads in a shared pool.
+		final AtomicIntegerArray serviceVisits = new AtomicIntegerArray( ( int ) Intervals.numElements( img ) );
+		final ExecutorService service = Executors.newFixedThreadPool( 2 );
+		final List< NeighborhoodVisitor< UnsignedByteType > > serviceVisitors = ParallelNeighborhoods.forEach( shape.neighborhoods( Views.interval( Views.extendZero( img ), img ) ), new SumVisitor( serviceVisits ), service, 6 );
+		service.shutdown();
+		assertEquals( 6, serviceVisitors.size() );
+		assertVisitedOnce( expected, serviceVisitors, serviceVisits );
+	}
+
+	private static void assertVisitedOnce( final long expected, final List< NeighborhoodVisitor< UnsignedByteType > > visitors, final AtomicIntegerArray visits )
+	{
+		long sum = 0;
+		for ( final NeighborhoodVisitor< UnsignedByteType > visitor : visitors )
+		{
+			sum += ( ( SumVisitor ) visitor ).sum;
+		}
+		assertEquals( expected, sum );
+		for ( int i = 0; i < visits.length(); i++ )
+		{
+			assertEquals( 1, visits.get( i ) );
+		}
+	}
+
+	@Test
+	public void testDivideIntoLines()
+	{
+		final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( DIMS );
+		final long[][] chunks = ParallelNeighborhoods.divideIntoLines( img, 10 );
+		assertEquals( 10, chunks.length );
+		long start = 0;
+		for ( final long[] chunk : chunks )
+		{
+			assertEquals( start, chunk[ 0 ] );
+			assertEquals( 0, chunk[ 1 ] % DIMS[ 0 ] );
+			start += chunk[ 1 ];
+		}
+		assertEquals( img.size(), start );
+	}
+
+	private static final class SumVisitor implements NeighborhoodVisitor< UnsignedByteType >
+	{
+		private final AtomicIntegerArray visits;
+
+		private long sum;
+
+		public SumVisitor( final AtomicIntegerArray visits )
+		{
+			this.visits = visits;
+		}
+
+		@Override
+		public void visit( final Neighborhood< UnsignedByteType > neighborhood )
+		{
+			final int index = ( int ) ( neighborhood.getLongPosition( 0 ) + DIMS[ 0 ] * ( neighborhood.getLongPosition( 1 ) + DIMS[ 1 ] * neighborhood.getLongPosition( 2 ) ) );
+			visits.incrementAndGet( index );
+			for ( final UnsignedByteType t : neighborhood )
+			{
+				sum += t.get();
+			}
+		}
+
+		@Override
+		public SumVisitor copy()
+		{
+			return new SumVisitor( visits );
+		}
+	}
+}
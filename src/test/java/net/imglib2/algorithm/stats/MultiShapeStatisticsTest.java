@@ -0,0 +1,188 @@
+package net.imglib2.algorithm.stats;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessible;
+import net.imglib2.algorithm.neighborhood.HorizontalLineShape;
+import net.imglib2.algorithm.neighborhood.HyperSphereShape;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.algorithm.neighborhood.Shape;
+import net.imglib2.algorithm.stats.MultiShapeStatistics.Statistic;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.view.Views;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MultiShapeStatisticsTest
+{
+
+	private Img< UnsignedByteType > img;
+
+	private RandomAccessible< UnsignedByteType > source;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		img = ArrayImgs.unsignedBytes( 19l, 13l, 4l );
+		final Random ran = new Random( 1l );
+		for ( final UnsignedByteType pixel : img )
+		{
+			pixel.set( ran.nextInt( 256 ) );
+		}
+		source = Views.extendMirrorSingle( img );
+	}
+
+	@Test
+	public void testNestedAndUnrelatedShapes()
+	{
+		// Nested concentric shapes, plus one that overlaps them partially.
+		final Shape[] shapes = new Shape[] {
+				new RectangleShape( 1, false ),
+				new RectangleShape( 3, false ),
+				new HyperSphereShape( 2 ),
+				new HorizontalLineShape( 4, 1, false ) };
+		final Statistic[] statistics = Statistic.values();
+
+		for ( final int numThreads : new int[] { 1, 3 } )
+		{
+			final MultiShapeStatistics< UnsignedByteType > multi = new MultiShapeStatistics< UnsignedByteType >( source, img );
+			final Img< DoubleType >[][] targets = createTargets( shapes.length, statistics.length );
+			for ( int s = 0; s < shapes.length; s++ )
+			{
+				for ( int k = 0; k < statistics.length; k++ )
+				{
+					multi.add( shapes[ s ], statistics[ k ], targets[ s ][ k ] );
+				}
+			}
+			multi.process( numThreads );
+
+			for ( int s = 0; s < shapes.length; s++ )
+			{
+				assertAgainstBruteForce( shapes[ s ], statistics, targets[ s ] );
+			}
+		}
+	}
+
+	@Test
+	public void testVarianceWithLargeMean()
+	{
+		final Img< DoubleType > offset = ArrayImgs.doubles( 19l, 13l, 4l );
+		final Random ran = new Random( 2l );
+		for ( final DoubleType pixel : offset )
+		{
+			pixel.set( 1e9 + ran.nextDouble() );
+		}
+		final RandomAccessible< DoubleType > offsetSource = Views.extendMirrorSingle( offset );
+		final Shape shape = new RectangleShape( 2, false );
+		final Img< DoubleType > variance = ArrayImgs.doubles( 19l, 13l, 4l );
+		final MultiShapeStatistics< DoubleType > multi = new MultiShapeStatistics< DoubleType >( offsetSource, offset );
+		multi.add( shape, Statistic.VARIANCE, variance );
+		multi.process( 1 );
+
+		final Cursor< Neighborhood< DoubleType >> nc = shape.neighborhoods( Views.interval( offsetSource, offset ) ).cursor();
+		final Cursor< DoubleType > vc = variance.cursor();
+		while ( nc.hasNext() )
+		{
+			final Neighborhood< DoubleType > neighborhood = nc.next();
+			double mean = 0;
+			for ( final DoubleType t : neighborhood )
+			{
+				mean += t.get();
+			}
+			mean /= neighborhood.size();
+			double expected = 0;
+			for ( final DoubleType t : neighborhood )
+			{
+				expected += ( t.get() - mean ) * ( t.get() - mean );
+			}
+			expected /= neighborhood.size();
+			assertEquals( expected, vc.next().get(), 1e-6 );
+		}
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private Img< DoubleType >[][] createTargets( final int nShapes, final int nStatistics )
+	{
+		final Img< DoubleType >[][] targets = new Img[ nShapes ][ nStatistics ];
+		for ( int s = 0; s < nShapes; s++ )
+		{
+			for ( int k = 0; k < nStatistics; k++ )
+			{
+				targets[ s ][ k ] = ArrayImgs.doubles( 19l, 13l, 4l );
+			}
+		}
+		return targets;
+	}
+
+	private void assertAgainstBruteForce( final Shape shape, final Statistic[] statistics, final Img< DoubleType >[] targets )
+	{
+		final Cursor< Neighborhood< UnsignedByteType >> nc = shape.neighborhoods( Views.interval( source, img ) ).cursor();
+		final Cursor< DoubleType >[] cursors = cursors( targets );
+		while ( nc.hasNext() )
+		{
+			double s = 0;
+			double s2 = 0;
+			double mn = Double.POSITIVE_INFINITY;
+			double mx = Double.NEGATIVE_INFINITY;
+			for ( final UnsignedByteType t : nc.next() )
+			{
+				final double v = t.getRealDouble();
+				s += v;
+				s2 += v * v;
+				mn = Math.min( mn, v );
+				mx = Math.max( mx, v );
+			}
+			final double size = nc.get().size();
+			final double mean = s / size;
+			for ( int k = 0; k < statistics.length; k++ )
+			{
+				final double expected;
+				switch ( statistics[ k ] )
+				{
+				case COUNT:
+					expected = size;
+					break;
+				case SUM:
+					expected = s;
+					break;
+				case SUM_OF_SQUARES:
+					expected = s2;
+					break;
+				case MEAN:
+					expected = mean;
+					break;
+				case VARIANCE:
+					expected = s2 / size - mean * mean;
+					break;
+				case MIN:
+					expected = mn;
+					break;
+				case MAX:
+				default:
+					expected = mx;
+					break;
+				}
+				assertEquals( shape + ", " + statistics[ k ], expected, cursors[ k ].next().get(), 1e-6 );
+			}
+		}
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static Cursor< DoubleType >[] cursors( final Img< DoubleType >[] targets )
+	{
+		final Cursor< DoubleType >[] cursors = new Cursor[ targets.length ];
+		for ( int k = 0; k < targets.length; k++ )
+		{
+			cursors[ k ] = targets[ k ].cursor();
+		}
+		return cursors;
+	}
+}
@@ -0,0 +1,144 @@
+package net.imglib2.algorithm.stats;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessible;
+import net.imglib2.algorithm.neighborhood.DiamondShape;
+import net.imglib2.algorithm.neighborhood.HorizontalLineShape;
+import net.imglib2.algorithm.neighborhood.HyperSphereShape;
+import net.imglib2.algorithm.neighborhood.IncrementalShape;
+import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.algorithm.neighborhood.OffsetTable;
+import net.imglib2.algorithm.neighborhood.RectangleShape;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.view.Views;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SlidingWindowStatisticsTest
+{
+
+	private Img< UnsignedByteType > img;
+
+	private RandomAccessible< UnsignedByteType > source;
+
+	private IncrementalShape[] shapes;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		img = ArrayImgs.unsignedBytes( 23l, 17l, 5l );
+		final Random ran = new Random( 1l );
+		for ( final UnsignedByteType pixel : img )
+		{
+			pixel.set( ran.nextInt( 256 ) );
+		}
+		source = Views.extendMirrorSingle( img );
+		shapes = new IncrementalShape[] {
+				new RectangleShape( 2, false ),
+				new RectangleShape( 1, true ),
+				new HyperSphereShape( 3 ),
+				new DiamondShape( 2 ),
+				new HorizontalLineShape( 4, 0, false ),
+				new HorizontalLineShape( 2, 1, true ) };
+	}
+
+	@Test
+	public void testEnteringAndLeavingOffsets()
+	{
+		for ( final IncrementalShape shape : shapes )
+		{
+			for ( int d = 0; d < 3; d++ )
+			{
+				final OffsetTable table = shape.getOffsetTable( 3 );
+				final OffsetTable entering = shape.getEnteringOffsets( d, 3 );
+				final OffsetTable leaving = shape.getLeavingOffsets( d, 3 );
+				assertEquals( shape.toString(), entering.size(), leaving.size() );
+				for ( int i = 0; i < entering.size(); i++ )
+				{
+					// Entering offsets are in the shape, and were not before the move.
+					final long[] o = new long[ 3 ];
+					entering.getOffset( i, o );
+					assertEquals( true, contains( table, o ) );
+					o[ d ] += 1;
+					assertEquals( false, contains( table, o ) );
+				}
+				for ( int i = 0; i < leaving.size(); i++ )
+				{
+					final long[] o = new long[ 3 ];
+					leaving.getOffset( i, o );
+					assertEquals( false, contains( table, o ) );
+					o[ d ] += 1;
+					assertEquals( true, contains( table, o ) );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testAgainstBruteForce()
+	{
+		final Img< DoubleType > sum = ArrayImgs.doubles( 23l, 17l, 5l );
+		final Img< DoubleType > variance = ArrayImgs.doubles( 23l, 17l, 5l );
+		final Img< DoubleType > min = ArrayImgs.doubles( 23l, 17l, 5l );
+		final Img< DoubleType > max = ArrayImgs.doubles( 23l, 17l, 5l );
+		for ( final IncrementalShape shape : shapes )
+		{
+			SlidingWindowStatistics.sum( source, shape, sum );
+			SlidingWindowStatistics.variance( source, shape, variance );
+			SlidingWindowStatistics.min( source, shape, min );
+			SlidingWindowStatistics.max( source, shape, max );
+
+			final Cursor< Neighborhood< UnsignedByteType >> nc = shape.neighborhoods( Views.interval( source, img ) ).cursor();
+			final Cursor< DoubleType > cSum = sum.cursor();
+			final Cursor< DoubleType > cVariance = variance.cursor();
+			final Cursor< DoubleType > cMin = min.cursor();
+			final Cursor< DoubleType > cMax = max.cursor();
+			while ( nc.hasNext() )
+			{
+				double s = 0;
+				double s2 = 0;
+				double mn = Double.POSITIVE_INFINITY;
+				double mx = Double.NEGATIVE_INFINITY;
+				for ( final UnsignedByteType t : nc.next() )
+				{
+					final double v = t.getRealDouble();
+					s += v;
+					s2 += v * v;
+					mn = Math.min( mn, v );
+					mx = Math.max( mx, v );
+				}
+				final double size = nc.get().size();
+				final double mean = s / size;
+				assertEquals( shape.toString(), s, cSum.next().get(), 1e-6 );
+				assertEquals( shape.toString(), s2 / size - mean * mean, cVariance.next().get(), 1e-6 );
+				assertEquals( shape.toString(), mn, cMin.next().get(), 0 );
+				assertEquals( shape.toString(), mx, cMax.next().get(), 0 );
+			}
+		}
+	}
+
+	private static boolean contains( final OffsetTable table, final long[] offset )
+	{
+		for ( int i = 0; i < table.size(); i++ )
+		{
+			boolean equal = true;
+			for ( int d = 0; d < offset.length; d++ )
+			{
+				equal = equal && table.getOffset( i, d ) == offset[ d ];
+			}
+			if ( equal )
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,53 @@
+package net.imglib2.algorithm.util;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class FuturesTest
+{
+
+	@Test
+	public void testFailureIsRethrown()
+	{
+		final IllegalStateException failure = new IllegalStateException();
+		final ExecutorService service = Executors.newFixedThreadPool( 2 );
+		final List< Future< ? > > futures = new ArrayList< Future< ? > >();
+		futures.add( service.submit( new Runnable()
+		{
+			@Override
+			public void run()
+			{}
+		} ) );
+		futures.add( service.submit( new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				throw failure;
+			}
+		} ) );
+		try
+		{
+			Futures.getAll( futures );
+			fail( "The failure of a task must be rethrown." );
+		}
+		catch ( final RuntimeException e )
+		{
+			assertSame( failure, e.getCause() );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+		assertTrue( futures.isEmpty() );
+	}
+}
@@ -35,13 +35,19 @@
 package tests.labeling;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.labeling.AllConnectedComponents;
 import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.array.ArrayImgFactory;
@@ -49,6 +55,7 @@ import net.imglib2.labeling.LabelingType;
 import net.imglib2.labeling.NativeImgLabeling;
 import net.imglib2.type.logic.BitType;
 import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.view.Views;
 
 import org.junit.Test;
 
@@ -204,4 +211,97 @@ public class AllConnectedComponentsTest
 		test2D( input, expected, strel, 1, 0 );
 
 	}
+
+	@Test
+	public void testParallelScan()
+	{
+		/*
+		 * The parallel scan must give the same names to the same pixels as the
+		 * flood fill.
+		 */
+		final long[] dimensions = new long[] { 97, 61 };
+		final ArrayImg< BitType, ? > image = new ArrayImgFactory< BitType >().create( dimensions, new BitType() );
+		final Random ran = new Random( 1l );
+		for ( final BitType t : image )
+		{
+			t.set( ran.nextDouble() < 0.45 );
+		}
+		final NativeImgLabeling< Integer, IntType > expected = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( dimensions, new IntType() ) );
+		final NativeImgLabeling< Integer, IntType > actual = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( dimensions, new IntType() ) );
+		AllConnectedComponents.labelAllConnectedComponents( expected, image, AllConnectedComponents.getIntegerNames( 1 ) );
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		AllConnectedComponents.labelAllConnectedComponents( actual, image, AllConnectedComponents.getIntegerNames( 1 ), service );
+		service.shutdown();
+
+		final Cursor< LabelingType< Integer >> ce = expected.cursor();
+		final Cursor< LabelingType< Integer >> ca = actual.cursor();
+		while ( ce.hasNext() )
+		{
+			assertEquals( ce.next().getLabeling(), ca.next().getLabeling() );
+		}
+	}
+
+	@Test
+	public void testParallelScanWithOffset()
+	{
+		/*
+		 * A mask with a non-zero min is labeled at its own positions, like a
+		 * zero-min copy translated by that min.
+		 */
+		final long[] dimensions = new long[] { 97, 61 };
+		final long[] min = new long[] { 13, 7 };
+		final long[] max = new long[] { 80, 50 };
+		final ArrayImg< BitType, ? > image = new ArrayImgFactory< BitType >().create( dimensions, new BitType() );
+		final Random ran = new Random( 1l );
+		for ( final BitType t : image )
+		{
+			t.set( ran.nextDouble() < 0.45 );
+		}
+		final RandomAccessibleInterval< BitType > mask = Views.interval( image, min, max );
+		final ArrayImg< BitType, ? > copy = new ArrayImgFactory< BitType >().create( mask, new BitType() );
+		final Cursor< BitType > cc = copy.cursor();
+		for ( final BitType t : Views.flatIterable( mask ) )
+		{
+			cc.next().set( t );
+		}
+
+		final NativeImgLabeling< Integer, IntType > expected = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( copy, new IntType() ) );
+		AllConnectedComponents.labelAllConnectedComponents( expected, copy, AllConnectedComponents.getIntegerNames( 1 ) );
+		final NativeImgLabeling< Integer, IntType > actual = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( dimensions, new IntType() ) );
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		AllConnectedComponents.labelAllConnectedComponents( actual, mask, AllConnectedComponents.getIntegerNames( 1 ), service );
+		service.shutdown();
+
+		final RandomAccess< LabelingType< Integer >> ra = expected.randomAccess();
+		final Cursor< LabelingType< Integer >> ca = actual.localizingCursor();
+		final long[] position = new long[ 2 ];
+		while ( ca.hasNext() )
+		{
+			final List< Integer > labels = ca.next().getLabeling();
+			ca.localize( position );
+			if ( position[ 0 ] < min[ 0 ] || position[ 0 ] > max[ 0 ] || position[ 1 ] < min[ 1 ] || position[ 1 ] > max[ 1 ] )
+			{
+				assertTrue( labels.isEmpty() );
+				continue;
+			}
+			ra.setPosition( new long[] { position[ 0 ] - min[ 0 ], position[ 1 ] - min[ 1 ] } );
+			assertEquals( ra.get().getLabeling(), labels );
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testParallelScanOutsideLabeling()
+	{
+		final ArrayImg< BitType, ? > image = new ArrayImgFactory< BitType >().create( new long[] { 20, 20 }, new BitType() );
+		final NativeImgLabeling< Integer, IntType > labeling = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( new long[] { 20, 20 }, new IntType() ) );
+		final ExecutorService service = Executors.newFixedThreadPool( 1 );
+		try
+		{
+			AllConnectedComponents.labelAllConnectedComponents( labeling, Views.translate( image, 5, 0 ), AllConnectedComponents.getIntegerNames( 1 ), service );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
 }
@@ -0,0 +1,143 @@
+package tests.labeling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.algorithm.labeling.BlockConnectedComponents;
+import net.imglib2.algorithm.labeling.ConcurrentUnionFind;
+import net.imglib2.algorithm.labeling.ConnectedComponents;
+import net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class BlockConnectedComponentsTest
+{
+
+	@Test
+	public void test2D()
+	{
+		final Img< BitType > mask = randomMask( 0.55, 47, 31 );
+		for ( final StructuringElement se : StructuringElement.values() )
+		{
+			assertSameComponents( mask, se, new int[] { 5, 7 } );
+			assertSameComponents( mask, se, new int[] { 47, 1 } );
+			assertSameComponents( mask, se, BlockConnectedComponents.defaultBlockSize( mask ) );
+		}
+	}
+
+	@Test
+	public void test3D()
+	{
+		final Img< BitType > mask = randomMask( 0.35, 17, 13, 11 );
+		for ( final StructuringElement se : StructuringElement.values() )
+		{
+			assertSameComponents( mask, se, new int[] { 3, 4, 5 } );
+			assertSameComponents( mask, se, new int[] { 1, 13, 2 } );
+		}
+	}
+
+	@Test
+	public void testFewLines()
+	{
+		final Img< BitType > mask = randomMask( 0.6, 2000, 3 );
+		for ( final StructuringElement se : StructuringElement.values() )
+		{
+			assertSameComponents( mask, se, BlockConnectedComponents.defaultBlockSize( mask ) );
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testBlockTooLarge()
+	{
+		final Img< BitType > mask = ArrayImgs.bits( 1, 1 );
+		final FinalInterval huge = new FinalInterval( 1l << 16, 1l << 16 );
+		final ExecutorService service = Executors.newSingleThreadExecutor();
+		try
+		{
+			BlockConnectedComponents.labelAllConnectedComponents( Views.extendZero( mask ), Views.interval( Views.extendZero( ArrayImgs.ints( 1, 1 ) ), huge ), StructuringElement.FOUR_CONNECTED, new int[] { 1 << 16, 1 << 16 }, service );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	@Test
+	public void testUnionFind()
+	{
+		final ConcurrentUnionFind uf = new ConcurrentUnionFind( 10 );
+		uf.union( 7, 3 );
+		uf.union( 9, 7 );
+		uf.union( 2, 5 );
+		assertEquals( 3, uf.find( 9 ) );
+		assertEquals( 2, uf.find( 5 ) );
+		// Sets: {1}, {2,5}, {3,7,9}, {4}, {6}, {8}.
+		assertEquals( 6, uf.compress( 1 ) );
+		assertEquals( 1, uf.getSetId( 1 ) );
+		assertEquals( 2, uf.getSetId( 5 ) );
+		assertEquals( 3, uf.getSetId( 9 ) );
+		assertEquals( 6, uf.getSetId( 8 ) );
+	}
+
+	/**
+	 * Checks that the block labeling and {@link ConnectedComponents} find the
+	 * same components, up to their numbering.
+	 */
+	private static void assertSameComponents( final Img< BitType > mask, final StructuringElement se, final int[] blockSize )
+	{
+		final long[] dims = new long[ mask.numDimensions() ];
+		mask.dimensions( dims );
+		final Img< IntType > expected = ArrayImgs.ints( dims );
+		final Img< LongType > actual = ArrayImgs.longs( dims );
+		final int numExpected = ConnectedComponents.labelAllConnectedComponents( mask, expected, se );
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		final long numActual = BlockConnectedComponents.labelAllConnectedComponents( mask, actual, se, blockSize, service );
+		service.shutdown();
+		assertEquals( numExpected, numActual );
+
+		final Map< Integer, Long > forward = new HashMap< Integer, Long >();
+		final Map< Long, Integer > backward = new HashMap< Long, Integer >();
+		final Cursor< IntType > ce = expected.cursor();
+		final Cursor< LongType > ca = actual.cursor();
+		while ( ce.hasNext() )
+		{
+			final int e = ce.next().get();
+			final long a = ca.next().get();
+			assertEquals( e == 0, a == 0 );
+			if ( e == 0 )
+			{
+				continue;
+			}
+			assertTrue( a >= 1 && a <= numActual );
+			final Long fa = forward.put( e, a );
+			final Integer be = backward.put( a, e );
+			assertTrue( null == fa || fa == a );
+			assertTrue( null == be || be == e );
+		}
+	}
+
+	private static Img< BitType > randomMask( final double density, final long... dims )
+	{
+		final Img< BitType > mask = ArrayImgs.bits( dims );
+		final Random ran = new Random( 1l );
+		for ( final BitType t : mask )
+		{
+			t.set( ran.nextDouble() < density );
+		}
+		return mask;
+	}
+}
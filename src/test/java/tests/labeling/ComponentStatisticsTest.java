@@ -0,0 +1,115 @@
+package tests.labeling;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.algorithm.labeling.ComponentStatistics;
+import net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement;
+import net.imglib2.algorithm.labeling.RunLengthConnectedComponents;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+public class ComponentStatisticsTest
+{
+
+	@Test
+	public void test2D()
+	{
+		assertStatistics( 43, 27 );
+	}
+
+	@Test
+	public void test3D()
+	{
+		assertStatistics( 13, 9, 7 );
+	}
+
+	/**
+	 * Checks the statistics against sums over the pixels of the labeled
+	 * image.
+	 */
+	private static void assertStatistics( final long... dims )
+	{
+		final int n = dims.length;
+		final Img< BitType > mask = ArrayImgs.bits( dims );
+		final Img< FloatType > intensity = ArrayImgs.floats( dims );
+		final Random ran = new Random( 1l );
+		final Cursor< FloatType > ci = intensity.cursor();
+		for ( final BitType t : mask )
+		{
+			t.set( ran.nextDouble() < 0.4 );
+			ci.next().set( ran.nextFloat() );
+		}
+
+		final Img< IntType > labels = ArrayImgs.ints( dims );
+		final ComponentStatistics stats = RunLengthConnectedComponents.labelAndMeasure( mask, labels, StructuringElement.EIGHT_CONNECTED, intensity );
+		final int numComponents = stats.numComponents();
+
+		final long[] counts = new long[ numComponents + 1 ];
+		final long[][] min = new long[ numComponents + 1 ][ n ];
+		final long[][] max = new long[ numComponents + 1 ][ n ];
+		final double[][] sums = new double[ numComponents + 1 ][ n ];
+		final double[][][] products = new double[ numComponents + 1 ][ n ][ n ];
+		final double[] intensities = new double[ numComponents + 1 ];
+		for ( int l = 1; l <= numComponents; l++ )
+		{
+			for ( int d = 0; d < n; d++ )
+			{
+				min[ l ][ d ] = Long.MAX_VALUE;
+				max[ l ][ d ] = Long.MIN_VALUE;
+			}
+		}
+		final Cursor< IntType > c = labels.localizingCursor();
+		final RandomAccess< FloatType > ra = intensity.randomAccess();
+		final long[] pos = new long[ n ];
+		while ( c.hasNext() )
+		{
+			final int l = c.next().get();
+			if ( l == 0 )
+			{
+				continue;
+			}
+			c.localize( pos );
+			ra.setPosition( pos );
+			counts[ l ]++;
+			intensities[ l ] += ra.get().get();
+			for ( int d = 0; d < n; d++ )
+			{
+				min[ l ][ d ] = Math.min( min[ l ][ d ], pos[ d ] );
+				max[ l ][ d ] = Math.max( max[ l ][ d ], pos[ d ] );
+				sums[ l ][ d ] += pos[ d ];
+				for ( int e = 0; e < n; e++ )
+				{
+					products[ l ][ d ][ e ] += pos[ d ] * pos[ e ];
+				}
+			}
+		}
+
+		for ( int l = 1; l <= numComponents; l++ )
+		{
+			assertEquals( counts[ l ], stats.getCount( l ) );
+			assertEquals( intensities[ l ], stats.getIntensitySum( l ), 1e-4 );
+			for ( int d = 0; d < n; d++ )
+			{
+				assertEquals( min[ l ][ d ], stats.getMin( l, d ) );
+				assertEquals( max[ l ][ d ], stats.getMax( l, d ) );
+				final double cd = sums[ l ][ d ] / counts[ l ];
+				assertEquals( cd, stats.getCentroid( l, d ), 1e-9 );
+				for ( int e = 0; e < n; e++ )
+				{
+					final double ce = sums[ l ][ e ] / counts[ l ];
+					final double moment = products[ l ][ d ][ e ] / counts[ l ] - cd * ce;
+					assertEquals( moment, stats.getCentralMoment( l, d, e ), 1e-6 );
+				}
+			}
+		}
+	}
+}
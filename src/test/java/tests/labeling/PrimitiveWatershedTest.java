@@ -0,0 +1,376 @@
+package tests.labeling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.algorithm.labeling.AllConnectedComponents;
+import net.imglib2.algorithm.labeling.PrimitiveWatershed;
+import net.imglib2.algorithm.labeling.Watershed;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.labeling.LabelingType;
+import net.imglib2.labeling.NativeImgLabeling;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+public class PrimitiveWatershedTest
+{
+
+	private static final long[] DIMS = new long[] { 41, 37 };
+
+	@Test
+	public void testHierarchicalQueue()
+	{
+		final Img< UnsignedByteType > image = ArrayImgs.unsignedBytes( DIMS );
+		final Random ran = new Random( 1l );
+		for ( final UnsignedByteType t : image )
+		{
+			// Few levels, so that there are many ties.
+			t.set( ran.nextInt( 8 ) );
+		}
+		assertSameAsWatershed( image );
+	}
+
+	@Test
+	public void testHeap()
+	{
+		final Img< FloatType > image = ArrayImgs.floats( DIMS );
+		final Random ran = new Random( 1l );
+		for ( final FloatType t : image )
+		{
+			t.set( ran.nextInt( 8 ) * 0.5f );
+		}
+		assertSameAsWatershed( image );
+	}
+
+	@Test
+	public void testWideRange()
+	{
+		final Img< IntType > image = ArrayImgs.ints( DIMS );
+		final Random ran = new Random( 1l );
+		for ( final IntType t : image )
+		{
+			t.set( ran.nextInt( 4 ) * 100000 );
+		}
+		assertSameAsWatershed( image );
+	}
+
+	@Test
+	public void testTilesWithoutTies()
+	{
+		// All intensities differ: tiles give the sequential result.
+		final Img< FloatType > image = ArrayImgs.floats( DIMS );
+		final Random ran = new Random( 1l );
+		for ( final FloatType t : image )
+		{
+			t.set( ran.nextFloat() );
+		}
+		final Img< IntType > seeds = randomSeeds();
+		final Img< IntType > expected = ArrayImgs.ints( DIMS );
+		PrimitiveWatershed.floodFromSeeds( image, seeds, expected, AllConnectedComponents.getStructuringElement( 2 ) );
+		for ( final boolean deterministic : new boolean[] { false, true } )
+		{
+			assertSameLabels( expected, floodInTiles( image, seeds, new int[] { 7, 5 }, deterministic ) );
+			assertSameLabels( expected, floodInTiles( image, seeds, new int[] { 41, 1 }, deterministic ) );
+		}
+	}
+
+	@Test
+	public void testTilesDeterministic()
+	{
+		// Many ties: deterministic results must not depend on the tiles.
+		final Img< UnsignedByteType > image = ArrayImgs.unsignedBytes( DIMS );
+		final Random ran = new Random( 1l );
+		for ( final UnsignedByteType t : image )
+		{
+			t.set( ran.nextInt( 4 ) );
+		}
+		final Img< IntType > seeds = randomSeeds();
+		final Img< IntType > expected = floodInTiles( image, seeds, new int[] { 41, 37 }, true );
+		assertSameLabels( expected, floodInTiles( image, seeds, new int[] { 7, 5 }, true ) );
+		assertSameLabels( expected, floodInTiles( image, seeds, new int[] { 3, 37 }, true ) );
+		assertSameLabels( expected, floodInTiles( image, seeds, new int[] { 1, 1 }, true ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testSeedIdOutOfRange()
+	{
+		final Img< FloatType > image = ArrayImgs.floats( DIMS );
+		final Img< LongType > seeds = ArrayImgs.longs( DIMS );
+		seeds.firstElement().set( 1l << 32 );
+		PrimitiveWatershed.floodFromSeeds( image, seeds, ArrayImgs.ints( DIMS ), AllConnectedComponents.getStructuringElement( 2 ) );
+	}
+
+	@Test
+	public void testFromMinima()
+	{
+		final Img< IntType > image = twoWells();
+		final Img< IntType > output = ArrayImgs.ints( 40, 21 );
+		final long[][] strel = AllConnectedComponents.getStructuringElement( 2 );
+
+		// The dimple is a regional minimum of depth 1.
+		assertEquals( 3, PrimitiveWatershed.floodFromMinima( image, output, strel, 0, false ) );
+		assertEquals( 3, PrimitiveWatershed.floodFromMinima( image, output, strel, 0.5, false ) );
+		assertEquals( 2, PrimitiveWatershed.floodFromMinima( image, output, strel, 1, false ) );
+		final RandomAccess< IntType > ra = output.randomAccess();
+		ra.setPosition( new int[] { 5, 10 } );
+		assertEquals( 1, ra.get().get() );
+		ra.setPosition( new int[] { 30, 10 } );
+		assertEquals( 2, ra.get().get() );
+		for ( final IntType t : output )
+		{
+			assertTrue( t.get() > 0 );
+		}
+	}
+
+	@Test
+	public void testLines()
+	{
+		final Img< IntType > image = twoWells();
+		final Img< IntType > output = ArrayImgs.ints( 40, 21 );
+		final long[][] strel = AllConnectedComponents.getStructuringElement( 2 );
+		assertEquals( 2, PrimitiveWatershed.floodFromMinima( image, output, strel, 1, true ) );
+
+		// No two neighbors in different basins.
+		boolean hasLine = false;
+		final Cursor< IntType > c = output.localizingCursor();
+		final RandomAccess< IntType > ra = output.randomAccess();
+		final long[] position = new long[ 2 ];
+		while ( c.hasNext() )
+		{
+			final int l = c.next().get();
+			hasLine = hasLine || l == 0;
+			if ( l == 0 )
+			{
+				continue;
+			}
+			c.localize( position );
+			for ( final long[] offset : strel )
+			{
+				final long x = position[ 0 ] + offset[ 0 ];
+				final long y = position[ 1 ] + offset[ 1 ];
+				if ( x < 0 || y < 0 || x >= 40 || y >= 21 )
+				{
+					continue;
+				}
+				ra.setPosition( new long[] { x, y } );
+				final int m = ra.get().get();
+				assertTrue( m == 0 || m == l );
+			}
+		}
+		assertTrue( hasLine );
+	}
+
+	@Test
+	public void testCompactWithoutCompactness()
+	{
+		final Img< FloatType > image = ArrayImgs.floats( DIMS );
+		final Random ran = new Random( 1l );
+		for ( final FloatType t : image )
+		{
+			t.set( ran.nextFloat() );
+		}
+		final Img< IntType > seeds = randomSeeds();
+		final long[][] strel = AllConnectedComponents.getStructuringElement( 2 );
+		final Img< IntType > expected = ArrayImgs.ints( DIMS );
+		PrimitiveWatershed.floodFromSeeds( image, seeds, expected, strel );
+		final Img< IntType > actual = ArrayImgs.ints( DIMS );
+		PrimitiveWatershed.floodCompact( image, seeds, actual, strel, 0 );
+		assertSameLabels( expected, actual );
+	}
+
+	@Test
+	public void testCompactOnFlatImage()
+	{
+		// On a flat image, basins are the cells around the seeds.
+		final Img< FloatType > image = ArrayImgs.floats( DIMS );
+		final Img< IntType > seeds = ArrayImgs.ints( DIMS );
+		final int[][] centers = new int[][] { { 5, 5 }, { 35, 8 }, { 12, 30 }, { 30, 28 } };
+		final RandomAccess< IntType > sa = seeds.randomAccess();
+		for ( int l = 0; l < centers.length; l++ )
+		{
+			sa.setPosition( centers[ l ] );
+			sa.get().set( l + 1 );
+		}
+		final Img< IntType > output = ArrayImgs.ints( DIMS );
+		PrimitiveWatershed.floodCompact( image, seeds, output, AllConnectedComponents.getStructuringElement( 2 ), 1 );
+
+		final Cursor< IntType > c = output.localizingCursor();
+		while ( c.hasNext() )
+		{
+			final int l = c.next().get();
+			assertTrue( l > 0 );
+			final double own = distance( c, centers[ l - 1 ] );
+			for ( final int[] center : centers )
+			{
+				// Away from the cell borders, the nearest seed wins.
+				assertTrue( own <= distance( c, center ) + 2 );
+			}
+		}
+	}
+
+	@Test
+	public void testCompactWithSparseIds()
+	{
+		final Img< FloatType > image = ArrayImgs.floats( DIMS );
+		final Random ran = new Random( 3l );
+		for ( final FloatType t : image )
+		{
+			t.set( ran.nextFloat() );
+		}
+		final int[][] centers = new int[][] { { 5, 5 }, { 35, 8 }, { 12, 30 }, { 30, 28 } };
+		final int[] sparseIds = new int[] { 1000000007, 2, Integer.MAX_VALUE, 77 };
+		final Img< IntType > seeds = ArrayImgs.ints( DIMS );
+		final Img< IntType > sparseSeeds = ArrayImgs.ints( DIMS );
+		final RandomAccess< IntType > sa = seeds.randomAccess();
+		final RandomAccess< IntType > ssa = sparseSeeds.randomAccess();
+		for ( int l = 0; l < centers.length; l++ )
+		{
+			sa.setPosition( centers[ l ] );
+			sa.get().set( l + 1 );
+			ssa.setPosition( centers[ l ] );
+			ssa.get().set( sparseIds[ l ] );
+		}
+		final long[][] strel = AllConnectedComponents.getStructuringElement( 2 );
+		final Img< IntType > output = ArrayImgs.ints( DIMS );
+		PrimitiveWatershed.floodCompact( image, seeds, output, strel, 0.5 );
+		final Img< IntType > sparseOutput = ArrayImgs.ints( DIMS );
+		PrimitiveWatershed.floodCompact( image, sparseSeeds, sparseOutput, strel, 0.5 );
+
+		final Cursor< IntType > c = output.cursor();
+		final Cursor< IntType > sc = sparseOutput.cursor();
+		while ( c.hasNext() )
+		{
+			assertEquals( sparseIds[ c.next().get() - 1 ], sc.next().get() );
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testNegativeCompactness()
+	{
+		final Img< FloatType > image = ArrayImgs.floats( DIMS );
+		PrimitiveWatershed.floodCompact( image, randomSeeds(), ArrayImgs.ints( DIMS ), AllConnectedComponents.getStructuringElement( 2 ), -1 );
+	}
+
+	private static double distance( final Cursor< IntType > c, final int[] center )
+	{
+		final double dx = c.getIntPosition( 0 ) - center[ 0 ];
+		final double dy = c.getIntPosition( 1 ) - center[ 1 ];
+		return Math.sqrt( dx * dx + dy * dy );
+	}
+
+	/**
+	 * Two wells at (10, 10) and (30, 10), and a dimple of depth 1 at (5, 10).
+	 */
+	private static Img< IntType > twoWells()
+	{
+		final Img< IntType > image = ArrayImgs.ints( 40, 21 );
+		final Cursor< IntType > c = image.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			final int x = c.getIntPosition( 0 );
+			final int y = c.getIntPosition( 1 );
+			final int d1 = Math.abs( x - 10 ) + Math.abs( y - 10 );
+			final int d2 = Math.abs( x - 30 ) + Math.abs( y - 10 );
+			c.get().set( 2 * Math.min( d1, d2 ) );
+		}
+		final RandomAccess< IntType > ra = image.randomAccess();
+		ra.setPosition( new int[] { 5, 10 } );
+		ra.get().set( 7 );
+		return image;
+	}
+
+	private static < T extends RealType< T > > Img< IntType > floodInTiles( final Img< T > image, final Img< IntType > seeds, final int[] tileSize, final boolean deterministic )
+	{
+		final Img< IntType > output = ArrayImgs.ints( DIMS );
+		final ExecutorService service = Executors.newFixedThreadPool( 4 );
+		PrimitiveWatershed.floodFromSeeds( image, seeds, output, AllConnectedComponents.getStructuringElement( 2 ), tileSize, service, deterministic );
+		service.shutdown();
+		return output;
+	}
+
+	private static Img< IntType > randomSeeds()
+	{
+		final Img< IntType > seeds = ArrayImgs.ints( DIMS );
+		final Random ran = new Random( 2l );
+		int id = 1;
+		for ( final IntType s : seeds )
+		{
+			if ( ran.nextDouble() < 0.01 )
+			{
+				s.set( id++ );
+			}
+		}
+		return seeds;
+	}
+
+	private static void assertSameLabels( final Img< IntType > expected, final Img< IntType > actual )
+	{
+		final Cursor< IntType > ec = expected.cursor();
+		final Cursor< IntType > ac = actual.cursor();
+		while ( ec.hasNext() )
+		{
+			assertEquals( ec.next().get(), ac.next().get() );
+		}
+	}
+
+	/**
+	 * Checks that the primitive watershed labels pixels like
+	 * {@link Watershed}, ties included.
+	 */
+	private static < T extends RealType< T > > void assertSameAsWatershed( final Img< T > image )
+	{
+		final Img< IntType > seeds = ArrayImgs.ints( DIMS );
+		final NativeImgLabeling< Integer, IntType > seedLabeling = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( DIMS, new IntType() ) );
+		final Random ran = new Random( 2l );
+		final Cursor< IntType > sc = seeds.cursor();
+		final Cursor< LabelingType< Integer > > lc = seedLabeling.cursor();
+		int id = 1;
+		while ( sc.hasNext() )
+		{
+			final IntType s = sc.next();
+			final LabelingType< Integer > l = lc.next();
+			if ( ran.nextDouble() < 0.01 )
+			{
+				s.set( id );
+				l.setLabel( id );
+				id++;
+			}
+		}
+
+		final Watershed< T, Integer > watershed = new Watershed< T, Integer >();
+		watershed.setSeeds( seedLabeling );
+		watershed.setIntensityImage( image );
+		watershed.setStructuringElement( AllConnectedComponents.getStructuringElement( 2 ) );
+		// With an output labeling, Watershed floods with its own queue.
+		watershed.setOutputLabeling( new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( DIMS, new IntType() ) ) );
+		assertTrue( watershed.process() );
+
+		final Img< IntType > output = ArrayImgs.ints( DIMS );
+		PrimitiveWatershed.floodFromSeeds( image, seeds, output, AllConnectedComponents.getStructuringElement( 2 ) );
+
+		final Cursor< LabelingType< Integer > > ec = watershed.getResult().cursor();
+		final Cursor< IntType > ac = output.cursor();
+		while ( ec.hasNext() )
+		{
+			final List< Integer > expected = ec.next().getLabeling();
+			final int actual = ac.next().get();
+			assertEquals( 1, expected.size() );
+			assertEquals( expected.get( 0 ).intValue(), actual );
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package tests.labeling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessible;
+import net.imglib2.algorithm.labeling.ConnectedComponents;
+import net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement;
+import net.imglib2.algorithm.labeling.RunLengthConnectedComponents;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Test;
+
+public class RunLengthConnectedComponentsTest
+{
+
+	@Test
+	public void testBits()
+	{
+		// Lines longer than a word, not aligned on words.
+		final Img< BitType > mask = ArrayImgs.bits( 151, 23 );
+		fill( mask, 0.6 );
+		for ( final StructuringElement se : StructuringElement.values() )
+		{
+			assertSameComponents( mask, mask, se );
+		}
+	}
+
+	@Test
+	public void testBytes3D()
+	{
+		final Img< UnsignedByteType > ubytes = ArrayImgs.unsignedBytes( 19, 11, 7 );
+		fill( ubytes, 0.35 );
+		final Img< ByteType > bytes = ArrayImgs.bytes( 19, 11, 7 );
+		final Cursor< ByteType > c = bytes.cursor();
+		final Random ran = new Random( 2l );
+		while ( c.hasNext() )
+		{
+			// Negative values are background.
+			c.next().set( ( byte ) ( ran.nextInt( 5 ) - 2 ) );
+		}
+		for ( final StructuringElement se : StructuringElement.values() )
+		{
+			assertSameComponents( ubytes, ubytes, se );
+			assertSameComponents( bytes, bytes, se );
+		}
+	}
+
+	@Test
+	public void testCellImg()
+	{
+		final Img< UnsignedByteType > mask = new CellImgFactory< UnsignedByteType >( 8 ).create( new long[] { 37, 29 }, new UnsignedByteType() );
+		fill( mask, 0.55 );
+		for ( final StructuringElement se : StructuringElement.values() )
+		{
+			assertSameComponents( mask, mask, se );
+		}
+	}
+
+	/**
+	 * Checks that the run labeling and {@link ConnectedComponents} find the
+	 * same components, up to their numbering.
+	 */
+	private static < T extends IntegerType< T > > void assertSameComponents( final RandomAccessible< T > input, final Img< T > img, final StructuringElement se )
+	{
+		final long[] dims = new long[ img.numDimensions() ];
+		img.dimensions( dims );
+		final Img< IntType > expected = ArrayImgs.ints( dims );
+		final Img< IntType > actual = ArrayImgs.ints( dims );
+		final int numExpected = ConnectedComponents.labelAllConnectedComponents( input, expected, se );
+		final int numActual = RunLengthConnectedComponents.labelAllConnectedComponents( input, actual, se );
+		assertEquals( numExpected, numActual );
+
+		final Map< Integer, Integer > forward = new HashMap< Integer, Integer >();
+		final Map< Integer, Integer > backward = new HashMap< Integer, Integer >();
+		final Cursor< IntType > ce = expected.cursor();
+		final Cursor< IntType > ca = actual.cursor();
+		while ( ce.hasNext() )
+		{
+			final int e = ce.next().get();
+			final int a = ca.next().get();
+			assertEquals( e == 0, a == 0 );
+			if ( e == 0 )
+			{
+				continue;
+			}
+			assertTrue( a >= 1 && a <= numActual );
+			final Integer fa = forward.put( e, a );
+			final Integer be = backward.put( a, e );
+			assertTrue( null == fa || fa == a );
+			assertTrue( null == be || be == e );
+		}
+	}
+
+	private static < T extends IntegerType< T > > void fill( final Img< T > img, final double density )
+	{
+		final Random ran = new Random( 1l );
+		for ( final T t : img )
+		{
+			t.setInteger( ran.nextDouble() < density ? 1 : 0 );
+		}
+	}
+}
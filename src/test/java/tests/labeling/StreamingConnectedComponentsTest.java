@@ -0,0 +1,116 @@
+package tests.labeling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.algorithm.labeling.ComponentStatistics;
+import net.imglib2.algorithm.labeling.ConnectedComponents.StructuringElement;
+import net.imglib2.algorithm.labeling.RunLengthConnectedComponents;
+import net.imglib2.algorithm.labeling.StreamingConnectedComponents;
+import net.imglib2.algorithm.labeling.StreamingConnectedComponents.Component;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class StreamingConnectedComponentsTest
+{
+
+	@Test
+	public void testFourConnected()
+	{
+		assertSameComponents( StructuringElement.FOUR_CONNECTED, 0.35 );
+	}
+
+	@Test
+	public void testEightConnected()
+	{
+		assertSameComponents( StructuringElement.EIGHT_CONNECTED, 0.15 );
+	}
+
+	/**
+	 * Streams a volume slice by slice, and checks that the finished
+	 * components, with the ids written for each slice, are the components of
+	 * the whole volume.
+	 */
+	private static void assertSameComponents( final StructuringElement se, final double density )
+	{
+		final long[] dims = new long[] { 23, 17, 19 };
+		final Img< BitType > mask = ArrayImgs.bits( dims );
+		final Random ran = new Random( 1l );
+		for ( final BitType t : mask )
+		{
+			t.set( ran.nextDouble() < density );
+		}
+		final Img< IntType > expected = ArrayImgs.ints( dims );
+		final ComponentStatistics stats = RunLengthConnectedComponents.labelAndMeasure( mask, expected, se );
+
+		final List< Component > finished = new ArrayList< Component >();
+		final long[] finishedAt = new long[ 1 ];
+		final StreamingConnectedComponents streaming = new StreamingConnectedComponents( new long[] { dims[ 0 ], dims[ 1 ] }, se, new StreamingConnectedComponents.Listener()
+		{
+			@Override
+			public void componentFinished( final Component component )
+			{
+				// A component is reported as soon as a slice misses it.
+				assertTrue( component.getMax( 2 ) < finishedAt[ 0 ] );
+				finished.add( component );
+			}
+		} );
+		final Img< LongType > ids = ArrayImgs.longs( dims );
+		for ( int z = 0; z < dims[ 2 ]; z++ )
+		{
+			finishedAt[ 0 ] = z;
+			streaming.addSlice( Views.hyperSlice( mask, 2, z ), Views.hyperSlice( ids, 2, z ) );
+		}
+		finishedAt[ 0 ] = dims[ 2 ];
+		streaming.finish();
+		assertEquals( stats.numComponents(), finished.size() );
+
+		// Final id of each slice id.
+		final Map< Long, Component > byId = new HashMap< Long, Component >();
+		for ( final Component c : finished )
+		{
+			for ( final long id : c.getIds() )
+			{
+				byId.put( id, c );
+			}
+		}
+
+		final Map< Integer, Component > forward = new HashMap< Integer, Component >();
+		final Cursor< IntType > ce = expected.cursor();
+		final Cursor< LongType > ca = ids.cursor();
+		while ( ce.hasNext() )
+		{
+			final int e = ce.next().get();
+			final long a = ca.next().get();
+			assertEquals( e == 0, a == 0 );
+			if ( e == 0 )
+			{
+				continue;
+			}
+			final Component c = byId.get( a );
+			final Component previous = forward.put( e, c );
+			assertTrue( null == previous || previous == c );
+			assertEquals( stats.getCount( e ), c.getCount() );
+			for ( int d = 0; d < 3; d++ )
+			{
+				assertEquals( stats.getMin( e, d ), c.getMin( d ) );
+				assertEquals( stats.getMax( e, d ), c.getMax( d ) );
+				assertEquals( stats.getCentroid( e, d ), c.getCentroid( d ), 1e-9 );
+			}
+		}
+		assertEquals( finished.size(), forward.size() );
+	}
+}
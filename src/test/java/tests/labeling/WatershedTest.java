@@ -35,20 +35,27 @@
 package tests.labeling;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.List;
 
 import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.labeling.AllConnectedComponents;
 import net.imglib2.algorithm.labeling.Watershed;
+import net.imglib2.img.Img;
 import net.imglib2.img.NativeImg;
 import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.img.basictypeaccess.IntAccess;
+import net.imglib2.labeling.Labeling;
 import net.imglib2.labeling.LabelingType;
 import net.imglib2.labeling.NativeImgLabeling;
+import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.integer.IntType;
 import net.imglib2.util.Fraction;
+import net.imglib2.view.Views;
 
 import org.junit.Test;
 
@@ -105,9 +112,49 @@ public class WatershedTest
 		watershed.setStructuringElement( structuringElement );
 		watershed.setOutputLabeling( outputLabeling );
 		assertTrue( watershed.process() );
+		assertExpected( outputLabeling, expected, background );
+
+		/*
+		 * Without output labeling, the labeling is built from the label image
+		 * on request.
+		 */
+		final Watershed< IntType, Integer > toImage = new Watershed< IntType, Integer >();
+		toImage.setSeeds( seedLabeling );
+		toImage.setIntensityImage( imageImage );
+		toImage.setStructuringElement( structuringElement );
+		assertTrue( toImage.process() );
+		assertExpected( toImage.getResult(), expected, background );
+
 		/*
-		 * Check against expected
+		 * Integer seeds give integer output.
 		 */
+		final Img< IntType > seedImage = new ArrayImgFactory< IntType >().create( seedDimensions, new IntType() );
+		final Cursor< IntType > sic = seedImage.localizingCursor();
+		while ( sic.hasNext() )
+		{
+			final IntType t = sic.next();
+			sic.localize( position );
+			final int seedLabel = seeds[ position[ 0 ] ][ position[ 1 ] ];
+			t.set( seedLabel == background ? 0 : seedLabel );
+		}
+		final Watershed< IntType, Integer > integer = new Watershed< IntType, Integer >();
+		integer.setSeedImage( seedImage );
+		integer.setIntensityImage( imageImage );
+		integer.setStructuringElement( structuringElement );
+		assertTrue( integer.process() );
+		final Cursor< ? extends IntegerType< ? > > ioc = Views.iterable( integer.getOutputImage() ).localizingCursor();
+		while ( ioc.hasNext() )
+		{
+			final int label = ioc.next().getInteger();
+			ioc.localize( position );
+			final int expectedLabel = expected[ position[ 0 ] ][ position[ 1 ] ];
+			assertEquals( expectedLabel == background ? 0 : expectedLabel, label );
+		}
+	}
+
+	private void assertExpected( final Labeling< Integer > outputLabeling, final int[][] expected, final int background )
+	{
+		final int[] position = new int[ 2 ];
 		final Cursor< LabelingType< Integer >> oc = outputLabeling.localizingCursor();
 		while ( oc.hasNext() )
 		{
@@ -170,4 +217,47 @@ public class WatershedTest
 		}
 		testSeededCase2D( image, seeds, expected, null, 0 );
 	}
+
+	@Test
+	public final void testSeedImageInterval()
+	{
+		final Img< IntType > image = new ArrayImgFactory< IntType >().create( new long[] { 4, 3 }, new IntType() );
+		final Cursor< IntType > ic = image.localizingCursor();
+		while ( ic.hasNext() )
+		{
+			ic.next().set( ic.getIntPosition( 0 ) == 2 ? 1 : 0 );
+		}
+		final Img< IntType > seeds = new ArrayImgFactory< IntType >().create( new long[] { 4, 3 }, new IntType() );
+		final RandomAccess< IntType > ra = seeds.randomAccess();
+		ra.setPosition( new int[] { 0, 1 } );
+		ra.get().set( 1 );
+		ra.setPosition( new int[] { 3, 1 } );
+		ra.get().set( 2 );
+
+		/*
+		 * Seeds and intensities on different intervals are not matched by
+		 * flat index.
+		 */
+		final Watershed< IntType, Integer > shifted = new Watershed< IntType, Integer >();
+		shifted.setSeedImage( Views.translate( seeds, 10, 20 ) );
+		shifted.setIntensityImage( image );
+		assertFalse( shifted.process() );
+
+		/*
+		 * On the same interval, the output image is on that interval too.
+		 */
+		final Watershed< IntType, Integer > watershed = new Watershed< IntType, Integer >();
+		watershed.setSeedImage( Views.translate( seeds, 10, 20 ) );
+		watershed.setIntensityImage( Views.translate( image, 10, 20 ) );
+		assertTrue( watershed.process() );
+		final RandomAccessibleInterval< ? extends IntegerType< ? > > output = watershed.getOutputImage();
+		assertEquals( 10, output.min( 0 ) );
+		assertEquals( 20, output.min( 1 ) );
+		final Cursor< ? extends IntegerType< ? > > oc = Views.iterable( output ).localizingCursor();
+		while ( oc.hasNext() )
+		{
+			final int label = oc.next().getInteger();
+			assertEquals( oc.getIntPosition( 0 ) < 12 ? 1 : 2, label );
+		}
+	}
 }